@@ -0,0 +1,501 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent map with primitive {@code long} keys.
+ * <p>
+ * A {@link java.util.concurrent.ConcurrentHashMap ConcurrentHashMap&lt;Long, V&gt;} costs a
+ * {@link Long} and a map entry for every key, which adds up when the map holds millions of IDs. This
+ * map keeps the keys on a {@code long[]} and the values on a parallel array, using open addressing
+ * with linear probing.
+ * <p>
+ * The map is split in segments, each one with its own lock, so changes to different keys rarely
+ * contend. Reads don't lock. Null values are not supported.
+ */
+public class ConcurrentLongHashMap<V>
+{
+   private static final int DEFAULT_INITIAL_CAPACITY = 256;
+
+   private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+   private static final int MAX_SEGMENT_CAPACITY = 1 << 30;
+
+   // slots are rehashed once the used slots (live entries and deleted markers) reach 2/3 of the table
+   private static final int LOAD_FACTOR_NUMERATOR = 2;
+
+   private static final int LOAD_FACTOR_DENOMINATOR = 3;
+
+   // marks a slot whose entry was removed, so probing goes on past it
+   private static final Object DELETED = new Object();
+
+   private final Segment<V>[] segments;
+
+   private final int segmentShift;
+
+   public ConcurrentLongHashMap()
+   {
+      this(DEFAULT_INITIAL_CAPACITY, DEFAULT_CONCURRENCY_LEVEL);
+   }
+
+   @SuppressWarnings("unchecked")
+   public ConcurrentLongHashMap(final int initialCapacity, final int concurrencyLevel)
+   {
+      if (initialCapacity < 0 || concurrencyLevel <= 0)
+      {
+         throw new IllegalArgumentException("initialCapacity=" + initialCapacity +
+                                               ", concurrencyLevel=" + concurrencyLevel);
+      }
+
+      int numberOfSegments = nextPowerOfTwo(Math.min(concurrencyLevel, 1 << 16));
+
+      segments = new Segment[numberOfSegments];
+
+      // the high bits of the hash choose the segment, the low bits choose the slot
+      segmentShift = 64 - Integer.numberOfTrailingZeros(numberOfSegments);
+
+      int segmentCapacity = nextPowerOfTwo(Math.max(initialCapacity / numberOfSegments, 2) *
+                                              LOAD_FACTOR_DENOMINATOR /
+                                              LOAD_FACTOR_NUMERATOR);
+
+      for (int i = 0; i < numberOfSegments; i++)
+      {
+         segments[i] = new Segment<V>(segmentCapacity);
+      }
+   }
+
+   public V get(final long key)
+   {
+      long hash = hash(key);
+      return segmentFor(hash).get(key, (int)hash);
+   }
+
+   public boolean containsKey(final long key)
+   {
+      return get(key) != null;
+   }
+
+   /**
+    * @return the previous value associated with the key, or {@code null} if there was none
+    */
+   public V put(final long key, final V value)
+   {
+      checkValue(value);
+      long hash = hash(key);
+      return segmentFor(hash).put(key, (int)hash, value, false);
+   }
+
+   /**
+    * @return the value already associated with the key, or {@code null} if the new value was added
+    */
+   public V putIfAbsent(final long key, final V value)
+   {
+      checkValue(value);
+      long hash = hash(key);
+      return segmentFor(hash).put(key, (int)hash, value, true);
+   }
+
+   /**
+    * @return the removed value, or {@code null} if the key wasn't mapped
+    */
+   public V remove(final long key)
+   {
+      long hash = hash(key);
+      return segmentFor(hash).remove(key, (int)hash);
+   }
+
+   public int size()
+   {
+      int size = 0;
+      for (Segment<V> segment : segments)
+      {
+         size += segment.size();
+      }
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      for (Segment<V> segment : segments)
+      {
+         if (segment.size() > 0)
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   public void clear()
+   {
+      for (Segment<V> segment : segments)
+      {
+         segment.clear();
+      }
+   }
+
+   /**
+    * @return a snapshot of the keys. Like the iterators of ConcurrentHashMap, it is only consistent
+    *         per segment if the map is being changed concurrently.
+    */
+   public long[] keys()
+   {
+      long[] keys = new long[size()];
+      int position = 0;
+
+      for (Segment<V> segment : segments)
+      {
+         position = segment.copyKeys(keys, position);
+         if (position == -1)
+         {
+            // the map grew while copying, start over on a bigger array
+            return keys();
+         }
+      }
+
+      return position == keys.length ? keys : Arrays.copyOf(keys, position);
+   }
+
+   /**
+    * @return a snapshot of the values, with the same consistency as {@link #keys()}
+    */
+   public List<V> values()
+   {
+      List<V> values = new ArrayList<V>(size());
+
+      for (Segment<V> segment : segments)
+      {
+         segment.copyValues(values);
+      }
+
+      return values;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ConcurrentLongHashMap(size=" + size() + ")";
+   }
+
+   // Private -------------------------------------------------------
+
+   private Segment<V> segmentFor(final long hash)
+   {
+      // segmentShift is 64 when there's a single segment, and Java only uses the 6 lower bits of the shift
+      return segments.length == 1 ? segments[0] : segments[(int)(hash >>> segmentShift)];
+   }
+
+   private static void checkValue(final Object value)
+   {
+      if (value == null)
+      {
+         throw new NullPointerException("null values are not supported");
+      }
+   }
+
+   /**
+    * The finalizer of MurmurHash3, IDs are usually sequential and need to be spread over the table.
+    */
+   private static long hash(final long key)
+   {
+      long h = key;
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h;
+   }
+
+   private static int nextPowerOfTwo(final int value)
+   {
+      if (value <= 1)
+      {
+         return 1;
+      }
+      return Math.min(Integer.highestOneBit(value - 1) << 1, MAX_SEGMENT_CAPACITY);
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * Writers are serialized on the segment monitor, readers don't lock at all. The slots are read
+    * and written through atomic arrays, and a rehash fills new arrays before publishing them, so a
+    * reader always probes a consistent table: at worst one that was replaced while it was reading.
+    */
+   private static final class Segment<V>
+   {
+      private final int initialCapacity;
+
+      private volatile Table table;
+
+      private volatile int size;
+
+      // guarded by this
+      private int usedSlots;
+
+      Segment(final int capacity)
+      {
+         initialCapacity = capacity;
+         allocate(capacity);
+      }
+
+      int size()
+      {
+         return size;
+      }
+
+      @SuppressWarnings("unchecked")
+      V get(final long key, final int hash)
+      {
+         Table current = table;
+         int mask = current.length() - 1;
+         int i = hash & mask;
+
+         while (true)
+         {
+            Object value = current.values.get(i);
+
+            if (value == null)
+            {
+               return null;
+            }
+
+            if (value != DELETED && current.keys.get(i) == key)
+            {
+               // the slot may have been reused for this key while reading it, then read it again
+               if (current.values.get(i) == value)
+               {
+                  return (V)value;
+               }
+               continue;
+            }
+
+            i = (i + 1) & mask;
+         }
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized V put(final long key, final int hash, final V value, final boolean onlyIfAbsent)
+      {
+         Table current = table;
+
+         int slot = current.findSlot(key, hash);
+
+         Object existing = current.values.get(slot);
+
+         if (existing != null)
+         {
+            if (!onlyIfAbsent)
+            {
+               current.values.set(slot, value);
+            }
+            return (V)existing;
+         }
+
+         // not found, reuse the first deleted slot on the probe sequence if there is one
+         int mask = current.length() - 1;
+         for (int i = hash & mask;; i = (i + 1) & mask)
+         {
+            Object slotValue = current.values.get(i);
+            if (slotValue == null)
+            {
+               usedSlots++;
+               slot = i;
+               break;
+            }
+            else if (slotValue == DELETED)
+            {
+               slot = i;
+               break;
+            }
+         }
+
+         // the key has to be there before a reader can find the value
+         current.keys.set(slot, key);
+         current.values.set(slot, value);
+         size++;
+
+         if (usedSlots * LOAD_FACTOR_DENOMINATOR >= current.length() * LOAD_FACTOR_NUMERATOR)
+         {
+            rehash();
+         }
+
+         return null;
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized V remove(final long key, final int hash)
+      {
+         Table current = table;
+
+         int slot = current.findSlot(key, hash);
+
+         Object existing = current.values.get(slot);
+
+         if (existing == null)
+         {
+            return null;
+         }
+
+         int mask = current.length() - 1;
+
+         if (current.values.get((slot + 1) & mask) == null)
+         {
+            // nothing probes past this slot, so it can be freed right away
+            current.values.set(slot, null);
+            usedSlots--;
+         }
+         else
+         {
+            current.values.set(slot, DELETED);
+         }
+
+         size--;
+
+         return (V)existing;
+      }
+
+      synchronized void clear()
+      {
+         allocate(initialCapacity);
+      }
+
+      synchronized int copyKeys(final long[] target, final int position)
+      {
+         if (position + size > target.length)
+         {
+            return -1;
+         }
+
+         Table current = table;
+
+         int pos = position;
+         for (int i = 0; i < current.length(); i++)
+         {
+            Object value = current.values.get(i);
+            if (value != null && value != DELETED)
+            {
+               target[pos++] = current.keys.get(i);
+            }
+         }
+         return pos;
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized void copyValues(final List<V> target)
+      {
+         Table current = table;
+
+         for (int i = 0; i < current.length(); i++)
+         {
+            Object value = current.values.get(i);
+            if (value != null && value != DELETED)
+            {
+               target.add((V)value);
+            }
+         }
+      }
+
+      private void allocate(final int capacity)
+      {
+         table = new Table(capacity);
+         size = 0;
+         usedSlots = 0;
+      }
+
+      private void rehash()
+      {
+         Table old = table;
+
+         // if most used slots are deleted markers, cleaning them up is enough
+         int capacity = size * 2 * LOAD_FACTOR_DENOMINATOR >= old.length() * LOAD_FACTOR_NUMERATOR ?
+            Math.min(old.length() * 2, MAX_SEGMENT_CAPACITY) : old.length();
+
+         if (capacity == old.length() && usedSlots == size)
+         {
+            throw new IllegalStateException("Segment is full, capacity=" + capacity);
+         }
+
+         Table rehashed = new Table(capacity);
+
+         int mask = capacity - 1;
+         int entries = 0;
+
+         for (int i = 0; i < old.length(); i++)
+         {
+            Object value = old.values.get(i);
+            if (value != null && value != DELETED)
+            {
+               long key = old.keys.get(i);
+               int slot = (int)hash(key) & mask;
+               while (rehashed.values.get(slot) != null)
+               {
+                  slot = (slot + 1) & mask;
+               }
+               rehashed.keys.set(slot, key);
+               rehashed.values.set(slot, value);
+               entries++;
+            }
+         }
+
+         // the old table is left as it was, for the readers still probing it
+         table = rehashed;
+         usedSlots = entries;
+      }
+   }
+
+   /**
+    * The slots of a segment: the keys on one array and, on a parallel array, the values.
+    */
+   private static final class Table
+   {
+      final AtomicLongArray keys;
+
+      // null is a free slot, DELETED a removed entry
+      final AtomicReferenceArray<Object> values;
+
+      Table(final int capacity)
+      {
+         keys = new AtomicLongArray(capacity);
+         values = new AtomicReferenceArray<Object>(capacity);
+      }
+
+      int length()
+      {
+         return values.length();
+      }
+
+      /**
+       * @return the slot holding the key, or the free slot where the probe for the key ended
+       */
+      int findSlot(final long key, final int hash)
+      {
+         int mask = length() - 1;
+         for (int i = hash & mask;; i = (i + 1) & mask)
+         {
+            Object value = values.get(i);
+            if (value == null || value != DELETED && keys.get(i) == key)
+            {
+               return i;
+            }
+         }
+      }
+   }
+}
@@ -70,6 +70,21 @@ public interface AddressControl
     */
    long getNumberOfBytesPerPage() throws Exception;
 
+   /**
+    * Returns how many times a page of this address was read from the page cache.
+    */
+   long getPageCacheHits() throws Exception;
+
+   /**
+    * Returns how many times a page of this address was not on the page cache and had to be read from disk.
+    */
+   long getPageCacheMisses() throws Exception;
+
+   /**
+    * Returns how many pages of this address were evicted from the page cache to keep it within its size.
+    */
+   long getPageCacheEvictions() throws Exception;
+
    /**
     * Returns the names of all bindings (both queues and diverts) bound to this address
     */
@@ -96,7 +96,7 @@ public interface HornetQServerControl
    String getJournalDirectory();
 
    /**
-    * Returns the type of journal used by this server (either {@code NIO} or {@code ASYNCIO}).
+    * Returns the type of journal used by this server ({@code NIO}, {@code ASYNCIO} or {@code MAPPED}).
     */
    String getJournalType();
 
@@ -135,6 +135,14 @@ public interface HornetQServerControl
     */
    int getJournalBufferTimeout();
 
+   /**
+    * Returns the timeout (in nanoseconds) the journal buffer is currently using.
+    * <br>
+    * When the adaptive timeout is enabled this follows the latency of the disk syncs, otherwise it
+    * is the same as {@link #getJournalBufferTimeout()}.
+    */
+   int getJournalBufferCurrentTimeout();
+
    /**
     * do any clients failover on a server shutdown
     */
@@ -156,6 +164,26 @@ public interface HornetQServerControl
     */
    int getJournalCompactPercentage();
 
+   /**
+    * Returns the longest time (in nanoseconds) the last journal compacting kept the journal locked.
+    */
+   long getJournalCompactLastPause();
+
+   /**
+    * Returns the longest time (in nanoseconds) any journal compacting kept the journal locked.
+    */
+   long getJournalCompactMaxPause();
+
+   /**
+    * Returns the time (in nanoseconds) appends spent waiting for a new journal file.
+    */
+   long getJournalRolloverWaitTime();
+
+   /**
+    * Returns the longest time (in nanoseconds) an append waited for a new journal file.
+    */
+   long getJournalRolloverMaxWait();
+
    /**
     * Returns whether this server is using persistence and store data.
     */
@@ -497,6 +525,14 @@ public interface HornetQServerControl
 
    String listProducersInfoAsJSON() throws Exception;
 
+   /**
+    * Lists how many times the journal buffer was flushed for each range of batch sizes, using JSON serialization.
+    * <br>
+    * Each element has the smallest and largest number of records of the range and the number of flushes.
+    */
+   @Operation(desc = "List how many times the journal buffer was flushed for each range of batch sizes (using JSON serialization)", impact = MBeanOperationInfo.INFO)
+   String listJournalBufferBatchSizesAsJSON() throws Exception;
+
    /**
     * Lists all the sessions IDs for the specified connection ID.
     */
@@ -36,6 +36,17 @@ import org.hornetq.api.core.SimpleString;
  */
 public class Identifier
 {
+   /**
+    * Resolves identifiers to the value set on them.
+    */
+   static final IdentifierResolver VALUE_RESOLVER = new IdentifierResolver()
+   {
+      public Object resolve(final Identifier identifier)
+      {
+         return identifier.getValue();
+      }
+   };
+
    private final SimpleString name;
 
    private final int hash;
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.filter.impl;
+
+/**
+ * Gives the values of the identifiers of a filter expression while it is evaluated, typically
+ * reading them from the message being matched.
+ *
+ * @see Operator#apply(IdentifierResolver)
+ */
+public interface IdentifierResolver
+{
+   /**
+    * @return the value of the identifier, or null if it has none
+    */
+   Object resolve(Identifier identifier) throws Exception;
+}
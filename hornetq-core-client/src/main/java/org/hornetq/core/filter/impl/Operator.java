@@ -39,30 +39,18 @@ import org.hornetq.core.client.HornetQClientMessageBundle;
 */
 public final class Operator
 {
-   int operation;
+   final int operation;
 
-   Object oper1;
+   final Object oper1;
 
-   Object oper2;
+   final Object oper2;
 
-   Object oper3;
-
-   private Object arg1;
-
-   Object arg2;
-
-   Object arg3;
-
-   int class1;
-
-   int class2;
-
-   int class3;
+   final Object oper3;
 
    // info about the regular expression
    // if this is a LIKE operator
    // (perhaps this should be a subclass)
-   RegExp re = null;
+   volatile RegExp re = null;
 
    public static final int EQUAL = 0;
 
@@ -146,6 +134,21 @@ public final class Operator
       oper3 = null;
    }
 
+   public int getOperation()
+   {
+      return operation;
+   }
+
+   public Object getOper1()
+   {
+      return oper1;
+   }
+
+   public Object getOper2()
+   {
+      return oper2;
+   }
+
    // --- Print functions ---
 
    @Override
@@ -203,9 +206,9 @@ public final class Operator
    }
 
    // Operator 20
-   Object is_null() throws Exception
+   Object is_null(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 == null)
       {
          return Boolean.TRUE;
@@ -217,9 +220,9 @@ public final class Operator
    }
 
    // Operator 21
-   Object is_not_null() throws Exception
+   Object is_not_null(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 != null)
       {
          return Boolean.TRUE;
@@ -231,27 +234,27 @@ public final class Operator
    }
 
    // Operation 0
-   Object equal() throws Exception
+   Object equal(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 == null)
       {
          return Boolean.FALSE;
       }
+      int class1 = getArgumentClass(arg1);
+
+      Object arg2;
+      int class2;
 
       switch (class1)
       {
          case LONG:
-            computeArgument1();
-            if (arg1 == null)
-            {
-               return null;
-            }
-            computeArgument2();
+            arg2 = computeArgument(oper2, resolver);
             if (arg2 == null)
             {
                return null;
             }
+            class2 = getArgumentClass(arg2);
             if (class2 == Operator.LONG)
             {
                return Boolean.valueOf(((Number)arg1).longValue() == ((Number)arg2).longValue());
@@ -262,16 +265,12 @@ public final class Operator
             }
             return Boolean.FALSE;
          case DOUBLE:
-            computeArgument1();
-            if (arg1 == null)
-            {
-               return null;
-            }
-            computeArgument2();
+            arg2 = computeArgument(oper2, resolver);
             if (arg2 == null)
             {
                return null;
             }
+            class2 = getArgumentClass(arg2);
             if (class2 == Operator.LONG)
             {
                return Boolean.valueOf(((Number)arg1).doubleValue() == ((Number)arg2).longValue());
@@ -283,11 +282,12 @@ public final class Operator
             return Boolean.FALSE;
          case SIMPLE_STRING:
          case BOOLEAN:
-            computeArgument2();
+            arg2 = computeArgument(oper2, resolver);
             if (arg2 == null)
             {
                return Boolean.FALSE;
             }
+            class2 = getArgumentClass(arg2);
             if (class2 != class1)
             {
                throwBadObjectException(class1, class2);
@@ -301,13 +301,14 @@ public final class Operator
    }
 
    // Operation 1
-   Object not() throws Exception
+   Object not(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 == null)
       {
          return null;
       }
+      int class1 = getArgumentClass(arg1);
       if (class1 != Operator.BOOLEAN)
       {
          throwBadObjectException(class1);
@@ -323,16 +324,17 @@ public final class Operator
    }
 
    // Operation 2
-   Object and() throws Exception
+   Object and(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 == null)
       {
-         computeArgument2();
+         Object arg2 = computeArgument(oper2, resolver);
          if (arg2 == null)
          {
             return null;
          }
+         int class2 = getArgumentClass(arg2);
          if (class2 != Operator.BOOLEAN)
          {
             throwBadObjectException(class2);
@@ -344,17 +346,19 @@ public final class Operator
          return null;
       }
 
+      int class1 = getArgumentClass(arg1);
       if (class1 == Operator.BOOLEAN)
       {
          if (((Boolean)arg1).booleanValue() == false)
          {
             return Boolean.FALSE;
          }
-         computeArgument2();
+         Object arg2 = computeArgument(oper2, resolver);
          if (arg2 == null)
          {
             return null;
          }
+         int class2 = getArgumentClass(arg2);
          if (class2 != Operator.BOOLEAN)
          {
             throwBadObjectException(class2);
@@ -376,13 +380,14 @@ public final class Operator
     * |  U   |   T   |   U   |   U
     * +------+-------+-------+-------
     */
-   Object or() throws Exception
+   Object or(final IdentifierResolver resolver) throws Exception
    {
       short falseCounter = 0;
 
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 != null)
       {
+         int class1 = getArgumentClass(arg1);
          if (class1 != Operator.BOOLEAN)
          {
             throwBadObjectException(class1);
@@ -397,9 +402,10 @@ public final class Operator
          }
       }
 
-      computeArgument2();
+      Object arg2 = computeArgument(oper2, resolver);
       if (arg2 != null)
       {
+         int class2 = getArgumentClass(arg2);
          if (class2 != Operator.BOOLEAN)
          {
             throwBadObjectException(class2);
@@ -423,21 +429,28 @@ public final class Operator
    }
 
    // Operation 4
-   Object gt() throws Exception
+   Object gt(final IdentifierResolver resolver) throws Exception
+   {
+      return gt(resolver, oper2);
+   }
+
+   private Object gt(final IdentifierResolver resolver, final Object operand2) throws Exception
    {
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 == null)
       {
          return null;
       }
+      int class1 = getArgumentClass(arg1);
 
       if (class1 == Operator.LONG)
       {
-         computeArgument2();
+         Object arg2 = computeArgument(operand2, resolver);
          if (arg2 == null)
          {
             return null;
          }
+         int class2 = getArgumentClass(arg2);
          if (class2 == Operator.LONG)
          {
             return Boolean.valueOf(((Number)arg1).longValue() > ((Number)arg2).longValue());
@@ -449,11 +462,12 @@ public final class Operator
       }
       else if (class1 == Operator.DOUBLE)
       {
-         computeArgument2();
+         Object arg2 = computeArgument(operand2, resolver);
          if (arg2 == null)
          {
             return null;
          }
+         int class2 = getArgumentClass(arg2);
          if (class2 == Operator.LONG)
          {
             return Boolean.valueOf(((Number)arg1).doubleValue() > ((Number)arg2).longValue());
@@ -468,21 +482,23 @@ public final class Operator
    }
 
    // Operation 5
-   Object ge() throws Exception
+   Object ge(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 == null)
       {
          return null;
       }
+      int class1 = getArgumentClass(arg1);
 
       if (class1 == Operator.LONG)
       {
-         computeArgument2();
+         Object arg2 = computeArgument(oper2, resolver);
          if (arg2 == null)
          {
             return null;
          }
+         int class2 = getArgumentClass(arg2);
          if (class2 == Operator.LONG)
          {
             return Boolean.valueOf(((Number)arg1).longValue() >= ((Number)arg2).longValue());
@@ -494,11 +510,12 @@ public final class Operator
       }
       else if (class1 == Operator.DOUBLE)
       {
-         computeArgument2();
+         Object arg2 = computeArgument(oper2, resolver);
          if (arg2 == null)
          {
             return null;
          }
+         int class2 = getArgumentClass(arg2);
          if (class2 == Operator.LONG)
          {
             return Boolean.valueOf(((Number)arg1).longValue() >= ((Number)arg2).longValue());
@@ -513,21 +530,23 @@ public final class Operator
    }
 
    // Operation 6
-   Object lt() throws Exception
+   Object lt(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 == null)
       {
          return null;
       }
+      int class1 = getArgumentClass(arg1);
 
       if (class1 == Operator.LONG)
       {
-         computeArgument2();
+         Object arg2 = computeArgument(oper2, resolver);
          if (arg2 == null)
          {
             return null;
          }
+         int class2 = getArgumentClass(arg2);
          if (class2 == Operator.LONG)
          {
             return Boolean.valueOf(((Number)arg1).longValue() < ((Number)arg2).longValue());
@@ -539,11 +558,12 @@ public final class Operator
       }
       else if (class1 == Operator.DOUBLE)
       {
-         computeArgument2();
+         Object arg2 = computeArgument(oper2, resolver);
          if (arg2 == null)
          {
             return null;
          }
+         int class2 = getArgumentClass(arg2);
          if (class2 == Operator.LONG)
          {
             return Boolean.valueOf(((Number)arg1).doubleValue() < ((Number)arg2).longValue());
@@ -558,21 +578,28 @@ public final class Operator
    }
 
    // Operation 7
-   Object le() throws Exception
+   Object le(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
+      return le(resolver, oper2);
+   }
+
+   private Object le(final IdentifierResolver resolver, final Object operand2) throws Exception
+   {
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 == null)
       {
          return null;
       }
+      int class1 = getArgumentClass(arg1);
 
       if (class1 == Operator.LONG)
       {
-         computeArgument2();
+         Object arg2 = computeArgument(operand2, resolver);
          if (arg2 == null)
          {
             return null;
          }
+         int class2 = getArgumentClass(arg2);
          if (class2 == Operator.LONG)
          {
             return Boolean.valueOf(((Number)arg1).longValue() <= ((Number)arg2).longValue());
@@ -584,11 +611,12 @@ public final class Operator
       }
       else if (class1 == Operator.DOUBLE)
       {
-         computeArgument2();
+         Object arg2 = computeArgument(operand2, resolver);
          if (arg2 == null)
          {
             return null;
          }
+         int class2 = getArgumentClass(arg2);
          if (class2 == Operator.LONG)
          {
             return Boolean.valueOf(((Number)arg1).doubleValue() <= ((Number)arg2).longValue());
@@ -602,13 +630,16 @@ public final class Operator
    }
 
    // Operation 8
-   Object different() throws Exception
+   Object different(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
+
+      Object arg2;
+      int class2;
 
       if (arg1 == null)
       {
-         computeArgument2();
+         arg2 = computeArgument(oper2, resolver);
          if (arg2 == null)
          {
             return Boolean.FALSE;
@@ -619,19 +650,17 @@ public final class Operator
          }
       }
 
+      int class1 = getArgumentClass(arg1);
+
       switch (class1)
       {
          case LONG:
-            computeArgument1();
-            if (arg1 == null)
-            {
-               return null;
-            }
-            computeArgument2();
+            arg2 = computeArgument(oper2, resolver);
             if (arg2 == null)
             {
                return null;
             }
+            class2 = getArgumentClass(arg2);
             if (class2 == Operator.LONG)
             {
                return Boolean.valueOf(((Number)arg1).longValue() != ((Number)arg2).longValue());
@@ -642,16 +671,12 @@ public final class Operator
             }
             return Boolean.FALSE;
          case DOUBLE:
-            computeArgument1();
-            if (arg1 == null)
-            {
-               return null;
-            }
-            computeArgument2();
+            arg2 = computeArgument(oper2, resolver);
             if (arg2 == null)
             {
                return null;
             }
+            class2 = getArgumentClass(arg2);
             if (class2 == Operator.LONG)
             {
                return Boolean.valueOf(((Number)arg1).doubleValue() != ((Number)arg2).longValue());
@@ -663,11 +688,12 @@ public final class Operator
             return Boolean.FALSE;
          case SIMPLE_STRING:
          case BOOLEAN:
-            computeArgument2();
+            arg2 = computeArgument(oper2, resolver);
             if (arg2 == null)
             {
                return null;
             }
+            class2 = getArgumentClass(arg2);
             if (class2 != class1)
             {
                throwBadObjectException(class1, class2);
@@ -680,15 +706,17 @@ public final class Operator
    }
 
    // Operator 9
-   Object add() throws Exception
+   Object add(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
-      computeArgument2();
+      Object arg1 = computeArgument(oper1, resolver);
+      Object arg2 = computeArgument(oper2, resolver);
 
       if (arg1 == null || arg2 == null)
       {
          return null;
       }
+      int class1 = getArgumentClass(arg1);
+      int class2 = getArgumentClass(arg2);
       switch (class1)
       {
          case DOUBLE:
@@ -720,15 +748,17 @@ public final class Operator
    }
 
    // Operator 10
-   Object sub() throws Exception
+   Object sub(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
-      computeArgument2();
+      Object arg1 = computeArgument(oper1, resolver);
+      Object arg2 = computeArgument(oper2, resolver);
 
       if (arg1 == null || arg2 == null)
       {
          return null;
       }
+      int class1 = getArgumentClass(arg1);
+      int class2 = getArgumentClass(arg2);
       switch (class1)
       {
          case DOUBLE:
@@ -760,13 +790,14 @@ public final class Operator
    }
 
    // Operator 11
-   Object neg() throws Exception
+   Object neg(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 == null)
       {
          return null;
       }
+      int class1 = getArgumentClass(arg1);
       switch (class1)
       {
          case DOUBLE:
@@ -780,14 +811,16 @@ public final class Operator
    }
 
    // Operator 12
-   Object mul() throws Exception
+   Object mul(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
-      computeArgument2();
+      Object arg1 = computeArgument(oper1, resolver);
+      Object arg2 = computeArgument(oper2, resolver);
       if (arg1 == null || arg2 == null)
       {
          return null;
       }
+      int class1 = getArgumentClass(arg1);
+      int class2 = getArgumentClass(arg2);
       switch (class1)
       {
          case DOUBLE:
@@ -819,15 +852,17 @@ public final class Operator
    }
 
    // Operator 13
-   Object div() throws Exception
+   Object div(final IdentifierResolver resolver) throws Exception
    {
       // Can throw Divide by zero exception...
-      computeArgument1();
-      computeArgument2();
+      Object arg1 = computeArgument(oper1, resolver);
+      Object arg2 = computeArgument(oper2, resolver);
       if (arg1 == null || arg2 == null)
       {
          return null;
       }
+      int class1 = getArgumentClass(arg1);
+      int class2 = getArgumentClass(arg2);
       switch (class1)
       {
          case DOUBLE:
@@ -859,9 +894,9 @@ public final class Operator
    }
 
    // Operator 14
-   Object between() throws Exception
+   Object between(final IdentifierResolver resolver) throws Exception
    {
-      Object res = ge();
+      Object res = ge(resolver);
       if (res == null)
       {
          return null;
@@ -871,17 +906,13 @@ public final class Operator
          return res;
       }
 
-      Object oper4 = oper2;
-      oper2 = oper3;
-      res = le();
-      oper2 = oper4;
-      return res;
+      return le(resolver, oper3);
    }
 
    // Operator 15
-   Object not_between() throws Exception
+   Object not_between(final IdentifierResolver resolver) throws Exception
    {
-      Object res = lt();
+      Object res = lt(resolver);
       if (res == null)
       {
          return null;
@@ -891,11 +922,7 @@ public final class Operator
          return res;
       }
 
-      Object oper4 = oper2;
-      oper2 = oper3;
-      res = gt();
-      oper2 = oper4;
-      return res;
+      return gt(resolver, oper3);
    }
 
    // Operation 16,17,18,19
@@ -909,62 +936,69 @@ public final class Operator
     * @return                Description of the Returned Value
     * @exception  Exception  Description of Exception
     */
-   Object like(final boolean not, final boolean use_escape) throws Exception
+   Object like(final IdentifierResolver resolver, final boolean not, final boolean use_escape) throws Exception
    {
       Character escapeChar = null;
 
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
 
       if (arg1 == null)
       {
          return null;
       }
 
+      int class1 = getArgumentClass(arg1);
       if (class1 != Operator.SIMPLE_STRING)
       {
          throwBadObjectException(class1);
       }
 
-      computeArgument2();
+      Object arg2 = computeArgument(oper2, resolver);
 
       if (arg2 == null)
       {
          return Boolean.FALSE;
       }
+      int class2 = getArgumentClass(arg2);
       if (class2 != Operator.SIMPLE_STRING)
       {
          throwBadObjectException(class2);
       }
 
-      if (use_escape)
+      RegExp regExp = re;
+
+      if (regExp == null)
       {
-         computeArgument3();
-         if (arg3 == null)
+         if (use_escape)
          {
-            return null;
-         }
+            Object arg3 = computeArgument(oper3, resolver);
+            if (arg3 == null)
+            {
+               return null;
+            }
 
-         if (class3 != Operator.SIMPLE_STRING)
-         {
-            throwBadObjectException(class3);
-         }
+            int class3 = getArgumentClass(arg3);
+            if (class3 != Operator.SIMPLE_STRING)
+            {
+               throwBadObjectException(class3);
+            }
 
-         SimpleString escapeString = (SimpleString)arg3;
-         if (escapeString.length() != 1)
-         {
-            throw new Exception("LIKE ESCAPE: Bad escape character " + escapeString.toString());
+            SimpleString escapeString = (SimpleString)arg3;
+            if (escapeString.length() != 1)
+            {
+               throw new Exception("LIKE ESCAPE: Bad escape character " + escapeString.toString());
+            }
+
+            escapeChar = Character.valueOf(escapeString.charAt(0));
          }
 
-         escapeChar = Character.valueOf(escapeString.charAt(0));
-      }
+         // the first time through we prepare the regular expression, more than one thread may do it
+         regExp = new RegExp(arg2.toString(), escapeChar);
 
-      if (re == null)
-      {
-         // the first time through we prepare the regular expression
-         re = new RegExp(arg2.toString(), escapeChar);
+         re = regExp;
       }
 
-      boolean result = re.isMatch(arg1);
+      boolean result = regExp.isMatch(arg1);
       if (not)
       {
          result = !result;
@@ -981,13 +1015,14 @@ public final class Operator
    }
 
    // Operator 22
-   Object in() throws Exception
+   Object in(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 == null)
       {
          return false;
       }
+      int class1 = getArgumentClass(arg1);
       if (class1 != Operator.SIMPLE_STRING)
       {
          throwBadObjectException(class1);
@@ -1003,13 +1038,14 @@ public final class Operator
    }
 
    // Operator 23
-   Object not_in() throws Exception
+   Object not_in(final IdentifierResolver resolver) throws Exception
    {
-      computeArgument1();
+      Object arg1 = computeArgument(oper1, resolver);
       if (arg1 == null)
       {
          return null;
       }
+      int class1 = getArgumentClass(arg1);
       if (class1 != Operator.SIMPLE_STRING)
       {
          throwBadObjectException(class1);
@@ -1024,276 +1060,157 @@ public final class Operator
       }
    }
 
-   void computeArgument1() throws Exception
+   /**
+    * @return the value of the operand, with integral numbers as Long and floating ones as Double
+    */
+   Object computeArgument(final Object oper, final IdentifierResolver resolver) throws Exception
    {
-      if (oper1 == null)
-      {
-         class1 = 0;
-         return;
-      }
-      Class className = oper1.getClass();
-
-      if (className == Identifier.class)
-      {
-         arg1 = ((Identifier)oper1).getValue();
-      }
-      else if (className == Operator.class)
-      {
-         arg1 = ((Operator)oper1).apply();
-      }
-      else
-      {
-         arg1 = oper1;
-      }
-
-      if (arg1 == null)
-      {
-         class1 = 0;
-         return;
-      }
-
-      className = arg1.getClass();
-
-      if (className == SimpleString.class)
-      {
-         class1 = Operator.SIMPLE_STRING;
-      }
-      else if (className == Double.class)
-      {
-         class1 = Operator.DOUBLE;
-      }
-      else if (className == Long.class)
-      {
-         class1 = Operator.LONG;
-      }
-      else if (className == Integer.class)
-      {
-         class1 = Operator.LONG;
-         arg1 = Long.valueOf(((Integer)arg1).longValue());
-      }
-      else if (className == Short.class)
-      {
-         class1 = Operator.LONG;
-         arg1 = Long.valueOf(((Short)arg1).longValue());
-      }
-      else if (className == Byte.class)
-      {
-         class1 = Operator.LONG;
-         arg1 = Long.valueOf(((Byte)arg1).longValue());
-      }
-      else if (className == Float.class)
-      {
-         class1 = Operator.DOUBLE;
-         arg1 = Double.valueOf(((Float)arg1).doubleValue());
-      }
-      else if (className == Boolean.class)
+      if (oper == null)
       {
-         class1 = Operator.BOOLEAN;
-      }
-      else
-      {
-         throwBadObjectException(className);
+         return null;
       }
-   }
 
-   void computeArgument2() throws Exception
-   {
-      if (oper2 == null)
-      {
-         class2 = 0;
-         return;
-      }
+      Class className = oper.getClass();
 
-      Class className = oper2.getClass();
+      Object arg;
 
       if (className == Identifier.class)
       {
-         arg2 = ((Identifier)oper2).getValue();
+         arg = resolver.resolve((Identifier)oper);
       }
       else if (className == Operator.class)
       {
-         arg2 = ((Operator)oper2).apply();
+         arg = ((Operator)oper).apply(resolver);
       }
       else
       {
-         arg2 = oper2;
+         arg = oper;
       }
 
-      if (arg2 == null)
+      if (arg == null)
       {
-         class2 = 0;
-         return;
+         return null;
       }
 
-      className = arg2.getClass();
+      className = arg.getClass();
 
-      if (className == SimpleString.class)
+      if (className == SimpleString.class || className == Double.class || className == Long.class ||
+         className == Boolean.class)
       {
-         class2 = Operator.SIMPLE_STRING;
-      }
-      else if (className == Double.class)
-      {
-         class2 = Operator.DOUBLE;
-      }
-      else if (className == Long.class)
-      {
-         class2 = Operator.LONG;
+         return arg;
       }
       else if (className == Integer.class)
       {
-         class2 = Operator.LONG;
-         arg2 = Long.valueOf(((Integer)arg2).longValue());
+         return Long.valueOf(((Integer)arg).longValue());
       }
       else if (className == Short.class)
       {
-         class2 = Operator.LONG;
-         arg2 = Long.valueOf(((Short)arg2).longValue());
+         return Long.valueOf(((Short)arg).longValue());
       }
       else if (className == Byte.class)
       {
-         class2 = Operator.LONG;
-         arg2 = Long.valueOf(((Byte)arg2).longValue());
+         return Long.valueOf(((Byte)arg).longValue());
       }
       else if (className == Float.class)
       {
-         class2 = Operator.DOUBLE;
-         arg2 = Double.valueOf(((Float)arg2).doubleValue());
-      }
-      else if (className == Boolean.class)
-      {
-         class2 = Operator.BOOLEAN;
+         return Double.valueOf(((Float)arg).doubleValue());
       }
       else
       {
          throwBadObjectException(className);
+         return null;
       }
    }
 
-   void computeArgument3() throws Exception
+   /**
+    * @return the class of an argument returned by {@link #computeArgument(Object, IdentifierResolver)}
+    */
+   static int getArgumentClass(final Object arg)
    {
-      if (oper3 == null)
-      {
-         class3 = 0;
-         return;
-      }
-
-      Class className = oper3.getClass();
-
-      if (className == Identifier.class)
-      {
-         arg3 = ((Identifier)oper3).getValue();
-      }
-      else if (className == Operator.class)
-      {
-         arg3 = ((Operator)oper3).apply();
-      }
-      else
-      {
-         arg3 = oper3;
-      }
-
-      if (arg3 == null)
-      {
-         class3 = 0;
-         return;
-      }
-
-      className = arg3.getClass();
+      Class className = arg.getClass();
 
       if (className == SimpleString.class)
       {
-         class3 = Operator.SIMPLE_STRING;
+         return Operator.SIMPLE_STRING;
       }
       else if (className == Double.class)
       {
-         class3 = Operator.DOUBLE;
+         return Operator.DOUBLE;
       }
       else if (className == Long.class)
       {
-         class3 = Operator.LONG;
-      }
-      else if (className == Integer.class)
-      {
-         class3 = Operator.LONG;
-         arg3 = Long.valueOf(((Integer)arg3).longValue());
-      }
-      else if (className == Short.class)
-      {
-         class3 = Operator.LONG;
-         arg3 = Long.valueOf(((Short)arg3).longValue());
-      }
-      else if (className == Byte.class)
-      {
-         class3 = Operator.LONG;
-         arg3 = Long.valueOf(((Byte)arg3).longValue());
-      }
-      else if (className == Float.class)
-      {
-         class3 = Operator.DOUBLE;
-         arg3 = Double.valueOf(((Float)arg3).doubleValue());
-      }
-      else if (className == Boolean.class)
-      {
-         class3 = Operator.BOOLEAN;
+         return Operator.LONG;
       }
       else
       {
-         throwBadObjectException(className);
+         return Operator.BOOLEAN;
       }
    }
 
+   /**
+    * Evaluates the operation with the values set on its identifiers.
+    */
    public Object apply() throws Exception
+   {
+      return apply(Identifier.VALUE_RESOLVER);
+   }
+
+   /**
+    * Evaluates the operation with the values returned by the resolver for its identifiers. The
+    * evaluation keeps no state on the operator, so any number of threads can evaluate it at once.
+    */
+   public Object apply(final IdentifierResolver resolver) throws Exception
    {
       switch (operation)
       {
          case EQUAL:
-            return equal();
+            return equal(resolver);
          case NOT:
-            return not();
+            return not(resolver);
          case AND:
-            return and();
+            return and(resolver);
          case OR:
-            return or();
+            return or(resolver);
          case GT:
-            return gt();
+            return gt(resolver);
          case GE:
-            return ge();
+            return ge(resolver);
          case LT:
-            return lt();
+            return lt(resolver);
          case LE:
-            return le();
+            return le(resolver);
          case DIFFERENT:
-            return different();
+            return different(resolver);
          case ADD:
-            return add();
+            return add(resolver);
          case SUB:
-            return sub();
+            return sub(resolver);
          case NEG:
-            return neg();
+            return neg(resolver);
          case MUL:
-            return mul();
+            return mul(resolver);
          case DIV:
-            return div();
+            return div(resolver);
          case BETWEEN:
-            return between();
+            return between(resolver);
          case NOT_BETWEEN:
-            return not_between();
+            return not_between(resolver);
          case LIKE:
-            return like(false, false);
+            return like(resolver, false, false);
          case NOT_LIKE:
-            return like(true, false);
+            return like(resolver, true, false);
          case LIKE_ESCAPE:
-            return like(false, true);
+            return like(resolver, false, true);
          case NOT_LIKE_ESCAPE:
-            return like(true, true);
+            return like(resolver, true, true);
          case IS_NULL:
-            return is_null();
+            return is_null(resolver);
          case IS_NOT_NULL:
-            return is_not_null();
+            return is_not_null(resolver);
          case IN:
-            return in();
+            return in(resolver);
          case NOT_IN:
-            return not_in();
+            return not_in(resolver);
          default:
             throw HornetQClientMessageBundle.BUNDLE.noOperationMapped(operation);
       }
@@ -55,6 +55,21 @@ public interface Channel
     */
    boolean sendBatched(Packet packet);
 
+   /**
+    * Sends a packet on this channel, holding it so it can go on the same frame as the next ones
+    * when the other side supports it. The packets held are written by {@link #flushCoalesced()},
+    * by any other send on this channel or once there are enough of them.
+    * @param packet the packet to send
+    * @return false if the packet was rejected by an outgoing interceptor; true if the send was
+    *         successful
+    */
+   boolean sendCoalesced(Packet packet);
+
+   /**
+    * Writes the packets held by {@link #sendCoalesced(Packet)}.
+    */
+   void flushCoalesced();
+
    /**
     * Sends a packet on this channel and then blocks until it has been written to the connection.
     * @param packet the packet to send
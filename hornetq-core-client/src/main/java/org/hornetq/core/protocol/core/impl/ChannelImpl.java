@@ -34,6 +34,7 @@ import org.hornetq.core.protocol.core.CoreRemotingConnection;
 import org.hornetq.core.protocol.core.Packet;
 import org.hornetq.core.protocol.core.impl.wireformat.HornetQExceptionMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.PacketsConfirmedMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessageBatch;
 import org.hornetq.spi.core.protocol.RemotingConnection;
 
 /**
@@ -81,6 +82,9 @@ public final class ChannelImpl implements Channel
 
    private static final boolean isTrace = HornetQClientLogger.LOGGER.isTraceEnabled();
 
+   // a batch of coalesced packets is written once it gets this big
+   private static final int COALESCED_BATCH_SIZE = 32 * 1024;
+
    private volatile long id;
 
    private ChannelHandler handler;
@@ -119,6 +123,11 @@ public final class ChannelImpl implements Channel
 
    private final List<Interceptor> interceptors;
 
+   // the packets held by sendCoalesced, guarded by sendLock
+   private HornetQBuffer coalescedBuffer;
+
+   private SessionReceiveMessageBatch coalescedBatch;
+
    public ChannelImpl(final CoreRemotingConnection connection, final long id, final int confWindowSize, final List<Interceptor> interceptors)
    {
       this.connection = connection;
@@ -149,6 +158,8 @@ public final class ChannelImpl implements Channel
             return version >= 122;
          case PacketImpl.DISCONNECT_CONSUMER:
             return version >= 124;
+         case PacketImpl.SESS_RECEIVE_MSG_BATCH:
+            return version >= 125;
          default:
             return true;
       }
@@ -229,50 +240,137 @@ public final class ChannelImpl implements Channel
 
          HornetQBuffer buffer = packet.encode(connection);
 
-         lock.lock();
+         storeForResend(packet);
 
-         try
+         // anything held by sendCoalesced has to go first
+         writeCoalesced();
+
+         if (isTrace)
          {
-            if (failingOver)
+            HornetQClientLogger.LOGGER.trace("Writing buffer for channelID=" + id);
+         }
+
+
+         // The actual send must be outside the lock, or with OIO transport, the write can block if the tcp
+         // buffer is full, preventing any incoming buffers being handled and blocking failover
+         connection.getTransportConnection().write(buffer, flush, batch);
+
+         return true;
+      }
+   }
+
+   public boolean sendCoalesced(final Packet packet)
+   {
+      if (!supports(PacketImpl.SESS_RECEIVE_MSG_BATCH))
+      {
+         return sendBatched(packet);
+      }
+
+      if (invokeInterceptors(packet, interceptors, connection) != null)
+      {
+         return false;
+      }
+
+      synchronized (sendLock)
+      {
+         packet.setChannelID(id);
+
+         if (isTrace)
+         {
+            HornetQClientLogger.LOGGER.trace("Sending packet coalesced " + packet + " on channeID=" + id);
+         }
+
+         HornetQBuffer buffer = packet.encode(connection);
+
+         storeForResend(packet);
+
+         if (buffer.writerIndex() >= COALESCED_BATCH_SIZE)
+         {
+            writeCoalesced();
+            connection.getTransportConnection().write(buffer, false, true);
+         }
+         else if (coalescedBuffer == null)
+         {
+            coalescedBuffer = buffer;
+         }
+         else
+         {
+            if (coalescedBatch == null)
             {
-               // TODO - don't hardcode this timeout
-               try
-               {
-                  failoverCondition.await(10000, TimeUnit.MILLISECONDS);
-               }
-               catch (InterruptedException e)
-               {
-                  throw new HornetQInterruptedException(e);
-               }
+               coalescedBatch = new SessionReceiveMessageBatch();
+               coalescedBatch.setChannelID(id);
+               coalescedBatch.addPacket(coalescedBuffer);
             }
 
-            // Sanity check
-            if (transferring)
+            coalescedBatch.addPacket(buffer);
+
+            if (coalescedBatch.getEncodeSize() >= COALESCED_BATCH_SIZE)
             {
-               throw new IllegalStateException("Cannot send a packet while channel is doing failover");
+               writeCoalesced();
             }
+         }
 
-            if (resendCache != null && packet.isRequiresConfirmations())
+         return true;
+      }
+   }
+
+   public void flushCoalesced()
+   {
+      synchronized (sendLock)
+      {
+         writeCoalesced();
+      }
+   }
+
+   // must be called holding sendLock
+   private void writeCoalesced()
+   {
+      if (coalescedBuffer == null)
+      {
+         return;
+      }
+
+      HornetQBuffer buffer = coalescedBatch == null ? coalescedBuffer : coalescedBatch.encode(connection);
+
+      coalescedBuffer = null;
+      coalescedBatch = null;
+
+      connection.getTransportConnection().write(buffer, false, true);
+   }
+
+   private void storeForResend(final Packet packet)
+   {
+      lock.lock();
+
+      try
+      {
+         if (failingOver)
+         {
+            // TODO - don't hardcode this timeout
+            try
             {
-               resendCache.add(packet);
+               failoverCondition.await(10000, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+               throw new HornetQInterruptedException(e);
             }
          }
-         finally
+
+         // Sanity check
+         if (transferring)
          {
-            lock.unlock();
+            throw new IllegalStateException("Cannot send a packet while channel is doing failover");
          }
 
-         if (isTrace)
+         if (resendCache != null && packet.isRequiresConfirmations())
          {
-            HornetQClientLogger.LOGGER.trace("Writing buffer for channelID=" + id);
+            resendCache.add(packet);
          }
-
-
-         // The actual send must be outside the lock, or with OIO transport, the write can block if the tcp
-         // buffer is full, preventing any incoming buffers being handled and blocking failover
-         connection.getTransportConnection().write(buffer, flush, batch);
-
-         return true;
+      }
+      finally
+      {
+         lock.unlock();
       }
    }
 
@@ -155,6 +155,8 @@ public class PacketImpl implements Packet
 
    public static final byte SESS_PRODUCER_FAIL_CREDITS = 82;
 
+   public static final byte SESS_RECEIVE_MSG_BATCH = 83;
+
    // Replication
 
    public static final byte REPLICATION_RESPONSE = 90;
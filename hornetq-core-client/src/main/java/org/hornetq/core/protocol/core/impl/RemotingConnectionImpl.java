@@ -31,6 +31,7 @@ import org.hornetq.core.protocol.core.CoreRemotingConnection;
 import org.hornetq.core.protocol.core.Packet;
 import org.hornetq.core.protocol.core.impl.ChannelImpl.CHANNEL_ID;
 import org.hornetq.core.protocol.core.impl.wireformat.DisconnectMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessageBatch;
 import org.hornetq.core.remoting.CloseListener;
 import org.hornetq.core.remoting.FailureListener;
 import org.hornetq.core.security.HornetQPrincipal;
@@ -488,6 +489,16 @@ public class RemotingConnectionImpl implements CoreRemotingConnection
             HornetQClientLogger.LOGGER.trace("handling packet " + packet);
          }
 
+         if (packet.getType() == PacketImpl.SESS_RECEIVE_MSG_BATCH)
+         {
+            // the packets on a batch are handled as if they had come on their own frames
+            for (HornetQBuffer frame : ((SessionReceiveMessageBatch)packet).getPackets())
+            {
+               bufferReceived(connectionID, frame);
+            }
+            return;
+         }
+
          if (packet.isAsyncExec() && executor != null)
          {
             executing = true;
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.protocol.core.impl.wireformat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.spi.core.protocol.RemotingConnection;
+import org.hornetq.utils.DataConstants;
+
+/**
+ * Carries several {@link SessionReceiveMessage} packets on one frame. Each of them is kept exactly
+ * as it would have been sent on its own, and the receiving connection handles them one by one.
+ */
+public class SessionReceiveMessageBatch extends PacketImpl
+{
+   private static final int HEADER_SIZE = PACKET_HEADERS_SIZE + DataConstants.SIZE_INT;
+
+   private HornetQBuffer buffer;
+
+   private int count;
+
+   private List<HornetQBuffer> packets;
+
+   public SessionReceiveMessageBatch()
+   {
+      super(SESS_RECEIVE_MSG_BATCH);
+   }
+
+   /**
+    * Adds an encoded packet, as returned by {@link PacketImpl#encode(RemotingConnection)}.
+    */
+   public void addPacket(final HornetQBuffer encoded)
+   {
+      if (buffer == null)
+      {
+         buffer = HornetQBuffers.dynamicBuffer(HEADER_SIZE + encoded.writerIndex() * 2);
+         // the headers are written by encode
+         buffer.writerIndex(HEADER_SIZE);
+      }
+
+      buffer.writeBytes(encoded, 0, encoded.writerIndex());
+
+      count++;
+   }
+
+   public int getCount()
+   {
+      return count;
+   }
+
+   /**
+    * @return the size the packet will have once encoded
+    */
+   public int getEncodeSize()
+   {
+      return buffer == null ? HEADER_SIZE : buffer.writerIndex();
+   }
+
+   /**
+    * @return the packets carried by this batch, each positioned as a frame just read from the wire
+    */
+   public List<HornetQBuffer> getPackets()
+   {
+      return packets;
+   }
+
+   @Override
+   public HornetQBuffer encode(final RemotingConnection connection)
+   {
+      size = buffer.writerIndex();
+
+      buffer.setInt(0, size - DataConstants.SIZE_INT);
+      buffer.setByte(DataConstants.SIZE_INT, getType());
+      buffer.setLong(DataConstants.SIZE_INT + DataConstants.SIZE_BYTE, channelID);
+      buffer.setInt(PACKET_HEADERS_SIZE, count);
+
+      buffer.setIndex(0, size);
+
+      return buffer;
+   }
+
+   @Override
+   public void decodeRest(final HornetQBuffer in)
+   {
+      count = in.readInt();
+
+      packets = new ArrayList<HornetQBuffer>(count);
+
+      for (int i = 0; i < count; i++)
+      {
+         int start = in.readerIndex();
+
+         int length = in.readInt();
+
+         // the messages keep their buffer, so they can't share this one
+         HornetQBuffer packet = in.copy(start, DataConstants.SIZE_INT + length);
+
+         packet.readerIndex(DataConstants.SIZE_INT);
+
+         packets.add(packet);
+
+         in.skipBytes(length);
+      }
+   }
+
+   @Override
+   public boolean isRequiresConfirmations()
+   {
+      return false;
+   }
+
+   @Override
+   public String toString()
+   {
+      return getParentString() + ", count=" + count + "]";
+   }
+}
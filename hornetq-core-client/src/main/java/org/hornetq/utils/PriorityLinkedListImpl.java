@@ -18,7 +18,12 @@ import java.util.NoSuchElementException;
 /**
  * A priority linked list implementation
  * <p/>
- * It implements this by maintaining an individual LinkedBlockingDeque for each priority level.
+ * It implements this by maintaining an individual LinkedListImpl for each priority level, and a
+ * bitmap of the levels that are not empty, so the highest level holding anything is found without
+ * scanning the empty ones.
+ * <p/>
+ * This class is not thread safe, the queue and the client consumer only touch it holding their own
+ * locks.
  *
  * @author <a href="mailto:tim.fox@jboss.com>Tim Fox</a>
  * @author <a href="mailto:jmesnil@redhat.com>Jeff Mesnil</a>
@@ -28,16 +33,22 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
 {
    protected LinkedListImpl<T>[] levels;
 
+   // bit n is set when levels[n] is not empty
+   private long nonEmptyLevels;
+
    private int size;
 
    private int lastReset;
 
-   private int highestPriority = -1;
-
    private int lastPriority = -1;
 
    public PriorityLinkedListImpl(final int priorities)
    {
+      if (priorities > Long.SIZE)
+      {
+         throw new IllegalArgumentException("Up to " + Long.SIZE + " priorities are supported, not " + priorities);
+      }
+
       levels = (LinkedListImpl<T>[]) Array.newInstance(LinkedListImpl.class, priorities);
 
       for (int i = 0; i < priorities; i++)
@@ -46,9 +57,15 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
       }
    }
 
+   private int highestPriority()
+   {
+      // -1 when every level is empty
+      return Long.SIZE - 1 - Long.numberOfLeadingZeros(nonEmptyLevels);
+   }
+
    private void checkHighest(final int priority)
    {
-      if (lastPriority != priority || priority > highestPriority)
+      if (lastPriority != priority || priority > highestPriority())
       {
          lastPriority = priority;
          if (lastReset == Integer.MAX_VALUE)
@@ -60,10 +77,13 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
             lastReset++;
          }
       }
+   }
 
-      if (priority > highestPriority)
+   private void checkEmpty(final int priority)
+   {
+      if (levels[priority].size() == 0)
       {
-         highestPriority = priority;
+         nonEmptyLevels &= ~(1L << priority);
       }
    }
 
@@ -73,6 +93,8 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
 
       levels[priority].addHead(t);
 
+      nonEmptyLevels |= 1L << priority;
+
       size++;
    }
 
@@ -82,43 +104,31 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
 
       levels[priority].addTail(t);
 
+      nonEmptyLevels |= 1L << priority;
+
       size++;
    }
 
    public T poll()
    {
-      T t = null;
-
       // We are just using a simple prioritization algorithm:
       // Highest priority refs always get returned first.
       // This could cause starvation of lower priority refs.
 
       // TODO - A better prioritization algorithm
 
-      for (int i = highestPriority; i >= 0; i--)
+      int priority = highestPriority();
+
+      if (priority < 0)
       {
-         LinkedListImpl<T> ll = levels[i];
+         return null;
+      }
 
-         if (ll.size() != 0)
-         {
-            t = ll.poll();
+      T t = levels[priority].poll();
 
-            if (t != null)
-            {
-               size--;
+      checkEmpty(priority);
 
-               if (ll.size() == 0)
-               {
-                  if (highestPriority == i)
-                  {
-                     highestPriority--;
-                  }
-               }
-            }
-
-            break;
-         }
-      }
+      size--;
 
       return t;
    }
@@ -130,6 +140,8 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
          list.clear();
       }
 
+      nonEmptyLevels = 0;
+
       size = 0;
    }
 
@@ -156,6 +168,9 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
 
       private LinkedListIterator<T> lastIter;
 
+      // the level of lastIter
+      private int lastLevel;
+
       private int resetCount = lastReset;
 
       volatile boolean closed = false;
@@ -202,7 +217,7 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
       {
          if (lastReset != resetCount)
          {
-            index = highestPriority;
+            index = highestPriority();
 
             resetCount = lastReset;
          }
@@ -214,29 +229,34 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
 
          while (index >= 0)
          {
+            // the levels up to index that hold anything, the empty ones have nothing to iterate
+            long candidates = index == Long.SIZE - 1 ? nonEmptyLevels : nonEmptyLevels & (1L << index + 1) - 1;
+
+            if (candidates == 0)
+            {
+               break;
+            }
+
+            index = Long.SIZE - 1 - Long.numberOfLeadingZeros(candidates);
+
             lastIter = cachedIters[index];
+            lastLevel = index;
 
             if (lastIter == null)
             {
                lastIter = cachedIters[index] = levels[index].iterator();
             }
 
-            boolean b = lastIter.hasNext();
-
-            if (b)
+            if (lastIter.hasNext())
             {
                return true;
             }
 
             index--;
+         }
 
-            if (index < 0)
-            {
-               index = levels.length - 1;
+         index = levels.length - 1;
 
-               break;
-            }
-         }
          return false;
       }
 
@@ -259,17 +279,7 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
 
          lastIter.remove();
 
-         // This next statement would be the equivalent of:
-         // if (index == highestPriority && levels[index].size() == 0)
-         // However we have to keep checking all the previous levels
-         // otherwise we would cache a max that will not exist
-         // what would make us eventually having hasNext() returning false
-         // as a bug
-         // Part of the fix for HORNETQ-705
-         for (int i = index; i >= 0 && levels[index].size() == 0; i--)
-         {
-            highestPriority = i;
-         }
+         checkEmpty(lastLevel);
 
          size--;
       }
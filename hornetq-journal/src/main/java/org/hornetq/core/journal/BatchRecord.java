@@ -0,0 +1,73 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.journal;
+
+/**
+ * A non transactional add, update or delete record, appended along with others through
+ * {@link Journal#appendBatch(java.util.List, boolean, IOCompletion)}.
+ */
+public final class BatchRecord
+{
+   public final long id;
+
+   public final byte userRecordType;
+
+   public final EncodingSupport record;
+
+   public final boolean isUpdate;
+
+   public final boolean isDelete;
+
+   public BatchRecord(final long id, final byte userRecordType, final EncodingSupport record, final boolean isUpdate)
+   {
+      this(id, userRecordType, record, isUpdate, false);
+   }
+
+   private BatchRecord(final long id,
+                       final byte userRecordType,
+                       final EncodingSupport record,
+                       final boolean isUpdate,
+                       final boolean isDelete)
+   {
+      this.id = id;
+
+      this.userRecordType = userRecordType;
+
+      this.record = record;
+
+      this.isUpdate = isUpdate;
+
+      this.isDelete = isDelete;
+   }
+
+   public static BatchRecord add(final long id, final byte userRecordType, final EncodingSupport record)
+   {
+      return new BatchRecord(id, userRecordType, record, false);
+   }
+
+   public static BatchRecord update(final long id, final byte userRecordType, final EncodingSupport record)
+   {
+      return new BatchRecord(id, userRecordType, record, true);
+   }
+
+   public static BatchRecord delete(final long id)
+   {
+      return new BatchRecord(id, (byte)0, null, false, true);
+   }
+
+   @Override
+   public String toString()
+   {
+      return "BatchRecord (id=" + id + ", userRecordType=" + userRecordType + ", isUpdate=" + isUpdate + ", isDelete=" + isDelete + ")";
+   }
+}
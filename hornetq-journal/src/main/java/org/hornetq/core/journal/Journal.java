@@ -77,6 +77,19 @@ public interface Journal extends HornetQComponent
 
    void appendDeleteRecord(long id, boolean sync, IOCompletion completionCallback) throws Exception;
 
+   /**
+    * Appends the records one after the other, as a single operation. The callback completes once
+    * all of them are written, and synced if sync is true.
+    * <p>
+    * An update or a delete may refer to a record added earlier on the same batch.
+    * <p>
+    * {@link org.hornetq.core.journal.impl.JournalImpl} writes the batch to a single file when it
+    * fits, other journals may append the records separately and leave part of the batch on a failure.
+    */
+   void appendBatch(List<BatchRecord> records, boolean sync) throws Exception;
+
+   void appendBatch(List<BatchRecord> records, boolean sync, IOCompletion completionCallback) throws Exception;
+
    // Transactional operations
 
    void appendAddRecordTransactional(long txID, long id, byte recordType, byte[] record) throws Exception;
@@ -15,6 +15,8 @@ package org.hornetq.core.journal;
 import java.nio.ByteBuffer;
 import java.util.List;
 
+import org.hornetq.core.journal.impl.TimedBuffer;
+
 /**
  *
  * A SequentialFileFactory
@@ -85,4 +87,9 @@ public interface SequentialFileFactory
    void createDirs() throws Exception;
 
    void flush();
+
+   /**
+    * @return the buffer grouping the writes of the files of this factory, or null if writes are not buffered
+    */
+   TimedBuffer getTimedBuffer();
 }
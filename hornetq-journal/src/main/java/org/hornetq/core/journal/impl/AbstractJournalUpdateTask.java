@@ -15,7 +15,6 @@ package org.hornetq.core.journal.impl;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
@@ -25,7 +24,7 @@ import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
 import org.hornetq.core.journal.impl.dataformat.JournalAddRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
-import org.hornetq.utils.ConcurrentHashSet;
+import org.hornetq.utils.ConcurrentLongHashMap;
 
 /**
  *
@@ -57,7 +56,9 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
    private HornetQBuffer writingChannel;
 
-   private final Set<Long> recordsSnapshot = new ConcurrentHashSet<Long>();
+   private final ConcurrentLongHashMap<Boolean> recordsSnapshot;
+
+   private final JournalChecksum checksum = new JournalChecksum();
 
    protected final List<JournalFile> newDataFiles = new ArrayList<JournalFile>();
 
@@ -68,7 +69,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
    protected AbstractJournalUpdateTask(final SequentialFileFactory fileFactory,
                                        final JournalImpl journal,
                                        final JournalFilesRepository filesRepository,
-                                       final Set<Long> recordsSnapshot,
+                                       final long[] recordsSnapshot,
                                        final long nextOrderingID)
    {
       super();
@@ -76,7 +77,11 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
       this.filesRepository = filesRepository;
       this.fileFactory = fileFactory;
       this.nextOrderingID = nextOrderingID;
-      this.recordsSnapshot.addAll(recordsSnapshot);
+      this.recordsSnapshot = new ConcurrentLongHashMap<Boolean>(recordsSnapshot.length, 16);
+      for (long id : recordsSnapshot)
+      {
+         this.recordsSnapshot.put(id, Boolean.TRUE);
+      }
    }
 
    // Public --------------------------------------------------------
@@ -192,7 +197,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
    public boolean lookupRecord(final long id)
    {
-      return recordsSnapshot.contains(id);
+      return recordsSnapshot.containsKey(id);
    }
 
    // Package protected ---------------------------------------------
@@ -216,14 +221,14 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
       sequentialFile.open(1, false);
 
-      currentFile = new JournalFileImpl(sequentialFile, nextOrderingID++, JournalImpl.FORMAT_VERSION);
+      currentFile = new JournalFileImpl(sequentialFile, nextOrderingID++, journal.getFormatVersion());
 
-      JournalImpl.writeHeader(writingChannel, journal.getUserVersion(), currentFile.getFileID());
+      JournalImpl.writeHeader(writingChannel, journal.getFormatVersion(), journal.getUserVersion(), currentFile.getFileID());
    }
 
    protected void addToRecordsSnaptshot(final long id)
    {
-      recordsSnapshot.add(id);
+      recordsSnapshot.put(id, Boolean.TRUE);
    }
 
    /**
@@ -237,7 +242,15 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
    protected void writeEncoder(final JournalInternalRecord record) throws Exception
    {
       record.setFileID(currentFile.getRecordID());
+      record.setChecksum(currentFile.getJournalVersion() >= JournalImpl.CHECKSUM_FORMAT_VERSION);
+
+      int start = getWritingChannel().writerIndex();
       record.encode(getWritingChannel());
+
+      if (record.isChecksum())
+      {
+         checksum.fill(getWritingChannel(), start, getWritingChannel().writerIndex());
+      }
    }
 
    protected void writeEncoder(final JournalInternalRecord record, final int txcounter) throws Exception
@@ -29,6 +29,7 @@ import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.journal.HornetQJournalBundle;
 import org.hornetq.journal.HornetQJournalLogger;
 
@@ -283,6 +284,10 @@ public abstract class AbstractSequentialFile implements SequentialFile
 
          HornetQBuffer outBuffer = HornetQBuffers.wrappedBuffer(buffer);
          bytes.encode(outBuffer);
+         if (bytes instanceof JournalInternalRecord && ((JournalInternalRecord)bytes).isChecksum())
+         {
+            new JournalChecksum().fill(outBuffer, 0, outBuffer.writerIndex());
+         }
          buffer.rewind();
          writeDirect(buffer, sync, callback);
       }
@@ -109,6 +109,7 @@ public final class FileWrapperJournal extends JournalBase
          {
             callback.storeLineUp();
          }
+         encoder.setChecksum(journal.isChecksums());
          currentFile = journal.switchFileIfNecessary(encoder.getEncodeSize());
          encoder.setFileID(currentFile.getRecordID());
 
@@ -12,7 +12,10 @@
  */
 package org.hornetq.core.journal.impl;
 
+import java.util.List;
+
 import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.core.journal.BatchRecord;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOCompletion;
 import org.hornetq.core.journal.Journal;
@@ -181,6 +184,50 @@ abstract class JournalBase implements Journal
       }
    }
 
+   public void appendBatch(final List<BatchRecord> records, final boolean sync) throws Exception
+   {
+      SyncIOCompletion callback = getSyncCallback(sync);
+
+      appendBatch(records, sync, callback);
+
+      if (callback != null)
+      {
+         callback.waitCompletion();
+      }
+   }
+
+   /**
+    * Appends the records one at a time, the callback is passed to each one of them.
+    * <p>
+    * This fallback is not atomic: a failure or a crash halfway through leaves the records appended
+    * so far in the journal. Journals that can write the batch as a single unit override it.
+    */
+   public void appendBatch(final List<BatchRecord> records, final boolean sync, final IOCompletion callback)
+      throws Exception
+   {
+      int size = records.size();
+
+      for (int i = 0; i < size; i++)
+      {
+         BatchRecord record = records.get(i);
+
+         boolean syncRecord = sync && i == size - 1;
+
+         if (record.isDelete)
+         {
+            appendDeleteRecord(record.id, syncRecord, callback);
+         }
+         else if (record.isUpdate)
+         {
+            appendUpdateRecord(record.id, record.userRecordType, record.record, syncRecord, callback);
+         }
+         else
+         {
+            appendAddRecord(record.id, record.userRecordType, record.record, syncRecord, callback);
+         }
+      }
+   }
+
    abstract void scheduleReclaim();
 
    protected SyncIOCompletion getSyncCallback(final boolean sync)
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.journal.impl;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.utils.DataConstants;
+
+/**
+ * Computes and verifies the checksums of records on the
+ * {@link JournalImpl#CHECKSUM_FORMAT_VERSION} format.
+ * <p>
+ * The checksum of a record is the CRC32 of all its bytes up to the checksum itself, which sits
+ * right before the size closing the record. The whole range is passed to {@link CRC32} in one call,
+ * so the JVM can use its intrinsic for it.
+ * <p>
+ * Not thread safe, every writer or reader keeps its own instance.
+ */
+public final class JournalChecksum
+{
+   public static final int SIZE = DataConstants.SIZE_INT;
+
+   // the checksum and the size closing the record
+   private static final int TRAILER_SIZE = SIZE + DataConstants.SIZE_INT;
+
+   private final CRC32 crc = new CRC32();
+
+   // used to copy records off buffers with no array behind them
+   private byte[] copy;
+
+   /**
+    * Fills the checksum of a record just encoded between start and end.
+    */
+   public void fill(final HornetQBuffer buffer, final int start, final int end)
+   {
+      int checksumPosition = end - TRAILER_SIZE;
+
+      int length = checksumPosition - start;
+
+      buffer.setInt(checksumPosition, compute(buffer.toByteBuffer(start, length), 0, length));
+   }
+
+   /**
+    * @return true if the checksum stored on the record between start and end matches its bytes
+    */
+   public boolean verify(final ByteBuffer buffer, final int start, final int end)
+   {
+      int checksumPosition = end - TRAILER_SIZE;
+
+      return buffer.getInt(checksumPosition) == compute(buffer, start, checksumPosition - start);
+   }
+
+   private int compute(final ByteBuffer buffer, final int start, final int length)
+   {
+      crc.reset();
+
+      if (buffer.hasArray())
+      {
+         crc.update(buffer.array(), buffer.arrayOffset() + start, length);
+      }
+      else
+      {
+         byte[] bytes = getCopy(length);
+         ByteBuffer duplicate = buffer.duplicate();
+         duplicate.position(start);
+         duplicate.get(bytes, 0, length);
+         crc.update(bytes, 0, length);
+      }
+
+      return (int)crc.getValue();
+   }
+
+   private byte[] getCopy(final int length)
+   {
+      if (copy == null || copy.length < length)
+      {
+         copy = new byte[length];
+      }
+      return copy;
+   }
+}
@@ -35,6 +35,7 @@ import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalRollbackRecordTX;
 import org.hornetq.journal.HornetQJournalLogger;
+import org.hornetq.utils.ConcurrentLongHashMap;
 
 /**
  * A JournalCompactor
@@ -53,7 +54,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    // Snapshot of transactions that were pending when the compactor started
    private final Map<Long, PendingTransaction> pendingTransactions = new ConcurrentHashMap<Long, PendingTransaction>();
 
-   private final Map<Long, JournalRecord> newRecords = new HashMap<Long, JournalRecord>();
+   private final ConcurrentLongHashMap<JournalRecord> newRecords = new ConcurrentLongHashMap<JournalRecord>();
 
    private final Map<Long, JournalTransaction> newTransactions = new HashMap<Long, JournalTransaction>();
 
@@ -62,6 +63,12 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
     *  we cache those updates. As soon as we are done we take the right account. */
    private final LinkedList<CompactCommand> pendingCommands = new LinkedList<CompactCommand>();
 
+   /** On an incremental compacting, the files being compacted. The live records are the ones added on them. */
+   private final Set<JournalFile> compactedFiles;
+
+   /** On an incremental compacting, the new files have to be ordered before the files that were not compacted */
+   private final long orderingIDLimit;
+
    public static SequentialFile readControlFile(final SequentialFileFactory fileFactory,
                                                 final List<String> dataFiles,
                                                 final List<String> newFiles,
@@ -129,7 +136,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       return newDataFiles;
    }
 
-   public Map<Long, JournalRecord> getNewRecords()
+   public ConcurrentLongHashMap<JournalRecord> getNewRecords()
    {
       return newRecords;
    }
@@ -142,10 +149,47 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    public JournalCompactor(final SequentialFileFactory fileFactory,
                            final JournalImpl journal,
                            final JournalFilesRepository filesRepository,
-                           final Set<Long> recordsSnapshot,
+                           final long[] recordsSnapshot,
                            final long firstFileID)
    {
       super(fileFactory, journal, filesRepository, recordsSnapshot, firstFileID);
+      compactedFiles = null;
+      orderingIDLimit = Long.MAX_VALUE;
+   }
+
+   /**
+    * Creates a compactor for an incremental compacting, which only rewrites the records added on
+    * {@code compactedFiles}. Those have to be the oldest data files of the journal, and the new
+    * files will take the fileIDs from {@code firstFileID} up to {@code orderingIDLimit}.
+    */
+   public JournalCompactor(final SequentialFileFactory fileFactory,
+                           final JournalImpl journal,
+                           final JournalFilesRepository filesRepository,
+                           final Set<JournalFile> compactedFiles,
+                           final long firstFileID,
+                           final long orderingIDLimit)
+   {
+      super(fileFactory, journal, filesRepository, new long[0], firstFileID);
+      this.compactedFiles = compactedFiles;
+      this.orderingIDLimit = orderingIDLimit;
+   }
+
+   @Override
+   public boolean lookupRecord(final long id)
+   {
+      if (super.lookupRecord(id))
+      {
+         return true;
+      }
+
+      if (compactedFiles != null)
+      {
+         // the journal keeps its records during an incremental compacting
+         JournalRecord record = journal.getRecords().get(id);
+         return record != null && compactedFiles.contains(record.getAddFile());
+      }
+
+      return false;
    }
 
    /** This methods informs the Compactor about the existence of a pending (non committed) transaction */
@@ -237,7 +281,10 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
             }
          }
 
-         if (getWritingChannel().writerIndex() + size > getWritingChannel().capacity())
+         // the size of the records doesn't count the checksum yet, as it depends on the file
+         int checksumSize = journal.getFormatVersion() >= JournalImpl.CHECKSUM_FORMAT_VERSION ? JournalChecksum.SIZE : 0;
+
+         if (getWritingChannel().writerIndex() + size + checksumSize > getWritingChannel().capacity())
          {
             openFile();
          }
@@ -291,6 +338,17 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       pendingCommands.clear();
    }
 
+   @Override
+   protected void openFile() throws Exception
+   {
+      if (nextOrderingID >= orderingIDLimit)
+      {
+         throw new IllegalStateException("Compacted data doesn't fit before file " + orderingIDLimit);
+      }
+
+      super.openFile();
+   }
+
    // JournalReaderCallback implementation -------------------------------------------
 
    public void onReadAddRecord(final RecordInfo info) throws Exception
@@ -631,7 +689,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    }
 
    @Override
-   public Map<Long, JournalRecord> getRecords()
+   public ConcurrentLongHashMap<JournalRecord> getRecords()
    {
       return newRecords;
    }
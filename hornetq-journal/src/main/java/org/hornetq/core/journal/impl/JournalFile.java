@@ -42,6 +42,17 @@ public interface JournalFile
    /** The total number of deletes this file has */
    int getTotalNegativeToOthers();
 
+   /**
+    * Informs this file that a transaction with records on it was committed or rolled back on
+    * {@code file}. The records of this file can't be compacted apart from that file.
+    */
+   void addTransactionCompletion(JournalFile file);
+
+   /**
+    * @return the highest fileID where a transaction with records on this file was completed, or -1
+    */
+   long getLastTransactionCompletion();
+
    /**
     * Whether this file's contents can deleted and the file reused.
     * @param canDelete if {@code true} then this file's contents are unimportant and may be deleted
@@ -45,6 +45,8 @@ public class JournalFileImpl implements JournalFile
 
    private final AtomicInteger totalNegativeToOthers = new AtomicInteger(0);
 
+   private volatile long lastTransactionCompletion = -1;
+
    private final int version;
 
    private final Map<JournalFile, AtomicInteger> negCounts = new ConcurrentHashMap<JournalFile, AtomicInteger>();
@@ -86,6 +88,19 @@ public class JournalFileImpl implements JournalFile
       getOrCreateNegCount(file).incrementAndGet();
    }
 
+   public synchronized void addTransactionCompletion(final JournalFile file)
+   {
+      if (file.getFileID() > lastTransactionCompletion)
+      {
+         lastTransactionCompletion = file.getFileID();
+      }
+   }
+
+   public long getLastTransactionCompletion()
+   {
+      return lastTransactionCompletion;
+   }
+
    public int getNegCount(final JournalFile file)
    {
       AtomicInteger count = negCounts.get(file);
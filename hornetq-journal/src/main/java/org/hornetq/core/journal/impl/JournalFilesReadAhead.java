@@ -0,0 +1,290 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+
+/**
+ * Reads the journal files ahead of the load, on a pool of threads.
+ * <p>
+ * Each file is read and decoded by its own task, and its records are kept in memory in the order
+ * they were found. The loading thread then replays the files through
+ * {@link #readJournalFile(JournalFile, JournalReaderCallback)} in the same order they were handed
+ * to this class, so the callback sees exactly the same sequence of events as a sequential load.
+ * <p>
+ * At most {@code readAhead} files are decoded but not yet replayed at any time, which bounds the
+ * memory used by the load.
+ */
+final class JournalFilesReadAhead
+{
+   // Not a journal record type, used to replay markAsDataFile
+   private static final byte MARK_AS_DATA_FILE = 0;
+
+   private final SequentialFileFactory fileFactory;
+
+   private final ExecutorService executor;
+
+   private final int readAhead;
+
+   private final Iterator<JournalFile> filesToRead;
+
+   private final LinkedList<Future<DecodedFile>> pendingFiles = new LinkedList<Future<DecodedFile>>();
+
+   private long waitTime;
+
+   private long replayTime;
+
+   JournalFilesReadAhead(final SequentialFileFactory fileFactory,
+                         final List<JournalFile> files,
+                         final ExecutorService executor,
+                         final int readAhead)
+   {
+      this.fileFactory = fileFactory;
+      this.filesToRead = files.iterator();
+      this.executor = executor;
+      this.readAhead = readAhead;
+   }
+
+   /**
+    * Replays the records of the next file into the callback.
+    *
+    * @return the last valid position on the file, as {@link JournalImpl#readJournalFile} would
+    */
+   int readJournalFile(final JournalFile file, final JournalReaderCallback callback) throws Exception
+   {
+      scheduleReads();
+
+      Future<DecodedFile> future = pendingFiles.poll();
+
+      long start = System.nanoTime();
+
+      DecodedFile decoded;
+
+      try
+      {
+         decoded = future.get();
+      }
+      catch (ExecutionException e)
+      {
+         if (e.getCause() instanceof Exception)
+         {
+            throw (Exception)e.getCause();
+         }
+         throw e;
+      }
+
+      if (decoded.file != file)
+      {
+         throw new IllegalStateException("Journal file " + file.getFile().getFileName() +
+                                            " was read out of order, expected " +
+                                            decoded.file.getFile().getFileName());
+      }
+
+      // the next file can be decoded while we replay this one
+      scheduleReads();
+
+      long replayStart = System.nanoTime();
+
+      waitTime += replayStart - start;
+
+      decoded.replay(callback);
+
+      replayTime += System.nanoTime() - replayStart;
+
+      return decoded.lastDataPos;
+   }
+
+   /**
+    * Cancels the files that were scheduled and not replayed yet.
+    */
+   void cancel()
+   {
+      for (Future<DecodedFile> future : pendingFiles)
+      {
+         future.cancel(true);
+      }
+      pendingFiles.clear();
+   }
+
+   /**
+    * @return the time in nanoseconds the loading thread spent waiting on files to be decoded
+    */
+   long getWaitTime()
+   {
+      return waitTime;
+   }
+
+   /**
+    * @return the time in nanoseconds spent replaying decoded records into the callback
+    */
+   long getReplayTime()
+   {
+      return replayTime;
+   }
+
+   private void scheduleReads()
+   {
+      while (pendingFiles.size() < readAhead && filesToRead.hasNext())
+      {
+         pendingFiles.add(executor.submit(new DecodedFile(filesToRead.next())));
+      }
+   }
+
+   /**
+    * The records of one file, in the order they were found.
+    */
+   private final class DecodedFile implements JournalReaderCallback, Callable<DecodedFile>
+   {
+      private final JournalFile file;
+
+      private final List<ReadEvent> events = new ArrayList<ReadEvent>();
+
+      private int lastDataPos;
+
+      DecodedFile(final JournalFile file)
+      {
+         this.file = file;
+      }
+
+      public DecodedFile call() throws Exception
+      {
+         lastDataPos = JournalImpl.readJournalFile(fileFactory, file, this);
+         return this;
+      }
+
+      void replay(final JournalReaderCallback callback) throws Exception
+      {
+         for (ReadEvent event : events)
+         {
+            switch (event.type)
+            {
+               case JournalImpl.ADD_RECORD:
+                  callback.onReadAddRecord(event.info);
+                  break;
+               case JournalImpl.UPDATE_RECORD:
+                  callback.onReadUpdateRecord(event.info);
+                  break;
+               case JournalImpl.DELETE_RECORD:
+                  callback.onReadDeleteRecord(event.id);
+                  break;
+               case JournalImpl.ADD_RECORD_TX:
+                  callback.onReadAddRecordTX(event.id, event.info);
+                  break;
+               case JournalImpl.UPDATE_RECORD_TX:
+                  callback.onReadUpdateRecordTX(event.id, event.info);
+                  break;
+               case JournalImpl.DELETE_RECORD_TX:
+                  callback.onReadDeleteRecordTX(event.id, event.info);
+                  break;
+               case JournalImpl.PREPARE_RECORD:
+                  callback.onReadPrepareRecord(event.id, event.extraData, event.numberOfRecords);
+                  break;
+               case JournalImpl.COMMIT_RECORD:
+                  callback.onReadCommitRecord(event.id, event.numberOfRecords);
+                  break;
+               case JournalImpl.ROLLBACK_RECORD:
+                  callback.onReadRollbackRecord(event.id);
+                  break;
+               default:
+                  callback.markAsDataFile(file);
+            }
+         }
+      }
+
+      public void onReadAddRecord(final RecordInfo info)
+      {
+         events.add(new ReadEvent(JournalImpl.ADD_RECORD, 0, info, null, 0));
+      }
+
+      public void onReadUpdateRecord(final RecordInfo info)
+      {
+         events.add(new ReadEvent(JournalImpl.UPDATE_RECORD, 0, info, null, 0));
+      }
+
+      public void onReadDeleteRecord(final long recordID)
+      {
+         events.add(new ReadEvent(JournalImpl.DELETE_RECORD, recordID, null, null, 0));
+      }
+
+      public void onReadAddRecordTX(final long transactionID, final RecordInfo info)
+      {
+         events.add(new ReadEvent(JournalImpl.ADD_RECORD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info)
+      {
+         events.add(new ReadEvent(JournalImpl.UPDATE_RECORD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info)
+      {
+         events.add(new ReadEvent(JournalImpl.DELETE_RECORD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords)
+      {
+         events.add(new ReadEvent(JournalImpl.PREPARE_RECORD, transactionID, null, extraData, numberOfRecords));
+      }
+
+      public void onReadCommitRecord(final long transactionID, final int numberOfRecords)
+      {
+         events.add(new ReadEvent(JournalImpl.COMMIT_RECORD, transactionID, null, null, numberOfRecords));
+      }
+
+      public void onReadRollbackRecord(final long transactionID)
+      {
+         events.add(new ReadEvent(JournalImpl.ROLLBACK_RECORD, transactionID, null, null, 0));
+      }
+
+      public void markAsDataFile(final JournalFile file)
+      {
+         events.add(new ReadEvent(MARK_AS_DATA_FILE, 0, null, null, 0));
+      }
+   }
+
+   /**
+    * A single callback invocation; {@code id} is the recordID on deletes and the transactionID on
+    * transactional records.
+    */
+   private static final class ReadEvent
+   {
+      final byte type;
+
+      final long id;
+
+      final RecordInfo info;
+
+      final byte[] extraData;
+
+      final int numberOfRecords;
+
+      ReadEvent(final byte type, final long id, final RecordInfo info, final byte[] extraData, final int numberOfRecords)
+      {
+         this.type = type;
+         this.id = id;
+         this.info = info;
+         this.extraData = extraData;
+         this.numberOfRecords = numberOfRecords;
+      }
+   }
+}
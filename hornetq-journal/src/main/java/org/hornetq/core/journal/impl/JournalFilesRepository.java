@@ -20,7 +20,9 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.core.journal.SequentialFile;
@@ -44,6 +46,9 @@ public class JournalFilesRepository
     */
    private static final boolean CHECK_CONSISTENCE = false;
 
+   // The pool never grows beyond this many times the configured number of files
+   private static final int MAX_POOL_FACTOR = 4;
+
    // This method exists just to make debug easier.
    // I could replace log.trace by log.info temporarily while I was debugging
    // Journal
@@ -76,7 +81,50 @@ public class JournalFilesRepository
 
    private final int userVersion;
 
-   private Executor openFilesExecutor;
+   private volatile Executor openFilesExecutor;
+
+   // Number of filled files kept ready on freeFiles, 0 disables the pool
+   private volatile int poolFiles;
+
+   private final AtomicBoolean poolFillScheduled = new AtomicBoolean(false);
+
+   // moving averages (in nanoseconds) of the time between two file rollovers and of the time to create a file
+   private volatile long rolloverInterval;
+
+   private volatile long fileCreationTime;
+
+   private long lastRollover;
+
+   private final AtomicLong rollovers = new AtomicLong(0);
+
+   private final AtomicLong rolloverWaitTime = new AtomicLong(0);
+
+   private volatile long maxRolloverWait;
+
+   private final Runnable poolFillRunnable = new Runnable()
+   {
+      public void run()
+      {
+         poolFillScheduled.set(false);
+
+         try
+         {
+            if (freeFiles.size() < getPoolTarget())
+            {
+               // A file at a time, so pushing the next opened file doesn't wait for the whole pool.
+               // Reclaimed files may be added while this one is filled, so it gets its ID when it's
+               // added, as they do, to be used in the order of the IDs
+               addFreeFile(createFile(false, false, true, false, -1), false, false);
+
+               schedulePoolFill();
+            }
+         }
+         catch (Exception e)
+         {
+            HornetQJournalLogger.LOGGER.errorPushingFile(e);
+         }
+      }
+   };
 
    private final Runnable pushOpenRunnable = new Runnable()
    {
@@ -131,6 +179,64 @@ public class JournalFilesRepository
       this.openFilesExecutor = fileExecutor;
    }
 
+   /**
+    * Keeps at least that many filled files ready to be used, creating them in the background as
+    * files are used. The pool grows beyond it when files are used faster than new ones are created.
+    */
+   public void setPoolFiles(final int poolFiles)
+   {
+      this.poolFiles = poolFiles;
+   }
+
+   public int getPoolFiles()
+   {
+      return poolFiles;
+   }
+
+   /**
+    * @return how many files the pool aims to keep ready given the current rate of rollovers
+    */
+   public int getPoolTarget()
+   {
+      int target = poolFiles;
+
+      long interval = rolloverInterval;
+
+      if (target > 0 && interval > 0)
+      {
+         // enough files to be used while the next one is created, plus one
+         target = Math.max(target, (int)Math.min(Integer.MAX_VALUE, fileCreationTime / interval) + 1);
+
+         target = Math.min(target, poolFiles * MAX_POOL_FACTOR);
+      }
+
+      return target;
+   }
+
+   /**
+    * @return how many times the journal moved to a new file
+    */
+   public long getRollovers()
+   {
+      return rollovers.get();
+   }
+
+   /**
+    * @return in nanoseconds, the time appends spent waiting for a new file at rollovers
+    */
+   public long getRolloverWaitTime()
+   {
+      return rolloverWaitTime.get();
+   }
+
+   /**
+    * @return in nanoseconds, the longest time an append waited for a new file at a rollover
+    */
+   public long getMaxRolloverWait()
+   {
+      return maxRolloverWait;
+   }
+
    public void clear() throws Exception
    {
       dataFiles.clear();
@@ -472,6 +578,8 @@ public class JournalFilesRepository
          JournalFilesRepository.trace("enqueueOpenFile with openedFiles.size=" + openedFiles.size());
       }
 
+      final long start = System.nanoTime();
+
       if (openFilesExecutor == null)
       {
          pushOpenRunnable.run();
@@ -492,6 +600,8 @@ public class JournalFilesRepository
          }
       }
 
+      onRollover(start, System.nanoTime());
+
       if (JournalFilesRepository.trace)
       {
          JournalFilesRepository.trace("Returning file " + nextFile);
@@ -500,6 +610,65 @@ public class JournalFilesRepository
       return nextFile;
    }
 
+   // called by the thread appending to the journal, while it holds the append lock
+   private void onRollover(final long start, final long end)
+   {
+      long wait = end - start;
+
+      rollovers.incrementAndGet();
+
+      rolloverWaitTime.addAndGet(wait);
+
+      if (wait > maxRolloverWait)
+      {
+         maxRolloverWait = wait;
+      }
+
+      if (lastRollover != 0)
+      {
+         rolloverInterval = movingAverage(rolloverInterval, start - lastRollover);
+      }
+
+      lastRollover = start;
+
+      schedulePoolFill();
+   }
+
+   /**
+    * Fills the pool up to its target on the files executor, if there's a pool.
+    */
+   public void schedulePoolFill()
+   {
+      if (poolFiles <= 0)
+      {
+         return;
+      }
+
+      Executor executor = openFilesExecutor;
+
+      if (executor != null && poolFillScheduled.compareAndSet(false, true))
+      {
+         try
+         {
+            executor.execute(poolFillRunnable);
+         }
+         catch (RejectedExecutionException e)
+         {
+            // the journal is stopping
+            poolFillScheduled.set(false);
+         }
+      }
+   }
+
+   private static long movingAverage(final long average, final long sample)
+   {
+      if (average == 0)
+      {
+         return sample;
+      }
+      return average - (average >> 3) + (sample >> 3);
+   }
+
    /**
     * Open a file and place it into the openedFiles queue
     */
@@ -587,6 +756,8 @@ public class JournalFilesRepository
                                   final boolean tmpCompact,
                                   final long fileIdPreSet) throws Exception
    {
+      final long start = System.nanoTime();
+
       long fileID = fileIdPreSet != -1 ? fileIdPreSet : generateFileID();
 
       final String fileName = createFileName(tmpCompact, fileID);
@@ -606,7 +777,7 @@ public class JournalFilesRepository
       {
          sequentialFile.fill(0, fileSize, JournalImpl.FILL_CHARACTER);
 
-         JournalImpl.initFileHeader(fileFactory, sequentialFile, userVersion, fileID);
+         JournalImpl.initFileHeader(fileFactory, sequentialFile, journal.getFormatVersion(), userVersion, fileID);
       }
 
       long position = sequentialFile.position();
@@ -633,7 +804,12 @@ public class JournalFilesRepository
          sequentialFile.position(position);
       }
 
-      return new JournalFileImpl(sequentialFile, fileID, JournalImpl.FORMAT_VERSION);
+      if (init)
+      {
+         fileCreationTime = movingAverage(fileCreationTime, System.nanoTime() - start);
+      }
+
+      return new JournalFileImpl(sequentialFile, fileID, journal.getFormatVersion());
    }
 
    /**
@@ -685,9 +861,9 @@ public class JournalFilesRepository
 
       sf.open(1, false);
 
-      int position = JournalImpl.initFileHeader(fileFactory, sf, userVersion, newFileID);
+      int position = JournalImpl.initFileHeader(fileFactory, sf, journal.getFormatVersion(), userVersion, newFileID);
 
-      JournalFile jf = new JournalFileImpl(sf, newFileID, JournalImpl.FORMAT_VERSION);
+      JournalFile jf = new JournalFileImpl(sf, newFileID, journal.getFormatVersion());
 
       sf.position(position);
 
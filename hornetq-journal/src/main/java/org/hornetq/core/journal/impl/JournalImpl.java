@@ -25,8 +25,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -42,6 +40,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.Pair;
+import org.hornetq.core.journal.BatchRecord;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.IOCompletion;
@@ -61,10 +60,12 @@ import org.hornetq.core.journal.impl.dataformat.JournalCompleteRecordTX.TX_RECOR
 import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
+import org.hornetq.core.journal.impl.dataformat.JournalPreEncodedRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalRollbackRecordTX;
 import org.hornetq.journal.HornetQJournalBundle;
 import org.hornetq.journal.HornetQJournalLogger;
 import org.hornetq.utils.ConcurrentHashSet;
+import org.hornetq.utils.ConcurrentLongHashMap;
 import org.hornetq.utils.DataConstants;
 
 /**
@@ -82,7 +83,10 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    public static final int FORMAT_VERSION = 2;
 
-   private static final int[] COMPATIBLE_VERSIONS = new int[]{1};
+   // Written when checksums are enabled: every record carries a CRC32 right before its closing size
+   public static final int CHECKSUM_FORMAT_VERSION = 3;
+
+   private static final int[] COMPATIBLE_VERSIONS = new int[]{1, CHECKSUM_FORMAT_VERSION};
 
    // Static --------------------------------------------------------
    private static final boolean trace = HornetQJournalLogger.LOGGER.isTraceEnabled();
@@ -163,6 +167,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    private volatile boolean autoReclaim = true;
 
+   // When true, records carrying user data are encoded by the calling thread before lockAppend is taken
+   private volatile boolean concurrentEncoding = false;
+
+   // Number of threads reading and decoding files during load, 1 means the files are read by the loading thread
+   private volatile int loadThreads = 1;
+
+   // The format of the files created by this journal
+   private volatile int formatVersion = FORMAT_VERSION;
+
    private final int userVersion;
 
    private final int minFiles;
@@ -171,15 +184,32 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    private final int compactMinFiles;
 
+   // When true, compacting only rewrites a run of the oldest files, keeping the journal locked for less time
+   private volatile boolean incrementalCompact = false;
+
+   private volatile int compactMaxFiles = 10;
+
+   // in nanoseconds, how long an incremental compacting should keep the journal locked
+   private volatile long compactMaxPause = TimeUnit.MILLISECONDS.toNanos(100);
+
+   // Files taken by the next incremental compacting, adjusted by the time the journal was locked for
+   private int compactFilesPerCycle = compactMaxFiles;
+
+   // in nanoseconds, the longest time the journal was locked for by the last compacting
+   private volatile long lastCompactPause;
+
+   // in nanoseconds, the longest time the journal was ever locked for by compacting
+   private volatile long maxCompactPause;
+
    private final SequentialFileFactory fileFactory;
 
    private final JournalFilesRepository filesRepository;
 
    // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalRecord> records = new ConcurrentHashMap<Long, JournalRecord>();
+   private final ConcurrentLongHashMap<JournalRecord> records = new ConcurrentLongHashMap<JournalRecord>();
 
    // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalTransaction> transactions = new ConcurrentHashMap<Long, JournalTransaction>();
+   private final ConcurrentLongHashMap<JournalTransaction> transactions = new ConcurrentLongHashMap<JournalTransaction>();
 
    // This will be set only while the JournalCompactor is being executed
    private volatile JournalCompactor compactor;
@@ -345,7 +375,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       latch.await();
    }
 
-   public Map<Long, JournalRecord> getRecords()
+   public ConcurrentLongHashMap<JournalRecord> getRecords()
    {
       return records;
    }
@@ -422,6 +452,9 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          // First long is the ordering timestamp, we just jump its position
          wholeFileBuffer.position(JournalImpl.SIZE_HEADER);
 
+         final JournalChecksum checksum =
+            file.getJournalVersion() >= CHECKSUM_FORMAT_VERSION ? new JournalChecksum() : null;
+
          int lastDataPos = JournalImpl.SIZE_HEADER;
 
          while (wholeFileBuffer.hasRemaining())
@@ -642,6 +675,20 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                continue;
             }
 
+            // VIII - On the checksum format, the record has to match its CRC32 as well.
+            // This is what catches a record whose size was written but not all of its data
+            if (checksum != null &&
+               !checksum.verify(wholeFileBuffer, pos, pos + variableSize + recordSize + preparedTransactionExtraDataSize))
+            {
+               HornetQJournalLogger.LOGGER.recordChecksumMismatch(pos, file.getFile().getFileName());
+
+               reader.markAsDataFile(file);
+
+               wholeFileBuffer.position(pos + DataConstants.SIZE_BYTE);
+
+               continue;
+            }
+
             wholeFileBuffer.position(oldPos);
 
             // At this point everything is checked. So we relax and just load
@@ -727,6 +774,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                }
             }
 
+            if (checksum != null)
+            {
+               // already verified
+               wholeFileBuffer.position(wholeFileBuffer.position() + JournalChecksum.SIZE);
+            }
+
             checkSize = wholeFileBuffer.getInt();
 
             // This is a sanity check about the loading code itself.
@@ -783,7 +836,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       try
       {
-         JournalInternalRecord addRecord = new JournalAddRecord(true, id, recordType, record);
+         JournalInternalRecord addRecord = preEncode(new JournalAddRecord(true, id, recordType, record));
 
          if (callback != null)
          {
@@ -840,7 +893,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             }
          }
 
-         JournalInternalRecord updateRecord = new JournalAddRecord(false, id, recordType, record);
+         JournalInternalRecord updateRecord = preEncode(new JournalAddRecord(false, id, recordType, record));
 
          if (callback != null)
          {
@@ -883,6 +936,168 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       }
    }
 
+   /**
+    * The records are written with a single acquisition of the append lock. When the whole batch
+    * fits on a file it is written contiguously on the same file, and the callback is lined up once
+    * and completed by the last record. Otherwise every record completes the callback, as separate
+    * appends would.
+    */
+   @Override
+   public void appendBatch(final List<BatchRecord> batch, final boolean sync, final IOCompletion callback)
+      throws Exception
+   {
+      checkJournalIsLoaded();
+
+      final int size = batch.size();
+
+      if (size == 0)
+      {
+         if (callback != null)
+         {
+            callback.storeLineUp();
+            callback.done();
+         }
+         return;
+      }
+
+      journalLock.readLock().lock();
+
+      try
+      {
+         JournalInternalRecord[] encoders = new JournalInternalRecord[size];
+
+         int batchSize = 0;
+
+         Set<Long> batchAdds = null;
+
+         for (int i = 0; i < size; i++)
+         {
+            BatchRecord record = batch.get(i);
+
+            if (record.isUpdate || record.isDelete)
+            {
+               if (records.get(record.id) == null && (batchAdds == null || !batchAdds.contains(record.id)))
+               {
+                  if (!(compactor != null && compactor.lookupRecord(record.id)))
+                  {
+                     throw new IllegalStateException("Cannot find add info " + record.id);
+                  }
+               }
+            }
+            else
+            {
+               if (batchAdds == null)
+               {
+                  batchAdds = new HashSet<Long>();
+               }
+               batchAdds.add(record.id);
+            }
+
+            if (record.isDelete)
+            {
+               encoders[i] = preEncode(new JournalDeleteRecord(record.id));
+            }
+            else
+            {
+               encoders[i] = preEncode(new JournalAddRecord(!record.isUpdate, record.id, record.userRecordType, record.record));
+            }
+
+            batchSize += encoders[i].getEncodeSize();
+         }
+
+         // the records are buffered together, so only the batch as a whole is rounded to the block size
+         batchSize = fileFactory.calculateBlockSize(batchSize);
+
+         final boolean singleFile = batchSize <= fileSize - fileFactory.calculateBlockSize(JournalImpl.SIZE_HEADER);
+
+         if (callback != null)
+         {
+            for (int i = singleFile ? size - 1 : 0; i < size; i++)
+            {
+               callback.storeLineUp();
+            }
+         }
+
+         lockAppend.lock();
+         try
+         {
+            if (singleFile)
+            {
+               switchFileIfNecessary(batchSize);
+            }
+
+            for (int i = 0; i < size; i++)
+            {
+               BatchRecord record = batch.get(i);
+
+               JournalInternalRecord encoder = encoders[i];
+
+               boolean last = i == size - 1;
+
+               JournalFile usedFile = appendRecord(encoder,
+                                                   false,
+                                                   sync && (last || !singleFile),
+                                                   null,
+                                                   last || !singleFile ? callback : null);
+
+               if (JournalImpl.TRACE_RECORDS)
+               {
+                  JournalImpl.traceRecord("appendBatch::id=" + record.id +
+                                             ", userRecordType=" +
+                                             record.userRecordType +
+                                             ", isUpdate=" +
+                                             record.isUpdate +
+                                             ", isDelete=" +
+                                             record.isDelete +
+                                             ", usedFile = " +
+                                             usedFile);
+               }
+
+               if (record.isDelete)
+               {
+                  // see appendDeleteRecord
+                  JournalRecord jrnRecord = compactor == null ? records.remove(record.id) : null;
+
+                  if (jrnRecord == null)
+                  {
+                     compactor.addCommandDelete(record.id, usedFile);
+                  }
+                  else
+                  {
+                     jrnRecord.delete(usedFile);
+                  }
+               }
+               else if (record.isUpdate)
+               {
+                  JournalRecord jrnRecord = records.get(record.id);
+
+                  // see appendUpdateRecord
+                  if (jrnRecord == null)
+                  {
+                     compactor.addCommandUpdate(record.id, usedFile, encoder.getEncodeSize());
+                  }
+                  else
+                  {
+                     jrnRecord.addUpdateFile(usedFile, encoder.getEncodeSize());
+                  }
+               }
+               else
+               {
+                  records.put(record.id, new JournalRecord(usedFile, encoder.getEncodeSize()));
+               }
+            }
+         }
+         finally
+         {
+            lockAppend.unlock();
+         }
+      }
+      finally
+      {
+         journalLock.readLock().unlock();
+      }
+   }
+
 
    @Override
    public void appendDeleteRecord(final long id, final boolean sync, final IOCompletion callback) throws Exception
@@ -964,7 +1179,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       try
       {
-         JournalInternalRecord addRecord = new JournalAddRecordTX(true, txID, id, recordType, record);
+         JournalInternalRecord addRecord = preEncode(new JournalAddRecordTX(true, txID, id, recordType, record));
 
          JournalTransaction tx = getTransactionInfo(txID);
 
@@ -997,6 +1212,162 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       }
    }
 
+   /**
+    * When enabled, add and update records (transactional or not) are fully encoded by the calling
+    * thread before the append lock is taken. The append lock then only covers choosing the file,
+    * stamping the fileID and copying the bytes into the buffer, so producers no longer serialize
+    * on the encoding of each other's records.
+    */
+   public void setConcurrentEncoding(final boolean concurrentEncoding)
+   {
+      this.concurrentEncoding = concurrentEncoding;
+   }
+
+   public boolean isConcurrentEncoding()
+   {
+      return concurrentEncoding;
+   }
+
+   /**
+    * When greater than 1, {@link #load(LoaderCallback)} reads and decodes the journal files on that
+    * many threads, ahead of the loading thread. Records are still replayed file by file, in the
+    * same order as a sequential load, so the outcome of the load doesn't change.
+    */
+   public void setLoadThreads(final int loadThreads)
+   {
+      this.loadThreads = loadThreads;
+   }
+
+   public int getLoadThreads()
+   {
+      return loadThreads;
+   }
+
+   /**
+    * When enabled, the files created from then on use the {@link #CHECKSUM_FORMAT_VERSION} format,
+    * where every record carries a CRC32 of its bytes. The checksums are calculated when the records
+    * are flushed to the file, and records failing them are ignored on load as any other damaged
+    * record. Has to be set before the journal is started.
+    */
+   public void setChecksums(final boolean checksums)
+   {
+      formatVersion = checksums ? CHECKSUM_FORMAT_VERSION : FORMAT_VERSION;
+   }
+
+   public boolean isChecksums()
+   {
+      return formatVersion >= CHECKSUM_FORMAT_VERSION;
+   }
+
+   public int getFormatVersion()
+   {
+      return formatVersion;
+   }
+
+   /**
+    * Keeps that many filled files ready, creating them in the background as the journal moves to
+    * new files, so appends don't wait for a file to be created at a rollover. More files are kept
+    * when they are used faster than new ones can be created. 0 disables the pool.
+    */
+   public void setPoolFiles(final int poolFiles)
+   {
+      filesRepository.setPoolFiles(poolFiles);
+   }
+
+   public int getPoolFiles()
+   {
+      return filesRepository.getPoolFiles();
+   }
+
+   /**
+    * @return how many times the journal moved to a new file
+    */
+   public long getRollovers()
+   {
+      return filesRepository.getRollovers();
+   }
+
+   /**
+    * @return in nanoseconds, the time appends spent waiting for a new file at rollovers
+    */
+   public long getRolloverWaitTime()
+   {
+      return filesRepository.getRolloverWaitTime();
+   }
+
+   /**
+    * @return in nanoseconds, the longest time an append waited for a new file at a rollover
+    */
+   public long getMaxRolloverWait()
+   {
+      return filesRepository.getMaxRolloverWait();
+   }
+
+   /**
+    * When true, each compacting only rewrites a run of the oldest data files, at most
+    * {@link #setCompactMaxFiles(int)} of them, instead of the whole journal. The number of files is
+    * reduced whenever compacting keeps the journal locked for more than
+    * {@link #setCompactMaxPause(long)}.
+    */
+   public void setIncrementalCompact(final boolean incrementalCompact)
+   {
+      this.incrementalCompact = incrementalCompact;
+   }
+
+   public boolean isIncrementalCompact()
+   {
+      return incrementalCompact;
+   }
+
+   public synchronized void setCompactMaxFiles(final int compactMaxFiles)
+   {
+      this.compactMaxFiles = compactMaxFiles;
+      compactFilesPerCycle = compactMaxFiles;
+   }
+
+   public int getCompactMaxFiles()
+   {
+      return compactMaxFiles;
+   }
+
+   /**
+    * @param compactMaxPause in milliseconds
+    */
+   public void setCompactMaxPause(final long compactMaxPause)
+   {
+      this.compactMaxPause = TimeUnit.MILLISECONDS.toNanos(compactMaxPause);
+   }
+
+   /**
+    * @return in nanoseconds, the longest time the last compacting kept the journal locked for
+    */
+   public long getLastCompactPause()
+   {
+      return lastCompactPause;
+   }
+
+   /**
+    * @return in nanoseconds, the longest time any compacting kept the journal locked for
+    */
+   public long getMaxCompactPause()
+   {
+      return maxCompactPause;
+   }
+
+   private JournalInternalRecord preEncode(final JournalInternalRecord record)
+   {
+      record.setChecksum(isChecksums());
+
+      if (concurrentEncoding)
+      {
+         return new JournalPreEncodedRecord(record);
+      }
+      else
+      {
+         return record;
+      }
+   }
+
    private void checkJournalIsLoaded()
    {
       if (state != JournalState.LOADED && state != JournalState.SYNCING)
@@ -1022,7 +1393,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       try
       {
-         JournalInternalRecord updateRecordTX = new JournalAddRecordTX(false, txID, id, recordType, record);
+         JournalInternalRecord updateRecordTX = preEncode(new JournalAddRecordTX(false, txID, id, recordType, record));
 
          JournalTransaction tx = getTransactionInfo(txID);
 
@@ -1065,7 +1436,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       try
       {
-         JournalInternalRecord deleteRecordTX = new JournalDeleteRecordTX(txID, id, record);
+         JournalInternalRecord deleteRecordTX = preEncode(new JournalDeleteRecordTX(txID, id, record));
 
          JournalTransaction tx = getTransactionInfo(txID);
 
@@ -1463,8 +1834,13 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       {
          ArrayList<JournalFile> dataFilesToProcess = new ArrayList<JournalFile>(filesRepository.getDataFilesCount());
 
+         // Only set on an incremental compacting
+         Set<JournalFile> compactedFiles = null;
+
          boolean previousReclaimValue = isAutoReclaim();
 
+         long pause = 0;
+
          try
          {
             HornetQJournalLogger.LOGGER.debug("Starting compacting operation on journal");
@@ -1474,6 +1850,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             // We need to guarantee that the journal is frozen for this short time
             // We don't freeze the journal as we compact, only for the short time where we replace records
             journalLock.writeLock().lock();
+            long lockTime = System.nanoTime();
             try
             {
                if (state != JournalState.LOADED)
@@ -1485,40 +1862,65 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
                setAutoReclaim(false);
 
-               // We need to move to the next file, as we need a clear start for negatives and positives counts
-               moveNextFile(false);
-
-               // Take the snapshots and replace the structures
+               if (incrementalCompact)
+               {
+                  // The files not being compacted keep their records and counters, so there's no need for a new
+                  // current file
+                  dataFilesToProcess.addAll(selectFilesToCompact());
 
-               dataFilesToProcess.addAll(filesRepository.getDataFiles());
+                  if (dataFilesToProcess.size() == 0)
+                  {
+                     trace("Finishing compacting, no files can be compacted incrementally");
+                     return;
+                  }
 
-               filesRepository.clearDataFiles();
+                  compactedFiles = new HashSet<JournalFile>(dataFilesToProcess);
 
-               if (dataFilesToProcess.size() == 0)
-               {
-                  trace("Finishing compacting, nothing to process");
-                  return;
+                  compactor = new JournalCompactor(fileFactory,
+                                                   this,
+                                                   filesRepository,
+                                                   compactedFiles,
+                                                   dataFilesToProcess.get(0).getFileID(),
+                                                   getNextFileID(dataFilesToProcess.get(dataFilesToProcess.size() - 1)));
                }
+               else
+               {
+                  // We need to move to the next file, as we need a clear start for negatives and positives counts
+                  moveNextFile(false);
 
-               compactor = new JournalCompactor(fileFactory,
-                                                this,
-                                                filesRepository,
-                                                records.keySet(),
-                                                dataFilesToProcess.get(0).getFileID());
+                  // Take the snapshots and replace the structures
 
-               for (Map.Entry<Long, JournalTransaction> entry : transactions.entrySet())
-               {
-                  compactor.addPendingTransaction(entry.getKey(), entry.getValue().getPositiveArray());
-                  entry.getValue().setCompacting();
-               }
+                  dataFilesToProcess.addAll(filesRepository.getDataFiles());
+
+                  filesRepository.clearDataFiles();
+
+                  if (dataFilesToProcess.size() == 0)
+                  {
+                     trace("Finishing compacting, nothing to process");
+                     return;
+                  }
+
+                  compactor = new JournalCompactor(fileFactory,
+                                                   this,
+                                                   filesRepository,
+                                                   records.keys(),
+                                                   dataFilesToProcess.get(0).getFileID());
 
-               // We will calculate the new records during compacting, what will take the position the records will take
-               // after compacting
-               records.clear();
+                  for (JournalTransaction transaction : transactions.values())
+                  {
+                     compactor.addPendingTransaction(transaction.getId(), transaction.getPositiveArray());
+                     transaction.setCompacting();
+                  }
+
+                  // We will calculate the new records during compacting, what will take the position the records will
+                  // take after compacting
+                  records.clear();
+               }
             }
             finally
             {
                journalLock.writeLock().unlock();
+               pause = System.nanoTime() - lockTime;
             }
 
             Collections.sort(dataFilesToProcess, new JournalFileComparator());
@@ -1526,23 +1928,34 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             // This is where most of the work is done, taking most of the time of the compacting routine.
             // Notice there are no locks while this is being done.
 
-            // Read the files, and use the JournalCompactor class to create the new outputFiles, and the new collections as
-            // well
-            for (final JournalFile file : dataFilesToProcess)
+            try
             {
-               try
+               // Read the files, and use the JournalCompactor class to create the new outputFiles, and the new
+               // collections as well
+               for (final JournalFile file : dataFilesToProcess)
                {
-                  JournalImpl.readJournalFile(fileFactory, file, compactor);
+                  try
+                  {
+                     JournalImpl.readJournalFile(fileFactory, file, compactor);
+                  }
+                  catch (Throwable e)
+                  {
+                     HornetQJournalLogger.LOGGER.compactReadError(file);
+                     throw new Exception("Error on reading compacting for " + file, e);
+                  }
                }
-               catch (Throwable e)
+
+               compactor.flush();
+            }
+            catch (Exception e)
+            {
+               if (compactedFiles != null)
                {
-                  HornetQJournalLogger.LOGGER.compactReadError(file);
-                  throw new Exception("Error on reading compacting for " + file, e);
+                  abortIncrementalCompact();
                }
+               throw e;
             }
 
-            compactor.flush();
-
             // pointcut for tests
             // We need to test concurrent updates on the journal, as the compacting is being performed.
             // Usually tests will use this to hold the compacting while other structures are being updated.
@@ -1555,6 +1968,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             SequentialFile controlFile = createControlFile(dataFilesToProcess, compactor.getNewDataFiles(), null);
 
             journalLock.writeLock().lock();
+            lockTime = System.nanoTime();
             try
             {
                // Need to clear the compactor here, or the replay commands will send commands back (infinite loop)
@@ -1565,23 +1979,48 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                newDatafiles = localCompactor.getNewDataFiles();
 
                // Restore newRecords created during compacting
-               for (Map.Entry<Long, JournalRecord> newRecordEntry : localCompactor.getNewRecords().entrySet())
-               {
-                  records.put(newRecordEntry.getKey(), newRecordEntry.getValue());
-               }
+               ConcurrentLongHashMap<JournalRecord> newRecords = localCompactor.getNewRecords();
 
-               // Restore compacted dataFiles
-               for (int i = newDatafiles.size() - 1; i >= 0; i--)
+               if (compactedFiles != null)
                {
-                  JournalFile fileToAdd = newDatafiles.get(i);
-                  if (JournalImpl.trace)
+                  // The records were kept during an incremental compacting, they take the updates from the files that
+                  // were not compacted
+                  for (long id : newRecords.keys())
                   {
-                     JournalImpl.trace("Adding file " + fileToAdd + " back as datafile");
+                     JournalRecord newRecord = newRecords.get(id);
+                     JournalRecord liveRecord = records.get(id);
+                     if (liveRecord != null)
+                     {
+                        newRecord.copyUpdateFiles(liveRecord, compactedFiles);
+                     }
+                     records.put(id, newRecord);
                   }
-                  filesRepository.addDataFileOnTop(fileToAdd);
-               }
 
-               if (JournalImpl.trace)
+                  for (JournalFile file : dataFilesToProcess)
+                  {
+                     filesRepository.removeDataFile(file);
+                  }
+               }
+               else
+               {
+                  for (long id : newRecords.keys())
+                  {
+                     records.put(id, newRecords.get(id));
+                  }
+               }
+
+               // Restore compacted dataFiles
+               for (int i = newDatafiles.size() - 1; i >= 0; i--)
+               {
+                  JournalFile fileToAdd = newDatafiles.get(i);
+                  if (JournalImpl.trace)
+                  {
+                     JournalImpl.trace("Adding file " + fileToAdd + " back as datafile");
+                  }
+                  filesRepository.addDataFileOnTop(fileToAdd);
+               }
+
+               if (JournalImpl.trace)
                {
                   JournalImpl.trace("There are " + filesRepository.getDataFilesCount() + " datafiles Now");
                }
@@ -1619,13 +2058,21 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             finally
             {
                journalLock.writeLock().unlock();
+               pause = Math.max(pause, System.nanoTime() - lockTime);
             }
 
             // At this point the journal is unlocked. We keep renaming files while the journal is already operational
             renameFiles(dataFilesToProcess, newDatafiles);
             deleteControlFile(controlFile);
 
-            HornetQJournalLogger.LOGGER.debug("Finished compacting on journal");
+            if (compactedFiles != null)
+            {
+               adjustCompactFilesPerCycle(dataFilesToProcess.size(), pause);
+            }
+
+            HornetQJournalLogger.LOGGER.debug("Finished compacting on journal, compacted " + dataFilesToProcess.size() +
+                                                 " files into " + newDatafiles.size() + " keeping the journal locked for " +
+                                                 TimeUnit.NANOSECONDS.toMicros(pause) + " microseconds");
 
          }
          finally
@@ -1644,6 +2091,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                compactor = null;
             }
             setAutoReclaim(previousReclaimValue);
+
+            if (dataFilesToProcess.size() > 0)
+            {
+               lastCompactPause = pause;
+               if (pause > maxCompactPause)
+               {
+                  maxCompactPause = pause;
+               }
+            }
          }
       }
       finally
@@ -1653,6 +2109,157 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    }
 
+   /**
+    * Chooses the files for an incremental compacting: the run of oldest data files with the least
+    * live data, out of the runs of up to {@link #compactFilesPerCycle} files. A run has to hold the
+    * completion of every transaction with records on it, and can't have records of a pending
+    * transaction. The compacted data also needs to fit on fewer files, with fileIDs before the file
+    * following the run.
+    * <p/>
+    * Needs the journal write lock.
+    */
+   private List<JournalFile> selectFilesToCompact()
+   {
+      JournalFile[] dataFiles = filesRepository.getDataFilesArray();
+
+      long pendingTransactionsFileID = Long.MAX_VALUE;
+
+      for (JournalTransaction transaction : transactions.values())
+      {
+         pendingTransactionsFileID = Math.min(pendingTransactionsFileID, transaction.getFirstFileID());
+      }
+
+      int usableFileSize = fileSize - JournalImpl.SIZE_HEADER;
+
+      long liveSize = 0;
+
+      long lastTransactionCompletion = -1;
+
+      int selectedFiles = 0;
+
+      double selectedRatio = 0;
+
+      for (int i = 0; i < dataFiles.length; i++)
+      {
+         JournalFile file = dataFiles[i];
+
+         int files = i + 1;
+
+         if (file.getFileID() >= pendingTransactionsFileID || (files > compactFilesPerCycle && selectedFiles > 0))
+         {
+            break;
+         }
+
+         liveSize += file.getLiveSize();
+
+         lastTransactionCompletion = Math.max(lastTransactionCompletion, file.getLastTransactionCompletion());
+
+         if (lastTransactionCompletion > file.getFileID())
+         {
+            // a transaction on the run was completed on a later file
+            continue;
+         }
+
+         long newFiles = liveSize / usableFileSize + 1;
+
+         long nextFileID = i + 1 < dataFiles.length ? dataFiles[i + 1].getFileID() : currentFile.getFileID();
+
+         if (newFiles >= files || dataFiles[0].getFileID() + newFiles > nextFileID)
+         {
+            continue;
+         }
+
+         double ratio = (double)liveSize / ((long)files * fileSize);
+
+         // if no run fits on compactFilesPerCycle, the first one that fits beyond it is taken
+         if (selectedFiles == 0 || ratio < selectedRatio)
+         {
+            selectedFiles = files;
+            selectedRatio = ratio;
+         }
+      }
+
+      ArrayList<JournalFile> selected = new ArrayList<JournalFile>(selectedFiles);
+
+      for (int i = 0; i < selectedFiles; i++)
+      {
+         selected.add(dataFiles[i]);
+      }
+
+      return selected;
+   }
+
+   /**
+    * @return the fileID of the file following a data file
+    */
+   private long getNextFileID(final JournalFile dataFile)
+   {
+      JournalFile[] dataFiles = filesRepository.getDataFilesArray();
+
+      for (int i = 0; i < dataFiles.length - 1; i++)
+      {
+         if (dataFiles[i] == dataFile)
+         {
+            return dataFiles[i + 1].getFileID();
+         }
+      }
+
+      return currentFile.getFileID();
+   }
+
+   /**
+    * Undoes an incremental compacting that failed before the files were replaced. The records
+    * were never touched, so only the commands that came during the compacting need replaying.
+    */
+   private void abortIncrementalCompact()
+   {
+      JournalCompactor localCompactor = compactor;
+
+      journalLock.writeLock().lock();
+      try
+      {
+         compactor = null;
+
+         localCompactor.replayPendingCommands();
+      }
+      finally
+      {
+         journalLock.writeLock().unlock();
+      }
+
+      try
+      {
+         localCompactor.flush();
+      }
+      catch (Throwable ignored)
+      {
+      }
+
+      for (JournalFile file : localCompactor.getNewDataFiles())
+      {
+         try
+         {
+            file.getFile().delete();
+         }
+         catch (Throwable e)
+         {
+            HornetQJournalLogger.LOGGER.errorDeletingFile(file);
+         }
+      }
+   }
+
+   private synchronized void adjustCompactFilesPerCycle(final int compactedFiles, final long pause)
+   {
+      if (pause > compactMaxPause)
+      {
+         compactFilesPerCycle = Math.max(1, compactedFiles / 2);
+      }
+      else if (pause < compactMaxPause / 2)
+      {
+         compactFilesPerCycle = Math.min(compactMaxFiles, Math.max(compactFilesPerCycle, compactedFiles + 1));
+      }
+   }
+
    /**
     * <p>Load data accordingly to the record layouts</p>
     * <p/>
@@ -1725,284 +2332,340 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       final Map<Long, TransactionHolder> loadTransactions = new LinkedHashMap<Long, TransactionHolder>();
 
+      final long loadStart = System.nanoTime();
+
       final List<JournalFile> orderedFiles = orderFiles();
 
-      filesRepository.calculateNextfileID(orderedFiles);
+      final long orderTime = System.nanoTime() - loadStart;
 
-      int lastDataPos = JournalImpl.SIZE_HEADER;
+      filesRepository.calculateNextfileID(orderedFiles);
 
-      // AtomicLong is used only as a reference, not as an Atomic value
-      final AtomicLong maxID = new AtomicLong(-1);
+      final int threads = Math.min(loadThreads, orderedFiles.size());
 
-      for (final JournalFile file : orderedFiles)
-      {
-         JournalImpl.trace("Loading file " + file.getFile().getFileName());
+      ExecutorService loadExecutor = null;
 
-         final AtomicBoolean hasData = new AtomicBoolean(false);
+      JournalFilesReadAhead readAhead = null;
 
-         int resultLastPost = JournalImpl.readJournalFile(fileFactory, file, new JournalReaderCallback()
+      if (threads > 1)
+      {
+         loadExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory()
          {
 
-            private void checkID(final long id)
+            public Thread newThread(final Runnable r)
             {
-               if (id > maxID.longValue())
-               {
-                  maxID.set(id);
-               }
+               return new Thread(r, "JournalImpl::LoadExecutor");
             }
+         });
 
-            public void onReadAddRecord(final RecordInfo info) throws Exception
-            {
-               checkID(info.id);
-
-               hasData.set(true);
+         // twice as many files as threads, so the threads are kept busy while the loading thread replays
+         readAhead = new JournalFilesReadAhead(fileFactory, orderedFiles, loadExecutor, threads * 2);
+      }
 
-               loadManager.addRecord(info);
+      int lastDataPos = JournalImpl.SIZE_HEADER;
 
-               records.put(info.id, new JournalRecord(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1));
-            }
+      // AtomicLong is used only as a reference, not as an Atomic value
+      final AtomicLong maxID = new AtomicLong(-1);
 
-            public void onReadUpdateRecord(final RecordInfo info) throws Exception
-            {
-               checkID(info.id);
+      final long readStart = System.nanoTime();
 
-               hasData.set(true);
+      try
+      {
+         for (final JournalFile file : orderedFiles)
+         {
+            JournalImpl.trace("Loading file " + file.getFile().getFileName());
 
-               loadManager.updateRecord(info);
+            final AtomicBoolean hasData = new AtomicBoolean(false);
 
-               JournalRecord posFiles = records.get(info.id);
+            JournalReaderCallback fileCallback = new JournalReaderCallback()
+            {
 
-               if (posFiles != null)
+               private void checkID(final long id)
                {
-                  // It's legal for this to be null. The file(s) with the may
-                  // have been deleted
-                  // just leaving some updates in this file
-
-                  posFiles.addUpdateFile(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1); // +1 = compact
-                  // count
+                  if (id > maxID.longValue())
+                  {
+                     maxID.set(id);
+                  }
                }
-            }
 
-            public void onReadDeleteRecord(final long recordID) throws Exception
-            {
-               hasData.set(true);
+               public void onReadAddRecord(final RecordInfo info) throws Exception
+               {
+                  checkID(info.id);
 
-               loadManager.deleteRecord(recordID);
+                  hasData.set(true);
 
-               JournalRecord posFiles = records.remove(recordID);
+                  loadManager.addRecord(info);
 
-               if (posFiles != null)
-               {
-                  posFiles.delete(file);
+                  records.put(info.id, new JournalRecord(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1));
                }
-            }
 
-            public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
-            {
-               onReadAddRecordTX(transactionID, info);
-            }
+               public void onReadUpdateRecord(final RecordInfo info) throws Exception
+               {
+                  checkID(info.id);
 
-            public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
-            {
+                  hasData.set(true);
 
-               checkID(info.id);
+                  loadManager.updateRecord(info);
 
-               hasData.set(true);
+                  JournalRecord posFiles = records.get(info.id);
 
-               TransactionHolder tx = loadTransactions.get(transactionID);
+                  if (posFiles != null)
+                  {
+                     // It's legal for this to be null. The file(s) with the may
+                     // have been deleted
+                     // just leaving some updates in this file
 
-               if (tx == null)
+                     posFiles.addUpdateFile(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1); // +1 = compact
+                     // count
+                  }
+               }
+
+               public void onReadDeleteRecord(final long recordID) throws Exception
                {
-                  tx = new TransactionHolder(transactionID);
+                  hasData.set(true);
 
-                  loadTransactions.put(transactionID, tx);
-               }
+                  loadManager.deleteRecord(recordID);
 
-               tx.recordInfos.add(info);
+                  JournalRecord posFiles = records.remove(recordID);
 
-               JournalTransaction tnp = transactions.get(transactionID);
+                  if (posFiles != null)
+                  {
+                     posFiles.delete(file);
+                  }
+               }
 
-               if (tnp == null)
+               public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
                {
-                  tnp = new JournalTransaction(transactionID, JournalImpl.this);
-
-                  transactions.put(transactionID, tnp);
+                  onReadAddRecordTX(transactionID, info);
                }
 
-               tnp.addPositive(file, info.id, info.data.length + JournalImpl.SIZE_ADD_RECORD_TX + 1); // +1 = compact
-               // count
-            }
+               public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
+               {
 
-            public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
-            {
-               hasData.set(true);
+                  checkID(info.id);
 
-               TransactionHolder tx = loadTransactions.get(transactionID);
+                  hasData.set(true);
 
-               if (tx == null)
-               {
-                  tx = new TransactionHolder(transactionID);
+                  TransactionHolder tx = loadTransactions.get(transactionID);
 
-                  loadTransactions.put(transactionID, tx);
-               }
+                  if (tx == null)
+                  {
+                     tx = new TransactionHolder(transactionID);
+
+                     loadTransactions.put(transactionID, tx);
+                  }
 
-               tx.recordsToDelete.add(info);
+                  tx.recordInfos.add(info);
 
-               JournalTransaction tnp = transactions.get(transactionID);
+                  JournalTransaction tnp = transactions.get(transactionID);
 
-               if (tnp == null)
-               {
-                  tnp = new JournalTransaction(transactionID, JournalImpl.this);
+                  if (tnp == null)
+                  {
+                     tnp = new JournalTransaction(transactionID, JournalImpl.this);
 
-                  transactions.put(transactionID, tnp);
+                     transactions.put(transactionID, tnp);
+                  }
+
+                  tnp.addPositive(file, info.id, info.data.length + JournalImpl.SIZE_ADD_RECORD_TX + 1); // +1 = compact
+                  // count
                }
 
-               tnp.addNegative(file, info.id);
+               public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
+               {
+                  hasData.set(true);
 
-            }
+                  TransactionHolder tx = loadTransactions.get(transactionID);
 
-            public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords) throws Exception
-            {
-               hasData.set(true);
+                  if (tx == null)
+                  {
+                     tx = new TransactionHolder(transactionID);
 
-               TransactionHolder tx = loadTransactions.get(transactionID);
+                     loadTransactions.put(transactionID, tx);
+                  }
 
-               if (tx == null)
-               {
-                  // The user could choose to prepare empty transactions
-                  tx = new TransactionHolder(transactionID);
+                  tx.recordsToDelete.add(info);
 
-                  loadTransactions.put(transactionID, tx);
-               }
+                  JournalTransaction tnp = transactions.get(transactionID);
+
+                  if (tnp == null)
+                  {
+                     tnp = new JournalTransaction(transactionID, JournalImpl.this);
 
-               tx.prepared = true;
+                     transactions.put(transactionID, tnp);
+                  }
 
-               tx.extraData = extraData;
+                  tnp.addNegative(file, info.id);
 
-               JournalTransaction journalTransaction = transactions.get(transactionID);
+               }
 
-               if (journalTransaction == null)
+               public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords) throws Exception
                {
-                  journalTransaction = new JournalTransaction(transactionID, JournalImpl.this);
+                  hasData.set(true);
 
-                  transactions.put(transactionID, journalTransaction);
-               }
+                  TransactionHolder tx = loadTransactions.get(transactionID);
 
-               boolean healthy = checkTransactionHealth(file, journalTransaction, orderedFiles, numberOfRecords);
+                  if (tx == null)
+                  {
+                     // The user could choose to prepare empty transactions
+                     tx = new TransactionHolder(transactionID);
 
-               if (healthy)
-               {
-                  journalTransaction.prepare(file);
-               }
-               else
-               {
-                  HornetQJournalLogger.LOGGER.preparedTXIncomplete(transactionID);
-                  tx.invalid = true;
-               }
-            }
+                     loadTransactions.put(transactionID, tx);
+                  }
 
-            public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
-            {
-               TransactionHolder tx = loadTransactions.remove(transactionID);
+                  tx.prepared = true;
 
-               // The commit could be alone on its own journal-file and the
-               // whole transaction body was reclaimed but not the
-               // commit-record
-               // So it is completely legal to not find a transaction at this
-               // point
-               // If we can't find it, we assume the TX was reclaimed and we
-               // ignore this
-               if (tx != null)
-               {
-                  JournalTransaction journalTransaction = transactions.remove(transactionID);
+                  tx.extraData = extraData;
+
+                  JournalTransaction journalTransaction = transactions.get(transactionID);
 
                   if (journalTransaction == null)
                   {
-                     throw new IllegalStateException("Cannot find tx " + transactionID);
+                     journalTransaction = new JournalTransaction(transactionID, JournalImpl.this);
+
+                     transactions.put(transactionID, journalTransaction);
                   }
 
                   boolean healthy = checkTransactionHealth(file, journalTransaction, orderedFiles, numberOfRecords);
 
                   if (healthy)
                   {
-                     for (RecordInfo txRecord : tx.recordInfos)
+                     journalTransaction.prepare(file);
+                  }
+                  else
+                  {
+                     HornetQJournalLogger.LOGGER.preparedTXIncomplete(transactionID);
+                     tx.invalid = true;
+                  }
+               }
+
+               public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
+               {
+                  TransactionHolder tx = loadTransactions.remove(transactionID);
+
+                  // The commit could be alone on its own journal-file and the
+                  // whole transaction body was reclaimed but not the
+                  // commit-record
+                  // So it is completely legal to not find a transaction at this
+                  // point
+                  // If we can't find it, we assume the TX was reclaimed and we
+                  // ignore this
+                  if (tx != null)
+                  {
+                     JournalTransaction journalTransaction = transactions.remove(transactionID);
+
+                     if (journalTransaction == null)
                      {
-                        if (txRecord.isUpdate)
+                        throw new IllegalStateException("Cannot find tx " + transactionID);
+                     }
+
+                     boolean healthy = checkTransactionHealth(file, journalTransaction, orderedFiles, numberOfRecords);
+
+                     if (healthy)
+                     {
+                        for (RecordInfo txRecord : tx.recordInfos)
                         {
-                           loadManager.updateRecord(txRecord);
+                           if (txRecord.isUpdate)
+                           {
+                              loadManager.updateRecord(txRecord);
+                           }
+                           else
+                           {
+                              loadManager.addRecord(txRecord);
+                           }
                         }
-                        else
+
+                        for (RecordInfo deleteValue : tx.recordsToDelete)
                         {
-                           loadManager.addRecord(txRecord);
+                           loadManager.deleteRecord(deleteValue.id);
                         }
-                     }
 
-                     for (RecordInfo deleteValue : tx.recordsToDelete)
-                     {
-                        loadManager.deleteRecord(deleteValue.id);
+                        journalTransaction.commit(file);
                      }
+                     else
+                     {
+                        HornetQJournalLogger.LOGGER.txMissingElements(transactionID);
 
-                     journalTransaction.commit(file);
-                  }
-                  else
-                  {
-                     HornetQJournalLogger.LOGGER.txMissingElements(transactionID);
+                        journalTransaction.forget();
+                     }
 
-                     journalTransaction.forget();
+                     hasData.set(true);
                   }
 
-                  hasData.set(true);
                }
 
-            }
-
-            public void onReadRollbackRecord(final long transactionID) throws Exception
-            {
-               TransactionHolder tx = loadTransactions.remove(transactionID);
-
-               // The rollback could be alone on its own journal-file and the
-               // whole transaction body was reclaimed but the commit-record
-               // So it is completely legal to not find a transaction at this
-               // point
-               if (tx != null)
+               public void onReadRollbackRecord(final long transactionID) throws Exception
                {
-                  JournalTransaction tnp = transactions.remove(transactionID);
+                  TransactionHolder tx = loadTransactions.remove(transactionID);
 
-                  if (tnp == null)
+                  // The rollback could be alone on its own journal-file and the
+                  // whole transaction body was reclaimed but the commit-record
+                  // So it is completely legal to not find a transaction at this
+                  // point
+                  if (tx != null)
                   {
-                     throw new IllegalStateException("Cannot find tx " + transactionID);
-                  }
+                     JournalTransaction tnp = transactions.remove(transactionID);
 
-                  // There is no need to validate summaries/holes on
-                  // Rollbacks.. We will ignore the data anyway.
-                  tnp.rollback(file);
+                     if (tnp == null)
+                     {
+                        throw new IllegalStateException("Cannot find tx " + transactionID);
+                     }
+
+                     // There is no need to validate summaries/holes on
+                     // Rollbacks.. We will ignore the data anyway.
+                     tnp.rollback(file);
 
+                     hasData.set(true);
+                  }
+               }
+
+               public void markAsDataFile(final JournalFile file)
+               {
                   hasData.set(true);
                }
-            }
 
-            public void markAsDataFile(final JournalFile file)
+            };
+
+            int resultLastPost;
+
+            if (readAhead == null)
             {
-               hasData.set(true);
+               resultLastPost = JournalImpl.readJournalFile(fileFactory, file, fileCallback);
+            }
+            else
+            {
+               resultLastPost = readAhead.readJournalFile(file, fileCallback);
             }
 
-         });
-
-         if (hasData.get())
-         {
-            lastDataPos = resultLastPost;
-            filesRepository.addDataFileOnBottom(file);
+            if (hasData.get())
+            {
+               lastDataPos = resultLastPost;
+               filesRepository.addDataFileOnBottom(file);
+            }
+            else
+            {
+               if (changeData)
+               {
+                  // Empty dataFiles with no data
+                  filesRepository.addFreeFile(file, false, false);
+               }
+            }
          }
-         else
+      }
+      finally
+      {
+         if (loadExecutor != null)
          {
-            if (changeData)
+            readAhead.cancel();
+            loadExecutor.shutdownNow();
+
+            if (!loadExecutor.awaitTermination(60, TimeUnit.SECONDS))
             {
-               // Empty dataFiles with no data
-               filesRepository.addFreeFile(file, false, false);
+               HornetQJournalLogger.LOGGER.couldNotStopJournalExecutor();
             }
          }
       }
 
+      final long readTime = System.nanoTime() - readStart;
+
       if (replicationSync == JournalState.SYNCING)
       {
          assert filesRepository.getDataFiles().isEmpty();
@@ -2014,6 +2677,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       setJournalState(JournalState.LOADED);
 
+      final long transactionsStart = System.nanoTime();
+
       for (TransactionHolder transaction : loadTransactions.values())
       {
          if ((!transaction.prepared || transaction.invalid) && replicationSync != JournalState.SYNCING_UP_TO_DATE)
@@ -2050,8 +2715,36 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
       }
 
+      final long transactionsTime = System.nanoTime() - transactionsStart;
+
       checkReclaimStatus();
 
+      long totalTime = System.nanoTime() - loadStart;
+
+      if (readAhead == null)
+      {
+         HornetQJournalLogger.LOGGER.journalLoaded(filesRepository.getFilePrefix(),
+                                                   orderedFiles.size(),
+                                                   records.size(),
+                                                   TimeUnit.NANOSECONDS.toMillis(totalTime),
+                                                   TimeUnit.NANOSECONDS.toMillis(orderTime),
+                                                   TimeUnit.NANOSECONDS.toMillis(readTime),
+                                                   TimeUnit.NANOSECONDS.toMillis(transactionsTime));
+      }
+      else
+      {
+         HornetQJournalLogger.LOGGER.journalLoadedInParallel(filesRepository.getFilePrefix(),
+                                                             orderedFiles.size(),
+                                                             records.size(),
+                                                             threads,
+                                                             TimeUnit.NANOSECONDS.toMillis(totalTime),
+                                                             TimeUnit.NANOSECONDS.toMillis(orderTime),
+                                                             TimeUnit.NANOSECONDS.toMillis(readTime),
+                                                             TimeUnit.NANOSECONDS.toMillis(readAhead.getWaitTime()),
+                                                             TimeUnit.NANOSECONDS.toMillis(readAhead.getReplayTime()),
+                                                             TimeUnit.NANOSECONDS.toMillis(transactionsTime));
+      }
+
       return new JournalLoadInformation(records.size(), maxID.longValue());
    }
 
@@ -2655,12 +3348,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       }
       if (journalVersion >= 2)
       {
-         return recordSize + 1;
+         recordSize += 1;
       }
-      else
+
+      if (journalVersion >= CHECKSUM_FORMAT_VERSION)
       {
-         return recordSize;
+         recordSize += JournalChecksum.SIZE;
       }
+
+      return recordSize;
    }
 
    /**
@@ -2719,6 +3415,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                                     final SequentialFile sequentialFile,
                                     final int userVersion,
                                     final long fileID) throws Exception
+   {
+      return initFileHeader(fileFactory, sequentialFile, FORMAT_VERSION, userVersion, fileID);
+   }
+
+   public static int initFileHeader(final SequentialFileFactory fileFactory,
+                                    final SequentialFile sequentialFile,
+                                    final int formatVersion,
+                                    final int userVersion,
+                                    final long fileID) throws Exception
    {
       // We don't need to release buffers while writing.
       ByteBuffer bb = fileFactory.newBuffer(JournalImpl.SIZE_HEADER);
@@ -2727,7 +3432,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       try
       {
-         JournalImpl.writeHeader(buffer, userVersion, fileID);
+         JournalImpl.writeHeader(buffer, formatVersion, userVersion, fileID);
 
          bb.rewind();
 
@@ -2752,7 +3457,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
     */
    public static void writeHeader(final HornetQBuffer buffer, final int userVersion, final long fileID)
    {
-      buffer.writeInt(JournalImpl.FORMAT_VERSION);
+      writeHeader(buffer, FORMAT_VERSION, userVersion, fileID);
+   }
+
+   public static void writeHeader(final HornetQBuffer buffer,
+                                  final int formatVersion,
+                                  final int userVersion,
+                                  final long fileID)
+   {
+      buffer.writeInt(formatVersion);
 
       buffer.writeInt(userVersion);
 
@@ -2774,6 +3487,9 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       final IOAsyncTask callback;
 
+      // the current file is always on the format of the journal, see setUpCurrentFile
+      encoder.setChecksum(isChecksums());
+
       final int size = encoder.getEncodeSize();
 
       switchFileIfNecessary(size);
@@ -3122,7 +3838,14 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       // The current file is the last one that has data
 
       currentFile = filesRepository.pollLastDataFile();
-      if (currentFile != null)
+      if (currentFile != null && currentFile.getJournalVersion() != formatVersion)
+      {
+         // Records are appended on the format of the journal, so we don't append to a file
+         // written on another format (i.e. checksums were just enabled or disabled)
+         filesRepository.addDataFileOnBottom(currentFile);
+         currentFile = filesRepository.takeFile(true, true, true, false);
+      }
+      else if (currentFile != null)
       {
          if (!currentFile.getFile().isOpen())
             currentFile.getFile().open();
@@ -3137,6 +3860,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       fileFactory.activateBuffer(currentFile.getFile());
 
       filesRepository.pushOpenedFile();
+
+      filesRepository.schedulePoolFill();
       return currentFile;
    }
 
@@ -14,6 +14,7 @@ package org.hornetq.core.journal.impl;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.hornetq.api.core.Pair;
 
@@ -44,6 +45,37 @@ public class JournalRecord
       addFile.addSize(size);
    }
 
+   JournalFile getAddFile()
+   {
+      return addFile;
+   }
+
+   /**
+    * Takes the updates of {@code record} that are not on {@code excludedFiles}, used when the
+    * record was compacted from those files. The counters of the files were already taken into
+    * account by {@code record}.
+    */
+   void copyUpdateFiles(final JournalRecord record, final Set<JournalFile> excludedFiles)
+   {
+      if (record.updateFiles == null)
+      {
+         return;
+      }
+
+      for (Pair<JournalFile, Integer> update : record.updateFiles)
+      {
+         if (!excludedFiles.contains(update.getA()))
+         {
+            if (updateFiles == null)
+            {
+               updateFiles = new ArrayList<Pair<JournalFile, Integer>>();
+            }
+
+            updateFiles.add(update);
+         }
+      }
+   }
+
    void addUpdateFile(final JournalFile updateFile, final int size)
    {
       if (updateFiles == null)
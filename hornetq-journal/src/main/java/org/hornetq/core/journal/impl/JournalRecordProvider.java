@@ -12,7 +12,7 @@
  */
 package org.hornetq.core.journal.impl;
 
-import java.util.Map;
+import org.hornetq.utils.ConcurrentLongHashMap;
 
 /**
  * This is an interface used only internally.
@@ -29,5 +29,5 @@ public interface JournalRecordProvider
 {
    JournalCompactor getCompactor();
 
-   Map<Long, JournalRecord> getRecords();
+   ConcurrentLongHashMap<JournalRecord> getRecords();
 }
@@ -102,6 +102,24 @@ public class JournalTransaction
       }
    }
 
+   /**
+    * @return the lowest fileID this transaction has records on, or {@link Long#MAX_VALUE} if it has none
+    */
+   public long getFirstFileID()
+   {
+      long first = Long.MAX_VALUE;
+
+      if (pendingFiles != null)
+      {
+         for (JournalFile file : pendingFiles)
+         {
+            first = Math.min(first, file.getFileID());
+         }
+      }
+
+      return first;
+   }
+
    public void setCompacting()
    {
       compacting = true;
@@ -311,6 +329,7 @@ public class JournalTransaction
          for (JournalFile jf : pendingFiles)
          {
             file.incNegCount(jf);
+            jf.addTransactionCompletion(file);
          }
       }
    }
@@ -362,6 +381,7 @@ public class JournalTransaction
          for (JournalFile jf : pendingFiles)
          {
             file.incNegCount(jf);
+            jf.addTransactionCompletion(file);
          }
       }
    }
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.journal.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.HornetQExceptionType;
+import org.hornetq.api.core.HornetQIOErrorException;
+import org.hornetq.api.core.HornetQIllegalStateException;
+import org.hornetq.core.journal.IOAsyncTask;
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.journal.HornetQJournalBundle;
+import org.hornetq.journal.HornetQJournalLogger;
+
+/**
+ * A SequentialFile backed by a {@link MappedByteBuffer}.
+ * <p>
+ * Writes and reads are plain memory copies into the mapping, and a sync is a {@code msync} of the
+ * mapped region. Journal files are filled before they are used, so they are mapped once. Files
+ * that grow as they are written (such as page files) are remapped with a larger size when a write
+ * goes past the end of the mapping, and truncated back to the written size when closed. A file that
+ * wasn't closed keeps those zeroes after its data, so its readers have to find where the data ends.
+ */
+public final class MappedSequentialFile extends AbstractSequentialFile
+{
+   // a mapping that needs to grow at least doubles, and is never smaller than this
+   private static final int MIN_REMAP_SIZE = 1024 * 1024;
+
+   private final Object mappingLock = new Object();
+
+   private FileChannel channel;
+
+   private RandomAccessFile rfile;
+
+   private volatile MappedByteBuffer mappedBuffer;
+
+   /**
+    * The write semaphore here is only used when writing asynchronously
+    */
+   private Semaphore maxIOSemaphore;
+
+   private final int defaultMaxIO;
+
+   private int maxIO;
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final String directory,
+                               final String fileName,
+                               final int maxIO,
+                               final Executor writerExecutor)
+   {
+      super(directory, new File(directory + "/" + fileName), factory, writerExecutor);
+      defaultMaxIO = maxIO;
+   }
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final File file,
+                               final int maxIO,
+                               final Executor writerExecutor)
+   {
+      super(file.getParent(), new File(file.getPath()), factory, writerExecutor);
+      defaultMaxIO = maxIO;
+   }
+
+   public int getAlignment()
+   {
+      return 1;
+   }
+
+   public int calculateBlockStart(final int position)
+   {
+      return position;
+   }
+
+   public synchronized boolean isOpen()
+   {
+      return channel != null;
+   }
+
+   public synchronized void open() throws IOException
+   {
+      open(defaultMaxIO, true);
+   }
+
+   public void open(final int maxIO, final boolean useExecutor) throws IOException
+   {
+      try
+      {
+         rfile = new RandomAccessFile(getFile(), "rw");
+
+         channel = rfile.getChannel();
+
+         fileSize = channel.size();
+
+         // as a newly opened channel, reads and writes start at the beginning of the file
+         position.set(0);
+
+         if (fileSize > 0)
+         {
+            mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+         }
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+
+      if (writerExecutor != null && useExecutor)
+      {
+         maxIOSemaphore = new Semaphore(maxIO);
+         this.maxIO = maxIO;
+      }
+   }
+
+   public void fill(final int position, final int size, final byte fillCharacter) throws IOException
+   {
+      byte[] fillBlock = new byte[Math.min(size, 64 * 1024)];
+
+      for (int i = 0; i < fillBlock.length; i++)
+      {
+         fillBlock[i] = fillCharacter;
+      }
+
+      try
+      {
+         ByteBuffer target = mapping(position + size).duplicate();
+
+         target.position(position);
+
+         int remaining = size;
+
+         while (remaining > 0)
+         {
+            int length = Math.min(remaining, fillBlock.length);
+            target.put(fillBlock, 0, length);
+            remaining -= length;
+         }
+
+         sync();
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+   }
+
+   public synchronized void waitForClose() throws InterruptedException
+   {
+      while (isOpen())
+      {
+         wait();
+      }
+   }
+
+   @Override
+   public synchronized void close() throws IOException, InterruptedException, HornetQException
+   {
+      super.close();
+
+      if (maxIOSemaphore != null)
+      {
+         while (!maxIOSemaphore.tryAcquire(maxIO, 60, TimeUnit.SECONDS))
+         {
+            HornetQJournalLogger.LOGGER.errorClosingFile(getFileName());
+         }
+      }
+
+      maxIOSemaphore = null;
+      try
+      {
+         if (channel != null)
+         {
+            // the mapping may have grown ahead of the data
+            if (channel.size() > fileSize)
+            {
+               channel.truncate(fileSize);
+            }
+
+            channel.close();
+         }
+
+         if (rfile != null)
+         {
+            rfile.close();
+         }
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+      channel = null;
+
+      rfile = null;
+
+      // there's no public API to unmap the buffer, the GC will release it
+      mappedBuffer = null;
+
+      notifyAll();
+   }
+
+   public int read(final ByteBuffer bytes) throws Exception
+   {
+      return read(bytes, null);
+   }
+
+   public synchronized int read(final ByteBuffer bytes, final IOAsyncTask callback) throws HornetQIllegalStateException
+   {
+      if (channel == null)
+      {
+         throw new HornetQIllegalStateException("File " + this.getFileName() + " has a null channel");
+      }
+
+      int readPosition = (int)position.get();
+
+      int bytesRead = (int)Math.min(bytes.remaining(), fileSize - readPosition);
+
+      if (bytesRead > 0)
+      {
+         ByteBuffer source = mappedBuffer.duplicate();
+         source.position(readPosition);
+         source.limit(readPosition + bytesRead);
+
+         bytes.put(source);
+
+         position.addAndGet(bytesRead);
+      }
+      else
+      {
+         // end of file, as FileChannel.read would return
+         bytesRead = -1;
+      }
+
+      if (callback != null)
+      {
+         callback.done();
+      }
+
+      bytes.flip();
+
+      return bytesRead;
+   }
+
+   public void sync() throws IOException
+   {
+      MappedByteBuffer buffer = mappedBuffer;
+
+      if (buffer != null)
+      {
+         buffer.force();
+      }
+   }
+
+   public long size() throws IOException
+   {
+      if (channel == null)
+      {
+         return getFile().length();
+      }
+
+      return fileSize;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "MappedSequentialFile " + getFile();
+   }
+
+   public SequentialFile cloneFile()
+   {
+      return new MappedSequentialFile(factory, getFile(), maxIO, writerExecutor);
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      if (callback == null)
+      {
+         throw new NullPointerException("callback parameter need to be set");
+      }
+
+      try
+      {
+         internalWrite(bytes, sync, callback);
+      }
+      catch (Exception e)
+      {
+         callback.onError(HornetQExceptionType.GENERIC_EXCEPTION.getCode(), e.getMessage());
+      }
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync) throws Exception
+   {
+      internalWrite(bytes, sync, null);
+   }
+
+   public void writeInternal(final ByteBuffer bytes) throws Exception
+   {
+      internalWrite(bytes, true, null);
+   }
+
+   @Override
+   protected ByteBuffer newBuffer(int size, final int limit)
+   {
+      // As on NIO, we don't need to allocate a buffer the entire size of the timed buffer
+
+      size = limit;
+
+      return super.newBuffer(size, limit);
+   }
+
+   private void internalWrite(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback)
+      throws IOException, HornetQIOErrorException, InterruptedException
+   {
+      if (!isOpen())
+      {
+         if (callback != null)
+         {
+            callback.onError(HornetQExceptionType.IO_ERROR.getCode(), "File not opened");
+         }
+         else
+         {
+            throw HornetQJournalBundle.BUNDLE.fileNotOpened();
+         }
+         return;
+      }
+
+      // the position is reserved now, so writes land in the order they were submitted
+      final long writePosition = position.getAndAdd(bytes.limit());
+
+      if (maxIOSemaphore == null || callback == null)
+      {
+         // if maxIOSemaphore == null, that means we are not using executors and the writes are synchronous
+         try
+         {
+            doInternalWrite(bytes, writePosition, sync, callback);
+         }
+         catch (IOException e)
+         {
+            factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         }
+      }
+      else
+      {
+         // This is a flow control on writing, just like maxAIO on libaio
+         maxIOSemaphore.acquire();
+
+         writerExecutor.execute(new Runnable()
+         {
+            public void run()
+            {
+               try
+               {
+                  try
+                  {
+                     doInternalWrite(bytes, writePosition, sync, callback);
+                  }
+                  catch (IOException e)
+                  {
+                     HornetQJournalLogger.LOGGER.errorSubmittingWrite(e);
+                     factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), MappedSequentialFile.this);
+                     callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+                  }
+                  catch (Throwable e)
+                  {
+                     HornetQJournalLogger.LOGGER.errorSubmittingWrite(e);
+                     callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+                  }
+               }
+               finally
+               {
+                  maxIOSemaphore.release();
+               }
+            }
+         });
+      }
+   }
+
+   private void doInternalWrite(final ByteBuffer bytes,
+                                final long writePosition,
+                                final boolean sync,
+                                final IOAsyncTask callback) throws IOException
+   {
+      ByteBuffer target = mapping(writePosition + bytes.remaining()).duplicate();
+
+      target.position((int)writePosition);
+
+      target.put(bytes);
+
+      if (sync)
+      {
+         sync();
+      }
+
+      if (callback != null)
+      {
+         callback.done();
+      }
+   }
+
+   /**
+    * Returns a mapping covering at least {@code requiredSize} bytes, remapping the file if needed.
+    * A previous mapping stays valid (it maps the same pages) for any write still copying into it.
+    */
+   private MappedByteBuffer mapping(final long requiredSize) throws IOException
+   {
+      synchronized (mappingLock)
+      {
+         MappedByteBuffer buffer = mappedBuffer;
+
+         if (buffer == null || buffer.capacity() < requiredSize)
+         {
+            long newSize;
+
+            if (buffer == null)
+            {
+               newSize = Math.max(requiredSize, MIN_REMAP_SIZE);
+            }
+            else
+            {
+               newSize = Math.max(requiredSize, buffer.capacity() + Math.max(buffer.capacity(), MIN_REMAP_SIZE));
+            }
+
+            newSize = Math.min(newSize, Integer.MAX_VALUE);
+
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+
+            mappedBuffer = buffer;
+         }
+
+         if (requiredSize > fileSize)
+         {
+            fileSize = requiredSize;
+         }
+
+         return buffer;
+      }
+   }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.journal.impl;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lines up the syncs of several files sharing a device, such as the timed buffer of the message
+ * journal and the paging stores.
+ * <p>
+ * Each participant batches its own syncs with a timer. When one of them syncs, the coordinator
+ * asks the others to sync whatever they have pending right away, so an operation waiting on more
+ * than one of them completes after a single round of syncs instead of waiting for each timer in
+ * turn.
+ */
+public final class SyncCoordinator
+{
+   public interface Participant
+   {
+      /**
+       * Syncs (or schedules a sync right away of) anything waiting for a sync.
+       *
+       * @return true if there was something pending
+       */
+      boolean syncPending();
+   }
+
+   private final CopyOnWriteArrayList<Participant> participants = new CopyOnWriteArrayList<Participant>();
+
+   // a participant syncing because of another one doesn't make the others sync again
+   private final ThreadLocal<Boolean> coordinating = new ThreadLocal<Boolean>();
+
+   private final AtomicLong coordinatedSyncs = new AtomicLong(0);
+
+   public void addParticipant(final Participant participant)
+   {
+      participants.addIfAbsent(participant);
+   }
+
+   public void removeParticipant(final Participant participant)
+   {
+      participants.remove(participant);
+   }
+
+   /**
+    * Called by a participant that just synced, or is about to.
+    */
+   public void onSync(final Participant origin)
+   {
+      if (coordinating.get() != null)
+      {
+         return;
+      }
+
+      coordinating.set(Boolean.TRUE);
+      try
+      {
+         for (Participant participant : participants)
+         {
+            if (participant != origin && participant.syncPending())
+            {
+               coordinatedSyncs.incrementAndGet();
+            }
+         }
+      }
+      finally
+      {
+         coordinating.remove();
+      }
+   }
+
+   /**
+    * @return how many syncs were done ahead of their timer because another participant synced
+    */
+   public long getCoordinatedSyncs()
+   {
+      return coordinatedSyncs.get();
+   }
+
+   @Override
+   public String toString()
+   {
+      return "SyncCoordinator(participants=" + participants.size() + ")";
+   }
+}
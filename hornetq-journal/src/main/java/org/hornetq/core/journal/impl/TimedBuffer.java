@@ -20,6 +20,7 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
@@ -27,6 +28,7 @@ import org.hornetq.api.core.HornetQInterruptedException;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
+import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.journal.HornetQJournalLogger;
 
 /**
@@ -35,13 +37,17 @@ import org.hornetq.journal.HornetQJournalLogger;
  * @author <a href="mailto:clebert.suconic@jboss.org">Clebert Suconic</a>
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  */
-public class TimedBuffer
+public class TimedBuffer implements SyncCoordinator.Participant
 {
    // Constants -----------------------------------------------------
 
    // The number of tries on sleep before switching to spin
    public static final int MAX_CHECKS_ON_SLEEP = 20;
 
+   // Buckets of the batch size histogram: bucket i counts flushes of 2^i to 2^(i+1)-1 records,
+   // the last one counts anything bigger
+   public static final int BATCH_HISTOGRAM_SIZE = 12;
+
    // Attributes ----------------------------------------------------
 
    private TimedBufferObserver bufferObserver;
@@ -92,6 +98,31 @@ public class TimedBuffer
    // no need to be volatile as every access is synchronized
    private boolean spinning = false;
 
+   private final AtomicLongArray batchHistogram = new AtomicLongArray(BATCH_HISTOGRAM_SIZE);
+
+   // adaptive timeout: the bounds, and moving averages (in nanoseconds) of how long a synced flush
+   // takes and of the interval between two sync requests
+   private volatile boolean adaptiveTimeout;
+
+   private volatile int minTimeout;
+
+   private volatile int maxTimeout;
+
+   private volatile long syncTimeAverage;
+
+   private long syncIntervalAverage = Long.MAX_VALUE;
+
+   private long lastSyncRequest;
+
+   private volatile SyncCoordinator syncCoordinator;
+
+   // start and end positions of the records on the buffer waiting for their checksum
+   private int[] checksumRecords = new int[64];
+
+   private int checksumRecordsSize;
+
+   private final JournalChecksum checksum = new JournalChecksum();
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -121,6 +152,90 @@ public class TimedBuffer
       this.timeout = timeout;
    }
 
+   /**
+    * Makes the flush timeout follow the load, between the given bounds (in nanoseconds).
+    * <p>
+    * The buffer keeps track of how long synced flushes take and of how often syncs are requested.
+    * When more than one sync request is expected to arrive while a sync is done, waiting up to the
+    * duration of a sync groups them on a single flush. Otherwise waiting would only add latency, and
+    * the timeout moves towards {@code minTimeout}.
+    */
+   public void setAdaptiveTimeout(final int minTimeout, final int maxTimeout)
+   {
+      if (minTimeout < 0 || maxTimeout < minTimeout)
+      {
+         throw new IllegalArgumentException("Invalid timeout bounds: min=" + minTimeout + ", max=" + maxTimeout);
+      }
+
+      this.minTimeout = minTimeout;
+      this.maxTimeout = maxTimeout;
+      this.timeout = Math.min(Math.max(timeout, minTimeout), maxTimeout);
+      this.adaptiveTimeout = true;
+   }
+
+   public boolean isAdaptiveTimeout()
+   {
+      return adaptiveTimeout;
+   }
+
+   /**
+    * @return the timeout currently used, in nanoseconds
+    */
+   public int getTimeout()
+   {
+      return timeout;
+   }
+
+   /**
+    * @return how many flushes were done for each batch size, see {@link #BATCH_HISTOGRAM_SIZE}
+    */
+   public long[] getBatchHistogram()
+   {
+      long[] histogram = new long[BATCH_HISTOGRAM_SIZE];
+
+      for (int i = 0; i < histogram.length; i++)
+      {
+         histogram[i] = batchHistogram.get(i);
+      }
+
+      return histogram;
+   }
+
+   /**
+    * Whenever the timer flushes a pending sync, the other participants of the coordinator sync
+    * along, and this buffer flushes its pending syncs whenever another participant syncs.
+    */
+   public void setSyncCoordinator(final SyncCoordinator syncCoordinator)
+   {
+      if (this.syncCoordinator != null)
+      {
+         this.syncCoordinator.removeParticipant(this);
+      }
+
+      this.syncCoordinator = syncCoordinator;
+
+      if (syncCoordinator != null)
+      {
+         syncCoordinator.addParticipant(this);
+      }
+   }
+
+   public SyncCoordinator getSyncCoordinator()
+   {
+      return syncCoordinator;
+   }
+
+   public synchronized boolean syncPending()
+   {
+      if (started && pendingSync)
+      {
+         flush();
+         return true;
+      }
+
+      return false;
+   }
+
    // for Debug purposes
    public synchronized boolean isUseSleep()
    {
@@ -276,12 +391,31 @@ public class TimedBuffer
 
       delayFlush = false;
 
+      int start = buffer.writerIndex();
+
       bytes.encode(buffer);
 
+      if (bytes instanceof JournalInternalRecord && ((JournalInternalRecord)bytes).isChecksum())
+      {
+         addChecksumRecord(start, buffer.writerIndex());
+      }
+
       callbacks.add(callback);
 
       if (sync)
       {
+         if (adaptiveTimeout)
+         {
+            long now = System.nanoTime();
+
+            if (lastSyncRequest != 0)
+            {
+               syncIntervalAverage = movingAverage(syncIntervalAverage, now - lastSyncRequest);
+            }
+
+            lastSyncRequest = now;
+         }
+
          pendingSync = true;
 
          startSpin();
@@ -316,6 +450,14 @@ public class TimedBuffer
                bytesFlushed.addAndGet(pos);
             }
 
+            // the checksums are calculated once per flush, on the thread doing it
+            for (int i = 0; i < checksumRecordsSize; i += 2)
+            {
+               checksum.fill(buffer, checksumRecords[i], checksumRecords[i + 1]);
+            }
+
+            checksumRecordsSize = 0;
+
             ByteBuffer bufferToFlush = bufferObserver.newBuffer(bufferSize, pos);
 
             // Putting a byteArray on a native buffer is much faster, since it will do in a single native call.
@@ -324,6 +466,16 @@ public class TimedBuffer
 
             bufferToFlush.put(buffer.toByteBuffer().array(), 0, pos);
 
+            int batchSize = callbacks.size();
+
+            batchHistogram.incrementAndGet(Math.min(BATCH_HISTOGRAM_SIZE - 1,
+                                                    31 - Integer.numberOfLeadingZeros(Math.max(batchSize, 1))));
+
+            if (adaptiveTimeout && pendingSync)
+            {
+               callbacks.add(new SyncTimer());
+            }
+
             bufferObserver.flushBuffer(bufferToFlush, pendingSync, callbacks);
 
             stopSpin();
@@ -348,8 +500,82 @@ public class TimedBuffer
 
    // Private -------------------------------------------------------
 
+   private void addChecksumRecord(final int start, final int end)
+   {
+      if (checksumRecordsSize + 2 > checksumRecords.length)
+      {
+         int[] newRecords = new int[checksumRecords.length * 2];
+         System.arraycopy(checksumRecords, 0, newRecords, 0, checksumRecordsSize);
+         checksumRecords = newRecords;
+      }
+
+      checksumRecords[checksumRecordsSize++] = start;
+      checksumRecords[checksumRecordsSize++] = end;
+   }
+
+   private static long movingAverage(final long average, final long sample)
+   {
+      if (average == Long.MAX_VALUE || average == 0)
+      {
+         return sample;
+      }
+      return average - (average >> 3) + (sample >> 3);
+   }
+
+   /**
+    * Called by the IO completion of a synced flush
+    */
+   private void syncDone(final long syncTime)
+   {
+      long syncAverage = movingAverage(syncTimeAverage, syncTime);
+
+      syncTimeAverage = syncAverage;
+
+      long target;
+
+      // syncIntervalAverage is only a hint here, no need to synchronize on it
+      if (syncIntervalAverage < syncAverage)
+      {
+         target = syncAverage;
+      }
+      else
+      {
+         target = minTimeout;
+      }
+
+      long newTimeout = movingAverage(timeout, target);
+
+      timeout = (int)Math.min(Math.max(newTimeout, minTimeout), maxTimeout);
+   }
+
+   private void flushAndCoordinate()
+   {
+      flush();
+
+      SyncCoordinator coordinator = syncCoordinator;
+
+      if (coordinator != null)
+      {
+         coordinator.onSync(this);
+      }
+   }
+
    // Inner classes -------------------------------------------------
 
+   private class SyncTimer implements IOAsyncTask
+   {
+      private final long start = System.nanoTime();
+
+      public void done()
+      {
+         syncDone(System.nanoTime() - start);
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+      }
+   }
+
    private class LogRatesTimerTask extends TimerTask
    {
       private boolean closed;
@@ -403,9 +629,6 @@ public class TimedBuffer
       int failedChecks = 0;
       long timeBefore = 0;
 
-      final int sleepMillis = timeout / 1000000; // truncates
-      final int sleepNanos = timeout % 1000000;
-
 
       public void run()
       {
@@ -423,13 +646,13 @@ public class TimedBuffer
                if (isUseSleep())
                {
                   // if using sleep, we will always flush
-                  flush();
+                  flushAndCoordinate();
                   lastFlushTime = System.nanoTime();
                }
                else if (bufferObserver != null && System.nanoTime() > lastFlushTime + timeout)
                {
                   // if not using flush we will spin and do the time checks manually
-                  flush();
+                  flushAndCoordinate();
                   lastFlushTime = System.nanoTime();
                }
 
@@ -461,6 +684,9 @@ public class TimedBuffer
       {
          if (isUseSleep())
          {
+            // the timeout may change when it's adaptive
+            final int currentTimeout = timeout;
+
             if (checks < MAX_CHECKS_ON_SLEEP)
             {
                timeBefore = System.nanoTime();
@@ -468,7 +694,7 @@ public class TimedBuffer
 
             try
             {
-               sleep(sleepMillis, sleepNanos);
+               sleep(currentTimeout / 1000000, currentTimeout % 1000000);
             }
             catch (InterruptedException e)
             {
@@ -485,7 +711,7 @@ public class TimedBuffer
                long realTimeSleep = System.nanoTime() - timeBefore;
 
                // I'm letting the real time to be up to 50% than the requested sleep.
-               if (realTimeSleep > timeout * 1.5)
+               if (realTimeSleep > currentTimeout * 1.5)
                {
                   failedChecks++;
                }
@@ -84,6 +84,8 @@ public class JournalCompleteRecordTX extends JournalInternalRecord
          transactionData.encode(buffer);
       }
 
+      encodeChecksum(buffer);
+
       buffer.writeInt(getEncodeSize());
    }
 
@@ -104,11 +106,11 @@ public class JournalCompleteRecordTX extends JournalInternalRecord
    {
       if (txRecordType == TX_RECORD_TYPE.COMMIT)
       {
-         return JournalImpl.SIZE_COMPLETE_TRANSACTION_RECORD + 1;
+         return JournalImpl.SIZE_COMPLETE_TRANSACTION_RECORD + 1 + getChecksumSize();
       }
       else
       {
-         return JournalImpl.SIZE_PREPARE_RECORD + (transactionData != null ? transactionData.getEncodeSize() : 0) + 1;
+         return JournalImpl.SIZE_PREPARE_RECORD + (transactionData != null ? transactionData.getEncodeSize() : 0) + 1 + getChecksumSize();
       }
    }
 }
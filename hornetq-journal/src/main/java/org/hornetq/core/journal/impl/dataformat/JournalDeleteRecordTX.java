@@ -66,12 +66,14 @@ public class JournalDeleteRecordTX extends JournalInternalRecord
          record.encode(buffer);
       }
 
+      encodeChecksum(buffer);
+
       buffer.writeInt(getEncodeSize());
    }
 
    @Override
    public int getEncodeSize()
    {
-      return JournalImpl.SIZE_DELETE_RECORD_TX + (record != null ? record.getEncodeSize() : 0) + 1;
+      return JournalImpl.SIZE_DELETE_RECORD_TX + (record != null ? record.getEncodeSize() : 0) + 1 + getChecksumSize();
    }
 }
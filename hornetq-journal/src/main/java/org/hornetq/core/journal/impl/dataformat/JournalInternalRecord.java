@@ -14,6 +14,7 @@ package org.hornetq.core.journal.impl.dataformat;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.utils.DataConstants;
 
 /**
  * A InternalEncoder
@@ -29,6 +30,8 @@ public abstract class JournalInternalRecord implements EncodingSupport
 
    protected byte compactCount;
 
+   protected boolean checksum;
+
    public int getFileID()
    {
       return fileID;
@@ -69,5 +72,36 @@ public abstract class JournalInternalRecord implements EncodingSupport
       }
    }
 
+   public boolean isChecksum()
+   {
+      return checksum;
+   }
+
+   /**
+    * Records written to files on the checksum format carry a CRC32 of their bytes right before the
+    * size closing them.
+    */
+   public void setChecksum(final boolean checksum)
+   {
+      this.checksum = checksum;
+   }
+
+   /**
+    * Reserves the slot for the checksum, which is only filled when the record is flushed to the
+    * file.
+    */
+   protected void encodeChecksum(final HornetQBuffer buffer)
+   {
+      if (checksum)
+      {
+         buffer.writeInt(0);
+      }
+   }
+
+   protected int getChecksumSize()
+   {
+      return checksum ? DataConstants.SIZE_INT : 0;
+   }
+
    public abstract int getEncodeSize();
 }
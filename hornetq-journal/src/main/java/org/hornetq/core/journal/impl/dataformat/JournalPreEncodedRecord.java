@@ -0,0 +1,78 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.journal.impl.dataformat;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.utils.DataConstants;
+
+/**
+ * A record whose bytes were produced before the journal append lock was taken.
+ * <p>
+ * The encoding of the user data (which can be expensive for large messages) happens on the caller's
+ * thread, concurrently with other producers. Only the fileID, which is known once the current file
+ * has been chosen, is stamped into the bytes when the record is appended. The checksum, if any, is
+ * left for the flush as on any other record.
+ */
+public class JournalPreEncodedRecord extends JournalInternalRecord
+{
+   // RecordType(byte) comes first on every record, followed by the FileID(int)
+   private static final int FILE_ID_POSITION = DataConstants.SIZE_BYTE;
+
+   private final byte[] data;
+
+   public JournalPreEncodedRecord(final JournalInternalRecord record)
+   {
+      checksum = record.isChecksum();
+
+      data = new byte[record.getEncodeSize()];
+
+      HornetQBuffer buffer = HornetQBuffers.wrappedBuffer(data);
+
+      buffer.clear();
+
+      record.encode(buffer);
+   }
+
+   @Override
+   public void setFileID(final int fileID)
+   {
+      super.setFileID(fileID);
+
+      data[FILE_ID_POSITION] = (byte)(fileID >>> 24);
+      data[FILE_ID_POSITION + 1] = (byte)(fileID >>> 16);
+      data[FILE_ID_POSITION + 2] = (byte)(fileID >>> 8);
+      data[FILE_ID_POSITION + 3] = (byte)fileID;
+   }
+
+   @Override
+   public void setChecksum(final boolean checksum)
+   {
+      if (checksum != this.checksum)
+      {
+         throw new IllegalStateException("The record was already encoded with checksum=" + this.checksum);
+      }
+   }
+
+   @Override
+   public void encode(final HornetQBuffer buffer)
+   {
+      buffer.writeBytes(data);
+   }
+
+   @Override
+   public int getEncodeSize()
+   {
+      return data.length;
+   }
+}
@@ -85,6 +85,21 @@ public interface HornetQJournalLogger extends BasicLogger
    @Message(id = 141009, value = "A Free File is less than the maximum data", format = Message.Format.MESSAGE_FORMAT)
    void fileTooSmall();
 
+   @LogMessage(level = Logger.Level.INFO)
+   @Message(id = 141010, value = "Journal {0} loaded {1} files and {2} records in {3} ms" +
+                                 " (ordering files: {4} ms, reading files: {5} ms, pending transactions: {6} ms)",
+            format = Message.Format.MESSAGE_FORMAT)
+   void journalLoaded(String prefix, Integer files, Integer records, Long total, Long ordering, Long reading,
+                      Long transactions);
+
+   @LogMessage(level = Logger.Level.INFO)
+   @Message(id = 141011, value = "Journal {0} loaded {1} files and {2} records using {3} threads in {4} ms" +
+                                 " (ordering files: {5} ms, reading files: {6} ms of which waiting on decoding: {7} ms" +
+                                 " and replaying records: {8} ms, pending transactions: {9} ms)",
+            format = Message.Format.MESSAGE_FORMAT)
+   void journalLoadedInParallel(String prefix, Integer files, Integer records, Integer threads, Long total,
+                                Long ordering, Long reading, Long waiting, Long replaying, Long transactions);
+
    @LogMessage(level = Logger.Level.WARN)
    @Message(id = 142000, value = "You have a native library with a different version than expected", format = Message.Format.MESSAGE_FORMAT)
    void incompatibleNativeLibrary();
@@ -241,6 +256,11 @@ public interface HornetQJournalLogger extends BasicLogger
    @Message(id = 142034, value = "Exception on submitting write", format = Message.Format.MESSAGE_FORMAT)
    void errorSubmittingWrite(@Cause Throwable e);
 
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 142035, value = "Record at position {0} on journal file {1} does not match its checksum and is being ignored",
+            format = Message.Format.MESSAGE_FORMAT)
+   void recordChecksumMismatch(int position, String fileName);
+
    @LogMessage(level = Logger.Level.ERROR)
    @Message(id = 144000, value = "Failed to delete file {0}", format = Message.Format.MESSAGE_FORMAT)
    void errorDeletingFile(Object e);
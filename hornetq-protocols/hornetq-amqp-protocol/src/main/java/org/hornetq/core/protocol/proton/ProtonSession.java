@@ -163,6 +163,11 @@ public class ProtonSession implements SessionCallback
       //To change body of implemented methods use File | Settings | File Templates.
    }
 
+   @Override
+   public void afterDelivery() throws Exception
+   {
+   }
+
    @Override
    public void disconnect(long consumerId, String queueName)
    {
@@ -200,6 +200,11 @@ public class StompSession implements SessionCallback
       connection.getTransportConnection().removeReadyListener(listener);
    }
 
+   @Override
+   public void afterDelivery() throws Exception
+   {
+   }
+
    @Override
    public void disconnect(long consumerId, String queueName)
    {
@@ -512,14 +512,14 @@ public interface Configuration extends Serializable
    void setJournalDirectory(String dir);
 
    /**
-    * Returns the type of journal used by this server (either {@code NIO} or {@code ASYNCIO}).
+    * Returns the type of journal used by this server ({@code NIO}, {@code ASYNCIO} or {@code MAPPED}).
     * <br>
     * Default value is ASYNCIO.
     */
    JournalType getJournalType();
 
    /**
-    * Sets the type of journal used by this server (either {@code NIO} or {@code ASYNCIO}).
+    * Sets the type of journal used by this server ({@code NIO}, {@code ASYNCIO} or {@code MAPPED}).
     */
    void setJournalType(JournalType type);
 
@@ -578,6 +578,127 @@ public interface Configuration extends Serializable
     */
    void setJournalCompactPercentage(int percentage);
 
+   /**
+    * Returns whether the journal is compacted incrementally, a few of the oldest files at a time. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_COMPACT_INCREMENTAL}.
+    */
+   boolean isJournalCompactIncremental();
+
+   /**
+    * Sets whether the journal is compacted incrementally, a few of the oldest files at a time.
+    */
+   void setJournalCompactIncremental(boolean incremental);
+
+   /**
+    * Returns the maximum number of data files compacted at a time when the compaction is incremental. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_COMPACT_MAX_FILES}.
+    */
+   int getJournalCompactMaxFiles();
+
+   /**
+    * Sets the maximum number of data files compacted at a time when the compaction is incremental.
+    */
+   void setJournalCompactMaxFiles(int maxFiles);
+
+   /**
+    * Returns the time (in milliseconds) an incremental compaction aims to hold the journal lock for at most. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_COMPACT_MAX_PAUSE}.
+    */
+   int getJournalCompactMaxPause();
+
+   /**
+    * Sets the time (in milliseconds) an incremental compaction aims to hold the journal lock for at most.
+    */
+   void setJournalCompactMaxPause(int maxPause);
+
+   /**
+    * Returns whether journal records are encoded by the producing thread before the append lock is taken. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_CONCURRENT_ENCODING}.
+    */
+   boolean isJournalConcurrentEncoding();
+
+   /**
+    * Sets whether journal records are encoded by the producing thread before the append lock is taken.
+    */
+   void setJournalConcurrentEncoding(boolean concurrentEncoding);
+
+   /**
+    * Returns the number of threads reading the journal files when the journal is loaded. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_LOAD_THREADS}.
+    */
+   int getJournalLoadThreads();
+
+   /**
+    * Sets the number of threads reading the journal files when the journal is loaded.
+    */
+   void setJournalLoadThreads(int loadThreads);
+
+   /**
+    * Returns the number of filled journal files kept ready to be used. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_POOL_FILES}.
+    */
+   int getJournalPoolFiles();
+
+   /**
+    * Sets the number of filled journal files kept ready to be used.
+    */
+   void setJournalPoolFiles(int poolFiles);
+
+   /**
+    * Returns whether the journal files carry a checksum of each record. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_CHECKSUMS}.
+    */
+   boolean isJournalChecksums();
+
+   /**
+    * Sets whether the journal files carry a checksum of each record.
+    */
+   void setJournalChecksums(boolean checksums);
+
+   /**
+    * Returns whether the syncs of the message journal and of the paging stores are issued together. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_COORDINATED_SYNC}.
+    */
+   boolean isJournalCoordinatedSync();
+
+   /**
+    * Sets whether the syncs of the message journal and of the paging stores are issued together.
+    */
+   void setJournalCoordinatedSync(boolean coordinated);
+
+   /**
+    * Returns whether the journal buffer timeout adapts to the sync latency and to the rate of sync requests. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_BUFFER_TIMEOUT_ADAPTIVE}.
+    */
+   boolean isJournalBufferTimeoutAdaptive();
+
+   /**
+    * Sets whether the journal buffer timeout adapts to the sync latency and to the rate of sync requests.
+    */
+   void setJournalBufferTimeoutAdaptive(boolean adaptive);
+
+   /**
+    * Returns the lowest timeout (in nanoseconds) used by an adaptive journal buffer timeout. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_BUFFER_TIMEOUT_MIN}.
+    */
+   int getJournalBufferTimeoutMin();
+
+   /**
+    * Sets the lowest timeout (in nanoseconds) used by an adaptive journal buffer timeout.
+    */
+   void setJournalBufferTimeoutMin(int timeout);
+
+   /**
+    * Returns the highest timeout (in nanoseconds) used by an adaptive journal buffer timeout. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_BUFFER_TIMEOUT_MAX}.
+    */
+   int getJournalBufferTimeoutMax();
+
+   /**
+    * Sets the highest timeout (in nanoseconds) used by an adaptive journal buffer timeout.
+    */
+   void setJournalBufferTimeoutMax(int timeout);
+
    /**
     * Returns the number of journal files to pre-create. <br>
     * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_MIN_FILES}.
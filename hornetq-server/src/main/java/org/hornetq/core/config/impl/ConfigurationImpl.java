@@ -145,10 +145,32 @@ public class ConfigurationImpl implements Configuration
 
    protected int journalCompactPercentage = HornetQDefaultConfiguration.getDefaultJournalCompactPercentage();
 
+   protected boolean journalCompactIncremental = HornetQDefaultConfiguration.isDefaultJournalCompactIncremental();
+
+   protected int journalCompactMaxFiles = HornetQDefaultConfiguration.getDefaultJournalCompactMaxFiles();
+
+   protected int journalCompactMaxPause = HornetQDefaultConfiguration.getDefaultJournalCompactMaxPause();
+
    protected int journalFileSize = HornetQDefaultConfiguration.getDefaultJournalFileSize();
 
    protected int journalMinFiles = HornetQDefaultConfiguration.getDefaultJournalMinFiles();
 
+   protected boolean journalConcurrentEncoding = HornetQDefaultConfiguration.isDefaultJournalConcurrentEncoding();
+
+   protected int journalLoadThreads = HornetQDefaultConfiguration.getDefaultJournalLoadThreads();
+
+   protected int journalPoolFiles = HornetQDefaultConfiguration.getDefaultJournalPoolFiles();
+
+   protected boolean journalChecksums = HornetQDefaultConfiguration.isDefaultJournalChecksums();
+
+   protected boolean journalCoordinatedSync = HornetQDefaultConfiguration.isDefaultJournalCoordinatedSync();
+
+   protected boolean journalBufferTimeoutAdaptive = HornetQDefaultConfiguration.isDefaultJournalBufferTimeoutAdaptive();
+
+   protected int journalBufferTimeoutMin = HornetQDefaultConfiguration.getDefaultJournalBufferTimeoutMin();
+
+   protected int journalBufferTimeoutMax = HornetQDefaultConfiguration.getDefaultJournalBufferTimeoutMax();
+
    // AIO and NIO need different values for these attributes
 
    protected int journalMaxIO_AIO = HornetQDefaultConfiguration.getDefaultJournalMaxIoAio();
@@ -590,6 +612,86 @@ public class ConfigurationImpl implements Configuration
       journalMinFiles = files;
    }
 
+   public boolean isJournalConcurrentEncoding()
+   {
+      return journalConcurrentEncoding;
+   }
+
+   public void setJournalConcurrentEncoding(final boolean concurrentEncoding)
+   {
+      journalConcurrentEncoding = concurrentEncoding;
+   }
+
+   public int getJournalLoadThreads()
+   {
+      return journalLoadThreads;
+   }
+
+   public void setJournalLoadThreads(final int loadThreads)
+   {
+      journalLoadThreads = loadThreads;
+   }
+
+   public int getJournalPoolFiles()
+   {
+      return journalPoolFiles;
+   }
+
+   public void setJournalPoolFiles(final int poolFiles)
+   {
+      journalPoolFiles = poolFiles;
+   }
+
+   public boolean isJournalChecksums()
+   {
+      return journalChecksums;
+   }
+
+   public void setJournalChecksums(final boolean checksums)
+   {
+      journalChecksums = checksums;
+   }
+
+   public boolean isJournalCoordinatedSync()
+   {
+      return journalCoordinatedSync;
+   }
+
+   public void setJournalCoordinatedSync(final boolean coordinated)
+   {
+      journalCoordinatedSync = coordinated;
+   }
+
+   public boolean isJournalBufferTimeoutAdaptive()
+   {
+      return journalBufferTimeoutAdaptive;
+   }
+
+   public void setJournalBufferTimeoutAdaptive(final boolean adaptive)
+   {
+      journalBufferTimeoutAdaptive = adaptive;
+   }
+
+   public int getJournalBufferTimeoutMin()
+   {
+      return journalBufferTimeoutMin;
+   }
+
+   public void setJournalBufferTimeoutMin(final int timeout)
+   {
+      journalBufferTimeoutMin = timeout;
+   }
+
+   public int getJournalBufferTimeoutMax()
+   {
+      return journalBufferTimeoutMax;
+   }
+
+   public void setJournalBufferTimeoutMax(final int timeout)
+   {
+      journalBufferTimeoutMax = timeout;
+   }
+
    public boolean isLogJournalWriteRate()
    {
       return logJournalWriteRate;
@@ -830,6 +932,36 @@ public class ConfigurationImpl implements Configuration
       journalCompactPercentage = percentage;
    }
 
+   public boolean isJournalCompactIncremental()
+   {
+      return journalCompactIncremental;
+   }
+
+   public void setJournalCompactIncremental(final boolean incremental)
+   {
+      journalCompactIncremental = incremental;
+   }
+
+   public int getJournalCompactMaxFiles()
+   {
+      return journalCompactMaxFiles;
+   }
+
+   public void setJournalCompactMaxFiles(final int maxFiles)
+   {
+      journalCompactMaxFiles = maxFiles;
+   }
+
+   public int getJournalCompactMaxPause()
+   {
+      return journalCompactMaxPause;
+   }
+
+   public void setJournalCompactMaxPause(final int maxPause)
+   {
+      journalCompactMaxPause = maxPause;
+   }
+
    public long getServerDumpInterval()
    {
       return serverDumpInterval;
@@ -1110,6 +1242,17 @@ public class ConfigurationImpl implements Configuration
       result = prime * result + journalBufferTimeout_NIO;
       result = prime * result + journalCompactMinFiles;
       result = prime * result + journalCompactPercentage;
+      result = prime * result + (journalCompactIncremental ? 1231 : 1237);
+      result = prime * result + journalCompactMaxFiles;
+      result = prime * result + journalCompactMaxPause;
+      result = prime * result + (journalConcurrentEncoding ? 1231 : 1237);
+      result = prime * result + journalLoadThreads;
+      result = prime * result + journalPoolFiles;
+      result = prime * result + (journalChecksums ? 1231 : 1237);
+      result = prime * result + (journalCoordinatedSync ? 1231 : 1237);
+      result = prime * result + (journalBufferTimeoutAdaptive ? 1231 : 1237);
+      result = prime * result + journalBufferTimeoutMin;
+      result = prime * result + journalBufferTimeoutMax;
       result = prime * result + ((journalDirectory == null) ? 0 : journalDirectory.hashCode());
       result = prime * result + journalFileSize;
       result = prime * result + journalMaxIO_AIO;
@@ -1313,6 +1456,12 @@ public class ConfigurationImpl implements Configuration
          return false;
       if (journalCompactPercentage != other.journalCompactPercentage)
          return false;
+      if (journalCompactIncremental != other.journalCompactIncremental)
+         return false;
+      if (journalCompactMaxFiles != other.journalCompactMaxFiles)
+         return false;
+      if (journalCompactMaxPause != other.journalCompactMaxPause)
+         return false;
       if (journalDirectory == null)
       {
          if (other.journalDirectory != null)
@@ -1320,6 +1469,22 @@ public class ConfigurationImpl implements Configuration
       }
       else if (!journalDirectory.equals(other.journalDirectory))
          return false;
+      if (journalConcurrentEncoding != other.journalConcurrentEncoding)
+         return false;
+      if (journalLoadThreads != other.journalLoadThreads)
+         return false;
+      if (journalPoolFiles != other.journalPoolFiles)
+         return false;
+      if (journalChecksums != other.journalChecksums)
+         return false;
+      if (journalCoordinatedSync != other.journalCoordinatedSync)
+         return false;
+      if (journalBufferTimeoutAdaptive != other.journalBufferTimeoutAdaptive)
+         return false;
+      if (journalBufferTimeoutMin != other.journalBufferTimeoutMin)
+         return false;
+      if (journalBufferTimeoutMax != other.journalBufferTimeoutMax)
+         return false;
       if (journalFileSize != other.journalFileSize)
          return false;
       if (journalMaxIO_AIO != other.journalMaxIO_AIO)
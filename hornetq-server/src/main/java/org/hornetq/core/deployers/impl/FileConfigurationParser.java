@@ -133,6 +133,10 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
 
    private static final String SEND_TO_DLA_ON_NO_ROUTE = "send-to-dla-on-no-route";
 
+   private static final String QUEUE_SHARDS_NODE_NAME = "queue-shards";
+
+   private static final String COMPRESS_PAGE_FILES_NODE_NAME = "compress-page-files";
+
    // Attributes ----------------------------------------------------
 
    private boolean validateAIO = false;
@@ -517,6 +521,10 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
             config.setJournalType(JournalType.NIO);
          }
       }
+      else if (s.equals(JournalType.MAPPED.toString()))
+      {
+         config.setJournalType(JournalType.MAPPED);
+      }
 
       config.setJournalSyncTransactional(getBoolean(e,
                                                     "journal-sync-transactional",
@@ -572,6 +580,54 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
                                                     config.getJournalCompactPercentage(),
                                                     Validators.PERCENTAGE));
 
+      config.setJournalCompactIncremental(getBoolean(e,
+                                                     "journal-compact-incremental",
+                                                     config.isJournalCompactIncremental()));
+
+      config.setJournalCompactMaxFiles(getInteger(e,
+                                                  "journal-compact-max-files",
+                                                  config.getJournalCompactMaxFiles(),
+                                                  Validators.GT_ZERO));
+
+      config.setJournalCompactMaxPause(getInteger(e,
+                                                  "journal-compact-max-pause",
+                                                  config.getJournalCompactMaxPause(),
+                                                  Validators.GT_ZERO));
+
+      config.setJournalConcurrentEncoding(getBoolean(e,
+                                                     "journal-concurrent-encoding",
+                                                     config.isJournalConcurrentEncoding()));
+
+      config.setJournalLoadThreads(getInteger(e, "journal-load-threads", config.getJournalLoadThreads(),
+                                              Validators.GT_ZERO));
+
+      config.setJournalPoolFiles(getInteger(e,
+                                            "journal-pool-files",
+                                            config.getJournalPoolFiles(),
+                                            Validators.GE_ZERO));
+
+      config.setJournalChecksums(getBoolean(e,
+                                            "journal-checksums",
+                                            config.isJournalChecksums()));
+
+      config.setJournalCoordinatedSync(getBoolean(e,
+                                                  "journal-coordinated-sync",
+                                                  config.isJournalCoordinatedSync()));
+
+      config.setJournalBufferTimeoutAdaptive(getBoolean(e,
+                                                        "journal-buffer-timeout-adaptive",
+                                                        config.isJournalBufferTimeoutAdaptive()));
+
+      config.setJournalBufferTimeoutMin(getInteger(e,
+                                                   "journal-buffer-timeout-min",
+                                                   config.getJournalBufferTimeoutMin(),
+                                                   Validators.GE_ZERO));
+
+      config.setJournalBufferTimeoutMax(getInteger(e,
+                                                   "journal-buffer-timeout-max",
+                                                   config.getJournalBufferTimeoutMax(),
+                                                   Validators.GT_ZERO));
+
       config.setLogJournalWriteRate(getBoolean(e,
                                                "log-journal-write-rate",
                                                HornetQDefaultConfiguration.isDefaultJournalLogWriteRate()));
@@ -929,6 +985,16 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
          {
             addressSettings.setSendToDLAOnNoRoute(XMLUtil.parseBoolean(child));
          }
+         else if (QUEUE_SHARDS_NODE_NAME.equalsIgnoreCase(name))
+         {
+            int queueShards = XMLUtil.parseInt(child);
+            Validators.GT_ZERO.validate(QUEUE_SHARDS_NODE_NAME, queueShards);
+            addressSettings.setQueueShards(queueShards);
+         }
+         else if (COMPRESS_PAGE_FILES_NODE_NAME.equalsIgnoreCase(name))
+         {
+            addressSettings.setCompressPageFiles(XMLUtil.parseBoolean(child));
+         }
       }
       return setting;
    }
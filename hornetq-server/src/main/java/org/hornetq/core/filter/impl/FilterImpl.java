@@ -12,8 +12,10 @@
  */
 package org.hornetq.core.filter.impl;
 
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.hornetq.api.core.FilterConstants;
 import org.hornetq.api.core.HornetQException;
@@ -61,12 +63,14 @@ public class FilterImpl implements Filter
 
    private final SimpleString sfilterString;
 
-   private final Map<SimpleString, Identifier> identifiers;
-
    private final Object result;
 
    private final Class<? extends Object> resultType;
 
+   private final SimpleString indexProperty;
+
+   private final Set<SimpleString> indexValues;
+
    // Static ---------------------------------------------------------
 
    /**
@@ -100,18 +104,20 @@ public class FilterImpl implements Filter
          HornetQServerLogger.LOGGER.invalidFilter(e, filterStr);
          throw HornetQMessageBundle.BUNDLE.invalidFilter(e, filterStr);
       }
-      return new FilterImpl(filterStr, identifierMap, result0);
+      return new FilterImpl(filterStr, result0);
    }
 
    // Constructors ---------------------------------------------------
 
-   private FilterImpl(final SimpleString str, final HashMap<SimpleString, Identifier> identifierMap,
-                      final Object result0)
+   private FilterImpl(final SimpleString str, final Object result0)
    {
       sfilterString = str;
-      identifiers = identifierMap;
       this.result = result0;
       resultType = result.getClass();
+
+      IndexKey key = indexKey(result);
+      indexProperty = key == null ? null : key.property;
+      indexValues = key == null ? null : Collections.unmodifiableSet(key.values);
    }
 
    // Filter implementation ---------------------------------------------------------------------
@@ -121,39 +127,45 @@ public class FilterImpl implements Filter
       return sfilterString;
    }
 
-   public synchronized boolean match(final ServerMessage message)
+   /**
+    * Returns the property that every message matched by this filter has, set to one of the
+    * {@link #getIndexValues()}, as with {@code region = 'X'}, {@code region IN ('X', 'Y')} or an AND
+    * with one of these as a term.
+    *
+    * @return the property, or null if the filter can match messages without looking at a single
+    *         property this way
+    */
+   public SimpleString getIndexProperty()
    {
-      try
-      {
-         // Set the identifiers values
-
-         for (Identifier id : identifiers.values())
-         {
-            Object val = null;
-
-            if (id.getName().startsWith(FilterConstants.HORNETQ_PREFIX))
-            {
-               // Look it up as header fields
-               val = getHeaderFieldValue(message, id.getName());
-            }
-
-            if (val == null)
-            {
-               val = message.getObjectProperty(id.getName());
-            }
+      return indexProperty;
+   }
 
-            id.setValue(val);
+   /**
+    * @return the values of {@link #getIndexProperty()} this filter can match, or null
+    */
+   public Set<SimpleString> getIndexValues()
+   {
+      return indexValues;
+   }
 
-         }
+   /**
+    * The identifiers are read from the message as the expression is evaluated, nothing is kept on
+    * the filter, so a filter can match messages on any number of threads at once.
+    */
+   public boolean match(final ServerMessage message)
+   {
+      try
+      {
+         MessageResolver resolver = new MessageResolver(message);
 
          if (resultType.equals(Identifier.class))
          {
-            return (Boolean)((Identifier)result).getValue();
+            return (Boolean)resolver.resolve((Identifier)result);
          }
          else if (resultType.equals(Operator.class))
          {
             Operator op = (Operator)result;
-            Object result = op.apply();
+            Object result = op.apply(resolver);
             if (result == null)
             {
                // https://issues.jboss.org/browse/HORNETQ-1188 -
@@ -216,7 +228,122 @@ public class FilterImpl implements Filter
 
    // Private --------------------------------------------------------------------------
 
-   private Object getHeaderFieldValue(final ServerMessage msg, final SimpleString fieldName)
+   private static final class IndexKey
+   {
+      final SimpleString property;
+
+      final Set<SimpleString> values;
+
+      IndexKey(final SimpleString property, final Set<SimpleString> values)
+      {
+         this.property = property;
+         this.values = values;
+      }
+   }
+
+   private static IndexKey indexKey(final Object expression)
+   {
+      if (!(expression instanceof Operator))
+      {
+         return null;
+      }
+
+      Operator op = (Operator)expression;
+
+      switch (op.getOperation())
+      {
+         case Operator.EQUAL:
+         {
+            if (isProperty(op.getOper1()) && op.getOper2() instanceof SimpleString)
+            {
+               return new IndexKey(((Identifier)op.getOper1()).getName(),
+                                   Collections.singleton((SimpleString)op.getOper2()));
+            }
+            if (isProperty(op.getOper2()) && op.getOper1() instanceof SimpleString)
+            {
+               return new IndexKey(((Identifier)op.getOper2()).getName(),
+                                   Collections.singleton((SimpleString)op.getOper1()));
+            }
+            return null;
+         }
+         case Operator.IN:
+         {
+            if (!isProperty(op.getOper1()))
+            {
+               return null;
+            }
+            Set<SimpleString> values = new HashSet<SimpleString>();
+            for (Object value : (Set<?>)op.getOper2())
+            {
+               if (!(value instanceof SimpleString))
+               {
+                  return null;
+               }
+               values.add((SimpleString)value);
+            }
+            return new IndexKey(((Identifier)op.getOper1()).getName(), values);
+         }
+         case Operator.AND:
+         {
+            // it is enough for one of the terms to hold
+            IndexKey key = indexKey(op.getOper1());
+            return key != null ? key : indexKey(op.getOper2());
+         }
+         case Operator.OR:
+         {
+            IndexKey key1 = indexKey(op.getOper1());
+            IndexKey key2 = indexKey(op.getOper2());
+            if (key1 == null || key2 == null || !key1.property.equals(key2.property))
+            {
+               return null;
+            }
+            Set<SimpleString> values = new HashSet<SimpleString>(key1.values);
+            values.addAll(key2.values);
+            return new IndexKey(key1.property, values);
+         }
+         default:
+            return null;
+      }
+   }
+
+   /**
+    * Header fields are not message properties, see {@link MessageResolver}.
+    */
+   private static boolean isProperty(final Object operand)
+   {
+      return operand instanceof Identifier &&
+         !((Identifier)operand).getName().startsWith(FilterConstants.HORNETQ_PREFIX);
+   }
+
+   private static final class MessageResolver implements IdentifierResolver
+   {
+      private final ServerMessage message;
+
+      MessageResolver(final ServerMessage message)
+      {
+         this.message = message;
+      }
+
+      public Object resolve(final Identifier identifier)
+      {
+         Object val = null;
+
+         if (identifier.getName().startsWith(FilterConstants.HORNETQ_PREFIX))
+         {
+            // Look it up as header fields
+            val = getHeaderFieldValue(message, identifier.getName());
+         }
+
+         if (val == null)
+         {
+            val = message.getObjectProperty(identifier.getName());
+         }
+
+         return val;
+      }
+   }
+
+   private static Object getHeaderFieldValue(final ServerMessage msg, final SimpleString fieldName)
    {
       if (FilterConstants.HORNETQ_USERID.equals(fieldName))
       {
@@ -47,6 +47,9 @@ import org.hornetq.api.core.management.QueueControl;
 import org.hornetq.core.config.BridgeConfiguration;
 import org.hornetq.core.config.Configuration;
 import org.hornetq.core.config.DivertConfiguration;
+import org.hornetq.core.journal.Journal;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.TimedBuffer;
 import org.hornetq.core.messagecounter.MessageCounterManager;
 import org.hornetq.core.messagecounter.impl.MessageCounterManagerImpl;
 import org.hornetq.core.persistence.StorageManager;
@@ -54,6 +57,7 @@ import org.hornetq.core.persistence.config.PersistedAddressSetting;
 import org.hornetq.core.persistence.config.PersistedRoles;
 import org.hornetq.core.postoffice.PostOffice;
 import org.hornetq.core.remoting.server.RemotingService;
+import org.hornetq.core.replication.ReplicatedJournal;
 import org.hornetq.core.security.CheckType;
 import org.hornetq.core.security.Role;
 import org.hornetq.core.server.HornetQMessageBundle;
@@ -275,6 +279,23 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       }
    }
 
+   public int getJournalBufferCurrentTimeout()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         TimedBuffer timedBuffer = getJournalTimedBuffer();
+
+         return timedBuffer == null ? getJournalBufferTimeout() : timedBuffer.getTimeout();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public void setFailoverOnServerShutdown(boolean failoverOnServerShutdown)
    {
       checkStarted();
@@ -397,6 +418,74 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       }
    }
 
+   public long getJournalCompactLastPause()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JournalImpl journal = getLocalMessageJournal();
+
+         return journal == null ? 0 : journal.getLastCompactPause();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalCompactMaxPause()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JournalImpl journal = getLocalMessageJournal();
+
+         return journal == null ? 0 : journal.getMaxCompactPause();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalRolloverWaitTime()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JournalImpl journal = getLocalMessageJournal();
+
+         return journal == null ? 0 : journal.getRolloverWaitTime();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalRolloverMaxWait()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JournalImpl journal = getLocalMessageJournal();
+
+         return journal == null ? 0 : journal.getMaxRolloverWait();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public boolean isPersistenceEnabled()
    {
       checkStarted();
@@ -1313,6 +1402,39 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
    }
 
 
+   public String listJournalBufferBatchSizesAsJSON() throws Exception
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JSONArray array = new JSONArray();
+
+         TimedBuffer timedBuffer = getJournalTimedBuffer();
+
+         if (timedBuffer != null)
+         {
+            long[] histogram = timedBuffer.getBatchHistogram();
+
+            for (int i = 0; i < histogram.length; i++)
+            {
+               JSONObject obj = new JSONObject();
+               obj.put("minRecords", 1L << i);
+               obj.put("maxRecords", i == histogram.length - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+               obj.put("flushes", histogram[i]);
+               array.put(obj);
+            }
+         }
+
+         return array.toString();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public Object[] getConnectors() throws Exception
    {
       checkStarted();
@@ -1975,6 +2097,34 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       }
    }
 
+   private TimedBuffer getJournalTimedBuffer()
+   {
+      Journal journal = storageManager.getMessageJournal();
+
+      if (journal == null || journal.getFileFactory() == null)
+      {
+         return null;
+      }
+
+      return journal.getFileFactory().getTimedBuffer();
+   }
+
+   /**
+    * @return the file journal backing the message journal, unwrapped from the replication when it
+    *         is replicated
+    */
+   private JournalImpl getLocalMessageJournal()
+   {
+      Journal journal = storageManager.getMessageJournal();
+
+      if (journal instanceof ReplicatedJournal)
+      {
+         journal = ((ReplicatedJournal)journal).getLocalJournal();
+      }
+
+      return journal instanceof JournalImpl ? (JournalImpl)journal : null;
+   }
+
    public String[] listTargetAddresses(final String sessionID)
    {
       ServerSession session = server.getSessionByID(sessionID);
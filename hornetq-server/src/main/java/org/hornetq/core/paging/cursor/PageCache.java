@@ -13,7 +13,6 @@
 package org.hornetq.core.paging.cursor;
 
 import org.hornetq.core.paging.PagedMessage;
-import org.hornetq.utils.SoftValueHashMap;
 
 /**
  * A PageCache
@@ -22,7 +21,7 @@ import org.hornetq.utils.SoftValueHashMap;
  *
  *
  */
-public interface PageCache extends SoftValueHashMap.ValueCache
+public interface PageCache
 {
    long getPageId();
 
@@ -32,6 +31,11 @@ public interface PageCache extends SoftValueHashMap.ValueCache
 
    PagedMessage[] getMessages();
 
+   /**
+    * @return the bytes the cached messages take on the page file
+    */
+   int getEncodeSize();
+
    /**
     * @return whether this cache is still being updated
     */
@@ -31,6 +31,12 @@ public interface PageCursorProvider
 
    void addPageCache(PageCache cache);
 
+   /**
+    * Reads the pages following pageNr on the paging executor, so the cursors moving into them
+    * don't wait on disk.
+    */
+   void readAhead(long pageNr);
+
    /**
     * @param queueId The cursorID should be the same as the queueId associated for persistence
     * @return
@@ -65,6 +71,26 @@ public interface PageCursorProvider
 
    void setCacheMaxSize(int size);
 
+   /**
+    * @return how many times a page was found on the cache
+    */
+   long getCacheHits();
+
+   /**
+    * @return how many times a page had to be read from its file
+    */
+   long getCacheMisses();
+
+   /**
+    * @return how many pages were dropped from the cache to keep it within its size
+    */
+   long getCacheEvictions();
+
+   /**
+    * @return how many times a whole page was read from its file
+    */
+   long getPagesRead();
+
    /**
     * @param pageCursorImpl
     */
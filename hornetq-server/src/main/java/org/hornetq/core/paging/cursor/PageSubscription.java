@@ -85,6 +85,11 @@ public interface PageSubscription
     */
    long getFirstPage();
 
+   /**
+    * @return the page the cursor last read a message from, or -1 if it hasn't read any yet
+    */
+   long getReadingPage();
+
    // Reload operations
 
    /**
@@ -35,6 +35,8 @@ public class LivePageCacheImpl implements LivePageCache
 
    private boolean isLive = true;
 
+   private int encodeSize;
+
    public LivePageCacheImpl(final Page page)
    {
       this.page = page;
@@ -101,6 +103,13 @@ public class LivePageCacheImpl implements LivePageCache
          ((LargeServerMessage)message.getMessage()).incrementDelayDeletionCount();
       }
       this.messages.add(message);
+      this.encodeSize += message.getEncodeSize();
+   }
+
+   @Override
+   public synchronized int getEncodeSize()
+   {
+      return encodeSize;
    }
 
    @Override
@@ -37,6 +37,8 @@ class PageCacheImpl implements PageCache
 
    private PagedMessage[] messages;
 
+   private int encodeSize;
+
    private final Page page;
 
    // Static --------------------------------------------------------
@@ -88,6 +90,12 @@ class PageCacheImpl implements PageCache
 
    public void setMessages(final PagedMessage[] messages)
    {
+      int size = 0;
+      for (PagedMessage message : messages)
+      {
+         size += message.getEncodeSize();
+      }
+      this.encodeSize = size;
       this.messages = messages;
    }
 
@@ -104,6 +112,11 @@ class PageCacheImpl implements PageCache
       }
    }
 
+   public int getEncodeSize()
+   {
+      return encodeSize;
+   }
+
    public void close()
    {
    }
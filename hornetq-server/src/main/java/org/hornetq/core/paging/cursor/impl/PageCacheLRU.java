@@ -0,0 +1,316 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.paging.cursor.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hornetq.core.paging.cursor.PageCache;
+import org.hornetq.core.server.HornetQServerLogger;
+
+/**
+ * The pages cached by a {@link PageCursorProviderImpl}, bounded by a number of pages and by the
+ * bytes the cached pages take on their files.
+ * <p>
+ * When a bound is exceeded pages are evicted, except for the live ones as they are still being
+ * written. If the pages the cursors are reading are known, the pages evicted first are the ones no
+ * cursor will get to, then the ones furthest from the cursors for the number of cursors that will
+ * read them, and the pages the cursors are reading go last. That way the cursors lagging behind
+ * each other within the cache size find the pages the first one of them read, and the cursors
+ * lagging too far behind read their pages on their own instead of making every cursor read every
+ * page. Otherwise the least recently used pages are evicted first. The caches are held strongly so
+ * what is kept doesn't depend on the GC.
+ * <p>
+ * The bytes of a page are accounted when it is added, when {@link #resize} is told its messages
+ * were set and when it is used, which is when the growth of a live page is picked up.
+ * <p>
+ * This class is not thread safe.
+ */
+final class PageCacheLRU
+{
+   private static final long[] NO_READERS = new long[0];
+
+   private final boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
+
+   // in the order they were used, the least recently used first
+   private final LinkedHashMap<Long, PageCache> caches = new LinkedHashMap<Long, PageCache>();
+
+   // the bytes each page was last accounted for
+   private final Map<Long, Integer> pageBytes = new HashMap<Long, Integer>();
+
+   private long bytes;
+
+   private int maxPages;
+
+   private long maxBytes;
+
+   private long hits;
+
+   private long misses;
+
+   private long evictions;
+
+   /**
+    * @param maxPages the maximum number of pages, unbounded if &lt;= 0
+    * @param maxBytes the maximum number of bytes, unbounded if &lt;= 0
+    */
+   PageCacheLRU(final int maxPages, final long maxBytes)
+   {
+      this.maxPages = maxPages;
+      this.maxBytes = maxBytes;
+   }
+
+   public void setMaxSize(final int maxPages, final long maxBytes)
+   {
+      this.maxPages = maxPages;
+      this.maxBytes = maxBytes;
+      checkSize(null, NO_READERS);
+   }
+
+   /**
+    * Looks the page up as a cursor reading from it would, which counts on the hits and misses.
+    */
+   public PageCache get(final long pageId)
+   {
+      PageCache cache = caches.remove(pageId);
+
+      if (cache == null)
+      {
+         misses++;
+      }
+      else
+      {
+         hits++;
+         caches.put(pageId, cache);
+         account(cache);
+      }
+
+      return cache;
+   }
+
+   /**
+    * Looks the page up without counting it as a use.
+    */
+   public PageCache peek(final long pageId)
+   {
+      return caches.get(pageId);
+   }
+
+   public void put(final PageCache cache)
+   {
+      put(cache, NO_READERS);
+   }
+
+   /**
+    * @param readingPages the pages the cursors are reading, sorted
+    */
+   public void put(final PageCache cache, final long[] readingPages)
+   {
+      caches.remove(cache.getPageId());
+      caches.put(cache.getPageId(), cache);
+      account(cache);
+      // the page being added is about to be read, so it stays even if it doesn't fit
+      checkSize(cache, readingPages);
+   }
+
+   /**
+    * Accounts for the bytes of a page once its messages are set, evicting other pages if they no
+    * longer fit.
+    *
+    * @param readingPages the pages the cursors are reading, sorted
+    */
+   public void resize(final PageCache cache, final long[] readingPages)
+   {
+      // it may have been evicted or removed while it was read
+      if (caches.get(cache.getPageId()) != cache)
+      {
+         return;
+      }
+
+      account(cache);
+      checkSize(cache, readingPages);
+   }
+
+   /**
+    * @return whether a page can be added without evicting a page the cursors will get to before
+    * reading more pages than the cache holds
+    */
+   public boolean hasRoom(final long[] readingPages)
+   {
+      if ((maxPages <= 0 || caches.size() < maxPages) && (maxBytes <= 0 || getBytes() < maxBytes))
+      {
+         return true;
+      }
+
+      int horizon = maxPages > 0 ? maxPages : caches.size();
+
+      for (PageCache cache : caches.values())
+      {
+         if (!cache.isLive() && evictionRank(cache.getPageId(), readingPages) >= horizon)
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   public PageCache remove(final long pageId)
+   {
+      unaccount(pageId);
+      return caches.remove(pageId);
+   }
+
+   public void clear()
+   {
+      caches.clear();
+      pageBytes.clear();
+      bytes = 0;
+   }
+
+   public int size()
+   {
+      return caches.size();
+   }
+
+   public Collection<PageCache> values()
+   {
+      return new ArrayList<PageCache>(caches.values());
+   }
+
+   public long getBytes()
+   {
+      return bytes;
+   }
+
+   public long getHits()
+   {
+      return hits;
+   }
+
+   public long getMisses()
+   {
+      return misses;
+   }
+
+   public long getEvictions()
+   {
+      return evictions;
+   }
+
+   /**
+    * @param readingPages the pages the cursors are reading, sorted
+    * @return the higher the sooner the page should be evicted
+    */
+   static double evictionRank(final long pageId, final long[] readingPages)
+   {
+      // how many cursors are not past the page yet
+      int low = 0;
+      int high = readingPages.length;
+      while (low < high)
+      {
+         int middle = (low + high) >>> 1;
+         if (readingPages[middle] <= pageId)
+         {
+            low = middle + 1;
+         }
+         else
+         {
+            high = middle;
+         }
+      }
+      int readers = low;
+
+      if (readers == 0)
+      {
+         return Double.POSITIVE_INFINITY;
+      }
+
+      // how long the page would take space on the cache for each time it is read
+      return (double) (pageId - readingPages[readers - 1]) / readers;
+   }
+
+   private void account(final PageCache cache)
+   {
+      int size = cache.getEncodeSize();
+
+      Integer previous = pageBytes.put(cache.getPageId(), size);
+
+      bytes += previous == null ? size : size - previous;
+   }
+
+   private void unaccount(final long pageId)
+   {
+      Integer previous = pageBytes.remove(pageId);
+
+      if (previous != null)
+      {
+         bytes -= previous;
+      }
+   }
+
+   private void checkSize(final PageCache keep, final long[] readingPages)
+   {
+      boolean checkPages = maxPages > 0;
+
+      boolean checkBytes = maxBytes > 0;
+
+      if (!checkPages && !checkBytes)
+      {
+         return;
+      }
+
+      while (checkPages && caches.size() > maxPages || checkBytes && bytes > maxBytes)
+      {
+         PageCache evict = null;
+
+         double evictRank = -1;
+
+         for (PageCache cache : caches.values())
+         {
+            if (cache.isLive() || cache == keep)
+            {
+               continue;
+            }
+
+            double rank = evictionRank(cache.getPageId(), readingPages);
+
+            // on a tie the least recently used goes, as it comes first
+            if (rank > evictRank)
+            {
+               evict = cache;
+               evictRank = rank;
+            }
+         }
+
+         if (evict == null)
+         {
+            return;
+         }
+
+         caches.remove(evict.getPageId());
+
+         unaccount(evict.getPageId());
+
+         evictions++;
+
+         if (isTrace)
+         {
+            HornetQServerLogger.LOGGER.trace("Evicting " + evict + " from the page cache");
+         }
+      }
+   }
+}
@@ -13,12 +13,16 @@
 package org.hornetq.core.paging.cursor.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.paging.PagedMessage;
@@ -35,7 +39,6 @@ import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.impl.TransactionImpl;
 import org.hornetq.utils.FutureLatch;
-import org.hornetq.utils.SoftValueHashMap;
 /**
  * A PageProviderIMpl
  *
@@ -52,6 +55,11 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
 
+   /**
+    * How many pages are read ahead of a cursor moving into a page, at most.
+    */
+   public static final int READ_AHEAD_PAGES = 2;
+
    // Attributes ----------------------------------------------------
 
    /**
@@ -68,7 +76,14 @@ public class PageCursorProviderImpl implements PageCursorProvider
    // This is the same executor used at the PageStoreImpl. One Executor per pageStore
    private final Executor executor;
 
-   private final SoftValueHashMap<Long, PageCache> softCache;
+   private final PageCacheLRU pageCache;
+
+   // the pages scheduled to be read ahead and not read yet, guarded by pageCache
+   private final Set<Long> readingAhead = new HashSet<Long>();
+
+   private volatile int readAheadPages;
+
+   private final AtomicLong pagesRead = new AtomicLong(0);
 
    private final ConcurrentMap<Long, PageSubscription> activeCursors = new ConcurrentHashMap<Long, PageSubscription>();
 
@@ -84,7 +99,8 @@ public class PageCursorProviderImpl implements PageCursorProvider
       this.pagingStore = pagingStore;
       this.storageManager = storageManager;
       this.executor = executor;
-      this.softCache = new SoftValueHashMap<Long, PageCache>(maxCacheSize);
+      this.pageCache = new PageCacheLRU(maxCacheSize, maxCacheBytes(maxCacheSize));
+      this.readAheadPages = readAheadPages(maxCacheSize);
    }
 
    // Public --------------------------------------------------------
@@ -114,7 +130,25 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    public PagedMessage getMessage(final PagePosition pos)
    {
-      PageCache cache = getPageCache(pos.getPageNr());
+      PageCache cache;
+
+      synchronized (pageCache)
+      {
+         cache = pageCache.peek(pos.getPageNr());
+      }
+
+      // a single message from a page that isn't cached is read through the page index
+      if (cache == null)
+      {
+         PagedMessage message = readIndexedMessage(pos);
+
+         if (message != null)
+         {
+            return message;
+         }
+      }
+
+      cache = getPageCache(pos.getPageNr());
 
       if (cache == null || pos.getMessageNr() >= cache.getNumberOfMessages())
       {
@@ -133,19 +167,28 @@ public class PageCursorProviderImpl implements PageCursorProvider
    }
 
    public PageCache getPageCache(final long pageId)
+   {
+      return getPageCache(pageId, false);
+   }
+
+   /**
+    * @param readAhead whether the page is read ahead of the cursors, which doesn't count as a use of
+    *                  the cache
+    */
+   private PageCache getPageCache(final long pageId, final boolean readAhead)
    {
       try
       {
          boolean needToRead = false;
          PageCache cache = null;
-         synchronized (softCache)
+         synchronized (pageCache)
          {
             if (pageId > pagingStore.getCurrentWritingPage())
             {
                return null;
             }
 
-            cache = softCache.get(pageId);
+            cache = readAhead ? pageCache.peek(pageId) : pageCache.get(pageId);
             if (cache == null)
             {
                if (!pagingStore.checkPageFileExists((int)pageId))
@@ -162,7 +205,7 @@ public class PageCursorProviderImpl implements PageCursorProvider
                {
                   HornetQServerLogger.LOGGER.trace("adding " + pageId +  " into cursor = " + this.pagingStore.getAddress());
                }
-               softCache.put(pageId, cache);
+               pageCache.put(cache, readingPages());
             }
          }
 
@@ -178,8 +221,16 @@ public class PageCursorProviderImpl implements PageCursorProvider
                storageManager.beforePageRead();
                page.open();
 
+               pagesRead.incrementAndGet();
+
                List<PagedMessage> pgdMessages = page.read(storageManager);
                cache.setMessages(pgdMessages.toArray(new PagedMessage[pgdMessages.size()]));
+
+               // the page had no bytes when it was added, so the limits are only checked now
+               synchronized (pageCache)
+               {
+                  pageCache.resize(cache, readingPages());
+               }
             }
             finally
             {
@@ -206,32 +257,206 @@ public class PageCursorProviderImpl implements PageCursorProvider
       }
    }
 
+   /**
+    * @return the message, or null if the page has no index and has to be read as a whole
+    */
+   private PagedMessage readIndexedMessage(final PagePosition pos)
+   {
+      // the page being written has no index until it is closed
+      if (pos.getPageNr() >= pagingStore.getCurrentWritingPage())
+      {
+         return null;
+      }
+
+      try
+      {
+         if (!pagingStore.checkPageFileExists((int)pos.getPageNr()))
+         {
+            return null;
+         }
+
+         Page page = null;
+         storageManager.beforePageRead();
+         try
+         {
+            page = pagingStore.createPage((int)pos.getPageNr());
+            page.open();
+
+            return page.read(storageManager, pos.getMessageNr());
+         }
+         finally
+         {
+            try
+            {
+               if (page != null)
+               {
+                  page.close();
+               }
+            }
+            catch (Throwable ignored)
+            {
+            }
+            storageManager.afterPageRead();
+         }
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.debug("Couldn't read " + pos + " through the page index on " + pagingStore.getAddress(), e);
+         return null;
+      }
+   }
+
+   /**
+    * @return the pages the subscriptions are reading, sorted
+    */
+   private long[] readingPages()
+   {
+      long[] pages = new long[activeCursors.size()];
+
+      int count = 0;
+
+      for (PageSubscription cursor : activeCursors.values())
+      {
+         if (count == pages.length)
+         {
+            pages = Arrays.copyOf(pages, count + 1);
+         }
+         pages[count++] = cursor.getReadingPage();
+      }
+
+      if (count < pages.length)
+      {
+         pages = Arrays.copyOf(pages, count);
+      }
+
+      Arrays.sort(pages);
+
+      return pages;
+   }
+
    public void addPageCache(PageCache cache)
    {
-      synchronized (softCache)
+      synchronized (pageCache)
       {
-         softCache.put(cache.getPageId(), cache);
+         pageCache.put(cache);
       }
    }
 
    public void setCacheMaxSize(final int size)
    {
-      softCache.setMaxElements(size);
+      synchronized (pageCache)
+      {
+         pageCache.setMaxSize(size, maxCacheBytes(size));
+      }
+      readAheadPages = readAheadPages(size);
+   }
+
+   public void readAhead(final long pageId)
+   {
+      int pages = readAheadPages;
+
+      long[] readingPages = null;
+
+      for (long nextPage = pageId + 1; nextPage <= pageId + pages; nextPage++)
+      {
+         final long pageToRead = nextPage;
+
+         synchronized (pageCache)
+         {
+            if (pageToRead > pagingStore.getCurrentWritingPage())
+            {
+               return;
+            }
+
+            if (pageCache.peek(pageToRead) != null || readingAhead.contains(pageToRead))
+            {
+               continue;
+            }
+
+            if (readingPages == null)
+            {
+               readingPages = readingPages();
+            }
+
+            // reading ahead is only worth it if it doesn't push out pages other cursors will read
+            if (!pageCache.hasRoom(readingPages))
+            {
+               return;
+            }
+
+            readingAhead.add(pageToRead);
+         }
+
+         executor.execute(new Runnable()
+         {
+            public void run()
+            {
+               try
+               {
+                  if (pagingStore.isStarted())
+                  {
+                     getPageCache(pageToRead, true);
+                  }
+               }
+               catch (Throwable e)
+               {
+                  // the cursor will read the page itself when it gets there
+                  HornetQServerLogger.LOGGER.debug("Couldn't read page " + pageToRead + " ahead on " + pagingStore.getAddress(), e);
+               }
+               finally
+               {
+                  synchronized (pageCache)
+                  {
+                     readingAhead.remove(pageToRead);
+                  }
+               }
+            }
+         });
+      }
    }
 
    public int getCacheSize()
    {
-      synchronized (softCache)
+      synchronized (pageCache)
+      {
+         return pageCache.size();
+      }
+   }
+
+   public long getCacheHits()
+   {
+      synchronized (pageCache)
+      {
+         return pageCache.getHits();
+      }
+   }
+
+   public long getCacheMisses()
+   {
+      synchronized (pageCache)
+      {
+         return pageCache.getMisses();
+      }
+   }
+
+   public long getPagesRead()
+   {
+      return pagesRead.get();
+   }
+
+   public long getCacheEvictions()
+   {
+      synchronized (pageCache)
       {
-         return softCache.size();
+         return pageCache.getEvictions();
       }
    }
 
    public void clearCache()
    {
-      synchronized (softCache)
+      synchronized (pageCache)
       {
-         softCache.clear();
+         pageCache.clear();
       }
    }
 
@@ -513,9 +738,9 @@ public class PageCursorProviderImpl implements PageCursorProvider
          {
             PageCache cache;
             PagedMessage[] pgdMessages;
-            synchronized (softCache)
+            synchronized (pageCache)
             {
-               cache = softCache.get((long)depagedPage.getPageId());
+               cache = pageCache.peek(depagedPage.getPageId());
             }
 
             if (isTrace)
@@ -559,9 +784,9 @@ public class PageCursorProviderImpl implements PageCursorProvider
             depagedPage.delete(pgdMessages);
             onDeletePage(depagedPage);
 
-            synchronized (softCache)
+            synchronized (pageCache)
             {
-               softCache.remove((long)depagedPage.getPageId());
+               pageCache.remove(depagedPage.getPageId());
             }
          }
       }
@@ -624,7 +849,12 @@ public class PageCursorProviderImpl implements PageCursorProvider
    public void printDebug()
    {
       System.out.println("Debug information for PageCursorProviderImpl:");
-      for (PageCache cache : softCache.values())
+      Collection<PageCache> caches;
+      synchronized (pageCache)
+      {
+         caches = pageCache.values();
+      }
+      for (PageCache cache : caches)
       {
          System.out.println("Cache " + cache);
       }
@@ -642,6 +872,24 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    // Private -------------------------------------------------------
 
+   /**
+    * The cache holds as many bytes as the number of pages it may hold would take at the configured
+    * page size, so pages that went over the page size still count for what they are.
+    */
+   private long maxCacheBytes(final int maxCacheSize)
+   {
+      return maxCacheSize > 0 ? maxCacheSize * pagingStore.getPageSizeBytes() : 0;
+   }
+
+   /**
+    * The pages read ahead take room on the cache, so there's always some left for the pages the
+    * cursors are on.
+    */
+   private static int readAheadPages(final int maxCacheSize)
+   {
+      return maxCacheSize > 0 ? Math.max(0, Math.min(READ_AHEAD_PAGES, maxCacheSize - 1)) : READ_AHEAD_PAGES;
+   }
+
    /**
     * This method is synchronized because we want it to be atomic with the cursors being used
     */
@@ -95,6 +95,9 @@ final class PageSubscriptionImpl implements PageSubscription
 
    private final AtomicLong deliveredCount = new AtomicLong(0);
 
+   // where the cursor is, so the page cache keeps the pages it is about to read
+   private volatile long readingPage = -1;
+
    // We only store the position for redeliveries. They will be read from the SoftCache again during delivery.
    private final java.util.Queue<PagePosition> redeliveries = new LinkedList<PagePosition>();
 
@@ -406,10 +409,17 @@ final class PageSubscriptionImpl implements PageSubscription
       }
       else
       {
+         if (retPos.getMessageNr() == 0)
+         {
+            // the cursor just got into this page
+            cursorProvider.readAhead(retPos.getPageNr());
+         }
+
          PagedMessage serverMessage = cache.getMessage(retPos.getMessageNr());
 
          if (serverMessage != null)
          {
+            readingPage = retPos.getPageNr();
             return cursorProvider.newReference(retPos, serverMessage, this);
          }
          else
@@ -525,6 +535,12 @@ final class PageSubscriptionImpl implements PageSubscription
       });
    }
 
+   @Override
+   public long getReadingPage()
+   {
+      return readingPage;
+   }
+
    @Override
    public long getFirstPage()
    {
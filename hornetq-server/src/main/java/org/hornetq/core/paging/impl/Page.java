@@ -14,15 +14,20 @@ package org.hornetq.core.paging.impl;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.cursor.LivePageCache;
 import org.hornetq.core.paging.cursor.PageSubscriptionCounter;
@@ -34,6 +39,18 @@ import org.hornetq.utils.ConcurrentHashSet;
 import org.hornetq.utils.DataConstants;
 
 /**
+ * A page file, a flat sequence of '{' size message '}' records.
+ * <p>
+ * When the page is set to compress, each message is deflated on its own and written as a '(' size
+ * original-size deflated-message '}' record instead, unless it doesn't get any smaller. After a
+ * message that didn't get smaller the next ones are written as they are for a while, so payloads
+ * that don't compress cost little more than with compression off. Records of both kinds are read
+ * regardless of the setting, so it can be changed at any time.
+ * <p>
+ * When a page that was written is closed an index is stored alongside it, with the offset of every
+ * message on the page, so a single message can be read without decoding the whole page. Pages
+ * without an index (or with one that doesn't match) are still read as a whole.
+ *
  * @author <a href="mailto:clebert.suconic@jboss.com">Clebert Suconic</a>
  */
 public final class Page implements Comparable<Page>
@@ -48,6 +65,16 @@ public final class Page implements Comparable<Page>
 
    private static final byte END_BYTE = (byte) '}';
 
+   private static final byte COMPRESSED_START_BYTE = (byte) '(';
+
+   // SIZE_RECORD plus the size of the message before it was compressed
+   private static final int SIZE_COMPRESSED_RECORD = SIZE_RECORD + DataConstants.SIZE_INT;
+
+   // how many messages are written as they are after one that didn't get smaller
+   private static final int COMPRESS_BACK_OFF = 32;
+
+   public static final String INDEX_EXTENSION = "index";
+
    // Attributes ----------------------------------------------------
 
    private final int pageId;
@@ -71,6 +98,24 @@ public final class Page implements Comparable<Page>
 
    private final SimpleString storeName;
 
+   private final String indexFileName;
+
+   // the offset of every message read or written through this instance, guarded by this
+   private int[] offsets = new int[16];
+
+   private int numberOfOffsets;
+
+   private volatile boolean compress;
+
+   // created on the first compressed write, guarded by this
+   private Deflater deflater;
+
+   private byte[] encodeBuffer;
+
+   private byte[] deflateBuffer;
+
+   private int skipCompression;
+
    /**
     * A list of subscriptions containing pending counters (with non tx adds) on this page
     */
@@ -87,6 +132,8 @@ public final class Page implements Comparable<Page>
       fileFactory = factory;
       this.storageManager = storageManager;
       this.storeName = storeName;
+      String fileName = file.getFileName();
+      indexFileName = fileName.substring(0, fileName.lastIndexOf('.') + 1) + INDEX_EXTENSION;
    }
 
    public int getPageId()
@@ -94,6 +141,14 @@ public final class Page implements Comparable<Page>
       return pageId;
    }
 
+   /**
+    * @param compress whether the messages written from now on are compressed
+    */
+   public void setCompress(final boolean compress)
+   {
+      this.compress = compress;
+   }
+
    public void setLiveCache(LivePageCache pageCache)
    {
       this.pageCache = pageCache;
@@ -113,10 +168,20 @@ public final class Page implements Comparable<Page>
 
       ArrayList<PagedMessage> messages = new ArrayList<PagedMessage>();
 
+      numberOfOffsets = 0;
+
       size.set((int) file.size());
+
+      // a mapped page file that wasn't closed is still padded with the zeroes it was extended with
+      final boolean mapped = fileFactory instanceof MappedSequentialFileFactory;
+
+      // the end of the last valid record, where the next message will be written
+      int validSize = 0;
+
       // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
       ByteBuffer directBuffer = storage.allocateDirectBuffer((int) file.size());
       HornetQBuffer fileBuffer = null;
+      Inflater inflater = null;
       try
       {
 
@@ -134,7 +199,7 @@ public final class Page implements Comparable<Page>
 
             byte byteRead = fileBuffer.readByte();
 
-            if (byteRead == Page.START_BYTE)
+            if (byteRead == Page.START_BYTE || byteRead == Page.COMPRESSED_START_BYTE)
             {
                if (fileBuffer.readerIndex() + DataConstants.SIZE_INT < fileBuffer.capacity())
                {
@@ -143,8 +208,28 @@ public final class Page implements Comparable<Page>
                   if (fileBuffer.readerIndex() + messageSize < fileBuffer.capacity() &&
                      fileBuffer.getByte(oldPos + messageSize) == Page.END_BYTE)
                   {
-                     PagedMessage msg = new PagedMessageImpl();
-                     msg.decode(fileBuffer);
+                     PagedMessage msg;
+                     if (byteRead == Page.COMPRESSED_START_BYTE)
+                     {
+                        if (inflater == null)
+                        {
+                           inflater = new Inflater();
+                        }
+                        try
+                        {
+                           msg = decompress(fileBuffer, messageSize, inflater);
+                        }
+                        catch (DataFormatException e)
+                        {
+                           markFileAsSuspect(file.getFileName(), position, messages.size());
+                           break;
+                        }
+                     }
+                     else
+                     {
+                        msg = new PagedMessageImpl();
+                        msg.decode(fileBuffer);
+                     }
                      byte b = fileBuffer.readByte();
                      if (b != Page.END_BYTE)
                      {
@@ -159,6 +244,8 @@ public final class Page implements Comparable<Page>
                         HornetQServerLogger.LOGGER.trace("Reading message " + msg + " on pageId=" + this.pageId + " for address=" + storeName);
                      }
                      messages.add(msg);
+                     addOffset(position);
+                     validSize = fileBuffer.readerIndex();
                   }
                   else
                   {
@@ -169,13 +256,26 @@ public final class Page implements Comparable<Page>
             }
             else
             {
-               markFileAsSuspect(file.getFileName(), position, messages.size());
+               if (!mapped || byteRead != 0 || !isZeroed(fileBuffer))
+               {
+                  markFileAsSuspect(file.getFileName(), position, messages.size());
+               }
                break;
             }
          }
+
+         if (mapped)
+         {
+            size.set(validSize);
+            file.position(validSize);
+         }
       }
       finally
       {
+         if (inflater != null)
+         {
+            inflater.end();
+         }
          if (fileBuffer != null)
          {
             fileBuffer.byteBuf().unwrap().release();
@@ -196,23 +296,44 @@ public final class Page implements Comparable<Page>
          return;
       }
 
-      ByteBuffer buffer = fileFactory.newBuffer(message.getEncodeSize() + Page.SIZE_RECORD);
+      ByteBuffer buffer = null;
 
-      HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
-      wrap.clear();
+      if (compress)
+      {
+         if (skipCompression > 0)
+         {
+            skipCompression--;
+         }
+         else
+         {
+            buffer = compress(message);
+         }
+      }
 
-      wrap.writeByte(Page.START_BYTE);
-      wrap.writeInt(0);
-      int startIndex = wrap.writerIndex();
-      message.encode(wrap);
-      int endIndex = wrap.writerIndex();
-      wrap.setInt(1, endIndex - startIndex); // The encoded length
-      wrap.writeByte(Page.END_BYTE);
+      if (buffer == null)
+      {
+         buffer = fileFactory.newBuffer(message.getEncodeSize() + Page.SIZE_RECORD);
+
+         HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
+         wrap.clear();
+
+         wrap.writeByte(Page.START_BYTE);
+         wrap.writeInt(0);
+         int startIndex = wrap.writerIndex();
+         message.encode(wrap);
+         int endIndex = wrap.writerIndex();
+         wrap.setInt(1, endIndex - startIndex); // The encoded length
+         wrap.writeByte(Page.END_BYTE);
+      }
 
       buffer.rewind();
 
+      int offset = size.get();
+
       file.writeDirect(buffer, false);
 
+      addOffset(offset);
+
       if (pageCache != null)
       {
          pageCache.addLiveMessage(message);
@@ -248,8 +369,16 @@ public final class Page implements Comparable<Page>
       if (pageCache != null)
       {
          pageCache.close();
-         // leave it to the soft cache to decide when to release it now
+         // leave it to the page cache to decide when to release it now
          pageCache = null;
+         writeIndex();
+      }
+      if (deflater != null)
+      {
+         deflater.end();
+         deflater = null;
+         encodeBuffer = null;
+         deflateBuffer = null;
       }
       file.close();
 
@@ -308,6 +437,12 @@ public final class Page implements Comparable<Page>
             file.delete();
          }
 
+         SequentialFile index = createIndexFile();
+         if (index.exists())
+         {
+            index.delete();
+         }
+
          return true;
       }
       catch (Exception e)
@@ -317,6 +452,114 @@ public final class Page implements Comparable<Page>
       }
    }
 
+   /**
+    * Reads a single message through the page index, the page has to be open.
+    *
+    * @return the message, or null if the page has no index covering it, in which case the page has
+    * to be read as a whole
+    */
+   public synchronized PagedMessage read(final StorageManager storage, final int messageNumber) throws Exception
+   {
+      if (!file.isOpen())
+      {
+         throw HornetQMessageBundle.BUNDLE.invalidPageIO();
+      }
+
+      if (messageNumber >= numberOfOffsets)
+      {
+         readIndex();
+
+         if (messageNumber >= numberOfOffsets)
+         {
+            return null;
+         }
+      }
+
+      int offset = offsets[messageNumber];
+
+      long fileSize = file.size();
+
+      if (offset + DataConstants.SIZE_BYTE + DataConstants.SIZE_INT > fileSize)
+      {
+         return null;
+      }
+
+      ByteBuffer header = storage.allocateDirectBuffer(DataConstants.SIZE_BYTE + DataConstants.SIZE_INT);
+      byte compressed;
+      int messageSize;
+      try
+      {
+         file.position(offset);
+         file.read(header);
+         header.rewind();
+         compressed = header.get();
+         if (compressed != Page.START_BYTE && compressed != Page.COMPRESSED_START_BYTE)
+         {
+            return null;
+         }
+         messageSize = header.getInt();
+      }
+      finally
+      {
+         storage.freeDirectBuffer(header);
+      }
+
+      if (messageSize < 0 || offset + SIZE_RECORD + messageSize > fileSize)
+      {
+         return null;
+      }
+
+      // the message and the END_BYTE
+      ByteBuffer directBuffer = storage.allocateDirectBuffer(messageSize + DataConstants.SIZE_BYTE);
+      HornetQBuffer buffer = null;
+      try
+      {
+         file.read(directBuffer);
+         directBuffer.rewind();
+
+         buffer = HornetQBuffers.wrappedBuffer(directBuffer);
+         buffer.writerIndex(buffer.capacity());
+
+         if (buffer.getByte(messageSize) != Page.END_BYTE)
+         {
+            return null;
+         }
+
+         PagedMessage msg;
+         if (compressed == Page.COMPRESSED_START_BYTE)
+         {
+            Inflater inflater = new Inflater();
+            try
+            {
+               msg = decompress(buffer, messageSize, inflater);
+            }
+            catch (DataFormatException e)
+            {
+               return null;
+            }
+            finally
+            {
+               inflater.end();
+            }
+         }
+         else
+         {
+            msg = new PagedMessageImpl();
+            msg.decode(buffer);
+         }
+         msg.initMessage(storage);
+         return msg;
+      }
+      finally
+      {
+         if (buffer != null)
+         {
+            buffer.byteBuf().unwrap().release();
+         }
+         storage.freeDirectBuffer(directBuffer);
+      }
+   }
+
    public int getNumberOfMessages()
    {
       return numberOfMessages.intValue();
@@ -379,6 +622,212 @@ public final class Page implements Comparable<Page>
       return true;
    }
 
+   /**
+    * @return the compressed record, or null if the message doesn't get smaller
+    */
+   private ByteBuffer compress(final PagedMessage message)
+   {
+      int encodeSize = message.getEncodeSize();
+
+      if (encodeSize <= DataConstants.SIZE_INT)
+      {
+         return null;
+      }
+
+      if (deflater == null)
+      {
+         deflater = new Deflater(Deflater.BEST_SPEED);
+      }
+
+      if (encodeBuffer == null || encodeBuffer.length < encodeSize)
+      {
+         encodeBuffer = new byte[encodeSize];
+         deflateBuffer = new byte[encodeSize];
+      }
+
+      HornetQBuffer encoded = HornetQBuffers.wrappedBuffer(encodeBuffer);
+      encoded.clear();
+      message.encode(encoded);
+
+      // it has to save more than the extra int on the record to be worth it
+      int maxDeflatedSize = encoded.writerIndex() - DataConstants.SIZE_INT;
+
+      deflater.reset();
+      deflater.setInput(encodeBuffer, 0, encoded.writerIndex());
+      deflater.finish();
+      int deflatedSize = deflater.deflate(deflateBuffer, 0, maxDeflatedSize);
+
+      if (!deflater.finished() || deflatedSize == maxDeflatedSize)
+      {
+         skipCompression = COMPRESS_BACK_OFF;
+         return null;
+      }
+
+      ByteBuffer buffer = fileFactory.newBuffer(deflatedSize + Page.SIZE_COMPRESSED_RECORD);
+
+      HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
+      wrap.clear();
+
+      wrap.writeByte(Page.COMPRESSED_START_BYTE);
+      wrap.writeInt(DataConstants.SIZE_INT + deflatedSize);
+      wrap.writeInt(encoded.writerIndex());
+      wrap.writeBytes(deflateBuffer, 0, deflatedSize);
+      wrap.writeByte(Page.END_BYTE);
+
+      return buffer;
+   }
+
+   /**
+    * Reads a compressed message, the buffer has to be positioned after the record size.
+    */
+   private static PagedMessage decompress(final HornetQBuffer buffer, final int recordSize, final Inflater inflater) throws DataFormatException
+   {
+      int originalSize = buffer.readInt();
+
+      if (originalSize < 0 || recordSize < DataConstants.SIZE_INT)
+      {
+         throw new DataFormatException("Invalid compressed message size " + originalSize);
+      }
+
+      byte[] deflated = new byte[recordSize - DataConstants.SIZE_INT];
+      buffer.readBytes(deflated);
+
+      byte[] encoded = new byte[originalSize];
+
+      inflater.reset();
+      inflater.setInput(deflated);
+      if (inflater.inflate(encoded) != originalSize || !inflater.finished())
+      {
+         throw new DataFormatException("The compressed message doesn't have the size it was written with");
+      }
+
+      PagedMessage msg = new PagedMessageImpl();
+      msg.decode(HornetQBuffers.wrappedBuffer(encoded));
+      return msg;
+   }
+
+   /**
+    * A memory mapped page file that wasn't closed (after a crash) still has the zeroes it was
+    * extended with after its last record, that is the end of the page and not a broken record.
+    */
+   private static boolean isZeroed(final HornetQBuffer buffer)
+   {
+      while (buffer.readable())
+      {
+         if (buffer.readByte() != 0)
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void addOffset(final int offset)
+   {
+      if (numberOfOffsets == offsets.length)
+      {
+         offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+      offsets[numberOfOffsets++] = offset;
+   }
+
+   private SequentialFile createIndexFile()
+   {
+      return fileFactory.createSequentialFile(indexFileName, 1);
+   }
+
+   /**
+    * The index is the number of messages followed by the offset of each one of them. It is only
+    * written when all the messages on the page went through this instance.
+    */
+   private void writeIndex()
+   {
+      if (suspiciousRecords || numberOfOffsets != numberOfMessages.get())
+      {
+         return;
+      }
+
+      try
+      {
+         SequentialFile index = createIndexFile();
+
+         // a page that was reopened after a restart had an index for fewer messages
+         if (index.exists())
+         {
+            index.delete();
+         }
+
+         ByteBuffer buffer = fileFactory.newBuffer(DataConstants.SIZE_INT * (numberOfOffsets + 1));
+         buffer.putInt(numberOfOffsets);
+         for (int i = 0; i < numberOfOffsets; i++)
+         {
+            buffer.putInt(offsets[i]);
+         }
+         buffer.rewind();
+
+         index.open();
+         try
+         {
+            index.writeDirect(buffer, false);
+         }
+         finally
+         {
+            index.close();
+         }
+      }
+      catch (Exception e)
+      {
+         // the page will just be read as a whole
+         HornetQServerLogger.LOGGER.debug("Couldn't write the index of " + this, e);
+      }
+   }
+
+   private void readIndex() throws Exception
+   {
+      SequentialFile index = createIndexFile();
+
+      if (!index.exists())
+      {
+         return;
+      }
+
+      index.open();
+      try
+      {
+         int indexSize = (int) index.size();
+
+         if (indexSize < DataConstants.SIZE_INT || indexSize % DataConstants.SIZE_INT != 0)
+         {
+            return;
+         }
+
+         ByteBuffer buffer = fileFactory.newBuffer(indexSize);
+         index.position(0);
+         index.read(buffer);
+         buffer.rewind();
+
+         int count = buffer.getInt();
+
+         if (count != indexSize / DataConstants.SIZE_INT - 1)
+         {
+            return;
+         }
+
+         int[] indexOffsets = new int[Math.max(count, 1)];
+         for (int i = 0; i < count; i++)
+         {
+            indexOffsets[i] = buffer.getInt();
+         }
+
+         offsets = indexOffsets;
+         numberOfOffsets = count;
+      }
+      finally
+      {
+         index.close();
+      }
+   }
+
    /**
     * @param position
     * @param msgNumber
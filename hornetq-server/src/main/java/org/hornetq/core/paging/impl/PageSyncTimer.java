@@ -18,6 +18,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.hornetq.api.core.HornetQExceptionType;
+import org.hornetq.core.journal.impl.SyncCoordinator;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.persistence.OperationContext;
 
@@ -25,7 +26,7 @@ import org.hornetq.core.persistence.OperationContext;
  * This will batch multiple calls waiting to perform a sync in a single call.
  * @author clebertsuconic
  */
-final class PageSyncTimer
+final class PageSyncTimer implements SyncCoordinator.Participant
 {
 
    // Constants -----------------------------------------------------
@@ -38,6 +39,11 @@ final class PageSyncTimer
 
    private boolean pendingSync;
 
+   // set when a sync was requested ahead of the timer
+   private boolean syncRequested;
+
+   private volatile SyncCoordinator syncCoordinator;
+
    private final long timeSync;
 
    private final Runnable runnable = new Runnable()
@@ -63,6 +69,14 @@ final class PageSyncTimer
 
    // Public --------------------------------------------------------
 
+   /**
+    * The timer only takes part on the coordinator while it has syncs pending
+    */
+   void setSyncCoordinator(SyncCoordinator syncCoordinator)
+   {
+      this.syncCoordinator = syncCoordinator;
+   }
+
    synchronized void addSync(OperationContext ctx)
    {
       ctx.pageSyncLineUp();
@@ -70,17 +84,41 @@ final class PageSyncTimer
       {
          pendingSync = true;
          scheduledExecutor.schedule(runnable, timeSync, TimeUnit.NANOSECONDS);
+
+         SyncCoordinator coordinator = syncCoordinator;
+         if (coordinator != null)
+         {
+            coordinator.addParticipant(this);
+         }
       }
       syncOperations.add(ctx);
    }
 
+   public synchronized boolean syncPending()
+   {
+      if (pendingSync && !syncRequested)
+      {
+         syncRequested = true;
+         scheduledExecutor.execute(runnable);
+         return true;
+      }
+
+      return false;
+   }
+
    private void tick()
    {
       OperationContext [] pendingSyncsArray;
+      SyncCoordinator coordinator = syncCoordinator;
       synchronized (this)
       {
+         if (coordinator != null)
+         {
+            coordinator.removeParticipant(this);
+         }
 
          pendingSync = false;
+         syncRequested = false;
          pendingSyncsArray = new OperationContext[syncOperations.size()];
          pendingSyncsArray = syncOperations.toArray(pendingSyncsArray);
          syncOperations.clear();
@@ -90,6 +128,11 @@ final class PageSyncTimer
       {
          if (pendingSyncsArray.length != 0)
          {
+            if (coordinator != null)
+            {
+               coordinator.onSync(this);
+            }
+
             store.ioSync();
          }
       }
@@ -27,7 +27,9 @@ import java.util.concurrent.ScheduledExecutorService;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.journal.IOCriticalErrorListener;
 import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.SyncCoordinator;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.PagingStoreFactory;
@@ -69,12 +71,37 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
 
    private final IOCriticalErrorListener critialErrorListener;
 
+   private final boolean mapped;
+
+   private volatile SyncCoordinator syncCoordinator;
+
    public PagingStoreFactoryNIO(final StorageManager storageManager, final String directory,
                                 final long syncTimeout,
                                 final ScheduledExecutorService scheduledExecutor,
                                 final ExecutorFactory executorFactory,
                                 final boolean syncNonTransactional,
                                 final IOCriticalErrorListener critialErrorListener)
+   {
+      this(storageManager,
+           directory,
+           syncTimeout,
+           scheduledExecutor,
+           executorFactory,
+           syncNonTransactional,
+           critialErrorListener,
+           false);
+   }
+
+   /**
+    * @param mapped if true the page files are accessed through memory mappings
+    */
+   public PagingStoreFactoryNIO(final StorageManager storageManager, final String directory,
+                                final long syncTimeout,
+                                final ScheduledExecutorService scheduledExecutor,
+                                final ExecutorFactory executorFactory,
+                                final boolean syncNonTransactional,
+                                final IOCriticalErrorListener critialErrorListener,
+                                final boolean mapped)
    {
       this.storageManager = storageManager;
       this.directory = directory;
@@ -83,6 +110,7 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
       this.scheduledExecutor = scheduledExecutor;
       this.syncTimeout = syncTimeout;
       this.critialErrorListener = critialErrorListener;
+      this.mapped = mapped;
    }
 
    // Public --------------------------------------------------------
@@ -91,20 +119,33 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
    {
    }
 
+   /**
+    * The stores created from now on sync their pages along with the other participants of the
+    * coordinator.
+    */
+   public void setSyncCoordinator(final SyncCoordinator syncCoordinator)
+   {
+      this.syncCoordinator = syncCoordinator;
+   }
+
    public synchronized PagingStore newStore(final SimpleString address, final AddressSettings settings)
    {
 
-      return new PagingStoreImpl(address,
-                                 scheduledExecutor,
-                                 syncTimeout,
-                                 pagingManager,
-                                 storageManager,
-                                 null,
-                                 this,
-                                 address,
-                                 settings,
-                                 executorFactory.getExecutor(),
-                                 syncNonTransactional);
+      PagingStoreImpl store = new PagingStoreImpl(address,
+                                                  scheduledExecutor,
+                                                  syncTimeout,
+                                                  pagingManager,
+                                                  storageManager,
+                                                  null,
+                                                  this,
+                                                  address,
+                                                  settings,
+                                                  executorFactory.getExecutor(),
+                                                  syncNonTransactional);
+
+      store.setSyncCoordinator(syncCoordinator);
+
+      return store;
    }
 
    public synchronized SequentialFileFactory newFileFactory(final SimpleString address) throws Exception
@@ -187,17 +228,19 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
 
             AddressSettings settings = addressSettingsRepository.getMatch(address.toString());
 
-            PagingStore store = new PagingStoreImpl(address,
-                                                    scheduledExecutor,
-                                                    syncTimeout,
-                                                    pagingManager,
-                                                    storageManager,
-                                                    factory,
-                                                    this,
-                                                    address,
-                                                    settings,
-                                                    executorFactory.getExecutor(),
-                                                    syncNonTransactional);
+            PagingStoreImpl store = new PagingStoreImpl(address,
+                                                        scheduledExecutor,
+                                                        syncTimeout,
+                                                        pagingManager,
+                                                        storageManager,
+                                                        factory,
+                                                        this,
+                                                        address,
+                                                        settings,
+                                                        executorFactory.getExecutor(),
+                                                        syncNonTransactional);
+
+            store.setSyncCoordinator(syncCoordinator);
 
             storesReturn.add(store);
          }
@@ -208,6 +251,12 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
 
    private SequentialFileFactory newFileFactory(final String directoryName)
    {
+      if (mapped)
+      {
+         return new MappedSequentialFileFactory(directory + File.separatorChar + directoryName,
+                                                false,
+                                                critialErrorListener);
+      }
       return new NIOSequentialFileFactory(directory + File.separatorChar + directoryName, false, critialErrorListener);
    }
 }
@@ -15,6 +15,7 @@ package org.hornetq.core.paging.impl;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.SyncCoordinator;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.PagingManager;
@@ -87,6 +88,8 @@ public class PagingStoreImpl implements PagingStore
 
    private volatile AddressFullMessagePolicy addressFullMessagePolicy;
 
+   private volatile boolean compressPageFiles;
+
    private boolean printedDropMessagesWarning;
 
    private final PagingManager pagingManager;
@@ -188,6 +191,14 @@ public class PagingStoreImpl implements PagingStore
 
       addressFullMessagePolicy = addressSettings.getAddressFullMessagePolicy();
 
+      compressPageFiles = addressSettings.isCompressPageFiles();
+
+      Page page = currentPage;
+      if (page != null)
+      {
+         page.setCompress(compressPageFiles);
+      }
+
       if (cursorProvider != null)
       {
          cursorProvider.setCacheMaxSize(addressSettings.getPageCacheMaxSize());
@@ -325,6 +336,17 @@ public class PagingStoreImpl implements PagingStore
 
    }
 
+   /**
+    * Page syncs are done along with the other participants of the coordinator.
+    */
+   public void setSyncCoordinator(final SyncCoordinator syncCoordinator)
+   {
+      if (syncTimer != null)
+      {
+         syncTimer.setSyncCoordinator(syncCoordinator);
+      }
+   }
+
    public void ioSync() throws Exception
    {
       lock.readLock().lock();
@@ -586,6 +608,8 @@ public class PagingStoreImpl implements PagingStore
 
       Page page = new Page(storeName, storageManager, fileFactory, file, pageNumber);
 
+      page.setCompress(compressPageFiles);
+
       // To create the file
       file.open();
 
@@ -911,6 +935,12 @@ public class PagingStoreImpl implements PagingStore
 
             currentPage.write(pagedMessage);
 
+            if (compressPageFiles)
+            {
+               // the message may have taken less than its encode size, so the page holds more of them
+               currentPageSize.set(currentPage.getSize());
+            }
+
             if (tx == null && syncNonTransactional)
             {
                sync();
@@ -162,8 +162,20 @@ public interface StorageManager extends HornetQComponent
 
    void storeReference(long queueID, long messageID, boolean last) throws Exception;
 
+   /**
+    * Stores the references of a message to durable queues, along with their scheduled delivery
+    * times and the message itself if storeMessage is true, as a single append to the journal.
+    */
+   void storeReferences(ServerMessage message, boolean storeMessage, List<MessageReference> refs) throws Exception;
+
    void deleteMessage(long messageID) throws Exception;
 
+   /**
+    * Deletes the messages as a single append to the journal, see {@link #deleteMessage(long)}.
+    * Nothing is deleted if one of the messages can't be found.
+    */
+   void deleteMessages(List<Long> messageIDs) throws Exception;
+
    void storeAcknowledge(long queueID, long messageID) throws Exception;
 
    void storeCursorAcknowledge(long queueID, PagePosition position) throws Exception;
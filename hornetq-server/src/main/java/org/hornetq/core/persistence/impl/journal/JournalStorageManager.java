@@ -50,6 +50,7 @@ import org.hornetq.api.core.Pair;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.config.Configuration;
 import org.hornetq.core.filter.Filter;
+import org.hornetq.core.journal.BatchRecord;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.IOCriticalErrorListener;
@@ -63,7 +64,9 @@ import org.hornetq.core.journal.TransactionFailureCallback;
 import org.hornetq.core.journal.impl.AIOSequentialFileFactory;
 import org.hornetq.core.journal.impl.JournalFile;
 import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.SyncCoordinator;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagedMessage;
@@ -171,6 +174,9 @@ public class JournalStorageManager implements StorageManager
 
    private final SequentialFileFactory journalFF;
 
+   // Only set when the syncs of the message journal and of the paging stores are coordinated
+   private final SyncCoordinator syncCoordinator;
+
    private Journal messageJournal;
 
    private Journal bindingsJournal;
@@ -231,7 +237,8 @@ public class JournalStorageManager implements StorageManager
 
       executor = executorFactory.getExecutor();
 
-      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO)
+      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO &&
+         config.getJournalType() != JournalType.MAPPED)
       {
          throw HornetQMessageBundle.BUNDLE.invalidJournal();
       }
@@ -248,14 +255,16 @@ public class JournalStorageManager implements StorageManager
 
       SequentialFileFactory bindingsFF = new NIOSequentialFileFactory(bindingsDir, criticalErrorListener);
 
-      Journal localBindings = new JournalImpl(1024 * 1024,
-                                              2,
-                                              config.getJournalCompactMinFiles(),
-                                              config.getJournalCompactPercentage(),
-                                              bindingsFF,
-                                              "hornetq-bindings",
-                                              "bindings",
-                                              1);
+      JournalImpl localBindings = new JournalImpl(1024 * 1024,
+                                                  2,
+                                                  config.getJournalCompactMinFiles(),
+                                                  config.getJournalCompactPercentage(),
+                                                  bindingsFF,
+                                                  "hornetq-bindings",
+                                                  "bindings",
+                                                  1);
+
+      localBindings.setChecksums(config.isJournalChecksums());
 
       bindingsJournal = localBindings;
       originalBindingsJournal = localBindings;
@@ -291,22 +300,62 @@ public class JournalStorageManager implements StorageManager
                                                   config.isLogJournalWriteRate(),
                                                   criticalErrorListener);
       }
+      else if (config.getJournalType() == JournalType.MAPPED)
+      {
+         HornetQServerLogger.LOGGER.journalUseMapped();
+         journalFF = new MappedSequentialFileFactory(journalDir,
+                                                     true,
+                                                     config.getJournalBufferSize_NIO(),
+                                                     config.getJournalBufferTimeout_NIO(),
+                                                     config.isLogJournalWriteRate(),
+                                                     criticalErrorListener);
+      }
       else
       {
          throw HornetQMessageBundle.BUNDLE.invalidJournalType2(config.getJournalType());
       }
 
+      if (config.isJournalBufferTimeoutAdaptive() && journalFF.getTimedBuffer() != null)
+      {
+         journalFF.getTimedBuffer().setAdaptiveTimeout(config.getJournalBufferTimeoutMin(),
+                                                       config.getJournalBufferTimeoutMax());
+      }
+
+      if (config.isJournalCoordinatedSync() && journalFF.getTimedBuffer() != null)
+      {
+         syncCoordinator = new SyncCoordinator();
+         journalFF.getTimedBuffer().setSyncCoordinator(syncCoordinator);
+      }
+      else
+      {
+         syncCoordinator = null;
+      }
+
       idGenerator = new BatchingIDGenerator(0, JournalStorageManager.CHECKPOINT_BATCH_SIZE, this);
 
-      Journal localMessage = new JournalImpl(config.getJournalFileSize(),
-                                             config.getJournalMinFiles(),
-                                             config.getJournalCompactMinFiles(),
-                                             config.getJournalCompactPercentage(),
-                                             journalFF,
-                                             "hornetq-data",
-                                             "hq",
-                                             config.getJournalType() == JournalType.ASYNCIO ? config.getJournalMaxIO_AIO()
-                                                : config.getJournalMaxIO_NIO());
+      JournalImpl localMessage = new JournalImpl(config.getJournalFileSize(),
+                                                 config.getJournalMinFiles(),
+                                                 config.getJournalCompactMinFiles(),
+                                                 config.getJournalCompactPercentage(),
+                                                 journalFF,
+                                                 "hornetq-data",
+                                                 "hq",
+                                                 config.getJournalType() == JournalType.ASYNCIO ? config.getJournalMaxIO_AIO()
+                                                    : config.getJournalMaxIO_NIO());
+
+      localMessage.setConcurrentEncoding(config.isJournalConcurrentEncoding());
+
+      localMessage.setLoadThreads(config.getJournalLoadThreads());
+
+      localMessage.setIncrementalCompact(config.isJournalCompactIncremental());
+
+      localMessage.setCompactMaxFiles(config.getJournalCompactMaxFiles());
+
+      localMessage.setCompactMaxPause(config.getJournalCompactMaxPause());
+
+      localMessage.setChecksums(config.isJournalChecksums());
+
+      localMessage.setPoolFiles(config.getJournalPoolFiles());
 
       messageJournal = localMessage;
       originalMessageJournal = localMessage;
@@ -332,6 +381,14 @@ public class JournalStorageManager implements StorageManager
       OperationContextImpl.clearContext();
    }
 
+   /**
+    * @return the coordinator the paging stores should sync along with the message journal, or null
+    */
+   public SyncCoordinator getSyncCoordinator()
+   {
+      return syncCoordinator;
+   }
+
    public boolean isReplicated()
    {
       return replicator != null;
@@ -933,6 +990,59 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   public void storeReferences(final ServerMessage message,
+                               final boolean storeMessage,
+                               final List<MessageReference> refs) throws Exception
+   {
+      if (message.getMessageID() <= 0)
+      {
+         // Sanity check only... this shouldn't happen unless there is a bug
+         throw HornetQMessageBundle.BUNDLE.messageIdNotAssigned();
+      }
+
+      final long messageID = message.getMessageID();
+
+      final boolean scheduled = message.containsProperty(Message.HDR_SCHEDULED_DELIVERY_TIME);
+
+      List<BatchRecord> records = new ArrayList<BatchRecord>(scheduled ? refs.size() * 2 + 1 : refs.size() + 1);
+
+      if (storeMessage)
+      {
+         if (message.isLargeMessage())
+         {
+            records.add(BatchRecord.add(messageID, JournalRecordIds.ADD_LARGE_MESSAGE,
+                                        new LargeMessageEncoding((LargeServerMessage) message)));
+         }
+         else
+         {
+            records.add(BatchRecord.add(messageID, JournalRecordIds.ADD_MESSAGE, message));
+         }
+      }
+
+      for (MessageReference ref : refs)
+      {
+         long queueID = ref.getQueue().getID();
+
+         records.add(BatchRecord.update(messageID, JournalRecordIds.ADD_REF, new RefEncoding(queueID)));
+
+         if (scheduled)
+         {
+            records.add(BatchRecord.update(messageID, JournalRecordIds.SET_SCHEDULED_DELIVERY_TIME,
+                                           new ScheduledDeliveryEncoding(ref.getScheduledDeliveryTime(), queueID)));
+         }
+      }
+
+      readLock();
+      try
+      {
+         messageJournal.appendBatch(records, syncNonTransactional, getContext(syncNonTransactional));
+      }
+      finally
+      {
+         readUnLock();
+      }
+   }
+
    @Override
    public void readLock()
    {
@@ -995,6 +1105,27 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   public void deleteMessages(final List<Long> messageIDs) throws Exception
+   {
+      List<BatchRecord> records = new ArrayList<BatchRecord>(messageIDs.size());
+
+      for (Long messageID : messageIDs)
+      {
+         records.add(BatchRecord.delete(messageID));
+      }
+
+      readLock();
+      try
+      {
+         // not synced, for the same reason as deleteMessage
+         messageJournal.appendBatch(records, false, getContext(false));
+      }
+      finally
+      {
+         readUnLock();
+      }
+   }
+
    public void updateScheduledDeliveryTime(final MessageReference ref) throws Exception
    {
       ScheduledDeliveryEncoding encoding = new ScheduledDeliveryEncoding(ref.getScheduledDeliveryTime(), ref.getQueue()
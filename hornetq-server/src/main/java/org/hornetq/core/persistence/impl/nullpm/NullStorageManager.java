@@ -162,6 +162,13 @@ public class NullStorageManager implements StorageManager
    {
    }
 
+   @Override
+   public void storeReferences(final ServerMessage message,
+                               final boolean storeMessage,
+                               final List<MessageReference> refs) throws Exception
+   {
+   }
+
    @Override
    public void storeReferenceTransactional(final long txID, final long queueID, final long messageID) throws Exception
    {
@@ -183,6 +190,11 @@ public class NullStorageManager implements StorageManager
    {
    }
 
+   @Override
+   public void deleteMessages(final List<Long> messageIDs) throws Exception
+   {
+   }
+
    @Override
    public void storeMessage(final ServerMessage message) throws Exception
    {
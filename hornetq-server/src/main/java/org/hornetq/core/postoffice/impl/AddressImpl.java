@@ -12,8 +12,9 @@
  */
 package org.hornetq.core.postoffice.impl;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.postoffice.Address;
@@ -31,7 +32,7 @@ public class AddressImpl implements Address
 
    private final boolean containsWildCard;
 
-   private final List<Address> linkedAddresses = new ArrayList<Address>();
+   private final Set<Address> linkedAddresses = new LinkedHashSet<Address>();
 
    public AddressImpl(final SimpleString address)
    {
@@ -55,17 +56,14 @@ public class AddressImpl implements Address
       return containsWildCard;
    }
 
-   public List<Address> getLinkedAddresses()
+   public Collection<Address> getLinkedAddresses()
    {
       return linkedAddresses;
    }
 
    public void addLinkedAddress(final Address address)
    {
-      if (!linkedAddresses.contains(address))
-      {
-         linkedAddresses.add(address);
-      }
+      linkedAddresses.add(address);
    }
 
    public void removeLinkedAddress(final Address actualAddress)
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.postoffice.impl;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.postoffice.Address;
+
+/**
+ * Holds addresses on a tree with one level per word, so the addresses matching a wildcard (or the
+ * wildcards matching an address) are found by walking the words instead of trying every address.
+ * <p>
+ * The lookups return candidates, callers still confirm them with {@link Address#matches(Address)}.
+ * <p>
+ * This class is not thread safe, the address manager uses it under its lock.
+ */
+public final class AddressTrie
+{
+   private final Node root = new Node(null, null);
+
+   private int size;
+
+   public void add(final Address address)
+   {
+      Node node = root;
+      for (SimpleString word : address.getAddressParts())
+      {
+         Node child = node.children.get(word);
+         if (child == null)
+         {
+            child = new Node(node, word);
+            node.children.put(word, child);
+         }
+         node = child;
+      }
+
+      if (node.addresses.add(address))
+      {
+         size++;
+      }
+   }
+
+   public void remove(final Address address)
+   {
+      Node node = root;
+      for (SimpleString word : address.getAddressParts())
+      {
+         node = node.children.get(word);
+         if (node == null)
+         {
+            return;
+         }
+      }
+
+      if (!node.addresses.remove(address))
+      {
+         return;
+      }
+
+      size--;
+
+      // prune the branches left empty
+      while (node.parent != null && node.addresses.isEmpty() && node.children.isEmpty())
+      {
+         node.parent.children.remove(node.word);
+         node = node.parent;
+      }
+   }
+
+   public void clear()
+   {
+      root.children.clear();
+      root.addresses.clear();
+      size = 0;
+   }
+
+   public int size()
+   {
+      return size;
+   }
+
+   /**
+    * Looks up the wildcards held by this trie that may match an address without wildcards.
+    */
+   public Set<Address> getMatchingWildcards(final Address address)
+   {
+      Set<Address> result = new LinkedHashSet<Address>();
+      collectWildcards(root, address.getAddressParts(), 0, result);
+      return result;
+   }
+
+   /**
+    * Looks up the addresses held by this trie (without wildcards) that a wildcard may match.
+    */
+   public Set<Address> getMatchedAddresses(final Address wildcard)
+   {
+      Set<Address> result = new LinkedHashSet<Address>();
+      collectAddresses(root, wildcard.getAddressParts(), 0, result);
+      return result;
+   }
+
+   private static void collectWildcards(final Node node,
+                                        final SimpleString[] words,
+                                        final int pos,
+                                        final Set<Address> result)
+   {
+      Node anyWords = node.children.get(WildcardAddressManager.ANY_WORDS_SIMPLESTRING);
+
+      if (pos == words.length)
+      {
+         result.addAll(node.addresses);
+         if (anyWords != null)
+         {
+            collectWildcards(anyWords, words, pos, result);
+         }
+         return;
+      }
+
+      Node child = node.children.get(words[pos]);
+      if (child != null)
+      {
+         collectWildcards(child, words, pos + 1, result);
+      }
+
+      Node singleWord = node.children.get(WildcardAddressManager.SINGLE_WORD_SIMPLESTRING);
+      if (singleWord != null)
+      {
+         collectWildcards(singleWord, words, pos + 1, result);
+      }
+
+      if (anyWords != null)
+      {
+         for (int i = pos; i <= words.length; i++)
+         {
+            collectWildcards(anyWords, words, i, result);
+         }
+      }
+   }
+
+   private static void collectAddresses(final Node node,
+                                        final SimpleString[] pattern,
+                                        final int pos,
+                                        final Set<Address> result)
+   {
+      if (pos == pattern.length)
+      {
+         result.addAll(node.addresses);
+         return;
+      }
+
+      SimpleString word = pattern[pos];
+
+      if (word.equals(WildcardAddressManager.SINGLE_WORD_SIMPLESTRING))
+      {
+         for (Node child : node.children.values())
+         {
+            collectAddresses(child, pattern, pos + 1, result);
+         }
+      }
+      else if (word.equals(WildcardAddressManager.ANY_WORDS_SIMPLESTRING))
+      {
+         // '#' either ends here or takes one more word
+         collectAddresses(node, pattern, pos + 1, result);
+         for (Node child : node.children.values())
+         {
+            collectAddresses(child, pattern, pos, result);
+         }
+      }
+      else
+      {
+         Node child = node.children.get(word);
+         if (child != null)
+         {
+            collectAddresses(child, pattern, pos + 1, result);
+         }
+      }
+   }
+
+   private static final class Node
+   {
+      final Node parent;
+
+      final SimpleString word;
+
+      final Map<SimpleString, Node> children = new HashMap<SimpleString, Node>();
+
+      final Set<Address> addresses = new LinkedHashSet<Address>(2);
+
+      Node(final Node parent, final SimpleString word)
+      {
+         this.parent = parent;
+         this.word = word;
+      }
+   }
+}
@@ -15,11 +15,15 @@ package org.hornetq.core.postoffice.impl;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.hornetq.api.core.Message;
@@ -49,9 +53,11 @@ public final class BindingsImpl implements Bindings
 {
    private static boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
 
-   private final ConcurrentMap<SimpleString, List<Binding>> routingNameBindingMap = new ConcurrentHashMap<SimpleString, List<Binding>>();
+   // the non exclusive bindings in the order they were added, guarded by this
+   private final List<Binding> routingBindings = new ArrayList<Binding>();
 
-   private final Map<SimpleString, Integer> routingNamePositions = new ConcurrentHashMap<SimpleString, Integer>();
+   // rebuilt from routingBindings on every change, route() only reads it
+   private volatile RoutingTable routingTable = RoutingTable.EMPTY;
 
    private final Map<Long, Binding> bindingsMap = new ConcurrentHashMap<Long, Binding>();
 
@@ -94,23 +100,12 @@ public final class BindingsImpl implements Bindings
       }
       else
       {
-         SimpleString routingName = binding.getRoutingName();
-
-         List<Binding> bindings = routingNameBindingMap.get(routingName);
-
-         if (bindings == null)
+         synchronized (this)
          {
-            bindings = new CopyOnWriteArrayList<Binding>();
+            routingBindings.add(binding);
 
-            List<Binding> oldBindings = routingNameBindingMap.putIfAbsent(routingName, bindings);
-
-            if (oldBindings != null)
-            {
-               bindings = oldBindings;
-            }
+            routingTable = new RoutingTable(routingBindings, routingTable);
          }
-
-         bindings.add(binding);
       }
 
       bindingsMap.put(binding.getID(), binding);
@@ -130,17 +125,11 @@ public final class BindingsImpl implements Bindings
       }
       else
       {
-         SimpleString routingName = binding.getRoutingName();
-
-         List<Binding> bindings = routingNameBindingMap.get(routingName);
-
-         if (bindings != null)
+         synchronized (this)
          {
-            bindings.remove(binding);
-
-            if (bindings.isEmpty())
+            if (routingBindings.remove(binding))
             {
-               routingNameBindingMap.remove(routingName);
+               routingTable = new RoutingTable(routingBindings, routingTable);
             }
          }
       }
@@ -166,22 +155,18 @@ public final class BindingsImpl implements Bindings
          HornetQServerLogger.LOGGER.trace("Redistributing message " + message);
       }
 
-      SimpleString routingName = originatingQueue.getName();
-
-      List<Binding> bindings = routingNameBindingMap.get(routingName);
+      RoutingEntry entry = routingTable.entries.get(originatingQueue.getName());
 
-      if (bindings == null)
+      if (entry == null)
       {
-         // The value can become null if it's concurrently removed while we're iterating - this is expected
-         // ConcurrentHashMap behaviour!
          return false;
       }
 
-      Integer ipos = routingNamePositions.get(routingName);
+      Binding[] bindings = entry.bindings;
 
-      int pos = ipos != null ? ipos.intValue() : 0;
+      int length = bindings.length;
 
-      int length = bindings.size();
+      int pos = entry.pos % length;
 
       int startPos = pos;
 
@@ -190,27 +175,7 @@ public final class BindingsImpl implements Bindings
       // TODO - combine this with similar logic in route()
       while (true)
       {
-         Binding binding;
-         try
-         {
-            binding = bindings.get(pos);
-         }
-         catch (IndexOutOfBoundsException e)
-         {
-            // This can occur if binding is removed while in route
-            if (!bindings.isEmpty())
-            {
-               pos = 0;
-               startPos = 0;
-               length = bindings.size();
-
-               continue;
-            }
-            else
-            {
-               break;
-            }
-         }
+         Binding binding = bindings[pos];
 
          pos = incrementPos(pos, length);
 
@@ -231,7 +196,7 @@ public final class BindingsImpl implements Bindings
          }
       }
 
-      routingNamePositions.put(routingName, pos);
+      entry.pos = pos;
 
       if (theBinding != null)
       {
@@ -280,20 +245,17 @@ public final class BindingsImpl implements Bindings
             {
                HornetQServerLogger.LOGGER.trace("Routing message " + message + " on binding=" + this);
             }
-            for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
-            {
-               SimpleString routingName = entry.getKey();
+            RoutingTable table = routingTable;
 
-               List<Binding> bindings = entry.getValue();
-
-               if (bindings == null)
-               {
-                  // The value can become null if it's concurrently removed while we're iterating - this is expected
-                  // ConcurrentHashMap behaviour!
-                  continue;
-               }
+            // a routing name with a single binding and no filter always gets the message
+            for (Binding binding : table.unfiltered)
+            {
+               binding.route(message, context);
+            }
 
-               Binding theBinding = getNextBinding(message, routingName, bindings);
+            for (RoutingEntry entry : table.filtered)
+            {
+               Binding theBinding = getNextBinding(message, entry);
 
                if (theBinding != null)
                {
@@ -318,15 +280,13 @@ public final class BindingsImpl implements Bindings
     * these two servers. This will eventually send more messages to one server than the other
     * (depending if you are using multi-thread), and not lose messages.
     */
-   private Binding getNextBinding(final ServerMessage message,
-                                  final SimpleString routingName,
-                                  final List<Binding> bindings)
+   private Binding getNextBinding(final ServerMessage message, final RoutingEntry entry)
    {
-      Integer ipos = routingNamePositions.get(routingName);
+      Binding[] bindings = entry.bindings;
 
-      int pos = ipos != null ? ipos : 0;
+      int length = bindings.length;
 
-      int length = bindings.size();
+      int pos = entry.pos % length;
 
       int startPos = pos;
 
@@ -336,27 +296,7 @@ public final class BindingsImpl implements Bindings
 
       while (true)
       {
-         Binding binding;
-         try
-         {
-            binding = bindings.get(pos);
-         }
-         catch (IndexOutOfBoundsException e)
-         {
-            // This can occur if binding is removed while in route
-            if (!bindings.isEmpty())
-            {
-               pos = 0;
-               startPos = 0;
-               length = bindings.size();
-
-               continue;
-            }
-            else
-            {
-               break;
-            }
-         }
+         Binding binding = bindings[pos];
 
          Filter filter = binding.getFilter();
 
@@ -391,26 +331,7 @@ public final class BindingsImpl implements Bindings
             // if no bindings were found, we will apply a secondary level on the routing logic
             if (lastLowPriorityBinding != -1)
             {
-               try
-               {
-                  theBinding = bindings.get(lastLowPriorityBinding);
-               }
-               catch (IndexOutOfBoundsException e)
-               {
-                  // This can occur if binding is removed while in route
-                  if (!bindings.isEmpty())
-                  {
-                     pos = 0;
-
-                     lastLowPriorityBinding = -1;
-
-                     continue;
-                  }
-                  else
-                  {
-                     break;
-                  }
-               }
+               theBinding = bindings[lastLowPriorityBinding];
 
                pos = incrementPos(lastLowPriorityBinding, length);
             }
@@ -419,7 +340,7 @@ public final class BindingsImpl implements Bindings
       }
       if (pos != startPos)
       {
-         routingNamePositions.put(routingName, pos);
+         entry.pos = pos;
       }
       return theBinding;
    }
@@ -430,18 +351,11 @@ public final class BindingsImpl implements Bindings
    {
       SimpleString groupId = message.getSimpleStringProperty(Message.HDR_GROUP_ID);
 
-      for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
+      for (RoutingEntry entry : routingTable.entries.values())
       {
-         SimpleString routingName = entry.getKey();
+         SimpleString routingName = entry.routingName;
 
-         List<Binding> bindings = entry.getValue();
-
-         if (bindings == null)
-         {
-            // The value can become null if it's concurrently removed while we're iterating - this is expected
-            // ConcurrentHashMap behaviour!
-            continue;
-         }
+         Binding[] bindings = entry.bindings;
 
          // concat a full group id, this is for when a binding has multiple bindings
          SimpleString fullID = groupId.concat(".").concat(routingName);
@@ -452,7 +366,7 @@ public final class BindingsImpl implements Bindings
          if (resp == null)
          {
             // ok let's find the next binding to propose
-            Binding theBinding = getNextBinding(message, routingName, bindings);
+            Binding theBinding = getNextBinding(message, entry);
             if (theBinding == null)
             {
                continue;
@@ -516,31 +430,15 @@ public final class BindingsImpl implements Bindings
 
       out.println("\n***************************************");
 
-      out.println("routingNameBindingMap:");
-      if (routingNameBindingMap.isEmpty())
+      out.println("routingTable:");
+      RoutingTable table = routingTable;
+      if (table.entries.isEmpty())
       {
          out.println("EMPTY!");
       }
-      for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
+      for (RoutingEntry entry : table.entries.values())
       {
-         out.print("key=" + entry.getKey() + ", value=" + entry.getValue());
-//         for (Binding bind : entry.getValue())
-//         {
-//            out.print(bind + ",");
-//         }
-         out.println();
-      }
-
-      out.println();
-
-      out.println("RoutingNamePositions:");
-      if (routingNamePositions.isEmpty())
-      {
-         out.println("EMPTY!");
-      }
-      for (Map.Entry<SimpleString, Integer> entry : routingNamePositions.entrySet())
-      {
-         out.println("key=" + entry.getKey() + ", value=" + entry.getValue());
+         out.println("key=" + entry.routingName + ", value=" + Arrays.toString(entry.bindings) + ", pos=" + entry.pos);
       }
 
       out.println();
@@ -611,4 +509,88 @@ public final class BindingsImpl implements Bindings
       return pos;
    }
 
+   /**
+    * The bindings of the address grouped by routing name. A new table is built every time a binding
+    * is added or removed, so route() goes over plain arrays without locking.
+    */
+   private static final class RoutingTable
+   {
+      static final RoutingTable EMPTY = new RoutingTable(Collections.<Binding>emptyList(), null);
+
+      final Map<SimpleString, RoutingEntry> entries;
+
+      // routing names with a single binding and no filter, which get every message
+      final Binding[] unfiltered;
+
+      // routing names where a binding has to be chosen for each message
+      final RoutingEntry[] filtered;
+
+      RoutingTable(final List<Binding> bindings, final RoutingTable previous)
+      {
+         Map<SimpleString, List<Binding>> byName = new LinkedHashMap<SimpleString, List<Binding>>();
+
+         for (Binding binding : bindings)
+         {
+            List<Binding> list = byName.get(binding.getRoutingName());
+            if (list == null)
+            {
+               list = new ArrayList<Binding>();
+               byName.put(binding.getRoutingName(), list);
+            }
+            list.add(binding);
+         }
+
+         entries = new HashMap<SimpleString, RoutingEntry>(byName.size() * 2);
+
+         List<Binding> unfilteredList = new ArrayList<Binding>();
+         List<RoutingEntry> filteredList = new ArrayList<RoutingEntry>();
+
+         for (Map.Entry<SimpleString, List<Binding>> mapEntry : byName.entrySet())
+         {
+            Binding[] routingBindings = mapEntry.getValue().toArray(new Binding[mapEntry.getValue().size()]);
+
+            RoutingEntry entry = new RoutingEntry(mapEntry.getKey(), routingBindings);
+
+            // keep the round robin going
+            RoutingEntry previousEntry = previous == null ? null : previous.entries.get(mapEntry.getKey());
+            if (previousEntry != null)
+            {
+               entry.pos = previousEntry.pos % routingBindings.length;
+            }
+
+            entries.put(mapEntry.getKey(), entry);
+
+            if (routingBindings.length == 1 && routingBindings[0].getFilter() == null)
+            {
+               unfilteredList.add(routingBindings[0]);
+            }
+            else
+            {
+               filteredList.add(entry);
+            }
+         }
+
+         unfiltered = unfilteredList.toArray(new Binding[unfilteredList.size()]);
+         filtered = filteredList.toArray(new RoutingEntry[filteredList.size()]);
+      }
+   }
+
+   private static final class RoutingEntry
+   {
+      final SimpleString routingName;
+
+      final Binding[] bindings;
+
+      /**
+       * Updated without any locking, see {@link BindingsImpl#getNextBinding(ServerMessage, RoutingEntry)}
+       */
+      volatile int pos;
+
+      RoutingEntry(final SimpleString routingName, final Binding[] bindings)
+      {
+         this.routingName = routingName;
+         this.bindings = bindings;
+      }
+   }
+
 }
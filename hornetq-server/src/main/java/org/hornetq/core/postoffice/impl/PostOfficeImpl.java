@@ -982,6 +982,11 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
 
       Transaction tx = context.getTransaction();
 
+      // Without a transaction, the message and its durable references are stored in one batch at the end
+      List<MessageReference> durableRefs = null;
+
+      boolean storeMessage = false;
+
       for (Map.Entry<SimpleString, RouteContextList> entry : context.getContexListing().entrySet())
       {
          PagingStore store = pagingManager.getPageStore(entry.getKey());
@@ -1035,44 +1040,40 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
             {
                int durableRefCount = message.incrementDurableRefCount();
 
-               if (durableRefCount == 1)
+               if (tx == null)
                {
-                  if (tx != null)
+                  if (durableRefCount == 1)
                   {
-                     storageManager.storeMessageTransactional(tx.getID(), message);
+                     storeMessage = true;
                   }
-                  else
+
+                  if (durableRefs == null)
                   {
-                     storageManager.storeMessage(message);
+                     durableRefs = new ArrayList<MessageReference>();
                   }
 
-                  if (message.isLargeMessage())
+                  durableRefs.add(reference);
+               }
+               else
+               {
+                  if (durableRefCount == 1)
                   {
-                     confirmLargeMessageSend(tx, message);
+                     storageManager.storeMessageTransactional(tx.getID(), message);
+
+                     if (message.isLargeMessage())
+                     {
+                        confirmLargeMessageSend(tx, message);
+                     }
                   }
-               }
 
-               if (tx != null)
-               {
                   storageManager.storeReferenceTransactional(tx.getID(), queue.getID(), message.getMessageID());
 
                   tx.setContainsPersistent();
-               }
-               else
-               {
-                  storageManager.storeReference(queue.getID(), message.getMessageID(), !iter.hasNext());
-               }
 
-               if (message.containsProperty(Message.HDR_SCHEDULED_DELIVERY_TIME))
-               {
-                  if (tx != null)
+                  if (message.containsProperty(Message.HDR_SCHEDULED_DELIVERY_TIME))
                   {
                      storageManager.updateScheduledDeliveryTimeTransactional(tx.getID(), reference);
                   }
-                  else
-                  {
-                     storageManager.updateScheduledDeliveryTime(reference);
-                  }
                }
             }
 
@@ -1080,6 +1081,16 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
          }
       }
 
+      if (durableRefs != null)
+      {
+         storageManager.storeReferences(message, storeMessage, durableRefs);
+
+         if (storeMessage && message.isLargeMessage())
+         {
+            confirmLargeMessageSend(null, message);
+         }
+      }
+
       if (tx != null)
       {
          tx.addOperation(new AddOperation(refs));
@@ -13,7 +13,6 @@
 package org.hornetq.core.postoffice.impl;
 
 import java.util.Collection;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -49,6 +48,13 @@ public class WildcardAddressManager extends SimpleAddressManager
 
    private final Map<SimpleString, Address> wildCardAddresses = new ConcurrentHashMap<SimpleString, Address>();
 
+   /**
+    * The same addresses by word, so linking a new address only visits the ones it can match
+    */
+   private final AddressTrie addressTrie = new AddressTrie();
+
+   private final AddressTrie wildCardTrie = new AddressTrie();
+
    public WildcardAddressManager(final BindingsFactory bindingsFactory)
    {
       super(bindingsFactory);
@@ -146,11 +152,13 @@ public class WildcardAddressManager extends SimpleAddressManager
    }
 
    @Override
-   public void clear()
+   public synchronized void clear()
    {
       super.clear();
       addresses.clear();
       wildCardAddresses.clear();
+      addressTrie.clear();
+      wildCardTrie.clear();
    }
 
    private Address getAddress(final SimpleString address)
@@ -187,7 +195,7 @@ public class WildcardAddressManager extends SimpleAddressManager
       }
       if (actualAddress.containsWildCard())
       {
-         for (Address destAdd : addresses.values())
+         for (Address destAdd : addressTrie.getMatchedAddresses(actualAddress))
          {
             if (destAdd.matches(actualAddress))
             {
@@ -198,13 +206,12 @@ public class WildcardAddressManager extends SimpleAddressManager
       }
       else
       {
-         for (Address destAdd : wildCardAddresses.values())
+         for (Address destAdd : wildCardTrie.getMatchingWildcards(actualAddress))
          {
             if (actualAddress.matches(destAdd))
             {
                destAdd.addLinkedAddress(actualAddress);
                actualAddress.addLinkedAddress(destAdd);
-
             }
          }
       }
@@ -216,10 +223,12 @@ public class WildcardAddressManager extends SimpleAddressManager
       if (actualAddress.containsWildCard())
       {
          wildCardAddresses.put(address, actualAddress);
+         wildCardTrie.add(actualAddress);
       }
       else
       {
          addresses.put(address, actualAddress);
+         addressTrie.add(actualAddress);
       }
    }
 
@@ -229,8 +238,7 @@ public class WildcardAddressManager extends SimpleAddressManager
       Bindings bindings = super.getBindingsForRoutingAddress(address.getAddress());
       if (bindings == null || bindings.getBindings().size() == 0)
       {
-         List<Address> addresses = address.getLinkedAddresses();
-         for (Address address1 : addresses)
+         for (Address address1 : address.getLinkedAddresses())
          {
             address1.removeLinkedAddress(address);
             Bindings linkedBindings = super.getBindingsForRoutingAddress(address1.getAddress());
@@ -248,10 +256,12 @@ public class WildcardAddressManager extends SimpleAddressManager
       if (add.containsWildCard())
       {
          wildCardAddresses.remove(add.getAddress());
+         wildCardTrie.remove(add);
       }
       else
       {
          addresses.remove(add.getAddress());
+         addressTrie.remove(add);
       }
    }
 }
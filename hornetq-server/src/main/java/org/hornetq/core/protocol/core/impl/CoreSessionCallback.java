@@ -73,7 +73,7 @@ public final class CoreSessionCallback implements SessionCallback
 
       int size = 0;
 
-      if (channel.sendBatched(packet))
+      if (channel.sendCoalesced(packet))
       {
          size = packet.getPacketSize();
       }
@@ -81,6 +81,11 @@ public final class CoreSessionCallback implements SessionCallback
       return size;
    }
 
+   public void afterDelivery() throws Exception
+   {
+      channel.flushCoalesced();
+   }
+
    public void sendProducerCreditsMessage(int credits, SimpleString address)
    {
       Packet packet = new SessionProducerCreditsMessage(credits, address);
@@ -15,6 +15,7 @@ package org.hornetq.core.replication;
 import java.util.List;
 import java.util.Map;
 
+import org.hornetq.core.journal.BatchRecord;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOCompletion;
 import org.hornetq.core.journal.Journal;
@@ -62,6 +63,14 @@ public class ReplicatedJournal implements Journal
       this.replicationManager = replicationManager;
    }
 
+   /**
+    * @return the journal the records are appended to on this server
+    */
+   public Journal getLocalJournal()
+   {
+      return localJournal;
+   }
+
    /**
     * @param id
     * @param recordType
@@ -206,6 +215,47 @@ public class ReplicatedJournal implements Journal
       localJournal.appendDeleteRecord(id, sync, completionCallback);
    }
 
+   /**
+    * Unlike the other appends, the batch is appended locally before it is replicated: the local
+    * journal rejects the whole batch if any of its records is unknown, and the caller then retries
+    * the records one by one, which would replicate them a second time.
+    */
+   public void appendBatch(final List<BatchRecord> records, final boolean sync) throws Exception
+   {
+      localJournal.appendBatch(records, sync);
+      replicateBatch(records);
+   }
+
+   public void appendBatch(final List<BatchRecord> records, final boolean sync, final IOCompletion completionCallback)
+      throws Exception
+   {
+      localJournal.appendBatch(records, sync, completionCallback);
+      replicateBatch(records);
+   }
+
+   private void replicateBatch(final List<BatchRecord> records) throws Exception
+   {
+      if (ReplicatedJournal.trace)
+      {
+         ReplicatedJournal.trace("AppendBatch records = " + records.size());
+      }
+      for (BatchRecord record : records)
+      {
+         if (record.isDelete)
+         {
+            replicationManager.appendDeleteRecord(journalID, record.id);
+         }
+         else
+         {
+            replicationManager.appendUpdateRecord(journalID,
+                                                  record.isUpdate ? ADD_OPERATION_TYPE.UPDATE : ADD_OPERATION_TYPE.ADD,
+                                                  record.id,
+                                                  record.userRecordType,
+                                                  record.record);
+         }
+      }
+   }
+
    /**
     * @param txID
     * @param id
@@ -48,6 +48,14 @@ public interface Consumer
     */
    void proceedDeliver(MessageReference reference) throws Exception;
 
+   /**
+    * Called by the queue once it's done delivering to this consumer for now, after one or more
+    * calls to {@link #proceedDeliver(MessageReference)}. Deliveries held to be sent together have to
+    * be sent at this point.
+    * @throws Exception
+    */
+   void afterDeliver() throws Exception;
+
    Filter getFilter();
 
    /**
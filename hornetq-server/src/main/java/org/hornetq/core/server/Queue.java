@@ -76,6 +76,12 @@ public interface Queue extends Bindable
 
    void acknowledge(Transaction tx, MessageReference ref) throws Exception;
 
+   /**
+    * Acknowledges a range of references from this queue on one go, as a consumer's cumulative
+    * acknowledgement does.
+    */
+   void acknowledge(Transaction tx, List<MessageReference> refs) throws Exception;
+
    void reacknowledge(Transaction tx, MessageReference ref) throws Exception;
 
    void cancel(Transaction tx, MessageReference ref);
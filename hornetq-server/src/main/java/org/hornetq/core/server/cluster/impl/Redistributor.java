@@ -99,6 +99,11 @@ public class Redistributor implements Consumer
       //noop
    }
 
+   public void afterDeliver() throws Exception
+   {
+      //noop
+   }
+
    public synchronized void start()
    {
       active = true;
@@ -1437,13 +1437,21 @@ public class HornetQServerImpl implements HornetQServer
    private PagingManager createPagingManager()
    {
 
-      return new PagingManagerImpl(new PagingStoreFactoryNIO(storageManager, configuration.getPagingDirectory(),
-                                                             configuration.getJournalBufferSize_NIO(),
-                                                             scheduledPool,
-                                                             executorFactory,
-                                                             configuration.isJournalSyncNonTransactional(),
-                                                             shutdownOnCriticalIO),
-                                   addressSettingsRepository);
+      PagingStoreFactoryNIO storeFactory = new PagingStoreFactoryNIO(storageManager,
+                                                                     configuration.getPagingDirectory(),
+                                                                     configuration.getJournalBufferSize_NIO(),
+                                                                     scheduledPool,
+                                                                     executorFactory,
+                                                                     configuration.isJournalSyncNonTransactional(),
+                                                                     shutdownOnCriticalIO,
+                                                                     configuration.getJournalType() == JournalType.MAPPED);
+
+      if (storageManager instanceof JournalStorageManager)
+      {
+         storeFactory.setSyncCoordinator(((JournalStorageManager)storageManager).getSyncCoordinator());
+      }
+
+      return new PagingManagerImpl(storeFactory, addressSettingsRepository);
    }
 
    /**
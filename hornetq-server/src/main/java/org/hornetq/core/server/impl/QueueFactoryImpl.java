@@ -91,6 +91,22 @@ public class QueueFactoryImpl implements QueueFactory
                                     addressSettingsRepository,
                                     executorFactory.getExecutor());
       }
+      else if (addressSettings.getQueueShards() > 1 && durable && !temporary)
+      {
+         queue = new ShardedQueue(persistenceID,
+                                  address,
+                                  name,
+                                  filter,
+                                  pageSubscription,
+                                  durable,
+                                  temporary,
+                                  scheduledExecutor,
+                                  postOffice,
+                                  storageManager,
+                                  addressSettingsRepository,
+                                  executorFactory,
+                                  addressSettings.getQueueShards());
+      }
       else
       {
          queue = new QueueImpl(persistenceID,
@@ -15,14 +15,17 @@ package org.hornetq.core.server.impl;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
@@ -34,6 +37,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PagedReference;
 import org.hornetq.core.persistence.StorageManager;
@@ -98,6 +102,13 @@ public class QueueImpl implements Queue
 
    public static final int DEFAULT_FLUSH_LIMIT = 500;
 
+   /**
+    * Scans over the references (management operations and expiry) release the queue lock every
+    * SCAN_BATCH references, so deliveries, acknowledgements and new messages are not held up by
+    * a scan over a deep queue
+    */
+   public static final int SCAN_BATCH = 100;
+
    private final long id;
 
    private final SimpleString name;
@@ -126,6 +137,9 @@ public class QueueImpl implements Queue
    // This is where messages are stored
    private final PriorityLinkedList<MessageReference> messageReferences = new PriorityLinkedListImpl<MessageReference>(QueueImpl.NUM_PRIORITIES);
 
+   // where postAcknowledge collects the deletes of a commit, guarded by this
+   private List<Long> ackDeletes;
+
    // The quantity of pagedReferences on messageReferences priority list
    private final AtomicInteger pagedReferences = new AtomicInteger(0);
 
@@ -137,6 +151,9 @@ public class QueueImpl implements Queue
 
    private final List<ConsumerHolder> consumerList = new CopyOnWriteArrayList<ConsumerHolder>();
 
+   // the consumers on consumerList by the property values their filters can match
+   private final SelectorIndex<ConsumerHolder> selectorIndex = new SelectorIndex<ConsumerHolder>();
+
    private final ScheduledDeliveryHandler scheduledDeliveryHandler;
 
    private long messagesAdded;
@@ -182,6 +199,9 @@ public class QueueImpl implements Queue
 
    private int pos;
 
+   // round robin position over the consumers taken from selectorIndex
+   private int indexPos;
+
    private final Executor executor;
 
    private boolean internalQueue;
@@ -371,6 +391,15 @@ public class QueueImpl implements Queue
       return refCountForConsumers;
    }
 
+   /**
+    * Counts the consumers of this queue on a counter shared with other queues, as the shards of a
+    * {@link ShardedQueue} do.
+    */
+   synchronized void setConsumersRefCount(final ReferenceCounter counter)
+   {
+      this.refCountForConsumers = counter;
+   }
+
 
    public boolean isDurable()
    {
@@ -478,8 +507,8 @@ public class QueueImpl implements Queue
 
             if (intermediateMessageReferences.isEmpty() &&
                messageReferences.isEmpty() &&
-               !pageIterator.hasNext() &&
-               !pageSubscription.isPaging())
+               (pageIterator == null || !pageIterator.hasNext()) &&
+               (pageSubscription == null || !pageSubscription.isPaging()))
             {
                // We must block on the executor to ensure any async deliveries have completed or we might get out of order
                // deliveries
@@ -632,7 +661,7 @@ public class QueueImpl implements Queue
       return ok;
    }
 
-   private boolean internalFlushExecutor(long timeout)
+   protected boolean internalFlushExecutor(long timeout)
    {
       FutureLatch future = new FutureLatch();
 
@@ -662,7 +691,11 @@ public class QueueImpl implements Queue
 
          cancelRedistributor();
 
-         consumerList.add(new ConsumerHolder(consumer));
+         ConsumerHolder holder = new ConsumerHolder(consumer);
+
+         consumerList.add(holder);
+
+         selectorIndex.add(holder, holder.filter);
 
          consumerSet.add(consumer);
 
@@ -689,6 +722,7 @@ public class QueueImpl implements Queue
                   holder.iter.close();
                }
                consumerList.remove(holder);
+               selectorIndex.remove(holder, holder.filter);
                break;
             }
          }
@@ -801,12 +835,29 @@ public class QueueImpl implements Queue
       return consumerSet.size();
    }
 
+   /**
+    * Whether the queue has any consumer, without locking the queue.
+    */
+   boolean hasConsumers()
+   {
+      return !consumerList.isEmpty();
+   }
+
    public synchronized Set<Consumer> getConsumers()
    {
       return consumerSet;
    }
 
    public boolean hasMatchingConsumer(final ServerMessage message)
+   {
+      return hasOwnMatchingConsumer(message);
+   }
+
+   /**
+    * Whether a consumer of this queue itself may take the message, subclasses may widen
+    * {@link #hasMatchingConsumer(ServerMessage)}.
+    */
+   final boolean hasOwnMatchingConsumer(final ServerMessage message)
    {
       for (ConsumerHolder holder : consumerList)
       {
@@ -835,18 +886,27 @@ public class QueueImpl implements Queue
    }
 
    public LinkedListIterator<MessageReference> iterator()
+   {
+      return queueIterator();
+   }
+
+   /**
+    * The references held by this queue itself, the scans over the queue use this one as
+    * subclasses may widen {@link #iterator()}.
+    */
+   private synchronized LinkedListIterator<MessageReference> queueIterator()
    {
       return new SynchronizedIterator(messageReferences.iterator());
    }
 
-   public TotalQueueIterator totalIterator()
+   public LinkedListIterator<MessageReference> totalIterator()
    {
       return new TotalQueueIterator();
    }
 
    public synchronized MessageReference removeReferenceWithID(final long id1) throws Exception
    {
-      LinkedListIterator<MessageReference> iterator = iterator();
+      LinkedListIterator<MessageReference> iterator = queueIterator();
 
       try
       {
@@ -884,7 +944,7 @@ public class QueueImpl implements Queue
 
    public synchronized MessageReference getReference(final long id1)
    {
-      LinkedListIterator<MessageReference> iterator = iterator();
+      LinkedListIterator<MessageReference> iterator = queueIterator();
 
       try
       {
@@ -930,13 +990,13 @@ public class QueueImpl implements Queue
          {
             // messageReferences will have depaged messages which we need to discount from the counter as they are
             // counted on the pageSubscription as well
-            return messageReferences.size() + getScheduledCount() +
+            return messageReferences.size() + scheduledDeliveryHandler.getScheduledCount() +
                deliveringCount.get() +
                pageSubscription.getMessageCount();
          }
          else
          {
-            return messageReferences.size() + getScheduledCount() + deliveringCount.get();
+            return messageReferences.size() + scheduledDeliveryHandler.getScheduledCount() + deliveringCount.get();
          }
       }
    }
@@ -979,7 +1039,7 @@ public class QueueImpl implements Queue
    {
       if (ref.isPaged())
       {
-         pageSubscription.ack((PagedReference) ref);
+         getPageSubscription().ack((PagedReference) ref);
          postAcknowledge(ref);
       }
       else
@@ -1001,7 +1061,7 @@ public class QueueImpl implements Queue
    {
       if (ref.isPaged())
       {
-         pageSubscription.ackTx(tx, (PagedReference) ref);
+         getPageSubscription().ackTx(tx, (PagedReference) ref);
 
          getRefsOperation(tx).addAck(ref);
       }
@@ -1022,6 +1082,26 @@ public class QueueImpl implements Queue
       }
    }
 
+   public void acknowledge(final Transaction tx, final List<MessageReference> refs) throws Exception
+   {
+      // added first, so a failure storing the acks rolls back every one of them
+      getRefsOperation(tx).addAcks(refs);
+
+      for (MessageReference ref : refs)
+      {
+         if (ref.isPaged())
+         {
+            getPageSubscription().ackTx(tx, (PagedReference) ref);
+         }
+         else if (ref.getMessage().isDurable() && durable)
+         {
+            storageManager.storeAcknowledgeTransactional(tx.getID(), id, ref.getMessage().getMessageID());
+
+            tx.setContainsPersistent();
+         }
+      }
+   }
+
    public void reacknowledge(final Transaction tx, final MessageReference ref) throws Exception
    {
       ServerMessage message = ref.getMessage();
@@ -1142,7 +1222,8 @@ public class QueueImpl implements Queue
       }
       else
       {
-         return messagesAdded;
+         // only the shards of a ShardedQueue can hold paged references without a page subscription
+         return messagesAdded - pagedReferences.get();
       }
    }
 
@@ -1163,7 +1244,7 @@ public class QueueImpl implements Queue
    }
 
 
-   public synchronized int deleteMatchingReferences(final int flushLimit, final Filter filter1) throws Exception
+   public int deleteMatchingReferences(final int flushLimit, final Filter filter1) throws Exception
    {
       return iterQueue(flushLimit, filter1, new QueueIterateAction()
       {
@@ -1188,35 +1269,42 @@ public class QueueImpl implements Queue
     * @return
     * @throws Exception
     */
-   private synchronized int iterQueue(final int flushLimit, final Filter filter1, QueueIterateAction messageAction) throws Exception
+   private int iterQueue(final int flushLimit, final Filter filter1, QueueIterateAction messageAction) throws Exception
    {
       int count = 0;
       int txCount = 0;
 
       Transaction tx = new TransactionImpl(storageManager);
 
-      LinkedListIterator<MessageReference> iter = iterator();
+      LinkedListIterator<MessageReference> iter = queueIterator();
       try
       {
+         boolean more = true;
 
-         while (iter.hasNext())
+         while (more)
          {
-            MessageReference ref = iter.next();
-
-            if (ref.isPaged() && queueDestroyed)
+            synchronized (this)
             {
-               // this means the queue is being removed
-               // hence paged references are just going away through
-               // page cleanup
-               continue;
-            }
+               for (int i = 0; i < SCAN_BATCH && (more = iter.hasNext()); i++)
+               {
+                  MessageReference ref = iter.next();
 
-            if (filter1 == null || filter1.match(ref.getMessage()))
-            {
-               messageAction.actMessage(tx, ref);
-               iter.remove();
-               txCount++;
-               count++;
+                  if (ref.isPaged() && queueDestroyed)
+                  {
+                     // this means the queue is being removed
+                     // hence paged references are just going away through
+                     // page cleanup
+                     continue;
+                  }
+
+                  if (filter1 == null || filter1.match(ref.getMessage()))
+                  {
+                     messageAction.actMessage(tx, ref);
+                     iter.remove();
+                     txCount++;
+                     count++;
+                  }
+               }
             }
          }
 
@@ -1229,12 +1317,15 @@ public class QueueImpl implements Queue
             txCount = 0;
          }
 
-         List<MessageReference> cancelled = scheduledDeliveryHandler.cancel(filter1);
-         for (MessageReference messageReference : cancelled)
+         synchronized (this)
          {
-            messageAction.actMessage(tx, messageReference);
-            count++;
-            txCount++;
+            List<MessageReference> cancelled = scheduledDeliveryHandler.cancel(filter1);
+            for (MessageReference messageReference : cancelled)
+            {
+               messageAction.actMessage(tx, messageReference);
+               count++;
+               txCount++;
+            }
          }
 
          if (txCount > 0)
@@ -1247,23 +1338,31 @@ public class QueueImpl implements Queue
 
          if (pageIterator != null && !queueDestroyed)
          {
-            while (pageIterator.hasNext())
-            {
-               PagedReference reference = pageIterator.next();
-               pageIterator.remove();
+            more = true;
 
-               if (filter1 == null || filter1.match(reference.getMessage()))
-               {
-                  count++;
-                  txCount++;
-                  messageAction.actMessage(tx, reference);
-               }
-               else
+            while (more)
+            {
+               synchronized (this)
                {
-                  addTail(reference, false);
+                  for (int i = 0; i < SCAN_BATCH && (more = pageIterator.hasNext()); i++)
+                  {
+                     PagedReference reference = pageIterator.next();
+                     pageIterator.remove();
+
+                     if (filter1 == null || filter1.match(reference.getMessage()))
+                     {
+                        count++;
+                        txCount++;
+                        messageAction.actMessage(tx, reference);
+                     }
+                     else
+                     {
+                        addTail(reference, false);
+                     }
+                  }
                }
 
-               if (txCount > 0 && txCount % flushLimit == 0)
+               if (txCount >= flushLimit)
                {
                   tx.commit();
                   tx = new TransactionImpl(storageManager);
@@ -1302,27 +1401,34 @@ public class QueueImpl implements Queue
       }
    }
 
-   public synchronized boolean deleteReference(final long messageID) throws Exception
+   public boolean deleteReference(final long messageID) throws Exception
    {
       boolean deleted = false;
 
       Transaction tx = new TransactionImpl(storageManager);
 
-      LinkedListIterator<MessageReference> iter = iterator();
+      LinkedListIterator<MessageReference> iter = queueIterator();
       try
       {
+         boolean more = true;
 
-         while (iter.hasNext())
+         while (more && !deleted)
          {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
+            synchronized (this)
             {
-               incDelivering();
-               acknowledge(tx, ref);
-               iter.remove();
-               refRemoved(ref);
-               deleted = true;
-               break;
+               for (int i = 0; i < SCAN_BATCH && (more = iter.hasNext()); i++)
+               {
+                  MessageReference ref = iter.next();
+                  if (ref.getMessage().getMessageID() == messageID)
+                  {
+                     incDelivering();
+                     acknowledge(tx, ref);
+                     iter.remove();
+                     refRemoved(ref);
+                     deleted = true;
+                     break;
+                  }
+               }
             }
          }
 
@@ -1382,7 +1488,7 @@ public class QueueImpl implements Queue
 
    }
 
-   public synchronized boolean expireReference(final long messageID) throws Exception
+   public boolean expireReference(final long messageID) throws Exception
    {
       if (expiryAddress != null && expiryAddress.equals(this.address))
       {
@@ -1392,20 +1498,28 @@ public class QueueImpl implements Queue
          return false;
       }
 
-      LinkedListIterator<MessageReference> iter = iterator();
+      LinkedListIterator<MessageReference> iter = queueIterator();
       try
       {
 
-         while (iter.hasNext())
+         boolean more = true;
+
+         while (more)
          {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
+            synchronized (this)
             {
-               incDelivering();
-               expire(ref);
-               iter.remove();
-               refRemoved(ref);
-               return true;
+               for (int i = 0; i < SCAN_BATCH && (more = iter.hasNext()); i++)
+               {
+                  MessageReference ref = iter.next();
+                  if (ref.getMessage().getMessageID() == messageID)
+                  {
+                     incDelivering();
+                     expire(ref);
+                     iter.remove();
+                     refRemoved(ref);
+                     return true;
+                  }
+               }
             }
          }
          return false;
@@ -1416,7 +1530,7 @@ public class QueueImpl implements Queue
       }
    }
 
-   public synchronized int expireReferences(final Filter filter) throws Exception
+   public int expireReferences(final Filter filter) throws Exception
    {
       if (expiryAddress != null && expiryAddress.equals(this.address))
       {
@@ -1429,21 +1543,29 @@ public class QueueImpl implements Queue
       Transaction tx = new TransactionImpl(storageManager);
 
       int count = 0;
-      LinkedListIterator<MessageReference> iter = iterator();
+      LinkedListIterator<MessageReference> iter = queueIterator();
 
       try
       {
 
-         while (iter.hasNext())
+         boolean more = true;
+
+         while (more)
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
+            synchronized (this)
             {
-               incDelivering();
-               expire(tx, ref);
-               iter.remove();
-               refRemoved(ref);
-               count++;
+               for (int i = 0; i < SCAN_BATCH && (more = iter.hasNext()); i++)
+               {
+                  MessageReference ref = iter.next();
+                  if (filter == null || filter.match(ref.getMessage()))
+                  {
+                     incDelivering();
+                     expire(tx, ref);
+                     iter.remove();
+                     refRemoved(ref);
+                     count++;
+                  }
+               }
             }
          }
 
@@ -1478,23 +1600,44 @@ public class QueueImpl implements Queue
    {
       public AtomicInteger scannerRunning = new AtomicInteger(0);
 
+      // a scan over a deep queue is run in a few tasks of SCAN_BATCH references each,
+      // so deliveries waiting on the executor can go on between them
+      private LinkedListIterator<MessageReference> iter;
+
+      private boolean expired;
+
+      private boolean hasElements;
+
       public void run()
       {
          synchronized (QueueImpl.this)
          {
             if (queueDestroyed)
             {
+               closeIterator();
                return;
             }
 
-            LinkedListIterator<MessageReference> iter = iterator();
+            if (iter == null)
+            {
+               iter = queueIterator();
+               expired = false;
+               hasElements = false;
+            }
+
+            boolean done = true;
 
             try
             {
-               boolean expired = false;
-               boolean hasElements = false;
+               int scanned = 0;
                while (postOffice.isStarted() && iter.hasNext())
                {
+                  if (scanned++ == SCAN_BATCH)
+                  {
+                     done = false;
+                     break;
+                  }
+
                   hasElements = true;
                   MessageReference ref = iter.next();
                   try
@@ -1516,42 +1659,66 @@ public class QueueImpl implements Queue
                }
 
                // If empty we need to schedule depaging to make sure we would depage expired messages as well
-               if ((!hasElements || expired) && pageIterator != null && pageIterator.hasNext())
+               if (done && (!hasElements || expired) && pageIterator != null && pageIterator.hasNext())
                {
                   scheduleDepage(true);
                }
             }
             finally
             {
-               try
+               if (done)
                {
-                  iter.close();
+                  closeIterator();
+                  scannerRunning.decrementAndGet();
                }
-               catch (Throwable ignored)
+               else
                {
+                  getExecutor().execute(this);
                }
-               scannerRunning.decrementAndGet();
             }
          }
       }
+
+      private void closeIterator()
+      {
+         if (iter != null)
+         {
+            try
+            {
+               iter.close();
+            }
+            catch (Throwable ignored)
+            {
+            }
+            iter = null;
+         }
+      }
    }
 
-   public synchronized boolean sendMessageToDeadLetterAddress(final long messageID) throws Exception
+   public boolean sendMessageToDeadLetterAddress(final long messageID) throws Exception
    {
-      LinkedListIterator<MessageReference> iter = iterator();
+      LinkedListIterator<MessageReference> iter = queueIterator();
 
       try
       {
-         while (iter.hasNext())
+         boolean more = true;
+
+         while (more)
          {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
+            synchronized (this)
             {
-               incDelivering();
-               sendToDeadLetterAddress(ref);
-               iter.remove();
-               refRemoved(ref);
-               return true;
+               for (int i = 0; i < SCAN_BATCH && (more = iter.hasNext()); i++)
+               {
+                  MessageReference ref = iter.next();
+                  if (ref.getMessage().getMessageID() == messageID)
+                  {
+                     incDelivering();
+                     sendToDeadLetterAddress(ref);
+                     iter.remove();
+                     refRemoved(ref);
+                     return true;
+                  }
+               }
             }
          }
          return false;
@@ -1562,23 +1729,31 @@ public class QueueImpl implements Queue
       }
    }
 
-   public synchronized int sendMessagesToDeadLetterAddress(Filter filter) throws Exception
+   public int sendMessagesToDeadLetterAddress(Filter filter) throws Exception
    {
       int count = 0;
-      LinkedListIterator<MessageReference> iter = iterator();
+      LinkedListIterator<MessageReference> iter = queueIterator();
 
       try
       {
-         while (iter.hasNext())
+         boolean more = true;
+
+         while (more)
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
+            synchronized (this)
             {
-               incDelivering();
-               sendToDeadLetterAddress(ref);
-               iter.remove();
-               refRemoved(ref);
-               count++;
+               for (int i = 0; i < SCAN_BATCH && (more = iter.hasNext()); i++)
+               {
+                  MessageReference ref = iter.next();
+                  if (filter == null || filter.match(ref.getMessage()))
+                  {
+                     incDelivering();
+                     sendToDeadLetterAddress(ref);
+                     iter.remove();
+                     refRemoved(ref);
+                     count++;
+                  }
+               }
             }
          }
          return count;
@@ -1594,32 +1769,40 @@ public class QueueImpl implements Queue
       return moveReference(messageID, toAddress, false);
    }
 
-   public synchronized boolean moveReference(final long messageID,
-                                             final SimpleString toAddress,
-                                             final boolean rejectDuplicate) throws Exception
+   public boolean moveReference(final long messageID,
+                                final SimpleString toAddress,
+                                final boolean rejectDuplicate) throws Exception
    {
-      LinkedListIterator<MessageReference> iter = iterator();
+      LinkedListIterator<MessageReference> iter = queueIterator();
 
       try
       {
-         while (iter.hasNext())
+         boolean more = true;
+
+         while (more)
          {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
+            synchronized (this)
             {
-               iter.remove();
-               refRemoved(ref);
-               incDelivering();
-               try
-               {
-                  move(toAddress, ref, false, rejectDuplicate);
-               }
-               catch (Exception e)
+               for (int i = 0; i < SCAN_BATCH && (more = iter.hasNext()); i++)
                {
-                  decDelivering();
-                  throw e;
+                  MessageReference ref = iter.next();
+                  if (ref.getMessage().getMessageID() == messageID)
+                  {
+                     iter.remove();
+                     refRemoved(ref);
+                     incDelivering();
+                     try
+                     {
+                        move(toAddress, ref, false, rejectDuplicate);
+                     }
+                     catch (Exception e)
+                     {
+                        decDelivering();
+                        throw e;
+                     }
+                     return true;
+                  }
                }
-               return true;
             }
          }
          return false;
@@ -1635,9 +1818,9 @@ public class QueueImpl implements Queue
       return moveReferences(DEFAULT_FLUSH_LIMIT, filter, toAddress, false);
    }
 
-   public synchronized int moveReferences(final int flushLimit, final Filter filter,
-                                          final SimpleString toAddress,
-                                          final boolean rejectDuplicates) throws Exception
+   public int moveReferences(final int flushLimit, final Filter filter,
+                             final SimpleString toAddress,
+                             final boolean rejectDuplicates) throws Exception
    {
       final DuplicateIDCache targetDuplicateCache = postOffice.getDuplicateIDCache(toAddress);
 
@@ -1672,23 +1855,31 @@ public class QueueImpl implements Queue
       });
    }
 
-   public synchronized boolean changeReferencePriority(final long messageID, final byte newPriority) throws Exception
+   public boolean changeReferencePriority(final long messageID, final byte newPriority) throws Exception
    {
-      LinkedListIterator<MessageReference> iter = iterator();
+      LinkedListIterator<MessageReference> iter = queueIterator();
 
       try
       {
 
-         while (iter.hasNext())
+         boolean more = true;
+
+         while (more)
          {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
+            synchronized (this)
             {
-               iter.remove();
-               refRemoved(ref);
-               ref.getMessage().setPriority(newPriority);
-               addTail(ref, false);
-               return true;
+               for (int i = 0; i < SCAN_BATCH && (more = iter.hasNext()); i++)
+               {
+                  MessageReference ref = iter.next();
+                  if (ref.getMessage().getMessageID() == messageID)
+                  {
+                     iter.remove();
+                     refRemoved(ref);
+                     ref.getMessage().setPriority(newPriority);
+                     addTail(ref, false);
+                     return true;
+                  }
+               }
             }
          }
 
@@ -1700,23 +1891,36 @@ public class QueueImpl implements Queue
       }
    }
 
-   public synchronized int changeReferencesPriority(final Filter filter, final byte newPriority) throws Exception
+   public int changeReferencesPriority(final Filter filter, final byte newPriority) throws Exception
    {
-      LinkedListIterator<MessageReference> iter = iterator();
+      LinkedListIterator<MessageReference> iter = queueIterator();
 
       try
       {
          int count = 0;
-         while (iter.hasNext())
+         boolean more = true;
+
+         // changed references are added back through intermediateMessageReferences, and the scan
+         // could meet them again at their new priority once they are polled between two batches
+         Set<MessageReference> changed = new HashSet<MessageReference>();
+
+         while (more)
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
+            synchronized (this)
             {
-               count++;
-               iter.remove();
-               refRemoved(ref);
-               ref.getMessage().setPriority(newPriority);
-               addTail(ref, false);
+               for (int i = 0; i < SCAN_BATCH && (more = iter.hasNext()); i++)
+               {
+                  MessageReference ref = iter.next();
+                  if (!changed.contains(ref) && (filter == null || filter.match(ref.getMessage())))
+                  {
+                     changed.add(ref);
+                     count++;
+                     iter.remove();
+                     refRemoved(ref);
+                     ref.getMessage().setPriority(newPriority);
+                     addTail(ref, false);
+                  }
+               }
             }
          }
          return count;
@@ -1859,6 +2063,24 @@ public class QueueImpl implements Queue
     * are no more matching or available messages.
     */
    private void deliver()
+   {
+      // the consumers that got messages on this run
+      Set<Consumer> delivered = Collections.newSetFromMap(new IdentityHashMap<Consumer, Boolean>());
+
+      try
+      {
+         deliver(delivered);
+      }
+      finally
+      {
+         for (Consumer consumer : delivered)
+         {
+            afterDeliver(consumer);
+         }
+      }
+   }
+
+   private void deliver(final Set<Consumer> delivered)
    {
       if (HornetQServerLogger.LOGGER.isDebugEnabled())
       {
@@ -1878,6 +2100,9 @@ public class QueueImpl implements Queue
 
       long timeout = System.currentTimeMillis() + DELIVERY_TIMEOUT;
 
+      // the consumers ran out of messages
+      boolean starved = false;
+
       while (true)
       {
          if (handled == MAX_DELIVERIES_IN_LOOP)
@@ -1918,6 +2143,7 @@ public class QueueImpl implements Queue
 
             if (messageReferences.size() == 0)
             {
+               starved = true;
                break;
             }
 
@@ -1995,7 +2221,16 @@ public class QueueImpl implements Queue
                   }
                }
 
-               HandleStatus status = handle(ref, consumer);
+               HandleStatus status;
+
+               if (groupConsumer == null && !holder.mayMatch(ref.getMessage()))
+               {
+                  status = HandleStatus.NO_MATCH;
+               }
+               else
+               {
+                  status = handle(ref, consumer);
+               }
 
                if (status == HandleStatus.HANDLED)
                {
@@ -2063,6 +2298,8 @@ public class QueueImpl implements Queue
          if (handledconsumer != null)
          {
             proceedDeliver(handledconsumer, ref);
+
+            delivered.add(handledconsumer);
          }
       }
 
@@ -2070,6 +2307,110 @@ public class QueueImpl implements Queue
       {
          scheduleDepage(false);
       }
+      else if (starved)
+      {
+         deliveryStarved();
+      }
+   }
+
+   /**
+    * Called when a delivery leaves the consumers of this queue with no messages to take. A shard
+    * of a {@link ShardedQueue} takes messages over from the other shards here.
+    */
+   protected void deliveryStarved()
+   {
+   }
+
+   /**
+    * An estimate of the references waiting for a consumer, read without locking the queue.
+    */
+   int getQueuedCount()
+   {
+      return messageReferences.size();
+   }
+
+   /**
+    * Takes up to {@code max} references from the head of this queue, for another shard of the same
+    * queue to deliver. The ones no consumer of the other shard can take stay. Paged references go
+    * as any other, they are still acknowledged through the page subscription they came from.
+    * Grouped references stay, unless this shard has no consumers: then every reference of the
+    * groups routed here (or not routed yet) goes, and those groups are routed to the other shard
+    * from then on.
+    */
+   synchronized List<MessageReference> handOff(final int max,
+                                               final QueueImpl to,
+                                               final ConcurrentMap<SimpleString, QueueImpl> groupShards)
+   {
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      boolean takeGroups = consumerList.isEmpty();
+
+      int ungrouped = 0;
+
+      LinkedListIterator<MessageReference> iter = messageReferences.iterator();
+      try
+      {
+         while (iter.hasNext() && (takeGroups || ungrouped < max))
+         {
+            MessageReference ref = iter.next();
+
+            SimpleString groupID = ref.getMessage().getSimpleStringProperty(Message.HDR_GROUP_ID);
+
+            if (groupID != null)
+            {
+               if (!takeGroups)
+               {
+                  continue;
+               }
+
+               QueueImpl shard = groupShards.get(groupID);
+
+               if (shard != to && !(shard == null ? groupShards.putIfAbsent(groupID, to) == null
+                                                  : groupShards.replace(groupID, this, to)))
+               {
+                  continue;
+               }
+            }
+            else if (ungrouped >= max || !to.hasOwnMatchingConsumer(ref.getMessage()))
+            {
+               continue;
+            }
+            else
+            {
+               ungrouped++;
+            }
+
+            iter.remove();
+            refRemoved(ref);
+            refs.add(ref);
+         }
+      }
+      finally
+      {
+         iter.close();
+      }
+
+      return refs;
+   }
+
+   /**
+    * Adds the references another shard of the same queue handed off, they were already counted
+    * there.
+    */
+   void takeOver(final List<MessageReference> refs)
+   {
+      synchronized (this)
+      {
+         for (MessageReference ref : refs)
+         {
+            MessageReference copy = ref.copy(this);
+            copy.setPersistedCount(ref.getPersistedCount());
+            queueMemorySize.addAndGet(copy.getMessageMemoryEstimate());
+            internalAddTail(copy);
+         }
+      }
+
+      deliverAsync();
    }
 
    /**
@@ -2187,7 +2528,11 @@ public class QueueImpl implements Queue
                                            executor,
                                            QueueImpl.REDISTRIBUTOR_BATCH_SIZE);
 
-         consumerList.add(new ConsumerHolder(redistributor));
+         ConsumerHolder holder = new ConsumerHolder(redistributor);
+
+         consumerList.add(holder);
+
+         selectorIndex.add(holder, holder.filter);
 
          consumersChanged = true;
 
@@ -2389,13 +2734,31 @@ public class QueueImpl implements Queue
             return true;
          }
 
-         int startPos = pos;
+         // with filters that can be indexed only the consumers that may match are tried
+         List<ConsumerHolder> candidates = selectorIndex.getCandidates(ref.getMessage());
+
+         if (candidates != null && candidates.isEmpty())
+         {
+            return false;
+         }
+
+         List<ConsumerHolder> holders = candidates == null ? consumerList : candidates;
 
-         int size = consumerList.size();
+         int size = holders.size();
+
+         int startPos = candidates == null ? pos : indexPos % size;
+
+         int nextPos = startPos;
 
          while (true)
          {
-            ConsumerHolder holder = consumerList.get(pos);
+            if (candidates == null)
+            {
+               // handle could have removed a bad consumer
+               nextPos = pos;
+            }
+
+            ConsumerHolder holder = holders.get(nextPos);
 
             Consumer consumer = holder.consumer;
 
@@ -2415,11 +2778,20 @@ public class QueueImpl implements Queue
                }
             }
 
-            pos++;
+            nextPos++;
 
-            if (pos == size)
+            if (nextPos == size)
             {
-               pos = 0;
+               nextPos = 0;
+            }
+
+            if (candidates == null)
+            {
+               pos = nextPos;
+            }
+            else
+            {
+               indexPos = nextPos;
             }
 
             HandleStatus status = handle(ref, consumer);
@@ -2435,10 +2807,11 @@ public class QueueImpl implements Queue
 
                deliveriesInTransit.countUp();
                proceedDeliver(consumer, ref);
+               afterDeliver(consumer);
                return true;
             }
 
-            if (pos == startPos)
+            if (nextPos == startPos)
             {
                // Tried them all
                break;
@@ -2448,6 +2821,18 @@ public class QueueImpl implements Queue
       }
    }
 
+   private void afterDeliver(final Consumer consumer)
+   {
+      try
+      {
+         consumer.afterDeliver();
+      }
+      catch (Throwable t)
+      {
+         HornetQServerLogger.LOGGER.warn(t.getMessage(), t);
+      }
+   }
+
    private void proceedDeliver(Consumer consumer, MessageReference reference)
    {
       try
@@ -2555,6 +2940,18 @@ public class QueueImpl implements Queue
    {
       QueueImpl queue = (QueueImpl) ref.getQueue();
 
+      // a commit collecting the deletes of its acks holds the lock of the queue while it post-acks
+      postAcknowledge(ref, Thread.holdsLock(queue) ? queue.ackDeletes : null);
+   }
+
+   /**
+    * @param deletes where to add the messages no longer referenced, to delete them on one go, or
+    *                null to delete them right away
+    */
+   private void postAcknowledge(final MessageReference ref, final List<Long> deletes)
+   {
+      QueueImpl queue = (QueueImpl) ref.getQueue();
+
       queue.decDelivering();
 
       if (ref.isPaged())
@@ -2596,18 +2993,52 @@ public class QueueImpl implements Queue
             // Also note that this delete shouldn't sync to disk, or else we would build up the executor's queue
             // as we can't delete each messaging with sync=true while adding messages transactionally.
             // There is a startup check to remove non referenced messages case these deletes fail
-            try
+            if (deletes != null)
             {
-               storageManager.deleteMessage(message.getMessageID());
+               deletes.add(message.getMessageID());
             }
-            catch (Exception e)
+            else
             {
-               HornetQServerLogger.LOGGER.errorRemovingMessage(e, message.getMessageID());
+               deleteMessage(message.getMessageID());
             }
          }
       }
    }
 
+   private void deleteMessage(final long messageID)
+   {
+      try
+      {
+         storageManager.deleteMessage(messageID);
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.errorRemovingMessage(e, messageID);
+      }
+   }
+
+   private void deleteMessages(final List<Long> messageIDs)
+   {
+      if (messageIDs.size() == 1)
+      {
+         deleteMessage(messageIDs.get(0));
+         return;
+      }
+
+      try
+      {
+         storageManager.deleteMessages(messageIDs);
+      }
+      catch (Exception e)
+      {
+         // nothing was deleted, each one is tried on its own so a bad one doesn't hold the others
+         for (Long messageID : messageIDs)
+         {
+            deleteMessage(messageID);
+         }
+      }
+   }
+
    void postRollback(final LinkedList<MessageReference> refs)
    {
       addHead(refs);
@@ -2644,12 +3075,39 @@ public class QueueImpl implements Queue
       ConsumerHolder(final Consumer consumer)
       {
          this.consumer = consumer;
+
+         filter = consumer.getFilter();
+
+         if (filter instanceof FilterImpl)
+         {
+            indexProperty = ((FilterImpl)filter).getIndexProperty();
+            indexValues = ((FilterImpl)filter).getIndexValues();
+         }
+         else
+         {
+            indexProperty = null;
+            indexValues = null;
+         }
       }
 
       final Consumer consumer;
 
+      final Filter filter;
+
+      final SimpleString indexProperty;
+
+      final Set<SimpleString> indexValues;
+
       LinkedListIterator<MessageReference> iter;
 
+      /**
+       * A cheap check against the property values the filter can match,
+       * false means the consumer won't match the message.
+       */
+      boolean mayMatch(final ServerMessage message)
+      {
+         return indexProperty == null || indexValues.contains(message.getObjectProperty(indexProperty));
+      }
    }
 
    public final class RefsOperation extends TransactionOperationAbstract
@@ -2671,6 +3129,14 @@ public class QueueImpl implements Queue
          ignoreRedeliveryCheck = true;
       }
 
+      synchronized void addAcks(final List<MessageReference> refs)
+      {
+         for (MessageReference ref : refs)
+         {
+            addAck(ref);
+         }
+      }
+
       synchronized void addAck(final MessageReference ref)
       {
          refsToAck.add(ref);
@@ -2738,14 +3204,42 @@ public class QueueImpl implements Queue
       @Override
       public void afterCommit(final Transaction tx)
       {
-         for (MessageReference ref : refsToAck)
+         List<Long> deletes = new ArrayList<Long>();
+
+         int size = refsToAck.size();
+
+         int i = 0;
+
+         while (i < size)
          {
-            synchronized (ref.getQueue())
+            QueueImpl queue = (QueueImpl) refsToAck.get(i).getQueue();
+
+            // the refs of a cumulative ack come from the same queue, so they are done under a single lock
+            synchronized (queue)
             {
-               postAcknowledge(ref);
+               queue.ackDeletes = deletes;
+               try
+               {
+                  do
+                  {
+                     postAcknowledge(refsToAck.get(i));
+                     i++;
+                  }
+                  while (i < size && refsToAck.get(i).getQueue() == queue);
+               }
+               finally
+               {
+                  queue.ackDeletes = null;
+               }
             }
          }
 
+         // the messages are deleted after the acks were committed, see postAcknowledge
+         if (!deletes.isEmpty())
+         {
+            deleteMessages(deletes);
+         }
+
          if (pagedMessagesToPostACK != null)
          {
             for (ServerMessage msg : pagedMessagesToPostACK)
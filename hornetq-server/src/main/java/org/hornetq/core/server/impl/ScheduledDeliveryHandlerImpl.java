@@ -13,15 +13,15 @@
 package org.hornetq.core.server.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.hornetq.core.filter.Filter;
@@ -32,6 +32,9 @@ import org.hornetq.core.server.ScheduledDeliveryHandler;
 
 /**
  * Handles scheduling deliveries to a queue at the correct time.
+ * <p>
+ * The scheduled references are kept on a {@link TimingWheel}, and a single task is kept on the
+ * scheduled executor for the earliest of them, instead of one task per delivery time.
  *
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  * @author <a href="ataylor@redhat.com">Andy Taylor</a>
@@ -45,12 +48,17 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
 
    private final ScheduledExecutorService scheduledExecutor;
 
-
-   private final Map<Long, Runnable> runnables = new ConcurrentHashMap<>();
-
    // This contains RefSchedules which are delegates to the real references
    // just adding some information to keep it in order accordingly to the initial operations
-   private final TreeSet<RefScheduled> scheduledReferences = new TreeSet<>(new MessageReferenceComparator());
+   private final TimingWheel<RefScheduled> scheduledReferences = new TimingWheel<RefScheduled>(System.currentTimeMillis());
+
+   // orders the references with the same delivery time, see MessageReferenceComparator
+   private long sequence;
+
+   // the task waiting on the executor, and when it is going to run
+   private ScheduledDeliveryRunnable pendingRunnable;
+
+   private ScheduledFuture<?> pendingFuture;
 
    public ScheduledDeliveryHandlerImpl(final ScheduledExecutorService scheduledExecutor)
    {
@@ -68,9 +76,12 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
             HornetQServerLogger.LOGGER.trace("Scheduling delivery for " + ref + " to occur at " + deliveryTime);
          }
 
-         addInPlace(deliveryTime, ref, tail);
+         synchronized (scheduledReferences)
+         {
+            addInPlace(deliveryTime, ref, tail);
 
-         scheduleDelivery(deliveryTime);
+            scheduleDelivery(deliveryTime);
+         }
 
          return true;
       }
@@ -82,7 +93,7 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
    {
       synchronized (scheduledReferences)
       {
-         scheduledReferences.add(new RefScheduled(ref, tail));
+         scheduledReferences.add(new RefScheduled(ref, tail, sequence++));
       }
    }
 
@@ -96,21 +107,23 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
 
    public List<MessageReference> getScheduledReferences()
    {
-      List<MessageReference> refs = new LinkedList<MessageReference>();
+      List<RefScheduled> scheduled;
 
       synchronized (scheduledReferences)
       {
+         scheduled = new ArrayList<RefScheduled>(scheduledReferences.size());
          for (RefScheduled ref : scheduledReferences)
          {
-            refs.add(ref.getRef());
+            scheduled.add(ref);
          }
       }
-      return refs;
+
+      return sort(scheduled);
    }
 
    public List<MessageReference> cancel(final Filter filter)
    {
-      List<MessageReference> refs = new ArrayList<MessageReference>();
+      List<RefScheduled> cancelled = new ArrayList<RefScheduled>();
 
       synchronized (scheduledReferences)
       {
@@ -118,15 +131,15 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
 
          while (iter.hasNext())
          {
-            MessageReference ref = iter.next().getRef();
-            if (filter == null || filter.match(ref.getMessage()))
+            RefScheduled ref = iter.next();
+            if (filter == null || filter.match(ref.getRef().getMessage()))
             {
                iter.remove();
-               refs.add(ref);
+               cancelled.add(ref);
             }
          }
       }
-      return refs;
+      return sort(cancelled);
    }
 
    public MessageReference removeReferenceWithID(final long id)
@@ -148,46 +161,55 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
       return null;
    }
 
-   private void scheduleDelivery(final long deliveryTime)
+   private static List<MessageReference> sort(final List<RefScheduled> scheduled)
    {
-      final long now = System.currentTimeMillis();
+      Collections.sort(scheduled, new MessageReferenceComparator());
 
-      final long delay = deliveryTime - now;
+      List<MessageReference> refs = new LinkedList<MessageReference>();
 
-      if (delay < 0)
+      for (RefScheduled ref : scheduled)
       {
-         if (ScheduledDeliveryHandlerImpl.trace)
-         {
-            HornetQServerLogger.LOGGER.trace("calling another scheduler now as deliverTime " + deliveryTime + " < now=" + now);
-         }
-         // if delay == 0 we will avoid races between adding the scheduler and finishing it
-         ScheduledDeliveryRunnable runnable = new ScheduledDeliveryRunnable(deliveryTime);
-         scheduledExecutor.schedule(runnable, 0, TimeUnit.MILLISECONDS);
+         refs.add(ref.getRef());
       }
-      else if (!runnables.containsKey(deliveryTime))
-      {
-         ScheduledDeliveryRunnable runnable = new ScheduledDeliveryRunnable(deliveryTime);
 
+      return refs;
+   }
+
+   // called under the scheduledReferences lock
+   private void scheduleDelivery(final long deliveryTime)
+   {
+      if (pendingRunnable != null && pendingRunnable.deliveryTime <= deliveryTime)
+      {
          if (ScheduledDeliveryHandlerImpl.trace)
          {
-            HornetQServerLogger.LOGGER.trace("Setting up scheduler for " + deliveryTime + " with a delay of " + delay + " as now=" + now);
+            HornetQServerLogger.LOGGER.trace("Couldn't make another scheduler as " + pendingRunnable.deliveryTime +
+                                                " is already set for " + deliveryTime);
          }
+         return;
+      }
 
-         runnables.put(deliveryTime, runnable);
-         scheduledExecutor.schedule(runnable, delay, TimeUnit.MILLISECONDS);
+      if (pendingFuture != null)
+      {
+         pendingFuture.cancel(false);
       }
-      else
+
+      final long now = System.currentTimeMillis();
+
+      // if delay == 0 we will avoid races between adding the scheduler and finishing it
+      final long delay = Math.max(deliveryTime - now, 0);
+
+      if (ScheduledDeliveryHandlerImpl.trace)
       {
-         if (ScheduledDeliveryHandlerImpl.trace)
-         {
-            HornetQServerLogger.LOGGER.trace("Couldn't make another scheduler as " + deliveryTime + " is already set, now is " + now);
-         }
+         HornetQServerLogger.LOGGER.trace("Setting up scheduler for " + deliveryTime + " with a delay of " + delay + " as now=" + now);
       }
+
+      pendingRunnable = new ScheduledDeliveryRunnable(deliveryTime);
+      pendingFuture = scheduledExecutor.schedule(pendingRunnable, delay, TimeUnit.MILLISECONDS);
    }
 
    private class ScheduledDeliveryRunnable implements Runnable
    {
-      long deliveryTime;
+      final long deliveryTime;
 
       public ScheduledDeliveryRunnable(final long deliveryTime)
       {
@@ -198,68 +220,74 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
       {
          HashMap<Queue, LinkedList<MessageReference>> refs = new HashMap<Queue, LinkedList<MessageReference>>();
 
-         runnables.remove(deliveryTime);
-
-         final long now = System.currentTimeMillis();
+         List<RefScheduled> expired = new ArrayList<RefScheduled>();
 
-         if (now < deliveryTime)
+         synchronized (scheduledReferences)
          {
-            // Ohhhh... blame it on the OS
-            // on some OSes (so far Windows only) the precision of the scheduled executor could eventually give
-            // an executor call earlier than it was supposed...
-            // for that reason we will schedule it again so no messages are lost!
-            // we can't just assume deliveryTime here as we could deliver earlier than what we are supposed to
-            // this is basically a hack to work around an OS or JDK bug!
-            if (trace)
+            if (pendingRunnable != this)
             {
-               HornetQServerLogger.LOGGER.trace("Scheduler is working around OS imprecisions on " +
-                                                 "timing and re-scheduling an executor. now=" + now +
-                                                 " and deliveryTime=" + deliveryTime);
+               // an earlier delivery took over
+               return;
             }
-            ScheduledDeliveryHandlerImpl.this.scheduleDelivery(deliveryTime);
-         }
 
-         if (ScheduledDeliveryHandlerImpl.trace)
-         {
-            HornetQServerLogger.LOGGER.trace("Is it " + System.currentTimeMillis() + " now and we are running deliveryTime = " + deliveryTime);
-         }
+            pendingRunnable = null;
+            pendingFuture = null;
 
-         synchronized (scheduledReferences)
-         {
+            // on some OSes (so far Windows only) the precision of the scheduled executor could eventually give
+            // an executor call earlier than it was supposed, in which case nothing expires
+            // and the next delivery is scheduled again below, so no messages are lost
+            final long now = System.currentTimeMillis();
 
-            Iterator<RefScheduled> iter = scheduledReferences.iterator();
-            while (iter.hasNext())
+            if (ScheduledDeliveryHandlerImpl.trace)
             {
-               MessageReference reference = iter.next().getRef();
-               if (reference.getScheduledDeliveryTime() > now)
-               {
-                  // We will delivery as long as there are messages to be delivered
-                  break;
-               }
+               HornetQServerLogger.LOGGER.trace("Is it " + now + " now and we are running deliveryTime = " + deliveryTime);
+            }
 
-               iter.remove();
+            scheduledReferences.expire(now, expired);
 
-               reference.setScheduledDeliveryTime(0);
+            long next = scheduledReferences.nextExpiration();
 
-               LinkedList<MessageReference> references = refs.get(reference.getQueue());
+            if (next != Long.MAX_VALUE)
+            {
+               scheduleDelivery(next);
+            }
+         }
 
-               if (references == null)
-               {
-                  references = new LinkedList<MessageReference>();
-                  refs.put(reference.getQueue(), references);
-               }
+         // The wheel gives the references with the same delivery time in the order they were added,
+         // while heads go before tails, the last head first
+         int i = 0;
+         while (i < expired.size())
+         {
+            long time = expired.get(i).getTime();
+
+            int end = i;
+            while (end < expired.size() && expired.get(end).getTime() == time)
+            {
+               end++;
+            }
 
-               if (ScheduledDeliveryHandlerImpl.trace)
+            for (int j = end - 1; j >= i; j--)
+            {
+               if (!expired.get(j).isTail())
                {
-                  HornetQServerLogger.LOGGER.trace("sending message " + reference + " to delivery, deliveryTime =  " + deliveryTime);
+                  deliver(refs, expired.get(j).getRef());
                }
-
-               references.addFirst(reference);
             }
-            if (ScheduledDeliveryHandlerImpl.trace)
+
+            for (int j = i; j < end; j++)
             {
-               HornetQServerLogger.LOGGER.trace("Finished loop on deliveryTime = " + deliveryTime);
+               if (expired.get(j).isTail())
+               {
+                  deliver(refs, expired.get(j).getRef());
+               }
             }
+
+            i = end;
+         }
+
+         if (ScheduledDeliveryHandlerImpl.trace)
+         {
+            HornetQServerLogger.LOGGER.trace("Finished loop on deliveryTime = " + deliveryTime);
          }
 
          for (Map.Entry<Queue, LinkedList<MessageReference>> entry : refs.entrySet())
@@ -277,20 +305,43 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
          // Just to speed up GC
          refs.clear();
       }
+
+      private void deliver(final Map<Queue, LinkedList<MessageReference>> refs, final MessageReference reference)
+      {
+         reference.setScheduledDeliveryTime(0);
+
+         LinkedList<MessageReference> references = refs.get(reference.getQueue());
+
+         if (references == null)
+         {
+            references = new LinkedList<MessageReference>();
+            refs.put(reference.getQueue(), references);
+         }
+
+         if (ScheduledDeliveryHandlerImpl.trace)
+         {
+            HornetQServerLogger.LOGGER.trace("sending message " + reference + " to delivery, deliveryTime =  " + deliveryTime);
+         }
+
+         references.addFirst(reference);
+      }
    }
 
 
-   // We need a treeset ordered, but we need to order tail operations as well.
+   // We need the references ordered, but we need to order tail operations as well.
    // So, this will serve as a delegate to the object
-   class RefScheduled
+   static class RefScheduled extends TimingWheel.Node
    {
       private final MessageReference ref;
       private final boolean tail;
+      private final long sequence;
 
-      RefScheduled(MessageReference ref, boolean tail)
+      RefScheduled(MessageReference ref, boolean tail, long sequence)
       {
+         super(ref.getScheduledDeliveryTime());
          this.ref = ref;
          this.tail = tail;
+         this.sequence = sequence;
       }
 
       public MessageReference getRef()
@@ -303,49 +354,38 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
          return tail;
       }
 
+      public long getSequence()
+      {
+         return sequence;
+      }
    }
 
+   /**
+    * Orders by delivery time, and for the same time puts the heads first, the last head added
+    * first, followed by the tails in the order they were added.
+    */
    static class MessageReferenceComparator implements Comparator<RefScheduled>
    {
       public int compare(RefScheduled ref1, RefScheduled ref2)
       {
-         long diff = ref1.getRef().getScheduledDeliveryTime() - ref2.getRef().getScheduledDeliveryTime();
-
-         if (diff < 0L)
+         if (ref1.getTime() != ref2.getTime())
          {
-            return -1;
+            return ref1.getTime() < ref2.getTime() ? -1 : 1;
          }
-         if (diff > 0L)
+
+         if (ref1.isTail() != ref2.isTail())
          {
-            return 1;
+            return ref1.isTail() ? 1 : -1;
          }
 
-
-         // Even if ref1 and ref2 have the same delivery time, we only want to return 0 if they are identical
-         if (ref1 == ref2)
+         if (ref1.getSequence() == ref2.getSequence())
          {
             return 0;
          }
-         else
-         {
 
-            if (ref1.isTail() && !ref2.isTail())
-            {
-               return 1;
-            }
-            else if (!ref1.isTail() && ref2.isTail())
-            {
-               return -1;
-            }
-            if (!ref1.isTail() && !ref2.isTail())
-            {
-               return -1;
-            }
-            else
-            {
-               return 1;
-            }
-         }
+         boolean before = ref1.getSequence() < ref2.getSequence();
+
+         return before == ref1.isTail() ? -1 : 1;
       }
    }
 
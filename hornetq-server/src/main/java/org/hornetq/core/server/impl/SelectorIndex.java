@@ -0,0 +1,217 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.server.ServerMessage;
+
+/**
+ * Indexes the consumers of a queue whose filters only match messages with given values on a
+ * property (see {@link FilterImpl#getIndexProperty()}) by that property and value, so a message is
+ * only offered to the consumers indexed under its own values and to the ones that can't be indexed.
+ * <p>
+ * The candidates of each value are kept as an immutable list, built when they are first asked for
+ * after the items changed, so looking them up for a message doesn't copy anything unless the
+ * message matches values of more than one property.
+ * <p>
+ * This class is not thread safe, the queue uses it under its lock.
+ */
+public final class SelectorIndex<T>
+{
+   private final Map<SimpleString, Map<SimpleString, Entry>> index = new HashMap<SimpleString, Map<SimpleString, Entry>>();
+
+   private final List<T> unindexed = new ArrayList<T>();
+
+   private int indexed;
+
+   // bumped on every change, the cached candidates built on an older version are stale
+   private int version;
+
+   private List<T> unindexedCandidates = Collections.emptyList();
+
+   public void add(final T item, final Filter filter)
+   {
+      version++;
+
+      if (!isIndexed(filter))
+      {
+         unindexed.add(item);
+         unindexedCandidates = Collections.unmodifiableList(new ArrayList<T>(unindexed));
+         return;
+      }
+
+      FilterImpl filterImpl = (FilterImpl)filter;
+
+      Map<SimpleString, Entry> values = index.get(filterImpl.getIndexProperty());
+
+      if (values == null)
+      {
+         values = new HashMap<SimpleString, Entry>();
+         index.put(filterImpl.getIndexProperty(), values);
+      }
+
+      for (SimpleString value : filterImpl.getIndexValues())
+      {
+         Entry entry = values.get(value);
+         if (entry == null)
+         {
+            entry = new Entry();
+            values.put(value, entry);
+         }
+         entry.items.add(item);
+      }
+
+      indexed++;
+   }
+
+   public void remove(final T item, final Filter filter)
+   {
+      version++;
+
+      if (!isIndexed(filter))
+      {
+         unindexed.remove(item);
+         unindexedCandidates = Collections.unmodifiableList(new ArrayList<T>(unindexed));
+         return;
+      }
+
+      FilterImpl filterImpl = (FilterImpl)filter;
+
+      Map<SimpleString, Entry> values = index.get(filterImpl.getIndexProperty());
+
+      if (values == null)
+      {
+         return;
+      }
+
+      boolean removed = false;
+
+      for (SimpleString value : filterImpl.getIndexValues())
+      {
+         Entry entry = values.get(value);
+         if (entry != null && entry.items.remove(item))
+         {
+            removed = true;
+            if (entry.items.isEmpty())
+            {
+               values.remove(value);
+            }
+         }
+      }
+
+      if (values.isEmpty())
+      {
+         index.remove(filterImpl.getIndexProperty());
+      }
+
+      if (removed)
+      {
+         indexed--;
+      }
+   }
+
+   /**
+    * @return the items whose filters may match the message, in no particular order, or null if no
+    *         filter is indexed and every item has to be tried. The list can't be modified.
+    */
+   public List<T> getCandidates(final ServerMessage message)
+   {
+      if (indexed == 0)
+      {
+         return null;
+      }
+
+      List<T> candidates = null;
+
+      List<T> merged = null;
+
+      for (Map.Entry<SimpleString, Map<SimpleString, Entry>> property : index.entrySet())
+      {
+         Object value = message.getObjectProperty(property.getKey());
+
+         if (value != null)
+         {
+            Entry entry = property.getValue().get(value);
+
+            if (entry == null)
+            {
+               continue;
+            }
+
+            if (candidates == null)
+            {
+               candidates = entry.getCandidates();
+            }
+            else
+            {
+               if (merged == null)
+               {
+                  merged = new ArrayList<T>(candidates);
+               }
+               merged.addAll(entry.items);
+            }
+         }
+      }
+
+      if (merged != null)
+      {
+         return Collections.unmodifiableList(merged);
+      }
+
+      return candidates == null ? unindexedCandidates : candidates;
+   }
+
+   public int getIndexedCount()
+   {
+      return indexed;
+   }
+
+   private static boolean isIndexed(final Filter filter)
+   {
+      return filter instanceof FilterImpl && ((FilterImpl)filter).getIndexProperty() != null;
+   }
+
+   /**
+    * The items indexed under a value.
+    */
+   private final class Entry
+   {
+      private final List<T> items = new ArrayList<T>();
+
+      // the unindexed items followed by these ones
+      private List<T> candidates;
+
+      private int candidatesVersion;
+
+      List<T> getCandidates()
+      {
+         if (candidates == null || candidatesVersion != version)
+         {
+            List<T> list = new ArrayList<T>(unindexed.size() + items.size());
+            list.addAll(unindexed);
+            list.addAll(items);
+            candidates = Collections.unmodifiableList(list);
+            candidatesVersion = version;
+         }
+         return candidates;
+      }
+   }
+}
@@ -12,6 +12,7 @@
  */
 package org.hornetq.core.server.impl;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -175,7 +176,15 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
       this.binding = binding;
 
-      messageQueue = binding.getQueue();
+      Queue queue = binding.getQueue();
+
+      if (!browseOnly && queue instanceof ShardedQueue)
+      {
+         // the consumer is served by one of the shards, which delivers to it and takes its acks
+         queue = ((ShardedQueue) queue).attachShard();
+      }
+
+      messageQueue = queue;
 
       this.started = browseOnly || started;
 
@@ -404,6 +413,11 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       }
    }
 
+   public void afterDeliver() throws Exception
+   {
+      callback.afterDelivery();
+   }
+
    public Filter getFilter()
    {
       return filter;
@@ -520,6 +534,8 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
                      forcedDeliveryMessage.setAddress(messageQueue.getName());
 
                      callback.sendMessage(forcedDeliveryMessage, id, 0);
+
+                     callback.afterDelivery();
                   }
                }
             }
@@ -730,6 +746,9 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       try
       {
 
+         // the refs are acked on one go, a run per queue they came from
+         List<MessageReference> refs = new ArrayList<MessageReference>();
+
          MessageReference ref;
          do
          {
@@ -742,13 +761,24 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
             if (ref == null)
             {
+               // the refs taken so far go on the transaction, so they are put back as it's rolled back
+               acknowledgeRefs(tx, refs);
+
                throw HornetQMessageBundle.BUNDLE.consumerNoReference(id, messageID, messageQueue.getName());
             }
 
-            ref.getQueue().acknowledge(tx, ref);
+            if (!refs.isEmpty() && refs.get(0).getQueue() != ref.getQueue())
+            {
+               acknowledgeRefs(tx, refs);
+               refs.clear();
+            }
+
+            refs.add(ref);
          }
          while (ref.getMessage().getMessageID() != messageID);
 
+         acknowledgeRefs(tx, refs);
+
          if (startedTransaction)
          {
             tx.commit();
@@ -782,6 +812,14 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       }
    }
 
+   private static void acknowledgeRefs(final Transaction tx, final List<MessageReference> refs) throws Exception
+   {
+      if (!refs.isEmpty())
+      {
+         refs.get(0).getQueue().acknowledge(tx, refs);
+      }
+   }
+
    public void individualAcknowledge(final boolean autoCommitAcks, final Transaction tx, final long messageID) throws Exception
    {
       if (browseOnly)
@@ -1184,6 +1222,25 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       }
 
       public synchronized void run()
+      {
+         try
+         {
+            deliver();
+         }
+         finally
+         {
+            try
+            {
+               afterDeliver();
+            }
+            catch (Exception e)
+            {
+               HornetQServerLogger.LOGGER.warn(e.getMessage(), e);
+            }
+         }
+      }
+
+      private void deliver()
       {
          // if the reference was busy during the previous iteration, handle it now
          if (current != null)
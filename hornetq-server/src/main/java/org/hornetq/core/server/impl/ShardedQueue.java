@@ -0,0 +1,937 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.paging.cursor.PageSubscription;
+import org.hornetq.core.persistence.StorageManager;
+import org.hornetq.core.postoffice.PostOffice;
+import org.hornetq.core.server.Consumer;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.RoutingContext;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.settings.HierarchicalRepository;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.utils.ExecutorFactory;
+import org.hornetq.utils.LinkedListIterator;
+
+/**
+ * A queue backed by several shards, each one a queue delivering on its own executor, so the
+ * deliveries of a busy queue are not bound to a single thread.
+ * <p>
+ * This queue is the first shard. It is the one bound to the address, it owns the page
+ * subscription and it gets the messages reloaded from the journal. The other shards share its id
+ * and name, so the journal records and the acknowledgements don't tell the shards apart.
+ * <p>
+ * Messages are spread round-robin over the shards with consumers, apart from grouped messages
+ * which stick to the shard their group was first routed to, and paged messages which are depaged
+ * by this shard and taken over from it by the others. Each consumer is served by the shard with the fewest consumers, and a shard whose
+ * consumers run out of messages takes some over from the other shards, along with the groups of a
+ * shard left without consumers. Management sees the whole queue through this one.
+ */
+public class ShardedQueue extends QueueImpl
+{
+   /**
+    * The most references a shard takes over from another at once
+    */
+   private static final int HAND_OFF_BATCH = 1000;
+
+   // the shards other than this one
+   private final Shard[] shards;
+
+   private final AtomicInteger nextShard = new AtomicInteger(0);
+
+   // the shard each group is routed to
+   private final ConcurrentMap<SimpleString, QueueImpl> groupShards = new ConcurrentHashMap<SimpleString, QueueImpl>();
+
+   public ShardedQueue(final long persistenceID,
+                       final SimpleString address,
+                       final SimpleString name,
+                       final Filter filter,
+                       final PageSubscription pageSubscription,
+                       final boolean durable,
+                       final boolean temporary,
+                       final ScheduledExecutorService scheduledExecutor,
+                       final PostOffice postOffice,
+                       final StorageManager storageManager,
+                       final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                       final ExecutorFactory executorFactory,
+                       final int numberOfShards)
+   {
+      super(persistenceID,
+            address,
+            name,
+            filter,
+            pageSubscription,
+            durable,
+            temporary,
+            scheduledExecutor,
+            postOffice,
+            storageManager,
+            addressSettingsRepository,
+            executorFactory.getExecutor());
+
+      shards = new Shard[numberOfShards - 1];
+
+      for (int i = 0; i < shards.length; i++)
+      {
+         shards[i] = new Shard(persistenceID,
+                               address,
+                               name,
+                               filter,
+                               durable,
+                               temporary,
+                               scheduledExecutor,
+                               postOffice,
+                               storageManager,
+                               addressSettingsRepository,
+                               executorFactory.getExecutor());
+      }
+   }
+
+   public int getNumberOfShards()
+   {
+      return shards.length + 1;
+   }
+
+   /**
+    * Picks the shard a new consumer is served by, the one with the fewest consumers.
+    */
+   public QueueImpl attachShard()
+   {
+      QueueImpl selected = this;
+      int selectedCount = super.getConsumerCount();
+
+      for (Shard shard : shards)
+      {
+         int count = shard.getConsumerCount();
+         if (count < selectedCount)
+         {
+            selected = shard;
+            selectedCount = count;
+         }
+      }
+
+      return selected;
+   }
+
+   @Override
+   public void route(final ServerMessage message, final RoutingContext context) throws Exception
+   {
+      context.addQueue(getAddress(), selectShard(message));
+   }
+
+   private QueueImpl selectShard(final ServerMessage message)
+   {
+      PageSubscription subscription = getPageSubscription();
+
+      if (subscription != null && subscription.isPaging())
+      {
+         // the message is going to the page, and this shard is the one depaging
+         return this;
+      }
+
+      SimpleString groupID = message.getSimpleStringProperty(Message.HDR_GROUP_ID);
+
+      if (groupID != null)
+      {
+         return groupShard(groupID);
+      }
+
+      QueueImpl shard = nextShardWithConsumers();
+
+      if (shard == null)
+      {
+         shard = shard((nextShard.getAndIncrement() & Integer.MAX_VALUE) % getNumberOfShards());
+      }
+
+      return shard;
+   }
+
+   /**
+    * A group sticks to the shard it was first routed to. A group is only moved to another shard
+    * while its shard has no consumers and nothing queued, otherwise it stays where its earlier
+    * messages are, until a starved shard takes the whole group over.
+    */
+   private QueueImpl groupShard(final SimpleString groupID)
+   {
+      while (true)
+      {
+         QueueImpl shard = groupShards.get(groupID);
+
+         if (shard != null && (shard.hasConsumers() || shard.getQueuedCount() > 0))
+         {
+            return shard;
+         }
+
+         QueueImpl selected = nextShardWithConsumers();
+
+         if (selected == null)
+         {
+            if (shard != null)
+            {
+               return shard;
+            }
+
+            selected = shard((groupID.hashCode() & Integer.MAX_VALUE) % getNumberOfShards());
+         }
+
+         if (shard == null ? groupShards.putIfAbsent(groupID, selected) == null
+                           : groupShards.replace(groupID, shard, selected))
+         {
+            return selected;
+         }
+      }
+   }
+
+   /**
+    * @return the next shard round-robin that has consumers, or null if no shard has any
+    */
+   private QueueImpl nextShardWithConsumers()
+   {
+      int count = getNumberOfShards();
+
+      int start = (nextShard.getAndIncrement() & Integer.MAX_VALUE) % count;
+
+      for (int i = 0; i < count; i++)
+      {
+         QueueImpl shard = shard((start + i) % count);
+         if (shard.hasConsumers())
+         {
+            return shard;
+         }
+      }
+
+      return null;
+   }
+
+   private QueueImpl shard(final int index)
+   {
+      return index == 0 ? this : shards[index - 1];
+   }
+
+   @Override
+   protected void deliveryStarved()
+   {
+      handOffTo(this);
+   }
+
+   /**
+    * Moves references from another shard over to a shard whose consumers have nothing left. A shard
+    * without consumers that has references queued is picked first, as nothing would deliver them
+    * there, otherwise the fullest of the other shards.
+    * <p>
+    * The references are copied onto the shard taking them over, which is where they are delivered
+    * and acknowledged from then on, and where they go back to if they are cancelled. The groups on a
+    * shard without consumers are moved whole, and they stick to the new shard.
+    */
+   private void handOffTo(final QueueImpl thief)
+   {
+      QueueImpl victim = null;
+      int victimCount = 0;
+      boolean victimHasConsumers = true;
+
+      for (int i = 0; i < getNumberOfShards(); i++)
+      {
+         QueueImpl shard = shard(i);
+         if (shard == thief)
+         {
+            continue;
+         }
+
+         int count = shard.getQueuedCount();
+         boolean hasConsumers = shard.hasConsumers();
+         if (count > 0 && (victimHasConsumers && !hasConsumers ||
+            victimHasConsumers == hasConsumers && count > victimCount))
+         {
+            victim = shard;
+            victimCount = count;
+            victimHasConsumers = hasConsumers;
+         }
+      }
+
+      if (victim != null)
+      {
+         List<MessageReference> refs = victim.handOff(Math.min(HAND_OFF_BATCH, (victimCount + 1) / 2), thief, groupShards);
+
+         if (!refs.isEmpty())
+         {
+            thief.takeOver(refs);
+            return;
+         }
+      }
+
+      if (thief != this)
+      {
+         depageFor(thief);
+      }
+   }
+
+   /**
+    * Paged messages are depaged by this shard, so a starved shard has this one depage and tries
+    * again once anything was depaged, taking the depaged references over.
+    */
+   private void depageFor(final QueueImpl thief)
+   {
+      final PageSubscription subscription = getPageSubscription();
+
+      if (subscription == null || !subscription.isPaging())
+      {
+         return;
+      }
+
+      final int queued = getQueuedCount();
+
+      super.forceDelivery();
+
+      // the depage runs on the same executor
+      subscription.getExecutor().execute(new Runnable()
+      {
+         public void run()
+         {
+            if (getQueuedCount() > queued)
+            {
+               thief.deliverAsync();
+            }
+         }
+      });
+   }
+
+   // Aggregates over the shards ----------------------------------------------------------------
+
+   @Override
+   public void setConsumersRefCount(final HornetQServer server)
+   {
+      super.setConsumersRefCount(server);
+
+      for (Shard shard : shards)
+      {
+         shard.setConsumersRefCount(getConsumersRefCount());
+      }
+   }
+
+   @Override
+   public int getConsumerCount()
+   {
+      int count = super.getConsumerCount();
+      for (Shard shard : shards)
+      {
+         count += shard.getConsumerCount();
+      }
+      return count;
+   }
+
+   @Override
+   public Set<Consumer> getConsumers()
+   {
+      Set<Consumer> consumers = new HashSet<Consumer>();
+
+      synchronized (this)
+      {
+         consumers.addAll(super.getConsumers());
+      }
+
+      for (Shard shard : shards)
+      {
+         synchronized (shard)
+         {
+            consumers.addAll(shard.getConsumers());
+         }
+      }
+
+      return consumers;
+   }
+
+   @Override
+   public boolean hasMatchingConsumer(final ServerMessage message)
+   {
+      if (super.hasMatchingConsumer(message))
+      {
+         return true;
+      }
+
+      for (Shard shard : shards)
+      {
+         if (shard.hasMatchingConsumer(message))
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   @Override
+   public LinkedListIterator<MessageReference> iterator()
+   {
+      List<LinkedListIterator<MessageReference>> iterators = new ArrayList<LinkedListIterator<MessageReference>>();
+
+      iterators.add(super.iterator());
+
+      for (Shard shard : shards)
+      {
+         iterators.add(shard.iterator());
+      }
+
+      return new ShardsIterator(iterators);
+   }
+
+   @Override
+   public LinkedListIterator<MessageReference> totalIterator()
+   {
+      List<LinkedListIterator<MessageReference>> iterators = new ArrayList<LinkedListIterator<MessageReference>>();
+
+      iterators.add(super.totalIterator());
+
+      for (Shard shard : shards)
+      {
+         iterators.add(shard.totalIterator());
+      }
+
+      return new ShardsIterator(iterators);
+   }
+
+   @Override
+   public long getMessageCount(final long timeout)
+   {
+      if (timeout > 0)
+      {
+         for (Shard shard : shards)
+         {
+            shard.internalFlushExecutor(timeout);
+         }
+      }
+
+      // this one adds up every shard
+      return super.getMessageCount(timeout);
+   }
+
+   @Override
+   public long getInstantMessageCount()
+   {
+      long count = super.getInstantMessageCount();
+      for (Shard shard : shards)
+      {
+         count += shard.getInstantMessageCount();
+      }
+      return count;
+   }
+
+   @Override
+   public int getDeliveringCount()
+   {
+      int count = super.getDeliveringCount();
+      for (Shard shard : shards)
+      {
+         count += shard.getDeliveringCount();
+      }
+      return count;
+   }
+
+   @Override
+   public int getScheduledCount()
+   {
+      int count = super.getScheduledCount();
+      for (Shard shard : shards)
+      {
+         count += shard.getScheduledCount();
+      }
+      return count;
+   }
+
+   @Override
+   public List<MessageReference> getScheduledMessages()
+   {
+      List<MessageReference> refs = new ArrayList<MessageReference>(super.getScheduledMessages());
+      for (Shard shard : shards)
+      {
+         refs.addAll(shard.getScheduledMessages());
+      }
+      return refs;
+   }
+
+   @Override
+   public Map<String, List<MessageReference>> getDeliveringMessages()
+   {
+      Map<String, List<MessageReference>> messages = new HashMap<String, List<MessageReference>>(super.getDeliveringMessages());
+      for (Shard shard : shards)
+      {
+         messages.putAll(shard.getDeliveringMessages());
+      }
+      return messages;
+   }
+
+   @Override
+   public long getMessagesAdded(final long timeout)
+   {
+      if (timeout > 0)
+      {
+         for (Shard shard : shards)
+         {
+            shard.internalFlushExecutor(timeout);
+         }
+      }
+
+      // this one adds up every shard
+      return super.getMessagesAdded(timeout);
+   }
+
+   @Override
+   public long getInstantMessagesAdded()
+   {
+      long count = super.getInstantMessagesAdded();
+      for (Shard shard : shards)
+      {
+         count += shard.getInstantMessagesAdded();
+      }
+      return count;
+   }
+
+   @Override
+   public synchronized void resetMessagesAdded()
+   {
+      super.resetMessagesAdded();
+      for (Shard shard : shards)
+      {
+         shard.resetMessagesAdded();
+      }
+   }
+
+   @Override
+   public MessageReference removeReferenceWithID(final long messageID) throws Exception
+   {
+      MessageReference ref = super.removeReferenceWithID(messageID);
+      for (int i = 0; ref == null && i < shards.length; i++)
+      {
+         ref = shards[i].removeReferenceWithID(messageID);
+      }
+      return ref;
+   }
+
+   @Override
+   public MessageReference getReference(final long messageID)
+   {
+      MessageReference ref = super.getReference(messageID);
+      for (int i = 0; ref == null && i < shards.length; i++)
+      {
+         ref = shards[i].getReference(messageID);
+      }
+      return ref;
+   }
+
+   @Override
+   public boolean deleteReference(final long messageID) throws Exception
+   {
+      boolean deleted = super.deleteReference(messageID);
+      for (int i = 0; !deleted && i < shards.length; i++)
+      {
+         deleted = shards[i].deleteReference(messageID);
+      }
+      return deleted;
+   }
+
+   @Override
+   public int deleteMatchingReferences(final int flushLimit, final Filter filter) throws Exception
+   {
+      int count = super.deleteMatchingReferences(flushLimit, filter);
+      for (Shard shard : shards)
+      {
+         count += shard.deleteMatchingReferences(flushLimit, filter);
+      }
+      return count;
+   }
+
+   @Override
+   public boolean expireReference(final long messageID) throws Exception
+   {
+      boolean expired = super.expireReference(messageID);
+      for (int i = 0; !expired && i < shards.length; i++)
+      {
+         expired = shards[i].expireReference(messageID);
+      }
+      return expired;
+   }
+
+   @Override
+   public int expireReferences(final Filter filter) throws Exception
+   {
+      int count = super.expireReferences(filter);
+      for (Shard shard : shards)
+      {
+         count += shard.expireReferences(filter);
+      }
+      return count;
+   }
+
+   @Override
+   public void expireReferences()
+   {
+      super.expireReferences();
+      for (Shard shard : shards)
+      {
+         shard.expireReferences();
+      }
+   }
+
+   @Override
+   public boolean sendMessageToDeadLetterAddress(final long messageID) throws Exception
+   {
+      boolean sent = super.sendMessageToDeadLetterAddress(messageID);
+      for (int i = 0; !sent && i < shards.length; i++)
+      {
+         sent = shards[i].sendMessageToDeadLetterAddress(messageID);
+      }
+      return sent;
+   }
+
+   @Override
+   public int sendMessagesToDeadLetterAddress(final Filter filter) throws Exception
+   {
+      int count = super.sendMessagesToDeadLetterAddress(filter);
+      for (Shard shard : shards)
+      {
+         count += shard.sendMessagesToDeadLetterAddress(filter);
+      }
+      return count;
+   }
+
+   @Override
+   public boolean changeReferencePriority(final long messageID, final byte newPriority) throws Exception
+   {
+      boolean changed = super.changeReferencePriority(messageID, newPriority);
+      for (int i = 0; !changed && i < shards.length; i++)
+      {
+         changed = shards[i].changeReferencePriority(messageID, newPriority);
+      }
+      return changed;
+   }
+
+   @Override
+   public int changeReferencesPriority(final Filter filter, final byte newPriority) throws Exception
+   {
+      int count = super.changeReferencesPriority(filter, newPriority);
+      for (Shard shard : shards)
+      {
+         count += shard.changeReferencesPriority(filter, newPriority);
+      }
+      return count;
+   }
+
+   @Override
+   public boolean moveReference(final long messageID,
+                                final SimpleString toAddress,
+                                final boolean rejectDuplicate) throws Exception
+   {
+      boolean moved = super.moveReference(messageID, toAddress, rejectDuplicate);
+      for (int i = 0; !moved && i < shards.length; i++)
+      {
+         moved = shards[i].moveReference(messageID, toAddress, rejectDuplicate);
+      }
+      return moved;
+   }
+
+   @Override
+   public int moveReferences(final int flushLimit,
+                             final Filter filter,
+                             final SimpleString toAddress,
+                             final boolean rejectDuplicates) throws Exception
+   {
+      int count = super.moveReferences(flushLimit, filter, toAddress, rejectDuplicates);
+      for (Shard shard : shards)
+      {
+         count += shard.moveReferences(flushLimit, filter, toAddress, rejectDuplicates);
+      }
+      return count;
+   }
+
+   // Applied to every shard --------------------------------------------------------------------
+
+   @Override
+   public void addRedistributor(final long delay)
+   {
+      super.addRedistributor(delay);
+      for (Shard shard : shards)
+      {
+         shard.addRedistributor(delay);
+      }
+   }
+
+   @Override
+   public void cancelRedistributor() throws Exception
+   {
+      super.cancelRedistributor();
+      for (Shard shard : shards)
+      {
+         shard.cancelRedistributor();
+      }
+   }
+
+   @Override
+   public void forceDelivery()
+   {
+      super.forceDelivery();
+      for (Shard shard : shards)
+      {
+         shard.forceDelivery();
+      }
+   }
+
+   @Override
+   public boolean flushExecutor()
+   {
+      boolean ok = super.flushExecutor();
+      for (Shard shard : shards)
+      {
+         ok &= shard.flushExecutor();
+      }
+      return ok;
+   }
+
+   @Override
+   public void pause()
+   {
+      super.pause();
+      for (Shard shard : shards)
+      {
+         shard.pause();
+      }
+   }
+
+   @Override
+   public void resume()
+   {
+      super.resume();
+      for (Shard shard : shards)
+      {
+         shard.resume();
+      }
+   }
+
+   @Override
+   public void setExpiryAddress(final SimpleString expiryAddress)
+   {
+      super.setExpiryAddress(expiryAddress);
+      for (Shard shard : shards)
+      {
+         shard.setExpiryAddress(expiryAddress);
+      }
+   }
+
+   @Override
+   public void setInternalQueue(final boolean internalQueue)
+   {
+      super.setInternalQueue(internalQueue);
+      for (Shard shard : shards)
+      {
+         shard.setInternalQueue(internalQueue);
+      }
+   }
+
+   @Override
+   public void deleteQueue(final boolean removeConsumers) throws Exception
+   {
+      if (removeConsumers)
+      {
+         for (Shard shard : shards)
+         {
+            List<Consumer> consumers;
+
+            synchronized (shard)
+            {
+               consumers = new ArrayList<Consumer>(shard.getConsumers());
+            }
+
+            for (Consumer consumer : consumers)
+            {
+               consumer.disconnect();
+            }
+         }
+      }
+
+      // deleting the references goes over every shard
+      super.deleteQueue(removeConsumers);
+   }
+
+   @Override
+   public void close() throws Exception
+   {
+      super.close();
+      for (Shard shard : shards)
+      {
+         shard.close();
+      }
+   }
+
+   // the shards share the name, but they are different queues
+   @Override
+   public boolean equals(final Object other)
+   {
+      return this == other;
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return System.identityHashCode(this);
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ShardedQueue[name=" + getName() + ", shards=" + getNumberOfShards() + "]@" +
+         Integer.toHexString(System.identityHashCode(this));
+   }
+
+   /**
+    * One of the other shards, it gets the messages routed to it and serves the consumers attached
+    * to it.
+    */
+   private final class Shard extends QueueImpl
+   {
+      Shard(final long id,
+            final SimpleString address,
+            final SimpleString name,
+            final Filter filter,
+            final boolean durable,
+            final boolean temporary,
+            final ScheduledExecutorService scheduledExecutor,
+            final PostOffice postOffice,
+            final StorageManager storageManager,
+            final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+            final Executor executor)
+      {
+         super(id,
+               address,
+               name,
+               filter,
+               null,
+               durable,
+               temporary,
+               scheduledExecutor,
+               postOffice,
+               storageManager,
+               addressSettingsRepository,
+               executor);
+      }
+
+      /**
+       * The shards are paged through the subscription of the first shard, this is also the one
+       * acknowledging paged references.
+       */
+      @Override
+      public PageSubscription getPageSubscription()
+      {
+         return ShardedQueue.this.getPageSubscription();
+      }
+
+      @Override
+      protected void deliveryStarved()
+      {
+         handOffTo(this);
+      }
+
+      @Override
+      public boolean equals(final Object other)
+      {
+         return this == other;
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return System.identityHashCode(this);
+      }
+   }
+
+   /**
+    * Goes over the references of every shard, one shard after the other.
+    */
+   private static final class ShardsIterator implements LinkedListIterator<MessageReference>
+   {
+      private final List<LinkedListIterator<MessageReference>> iterators;
+
+      private int current;
+
+      private int last = -1;
+
+      ShardsIterator(final List<LinkedListIterator<MessageReference>> iterators)
+      {
+         this.iterators = iterators;
+      }
+
+      public boolean hasNext()
+      {
+         while (current < iterators.size())
+         {
+            if (iterators.get(current).hasNext())
+            {
+               return true;
+            }
+            current++;
+         }
+         return false;
+      }
+
+      public MessageReference next()
+      {
+         if (!hasNext())
+         {
+            throw new NoSuchElementException();
+         }
+         last = current;
+         return iterators.get(current).next();
+      }
+
+      public void remove()
+      {
+         if (last < 0)
+         {
+            throw new IllegalStateException();
+         }
+         iterators.get(last).remove();
+      }
+
+      public void repeat()
+      {
+         if (last >= 0)
+         {
+            current = last;
+            iterators.get(last).repeat();
+         }
+      }
+
+      public void close()
+      {
+         for (LinkedListIterator<MessageReference> iterator : iterators)
+         {
+            iterator.close();
+         }
+      }
+   }
+}
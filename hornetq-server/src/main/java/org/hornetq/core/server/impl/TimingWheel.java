@@ -0,0 +1,412 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.server.impl;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A hierarchical timing wheel with a resolution of one millisecond.
+ * <p>
+ * Level {@code n} has 64 slots of 64<sup>n</sup> milliseconds each, and a node is kept on the
+ * level of the highest 6 bit digit on which its time differs from the current time of the wheel.
+ * Adding or removing a node is O(1); as time goes by the slots of the higher levels are moved
+ * down a level, so a node is touched at most once per level before it expires. Nodes are linked
+ * on the slots themselves, so there's no allocation per node other than the node itself.
+ * <p>
+ * Nodes expire in time order, and in the order they were added when they have the same time.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class TimingWheel<T extends TimingWheel.Node> implements Iterable<T>
+{
+   private static final int BITS = 6;
+
+   private static final int SLOTS = 1 << BITS;
+
+   // enough levels for any positive long
+   private static final int LEVELS = (Long.SIZE + BITS - 1) / BITS;
+
+   // the nodes whose time was already reached when they were added
+   private static final int DUE = LEVELS;
+
+   private static final int NONE = -1;
+
+   private final Node[][] heads = new Node[LEVELS + 1][];
+
+   private final Node[][] tails = new Node[LEVELS + 1][];
+
+   // one bit per used slot on each level
+   private final long[] used = new long[LEVELS];
+
+   private long currentTime;
+
+   private int size;
+
+   public TimingWheel(final long currentTime)
+   {
+      this.currentTime = currentTime;
+   }
+
+   public void add(final T node)
+   {
+      if (((Node)node).level != NONE)
+      {
+         throw new IllegalStateException("Node is already on a wheel");
+      }
+
+      link(node);
+
+      size++;
+   }
+
+   public boolean remove(final T node)
+   {
+      if (((Node)node).level == NONE)
+      {
+         return false;
+      }
+
+      unlink(node);
+
+      size--;
+
+      return true;
+   }
+
+   public int size()
+   {
+      return size;
+   }
+
+   public long getCurrentTime()
+   {
+      return currentTime;
+   }
+
+   /**
+    * @return when {@link #expire(long, List)} should be called next (this may be earlier than the
+    *         first node to expire), or Long.MAX_VALUE if the wheel is empty
+    */
+   public long nextExpiration()
+   {
+      if (heads[DUE] != null && heads[DUE][0] != null)
+      {
+         return currentTime;
+      }
+
+      for (int level = 0; level < LEVELS; level++)
+      {
+         if (used[level] != 0)
+         {
+            return slotStart(level, Long.numberOfTrailingZeros(used[level]));
+         }
+      }
+
+      return Long.MAX_VALUE;
+   }
+
+   /**
+    * Moves the wheel forward to {@code now}, removing every node whose time has been reached.
+    *
+    * @param expired receives the expired nodes, in time order
+    */
+   @SuppressWarnings("unchecked")
+   public void expire(final long now, final List<? super T> expired)
+   {
+      if (heads[DUE] != null)
+      {
+         for (Node node = detach(DUE, 0); node != null; )
+         {
+            Node next = node.next;
+            node.next = null;
+            expired.add((T)node);
+            size--;
+            node = next;
+         }
+      }
+
+      while (true)
+      {
+         int level = 0;
+
+         while (level < LEVELS && used[level] == 0)
+         {
+            level++;
+         }
+
+         if (level == LEVELS)
+         {
+            break;
+         }
+
+         int slot = Long.numberOfTrailingZeros(used[level]);
+
+         long start = slotStart(level, slot);
+
+         if (start > now)
+         {
+            break;
+         }
+
+         // the nodes on the lower levels are all gone, so the wheel can jump to the start of the slot
+         currentTime = start;
+
+         for (Node node = detach(level, slot); node != null; )
+         {
+            Node next = node.next;
+            node.next = null;
+            if (node.time <= currentTime)
+            {
+               expired.add((T)node);
+               size--;
+            }
+            else
+            {
+               link(node);
+            }
+            node = next;
+         }
+      }
+
+      if (now > currentTime)
+      {
+         currentTime = now;
+      }
+   }
+
+   /**
+    * Iterates the nodes in no particular order. The iterator supports remove().
+    */
+   public Iterator<T> iterator()
+   {
+      return new WheelIterator();
+   }
+
+   private long slotStart(final int level, final int slot)
+   {
+      int shift = BITS * (level + 1);
+
+      long block = shift >= Long.SIZE ? 0 : currentTime >>> shift << shift;
+
+      return block | (long)slot << BITS * level;
+   }
+
+   private void link(final Node node)
+   {
+      int level;
+      int slot;
+
+      if (node.time <= currentTime)
+      {
+         level = DUE;
+         slot = 0;
+      }
+      else
+      {
+         level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(node.time ^ currentTime)) / BITS;
+         slot = (int)(node.time >>> BITS * level) & SLOTS - 1;
+         used[level] |= 1L << slot;
+      }
+
+      if (heads[level] == null)
+      {
+         heads[level] = new Node[level == DUE ? 1 : SLOTS];
+         tails[level] = new Node[level == DUE ? 1 : SLOTS];
+      }
+
+      node.level = level;
+      node.slot = slot;
+
+      Node prev = tails[level][slot];
+
+      if (level == DUE)
+      {
+         // the due nodes can have any time already reached, they are kept in time order
+         while (prev != null && prev.time > node.time)
+         {
+            prev = prev.prev;
+         }
+      }
+
+      Node next = prev == null ? heads[level][slot] : prev.next;
+
+      node.prev = prev;
+      node.next = next;
+      if (prev == null)
+      {
+         heads[level][slot] = node;
+      }
+      else
+      {
+         prev.next = node;
+      }
+      if (next == null)
+      {
+         tails[level][slot] = node;
+      }
+      else
+      {
+         next.prev = node;
+      }
+   }
+
+   private void unlink(final Node node)
+   {
+      int level = node.level;
+      int slot = node.slot;
+
+      if (node.prev == null)
+      {
+         heads[level][slot] = node.next;
+      }
+      else
+      {
+         node.prev.next = node.next;
+      }
+
+      if (node.next == null)
+      {
+         tails[level][slot] = node.prev;
+      }
+      else
+      {
+         node.next.prev = node.prev;
+      }
+
+      if (level != DUE && heads[level][slot] == null)
+      {
+         used[level] &= ~(1L << slot);
+      }
+
+      node.level = NONE;
+      node.prev = null;
+      node.next = null;
+   }
+
+   /**
+    * Takes the whole list out of a slot, the nodes stay chained through next.
+    */
+   private Node detach(final int level, final int slot)
+   {
+      Node head = heads[level][slot];
+
+      heads[level][slot] = null;
+      tails[level][slot] = null;
+
+      if (level != DUE)
+      {
+         used[level] &= ~(1L << slot);
+      }
+
+      for (Node node = head; node != null; node = node.next)
+      {
+         node.level = NONE;
+         node.prev = null;
+      }
+
+      return head;
+   }
+
+   /**
+    * The nodes kept by the wheel, subclasses carry whatever is being scheduled.
+    */
+   public abstract static class Node
+   {
+      private final long time;
+
+      private int level = NONE;
+
+      private int slot;
+
+      private Node prev;
+
+      private Node next;
+
+      protected Node(final long time)
+      {
+         this.time = time;
+      }
+
+      public final long getTime()
+      {
+         return time;
+      }
+   }
+
+   private final class WheelIterator implements Iterator<T>
+   {
+      private int level = -1;
+
+      private int slot = -1;
+
+      private Node next;
+
+      private Node last;
+
+      WheelIterator()
+      {
+         advance(null);
+      }
+
+      public boolean hasNext()
+      {
+         return next != null;
+      }
+
+      @SuppressWarnings("unchecked")
+      public T next()
+      {
+         if (next == null)
+         {
+            throw new NoSuchElementException();
+         }
+         last = next;
+         advance(next.next);
+         return (T)last;
+      }
+
+      @SuppressWarnings("unchecked")
+      public void remove()
+      {
+         if (last == null)
+         {
+            throw new IllegalStateException();
+         }
+         TimingWheel.this.remove((T)last);
+         last = null;
+      }
+
+      private void advance(final Node candidate)
+      {
+         next = candidate;
+
+         while (next == null)
+         {
+            if (level >= 0 && heads[level] != null && ++slot < heads[level].length)
+            {
+               next = heads[level][slot];
+            }
+            else if (++level > DUE)
+            {
+               return;
+            }
+            else
+            {
+               slot = -1;
+            }
+         }
+      }
+   }
+}
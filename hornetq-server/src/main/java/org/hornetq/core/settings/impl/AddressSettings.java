@@ -58,6 +58,10 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    public static final boolean DEFAULT_SEND_TO_DLA_ON_NO_ROUTE = false;
 
+   public static final int DEFAULT_QUEUE_SHARDS = 1;
+
+   public static final boolean DEFAULT_COMPRESS_PAGE_FILES = false;
+
    private AddressFullMessagePolicy addressFullMessagePolicy = null;
 
    private Long maxSizeBytes = null;
@@ -90,6 +94,10 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    private Boolean sendToDLAOnNoRoute = null;
 
+   private Integer queueShards = null;
+
+   private Boolean compressPageFiles = null;
+
    public boolean isLastValueQueue()
    {
       return lastValueQueue != null ? lastValueQueue : AddressSettings.DEFAULT_LAST_VALUE_QUEUE;
@@ -244,6 +252,32 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       this.redistributionDelay = redistributionDelay;
    }
 
+   /**
+    * The number of shards backing each durable queue on the address, 1 means queues are not sharded.
+    */
+   public int getQueueShards()
+   {
+      return queueShards != null ? queueShards : AddressSettings.DEFAULT_QUEUE_SHARDS;
+   }
+
+   public void setQueueShards(final int queueShards)
+   {
+      this.queueShards = queueShards;
+   }
+
+   /**
+    * Whether the messages are compressed as they are written to the page files.
+    */
+   public boolean isCompressPageFiles()
+   {
+      return compressPageFiles != null ? compressPageFiles : AddressSettings.DEFAULT_COMPRESS_PAGE_FILES;
+   }
+
+   public void setCompressPageFiles(final boolean compressPageFiles)
+   {
+      this.compressPageFiles = compressPageFiles;
+   }
+
    /**
     * merge 2 objects in to 1
     *
@@ -311,6 +345,14 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       {
          addressFullMessagePolicy = merged.addressFullMessagePolicy;
       }
+      if (queueShards == null)
+      {
+         queueShards = merged.queueShards;
+      }
+      if (compressPageFiles == null)
+      {
+         compressPageFiles = merged.compressPageFiles;
+      }
    }
 
    @Override
@@ -356,6 +398,11 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       redistributionDelay = BufferHelper.readNullableLong(buffer);
 
       sendToDLAOnNoRoute = BufferHelper.readNullableBoolean(buffer);
+
+      // settings stored by older versions end here
+      queueShards = buffer.readable() ? BufferHelper.readNullableInteger(buffer) : null;
+
+      compressPageFiles = buffer.readable() ? BufferHelper.readNullableBoolean(buffer) : null;
    }
 
    @Override
@@ -377,7 +424,9 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
          BufferHelper.sizeOfNullableLong(expiryDelay) +
          BufferHelper.sizeOfNullableBoolean(lastValueQueue) +
          BufferHelper.sizeOfNullableLong(redistributionDelay) +
-         BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute);
+         BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute) +
+         BufferHelper.sizeOfNullableInteger(queueShards) +
+         BufferHelper.sizeOfNullableBoolean(compressPageFiles);
    }
 
    @Override
@@ -415,6 +464,10 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       BufferHelper.writeNullableLong(buffer, redistributionDelay);
 
       BufferHelper.writeNullableBoolean(buffer, sendToDLAOnNoRoute);
+
+      BufferHelper.writeNullableInteger(buffer, queueShards);
+
+      BufferHelper.writeNullableBoolean(buffer, compressPageFiles);
    }
 
    /* (non-Javadoc)
@@ -442,6 +495,8 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       result = prime * result + ((maxRedeliveryDelay == null) ? 0 : maxRedeliveryDelay.hashCode());
       result = prime * result + ((redistributionDelay == null) ? 0 : redistributionDelay.hashCode());
       result = prime * result + ((sendToDLAOnNoRoute == null) ? 0 : sendToDLAOnNoRoute.hashCode());
+      result = prime * result + ((queueShards == null) ? 0 : queueShards.hashCode());
+      result = prime * result + ((compressPageFiles == null) ? 0 : compressPageFiles.hashCode());
       return result;
    }
 
@@ -570,6 +625,20 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       }
       else if (!sendToDLAOnNoRoute.equals(other.sendToDLAOnNoRoute))
          return false;
+      if (queueShards == null)
+      {
+         if (other.queueShards != null)
+            return false;
+      }
+      else if (!queueShards.equals(other.queueShards))
+         return false;
+      if (compressPageFiles == null)
+      {
+         if (other.compressPageFiles != null)
+            return false;
+      }
+      else if (!compressPageFiles.equals(other.compressPageFiles))
+         return false;
       return true;
    }
 
@@ -610,6 +679,10 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
          redistributionDelay +
          ", sendToDLAOnNoRoute=" +
          sendToDLAOnNoRoute +
+         ", queueShards=" +
+         queueShards +
+         ", compressPageFiles=" +
+         compressPageFiles +
          "]";
    }
 }
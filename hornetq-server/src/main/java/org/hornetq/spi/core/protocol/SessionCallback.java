@@ -35,6 +35,12 @@ public interface SessionCallback
 
    int sendLargeMessageContinuation(long consumerID, byte[] body, boolean continues, boolean requiresResponse);
 
+   /**
+    * Called after a run of deliveries, so messages held by {@link #sendMessage(ServerMessage, long, int)}
+    * can be written together.
+    */
+   void afterDelivery() throws Exception;
+
    void closed();
 
    void addReadyListener(ReadyListener listener);
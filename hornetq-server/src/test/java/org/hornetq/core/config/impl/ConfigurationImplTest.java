@@ -87,6 +87,17 @@ public class ConfigurationImplTest extends UnitTestCase
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultPagingDir(), conf.getPagingDirectory());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultLargeMessagesDir(), conf.getLargeMessagesDirectory());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactPercentage(), conf.getJournalCompactPercentage());
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalCompactIncremental(), conf.isJournalCompactIncremental());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactMaxFiles(), conf.getJournalCompactMaxFiles());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactMaxPause(), conf.getJournalCompactMaxPause());
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalConcurrentEncoding(), conf.isJournalConcurrentEncoding());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalLoadThreads(), conf.getJournalLoadThreads());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalPoolFiles(), conf.getJournalPoolFiles());
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalChecksums(), conf.isJournalChecksums());
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalCoordinatedSync(), conf.isJournalCoordinatedSync());
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalBufferTimeoutAdaptive(), conf.isJournalBufferTimeoutAdaptive());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalBufferTimeoutMin(), conf.getJournalBufferTimeoutMin());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalBufferTimeoutMax(), conf.getJournalBufferTimeoutMax());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO, conf.getJournalBufferTimeout_AIO());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO, conf.getJournalBufferTimeout_NIO());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_AIO, conf.getJournalBufferSize_AIO());
@@ -242,6 +253,50 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setJournalCompactPercentage(i);
          Assert.assertEquals(i, conf.getJournalCompactPercentage());
 
+         b = RandomUtil.randomBoolean();
+         conf.setJournalCompactIncremental(b);
+         Assert.assertEquals(b, conf.isJournalCompactIncremental());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalCompactMaxFiles(i);
+         Assert.assertEquals(i, conf.getJournalCompactMaxFiles());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalCompactMaxPause(i);
+         Assert.assertEquals(i, conf.getJournalCompactMaxPause());
+
+         b = RandomUtil.randomBoolean();
+         conf.setJournalConcurrentEncoding(b);
+         Assert.assertEquals(b, conf.isJournalConcurrentEncoding());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalLoadThreads(i);
+         Assert.assertEquals(i, conf.getJournalLoadThreads());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalPoolFiles(i);
+         Assert.assertEquals(i, conf.getJournalPoolFiles());
+
+         b = RandomUtil.randomBoolean();
+         conf.setJournalChecksums(b);
+         Assert.assertEquals(b, conf.isJournalChecksums());
+
+         b = RandomUtil.randomBoolean();
+         conf.setJournalCoordinatedSync(b);
+         Assert.assertEquals(b, conf.isJournalCoordinatedSync());
+
+         b = RandomUtil.randomBoolean();
+         conf.setJournalBufferTimeoutAdaptive(b);
+         Assert.assertEquals(b, conf.isJournalBufferTimeoutAdaptive());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalBufferTimeoutMin(i);
+         Assert.assertEquals(i, conf.getJournalBufferTimeoutMin());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalBufferTimeoutMax(i);
+         Assert.assertEquals(i, conf.getJournalBufferTimeoutMax());
+
          i = RandomUtil.randomInt();
          conf.setJournalBufferSize_AIO(i);
          Assert.assertEquals(i, conf.getJournalBufferSize_AIO());
@@ -458,6 +513,50 @@ public class ConfigurationImplTest extends UnitTestCase
       conf.setJournalCompactPercentage(i);
       Assert.assertEquals(i, conf.getJournalCompactPercentage());
 
+      b = RandomUtil.randomBoolean();
+      conf.setJournalCompactIncremental(b);
+      Assert.assertEquals(b, conf.isJournalCompactIncremental());
+
+      i = RandomUtil.randomInt();
+      conf.setJournalCompactMaxFiles(i);
+      Assert.assertEquals(i, conf.getJournalCompactMaxFiles());
+
+      i = RandomUtil.randomInt();
+      conf.setJournalCompactMaxPause(i);
+      Assert.assertEquals(i, conf.getJournalCompactMaxPause());
+
+      b = RandomUtil.randomBoolean();
+      conf.setJournalConcurrentEncoding(b);
+      Assert.assertEquals(b, conf.isJournalConcurrentEncoding());
+
+      i = RandomUtil.randomInt();
+      conf.setJournalLoadThreads(i);
+      Assert.assertEquals(i, conf.getJournalLoadThreads());
+
+      i = RandomUtil.randomInt();
+      conf.setJournalPoolFiles(i);
+      Assert.assertEquals(i, conf.getJournalPoolFiles());
+
+      b = RandomUtil.randomBoolean();
+      conf.setJournalChecksums(b);
+      Assert.assertEquals(b, conf.isJournalChecksums());
+
+      b = RandomUtil.randomBoolean();
+      conf.setJournalCoordinatedSync(b);
+      Assert.assertEquals(b, conf.isJournalCoordinatedSync());
+
+      b = RandomUtil.randomBoolean();
+      conf.setJournalBufferTimeoutAdaptive(b);
+      Assert.assertEquals(b, conf.isJournalBufferTimeoutAdaptive());
+
+      i = RandomUtil.randomInt();
+      conf.setJournalBufferTimeoutMin(i);
+      Assert.assertEquals(i, conf.getJournalBufferTimeoutMin());
+
+      i = RandomUtil.randomInt();
+      conf.setJournalBufferTimeoutMax(i);
+      Assert.assertEquals(i, conf.getJournalBufferTimeoutMax());
+
       i = RandomUtil.randomInt();
       conf.setJournalBufferSize_AIO(i);
       Assert.assertEquals(i, conf.getJournalBufferSize_AIO());
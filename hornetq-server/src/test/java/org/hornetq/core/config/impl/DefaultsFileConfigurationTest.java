@@ -104,6 +104,28 @@ public class DefaultsFileConfigurationTest extends ConfigurationImplTest
 
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactPercentage(), conf.getJournalCompactPercentage());
 
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalCompactIncremental(), conf.isJournalCompactIncremental());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactMaxFiles(), conf.getJournalCompactMaxFiles());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactMaxPause(), conf.getJournalCompactMaxPause());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalConcurrentEncoding(), conf.isJournalConcurrentEncoding());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalLoadThreads(), conf.getJournalLoadThreads());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalPoolFiles(), conf.getJournalPoolFiles());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalChecksums(), conf.isJournalChecksums());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalCoordinatedSync(), conf.isJournalCoordinatedSync());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalBufferTimeoutAdaptive(), conf.isJournalBufferTimeoutAdaptive());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalBufferTimeoutMin(), conf.getJournalBufferTimeoutMin());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalBufferTimeoutMax(), conf.getJournalBufferTimeoutMax());
+
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalMinFiles(), conf.getJournalMinFiles());
 
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalMaxIoAio(), conf.getJournalMaxIO_AIO());
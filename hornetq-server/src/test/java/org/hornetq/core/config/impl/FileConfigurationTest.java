@@ -86,6 +86,17 @@ public class FileConfigurationTest extends ConfigurationImplTest
       Assert.assertEquals(100, conf.getJournalMinFiles());
       Assert.assertEquals(123, conf.getJournalCompactMinFiles());
       Assert.assertEquals(33, conf.getJournalCompactPercentage());
+      Assert.assertEquals(true, conf.isJournalCompactIncremental());
+      Assert.assertEquals(5, conf.getJournalCompactMaxFiles());
+      Assert.assertEquals(50, conf.getJournalCompactMaxPause());
+      Assert.assertEquals(true, conf.isJournalConcurrentEncoding());
+      Assert.assertEquals(4, conf.getJournalLoadThreads());
+      Assert.assertEquals(3, conf.getJournalPoolFiles());
+      Assert.assertEquals(true, conf.isJournalChecksums());
+      Assert.assertEquals(true, conf.isJournalCoordinatedSync());
+      Assert.assertEquals(true, conf.isJournalBufferTimeoutAdaptive());
+      Assert.assertEquals(1000, conf.getJournalBufferTimeoutMin());
+      Assert.assertEquals(20000000, conf.getJournalBufferTimeoutMax());
 
       Assert.assertEquals("largemessagesdir", conf.getLargeMessagesDirectory());
       Assert.assertEquals(95, conf.getMemoryWarningThreshold());
@@ -282,6 +293,8 @@ public class FileConfigurationTest extends ConfigurationImplTest
       assertEquals(81738173872337L, conf.getAddressesSettings().get("a1").getPageSizeBytes());
       assertEquals(10, conf.getAddressesSettings().get("a1").getPageCacheMaxSize());
       assertEquals(4, conf.getAddressesSettings().get("a1").getMessageCounterHistoryDayLimit());
+      assertEquals(4, conf.getAddressesSettings().get("a1").getQueueShards());
+      assertTrue(conf.getAddressesSettings().get("a1").isCompressPageFiles());
 
       assertEquals("a2.1", conf.getAddressesSettings().get("a2").getDeadLetterAddress().toString());
       assertEquals("a2.2", conf.getAddressesSettings().get("a2").getExpiryAddress().toString());
@@ -290,6 +303,8 @@ public class FileConfigurationTest extends ConfigurationImplTest
       assertEquals(7126716262626L, conf.getAddressesSettings().get("a2").getPageSizeBytes());
       assertEquals(20, conf.getAddressesSettings().get("a2").getPageCacheMaxSize());
       assertEquals(8, conf.getAddressesSettings().get("a2").getMessageCounterHistoryDayLimit());
+      assertEquals(1, conf.getAddressesSettings().get("a2").getQueueShards());
+      assertFalse(conf.getAddressesSettings().get("a2").isCompressPageFiles());
 
 
       assertEquals(2, conf.getQueueConfigurations().size());
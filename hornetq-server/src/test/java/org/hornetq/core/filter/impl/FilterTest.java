@@ -12,6 +12,9 @@
  */
 package org.hornetq.core.filter.impl;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.HornetQInvalidFilterExpressionException;
 import org.hornetq.api.core.SimpleString;
@@ -55,6 +58,67 @@ public class FilterTest extends SilentTestCase
       Assert.assertFalse(filter.match(message));
    }
 
+   @Test
+   public void testConcurrentMatch() throws Exception
+   {
+      final Filter sharedFilter = FilterImpl.createFilter(new SimpleString("color LIKE 'R%' AND weight BETWEEN 10 AND 20 " +
+                                                                              "AND shape IN ('square', 'round') AND weight * 2 > 21"));
+
+      final int threads = 8;
+      final AtomicInteger errors = new AtomicInteger(0);
+      final CountDownLatch start = new CountDownLatch(1);
+
+      Thread[] matchers = new Thread[threads];
+
+      for (int t = 0; t < threads; t++)
+      {
+         final int thread = t;
+
+         matchers[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+
+                  for (int i = 0; i < 10000; i++)
+                  {
+                     // every thread matches its own messages, half of them pass
+                     boolean expected = (i + thread) % 2 == 0;
+
+                     ServerMessage msg = new ServerMessageImpl(i, 100);
+                     msg.putStringProperty(new SimpleString("color"), new SimpleString(expected ? "RED" : "BLUE"));
+                     msg.putIntProperty(new SimpleString("weight"), 11 + i % 10);
+                     msg.putStringProperty(new SimpleString("shape"), new SimpleString("round"));
+
+                     if (sharedFilter.match(msg) != expected)
+                     {
+                        errors.incrementAndGet();
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+            }
+         };
+         matchers[t].start();
+      }
+
+      start.countDown();
+
+      for (Thread matcher : matchers)
+      {
+         matcher.join();
+      }
+
+      Assert.assertEquals(0, errors.get());
+   }
+
    @Test
    public void testInvalidString() throws Exception
    {
@@ -710,6 +774,53 @@ public class FilterTest extends SilentTestCase
 
    // Private -----------------------------------------------------------------------------------
 
+   @Test
+   public void testIndexProperty() throws Exception
+   {
+      assertIndex("region = 'X'", "region", "X");
+      assertIndex("'X' = region", "region", "X");
+      assertIndex("region IN ('X', 'Y')", "region", "X", "Y");
+      assertIndex("region = 'X' OR region = 'Y' OR region IN ('Z')", "region", "X", "Y", "Z");
+      assertIndex("weight > 10 AND region = 'X'", "region", "X");
+      assertIndex("(region = 'X' OR region = 'Y') AND color = 'RED'", "region", "X", "Y");
+
+      assertIndex("region <> 'X'", null);
+      assertIndex("NOT region = 'X'", null);
+      assertIndex("region NOT IN ('X', 'Y')", null);
+      assertIndex("region = 'X' OR color = 'RED'", null);
+      assertIndex("region = 'X' OR weight > 10", null);
+      assertIndex("weight = 10", null);
+      assertIndex("HQUserID = 'ID:1'", null);
+      assertIndex("region LIKE 'X%'", null);
+   }
+
+   private void assertIndex(final String filterString, final String property, final String... values) throws Exception
+   {
+      FilterImpl filterImpl = (FilterImpl)FilterImpl.createFilter(filterString);
+
+      if (property == null)
+      {
+         Assert.assertNull(filterString, filterImpl.getIndexProperty());
+         Assert.assertNull(filterString, filterImpl.getIndexValues());
+         return;
+      }
+
+      Assert.assertEquals(filterString, new SimpleString(property), filterImpl.getIndexProperty());
+      Assert.assertEquals(filterString, values.length, filterImpl.getIndexValues().size());
+
+      for (String value : values)
+      {
+         Assert.assertTrue(filterString, filterImpl.getIndexValues().contains(new SimpleString(value)));
+
+         // every message the filter matches has one of the values
+         ServerMessage matching = new ServerMessageImpl(1, 100);
+         matching.putStringProperty(new SimpleString(property), new SimpleString(value));
+         matching.putStringProperty(new SimpleString("color"), new SimpleString("RED"));
+         matching.putIntProperty(new SimpleString("weight"), 20);
+         Assert.assertTrue(filterString, filterImpl.match(matching));
+      }
+   }
+
    private void doPutStringProperty(final String key, final String value)
    {
       message.putStringProperty(new SimpleString(key), new SimpleString(value));
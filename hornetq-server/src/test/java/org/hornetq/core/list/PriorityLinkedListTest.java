@@ -895,6 +895,44 @@ public final class PriorityLinkedListTest extends Assert
       iter.remove();
    }
 
+   @Test
+   public void testPollAfterLevelsEmptiedByIterator()
+   {
+      list.addTail(a, 9);
+      list.addTail(b, 4);
+      list.addTail(c, 4);
+      list.addTail(d, 1);
+
+      LinkedListIterator<Wibble> iter = list.iterator();
+
+      assertTrue(iter.hasNext());
+      assertEquals(a, iter.next());
+      iter.remove();
+
+      assertTrue(iter.hasNext());
+      assertEquals(b, iter.next());
+      iter.remove();
+
+      assertEquals(2, list.size());
+
+      assertEquals(c, list.poll());
+      assertEquals(d, list.poll());
+      assertNull(list.poll());
+      assertTrue(list.isEmpty());
+
+      // the iterator gets what is added after it ran out
+      assertFalse(iter.hasNext());
+
+      list.addTail(e, 0);
+
+      assertTrue(iter.hasNext());
+      assertEquals(e, iter.next());
+      iter.remove();
+
+      assertTrue(list.isEmpty());
+      assertNull(list.poll());
+   }
+
    static class Wibble
    {
       String s1;
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.paging.cursor.impl;
+
+import org.hornetq.core.paging.PagedMessage;
+import org.hornetq.core.paging.cursor.PageCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PageCacheLRUTest extends Assert
+{
+   @Test
+   public void testEvictsLeastRecentlyUsed()
+   {
+      PageCacheLRU lru = new PageCacheLRU(3, 0);
+
+      lru.put(new FakeCache(1, 100, false));
+      lru.put(new FakeCache(2, 100, false));
+      lru.put(new FakeCache(3, 100, false));
+
+      // 1 becomes the most recently used, so 2 goes
+      assertNotNull(lru.get(1));
+
+      lru.put(new FakeCache(4, 100, false));
+
+      assertEquals(3, lru.size());
+      assertNull(lru.peek(2));
+      assertNotNull(lru.peek(1));
+      assertNotNull(lru.peek(3));
+      assertNotNull(lru.peek(4));
+      assertEquals(1, lru.getEvictions());
+   }
+
+   @Test
+   public void testBoundedByBytes()
+   {
+      PageCacheLRU lru = new PageCacheLRU(0, 1000);
+
+      lru.put(new FakeCache(1, 400, false));
+      lru.put(new FakeCache(2, 400, false));
+
+      assertEquals(2, lru.size());
+
+      lru.put(new FakeCache(3, 400, false));
+
+      assertEquals(2, lru.size());
+      assertNull(lru.peek(1));
+      assertEquals(800, lru.getBytes());
+
+      // a page bigger than the whole cache only stays until something else comes
+      lru.put(new FakeCache(4, 2000, false));
+
+      assertEquals(1, lru.size());
+      assertNotNull(lru.peek(4));
+      assertEquals(3, lru.getEvictions());
+   }
+
+   @Test
+   public void testBoundedByBytesOnceRead()
+   {
+      PageCacheLRU lru = new PageCacheLRU(0, 1000);
+
+      lru.put(new FakeCache(1, 400, false));
+      lru.put(new FakeCache(2, 400, false));
+
+      // a page is added before it is read
+      FakeCache cache = new FakeCache(3, 0, false);
+      lru.put(cache);
+
+      assertEquals(3, lru.size());
+      assertEquals(800, lru.getBytes());
+
+      cache.size = 400;
+      lru.resize(cache, new long[0]);
+
+      assertEquals(2, lru.size());
+      assertNull(lru.peek(1));
+      assertEquals(800, lru.getBytes());
+      assertEquals(1, lru.getEvictions());
+
+      // a page removed while it was read isn't accounted again
+      FakeCache removed = new FakeCache(4, 0, false);
+      lru.put(removed);
+      lru.remove(4);
+      removed.size = 400;
+      lru.resize(removed, new long[0]);
+
+      assertEquals(800, lru.getBytes());
+      assertNull(lru.peek(4));
+   }
+
+   @Test
+   public void testLivePagesAreKept()
+   {
+      PageCacheLRU lru = new PageCacheLRU(1, 0);
+
+      lru.put(new FakeCache(1, 100, true));
+
+      // the page just added stays until something else comes
+      lru.put(new FakeCache(2, 100, false));
+
+      assertEquals(2, lru.size());
+
+      lru.put(new FakeCache(3, 100, true));
+
+      assertNotNull(lru.peek(1));
+      assertNull(lru.peek(2));
+      assertNotNull(lru.peek(3));
+      assertEquals(2, lru.size());
+      assertEquals(1, lru.getEvictions());
+
+      // a smaller bound applies right away
+      lru.setMaxSize(1, 0);
+      assertEquals(2, lru.size());
+   }
+
+   @Test
+   public void testHitsAndMisses()
+   {
+      PageCacheLRU lru = new PageCacheLRU(5, 0);
+
+      assertNull(lru.get(1));
+
+      lru.put(new FakeCache(1, 100, false));
+
+      assertNotNull(lru.get(1));
+      assertNotNull(lru.get(1));
+
+      // peeking isn't a use
+      assertNotNull(lru.peek(1));
+      assertNull(lru.peek(2));
+
+      assertEquals(2, lru.getHits());
+      assertEquals(1, lru.getMisses());
+
+      assertNotNull(lru.remove(1));
+      assertEquals(0, lru.size());
+      assertEquals(0, lru.getEvictions());
+   }
+
+   @Test
+   public void testEvictsPagesFurthestFromCursors()
+   {
+      PageCacheLRU lru = new PageCacheLRU(3, 0);
+
+      // one cursor on page 2 and one lagging on page 1
+      long[] readingPages = new long[]{1, 2};
+
+      lru.put(new FakeCache(1, 100, false), readingPages);
+      lru.put(new FakeCache(2, 100, false), readingPages);
+      lru.put(new FakeCache(3, 100, false), readingPages);
+
+      // 1 is the least recently used, but the lagging cursor is still on it
+      assertNotNull(lru.get(1));
+      assertNotNull(lru.get(2));
+      assertNotNull(lru.get(3));
+
+      // the lagging cursor gets to 2 before 3
+      lru.put(new FakeCache(4, 100, false), new long[]{1, 4});
+
+      assertNotNull(lru.peek(1));
+      assertNotNull(lru.peek(2));
+      assertNull(lru.peek(3));
+      assertNotNull(lru.peek(4));
+
+      // every cursor is past 1 and 2 now, 1 was used first
+      lru.put(new FakeCache(5, 100, false), new long[]{4, 5});
+
+      assertNull(lru.peek(1));
+      assertNotNull(lru.peek(2));
+      assertEquals(2, lru.getEvictions());
+   }
+
+   @Test
+   public void testEvictionRank()
+   {
+      long[] readingPages = new long[]{-1, 3, 3, 10};
+
+      // a cursor is reading it
+      assertEquals(0, PageCacheLRU.evictionRank(3, readingPages), 0);
+      assertEquals(1, PageCacheLRU.evictionRank(0, readingPages), 0);
+      // 3 cursors, the closest 4 pages behind
+      assertEquals(4d / 3, PageCacheLRU.evictionRank(7, readingPages), 0);
+      assertEquals(5d / 4, PageCacheLRU.evictionRank(15, readingPages), 0);
+      assertEquals(Double.POSITIVE_INFINITY, PageCacheLRU.evictionRank(5, new long[]{10}), 0);
+      assertEquals(Double.POSITIVE_INFINITY, PageCacheLRU.evictionRank(5, new long[0]), 0);
+   }
+
+   @Test
+   public void testKeepsPagesMoreCursorsWillRead()
+   {
+      PageCacheLRU lru = new PageCacheLRU(3, 0);
+
+      // one cursor lagging on page 1 and three on page 5
+      long[] readingPages = new long[]{1, 5, 5, 5};
+
+      lru.put(new FakeCache(1, 100, false), readingPages);
+      lru.put(new FakeCache(7, 100, false), readingPages);
+      assertTrue(lru.hasRoom(readingPages));
+
+      lru.put(new FakeCache(2, 100, false), readingPages);
+
+      // 2 is closer, but only the lagging cursor will read it
+      lru.put(new FakeCache(5, 100, false), readingPages);
+
+      assertNull(lru.peek(2));
+      assertNotNull(lru.peek(1));
+      assertNotNull(lru.peek(5));
+      assertNotNull(lru.peek(7));
+
+      assertFalse(lru.hasRoom(readingPages));
+
+      // every cursor is past 1 now
+      assertTrue(lru.hasRoom(new long[]{5, 5, 5, 6}));
+
+      // or the lagging cursor is further behind than the cache holds
+      assertTrue(lru.hasRoom(new long[]{-5, 5, 5, 5}));
+   }
+
+   private static final class FakeCache implements PageCache
+   {
+      private final long pageId;
+
+      private int size;
+
+      private final boolean live;
+
+      FakeCache(final long pageId, final int size, final boolean live)
+      {
+         this.pageId = pageId;
+         this.size = size;
+         this.live = live;
+      }
+
+      public long getPageId()
+      {
+         return pageId;
+      }
+
+      public int getNumberOfMessages()
+      {
+         return 0;
+      }
+
+      public void setMessages(final PagedMessage[] messages)
+      {
+      }
+
+      public PagedMessage[] getMessages()
+      {
+         return new PagedMessage[0];
+      }
+
+      public int getEncodeSize()
+      {
+         return size;
+      }
+
+      public boolean isLive()
+      {
+         return live;
+      }
+
+      public PagedMessage getMessage(final int messageNumber)
+      {
+         return null;
+      }
+
+      public void lock()
+      {
+      }
+
+      public void unlock()
+      {
+      }
+
+      public void close()
+      {
+      }
+   }
+}
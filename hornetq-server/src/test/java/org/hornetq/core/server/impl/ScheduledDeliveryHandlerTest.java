@@ -1112,6 +1112,12 @@ public class ScheduledDeliveryHandlerTest extends Assert
 
       }
 
+      @Override
+      public void acknowledge(Transaction tx, List<MessageReference> refs) throws Exception
+      {
+
+      }
+
       @Override
       public void reacknowledge(Transaction tx, MessageReference ref) throws Exception
       {
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimingWheelTest extends Assert
+{
+   @Test
+   public void testExpireInOrder() throws Exception
+   {
+      Random random = new Random(1);
+
+      long start = 1000000;
+
+      TimingWheel<TimedNode> wheel = new TimingWheel<TimedNode>(start);
+
+      List<TimedNode> nodes = new ArrayList<TimedNode>();
+
+      for (int i = 0; i < 10000; i++)
+      {
+         // from a few ms to a few days ahead, with many repeated times
+         long delay = i % 3 == 0 ? random.nextInt(100) : (long)Math.pow(2, random.nextInt(38));
+         TimedNode node = new TimedNode(start + delay, i);
+         nodes.add(node);
+         wheel.add(node);
+      }
+
+      assertEquals(nodes.size(), wheel.size());
+
+      List<TimedNode> expired = new ArrayList<TimedNode>();
+
+      long now = start;
+
+      while (wheel.size() > 0)
+      {
+         long next = wheel.nextExpiration();
+         assertTrue(next >= now);
+
+         // jump a random distance, sometimes past the next expiration and sometimes not reaching it
+         now = random.nextBoolean() ? next : now + random.nextInt(1000);
+
+         int before = expired.size();
+         wheel.expire(now, expired);
+
+         for (int i = before; i < expired.size(); i++)
+         {
+            assertTrue(expired.get(i).getTime() <= now);
+         }
+      }
+
+      assertEquals(nodes.size(), expired.size());
+
+      TimedNode last = null;
+      for (TimedNode node : expired)
+      {
+         if (last != null)
+         {
+            assertTrue(last.getTime() <= node.getTime());
+            if (last.getTime() == node.getTime())
+            {
+               assertTrue(last.id < node.id);
+            }
+         }
+         last = node;
+      }
+   }
+
+   @Test
+   public void testNothingExpiresEarly() throws Exception
+   {
+      TimingWheel<TimedNode> wheel = new TimingWheel<TimedNode>(0);
+
+      wheel.add(new TimedNode(4096, 0));
+      wheel.add(new TimedNode(4097, 1));
+
+      List<TimedNode> expired = new ArrayList<TimedNode>();
+
+      for (long now = 0; now < 4096; now += 7)
+      {
+         wheel.expire(now, expired);
+         assertTrue(expired.isEmpty());
+      }
+
+      wheel.expire(4096, expired);
+      assertEquals(1, expired.size());
+      assertEquals(0, expired.get(0).id);
+
+      wheel.expire(5000, expired);
+      assertEquals(2, expired.size());
+      assertEquals(Long.MAX_VALUE, wheel.nextExpiration());
+   }
+
+   @Test
+   public void testAddPastTime() throws Exception
+   {
+      TimingWheel<TimedNode> wheel = new TimingWheel<TimedNode>(1000);
+
+      wheel.add(new TimedNode(2000, 0));
+      wheel.add(new TimedNode(5, 1));
+
+      assertEquals(1000, wheel.nextExpiration());
+
+      List<TimedNode> expired = new ArrayList<TimedNode>();
+      wheel.expire(1000, expired);
+
+      assertEquals(1, expired.size());
+      assertEquals(1, expired.get(0).id);
+      assertEquals(1, wheel.size());
+   }
+
+   @Test
+   public void testPastDueInTimeOrder() throws Exception
+   {
+      TimingWheel<TimedNode> wheel = new TimingWheel<TimedNode>(1000);
+
+      long[] times = new long[]{900, 800, 1000, 800, 700, 950, 800, 5};
+
+      List<TimedNode> nodes = new ArrayList<TimedNode>();
+
+      for (int i = 0; i < times.length; i++)
+      {
+         TimedNode node = new TimedNode(times[i], i);
+         nodes.add(node);
+         wheel.add(node);
+      }
+
+      assertTrue(wheel.remove(nodes.get(5)));
+
+      List<TimedNode> expired = new ArrayList<TimedNode>();
+      wheel.expire(1000, expired);
+
+      int[] expected = new int[]{7, 4, 1, 3, 6, 0, 2};
+
+      assertEquals(expected.length, expired.size());
+      for (int i = 0; i < expected.length; i++)
+      {
+         assertEquals(expected[i], expired.get(i).id);
+      }
+      assertEquals(0, wheel.size());
+   }
+
+   @Test
+   public void testRemove() throws Exception
+   {
+      TimingWheel<TimedNode> wheel = new TimingWheel<TimedNode>(0);
+
+      List<TimedNode> nodes = new ArrayList<TimedNode>();
+
+      for (int i = 0; i < 1000; i++)
+      {
+         TimedNode node = new TimedNode(i * 37, i);
+         nodes.add(node);
+         wheel.add(node);
+      }
+
+      assertTrue(wheel.remove(nodes.get(10)));
+      assertFalse(wheel.remove(nodes.get(10)));
+
+      Iterator<TimedNode> iterator = wheel.iterator();
+      int count = 0;
+      while (iterator.hasNext())
+      {
+         TimedNode node = iterator.next();
+         count++;
+         if (node.id % 2 == 0)
+         {
+            iterator.remove();
+         }
+      }
+
+      assertEquals(999, count);
+      assertEquals(500, wheel.size());
+
+      List<TimedNode> expired = new ArrayList<TimedNode>();
+      wheel.expire(Long.MAX_VALUE, expired);
+
+      assertEquals(500, expired.size());
+      for (TimedNode node : expired)
+      {
+         assertEquals(1, node.id % 2);
+      }
+      assertEquals(0, wheel.size());
+   }
+
+   private static final class TimedNode extends TimingWheel.Node
+   {
+      final int id;
+
+      TimedNode(final long time, final int id)
+      {
+         super(time);
+         this.id = id;
+      }
+   }
+}
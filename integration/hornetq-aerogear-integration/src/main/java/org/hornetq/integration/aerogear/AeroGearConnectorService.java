@@ -397,4 +397,9 @@ public class AeroGearConnectorService implements ConnectorService, Consumer, Mes
    public void disconnect()
    {
    }
+
+   @Override
+   public void afterDeliver() throws Exception
+   {
+   }
 }
@@ -241,6 +241,11 @@ public class OutgoingTweetsHandler implements Consumer, ConnectorService
       // no op
    }
 
+   public void afterDeliver()
+   {
+      // no op
+   }
+
    @Override
    public String toManagementString()
    {
@@ -615,6 +615,12 @@ public class HangConsumerTest extends ServiceTestBase
          //To change body of implemented methods use File | Settings | File Templates.
       }
 
+      @Override
+      public void afterDelivery() throws Exception
+      {
+         targetCallback.afterDelivery();
+      }
+
 
    }
 
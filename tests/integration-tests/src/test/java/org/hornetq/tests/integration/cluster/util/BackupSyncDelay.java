@@ -245,6 +245,18 @@ public class BackupSyncDelay implements Interceptor
 
       }
 
+      @Override
+      public boolean sendCoalesced(Packet packet)
+      {
+         throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void flushCoalesced()
+      {
+         throw new UnsupportedOperationException();
+      }
+
       @Override
       public boolean sendAndFlush(Packet packet)
       {
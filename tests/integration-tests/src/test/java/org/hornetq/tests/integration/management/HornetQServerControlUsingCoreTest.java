@@ -468,6 +468,31 @@ public class HornetQServerControlUsingCoreTest extends HornetQServerControlTest
             return (Integer) proxy.retrieveAttributeValue("JournalBufferTimeout");
          }
 
+         public int getJournalBufferCurrentTimeout()
+         {
+            return (Integer) proxy.retrieveAttributeValue("JournalBufferCurrentTimeout");
+         }
+
+         public long getJournalCompactLastPause()
+         {
+            return (Long) proxy.retrieveAttributeValue("JournalCompactLastPause", Long.class);
+         }
+
+         public long getJournalCompactMaxPause()
+         {
+            return (Long) proxy.retrieveAttributeValue("JournalCompactMaxPause", Long.class);
+         }
+
+         public long getJournalRolloverWaitTime()
+         {
+            return (Long) proxy.retrieveAttributeValue("JournalRolloverWaitTime", Long.class);
+         }
+
+         public long getJournalRolloverMaxWait()
+         {
+            return (Long) proxy.retrieveAttributeValue("JournalRolloverMaxWait", Long.class);
+         }
+
          public int getJournalCompactMinFiles()
          {
             return (Integer) proxy.retrieveAttributeValue("JournalCompactMinFiles");
@@ -654,6 +679,11 @@ public class HornetQServerControlUsingCoreTest extends HornetQServerControlTest
          {
             return (String) proxy.invokeOperation("listProducersInfoAsJSON");
          }
+
+         public String listJournalBufferBatchSizesAsJSON() throws Exception
+         {
+            return (String) proxy.invokeOperation("listJournalBufferBatchSizesAsJSON");
+         }
       };
    }
    // Package protected ---------------------------------------------
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.integration.paging;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.paging.cursor.PageCursorProvider;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A consumer draining a paged backlog finds the pages it moves into already read.
+ */
+public class PagingReadAheadTest extends ServiceTestBase
+{
+   private static final SimpleString ADDRESS = new SimpleString("PagingReadAheadTestAddress");
+
+   private static final int PAGE_SIZE = 10 * 1024;
+
+   private static final int MESSAGES = 500;
+
+   @Test
+   public void testConsumerFindsPagesReadAhead() throws Exception
+   {
+      HornetQServer server = createServer(true, false);
+
+      AddressSettings settings = new AddressSettings();
+      settings.setPageSizeBytes(PAGE_SIZE);
+      settings.setMaxSizeBytes(PAGE_SIZE * 2);
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+      settings.setPageCacheMaxSize(5);
+      server.getAddressSettingsRepository().addMatch(ADDRESS.toString(), settings);
+
+      server.start();
+
+      ServerLocator locator = createInVMNonHALocator();
+      locator.setBlockOnDurableSend(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(ADDRESS, ADDRESS, true);
+
+      Queue queue = server.locateQueue(ADDRESS);
+
+      PagingStore store = queue.getPageSubscription().getPagingStore();
+
+      store.startPaging();
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("i", i);
+         message.getBodyBuffer().writeBytes(new byte[1024]);
+         producer.send(message);
+      }
+
+      int pages = store.getNumberOfPages();
+
+      Assert.assertTrue("only " + pages + " pages", pages > 20);
+
+      PageCursorProvider provider = store.getCursorProvider();
+
+      long missesBefore = provider.getCacheMisses();
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      session.start();
+
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         Assert.assertEquals(i, message.getIntProperty("i").intValue());
+         message.acknowledge();
+
+         // as slow as a consumer doing some work, so the read ahead has the time to happen
+         if (i % 20 == 0)
+         {
+            Thread.sleep(5);
+         }
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      // only the first pages the cursor gets to are read as it gets there
+      long misses = provider.getCacheMisses() - missesBefore;
+      Assert.assertTrue(misses + " misses over " + pages + " pages", misses < pages / 2);
+   }
+}
@@ -41,6 +41,7 @@ import org.hornetq.api.core.client.ClientSession;
 import org.hornetq.api.core.client.ClientSessionFactory;
 import org.hornetq.api.core.client.ServerLocator;
 import org.hornetq.core.config.Configuration;
+import org.hornetq.core.journal.BatchRecord;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.IOCompletion;
@@ -658,6 +659,16 @@ public final class ReplicationTest extends ServiceTestBase
 
       }
 
+      public void appendBatch(final List<BatchRecord> records, final boolean sync) throws Exception
+      {
+
+      }
+
+      public void appendBatch(final List<BatchRecord> records, final boolean sync, final IOCompletion completionCallback) throws Exception
+      {
+
+      }
+
       public void appendDeleteRecordTransactional(final long txID, final long id, final byte[] record) throws Exception
       {
 
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.integration.server;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.server.impl.ShardedQueue;
+import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardedQueueTest extends ServiceTestBase
+{
+   private static final SimpleString ADDRESS = new SimpleString("ShardedQueueTestAddress");
+
+   private static final SimpleString QUEUE = new SimpleString("ShardedQueueTestQueue");
+
+   private static final int SHARDS = 4;
+
+   private static final int GROUPS = 10;
+
+   private HornetQServer server;
+
+   private ServerLocator locator;
+
+   private ClientSessionFactory sf;
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+
+      server = createServer(true, false);
+
+      AddressSettings settings = new AddressSettings();
+      settings.setQueueShards(SHARDS);
+      server.getAddressSettingsRepository().addMatch(ADDRESS.toString(), settings);
+
+      server.start();
+
+      locator = createInVMNonHALocator();
+      locator.setBlockOnAcknowledge(true);
+      locator.setBlockOnDurableSend(true);
+      locator.setAckBatchSize(0);
+
+      sf = createSessionFactory(locator);
+   }
+
+   @Test
+   public void testQueueIsSharded() throws Exception
+   {
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(ADDRESS, QUEUE, true);
+
+      Queue queue = server.locateQueue(QUEUE);
+
+      Assert.assertTrue(queue instanceof ShardedQueue);
+      Assert.assertEquals(SHARDS, ((ShardedQueue) queue).getNumberOfShards());
+
+      session.createTemporaryQueue(ADDRESS, new SimpleString("temp"));
+
+      Assert.assertFalse(server.locateQueue(new SimpleString("temp")) instanceof ShardedQueue);
+
+      session.createQueue(ADDRESS, new SimpleString("nonDurable"), false);
+
+      Assert.assertFalse(server.locateQueue(new SimpleString("nonDurable")) instanceof ShardedQueue);
+   }
+
+   @Test
+   public void testCountsAndConsumersOverAllShards() throws Exception
+   {
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(ADDRESS, QUEUE, true);
+
+      sendMessages(session, 100);
+
+      Queue queue = server.locateQueue(QUEUE);
+
+      Assert.assertEquals(100, queue.getMessageCount());
+      Assert.assertEquals(100, queue.getMessagesAdded());
+
+      ClientConsumer[] consumers = new ClientConsumer[SHARDS];
+      for (int i = 0; i < SHARDS; i++)
+      {
+         consumers[i] = session.createConsumer(QUEUE);
+      }
+
+      Assert.assertEquals(SHARDS, queue.getConsumerCount());
+      Assert.assertEquals(SHARDS, queue.getConsumers().size());
+
+      session.start();
+
+      Set<Integer> received = new HashSet<Integer>();
+
+      for (ClientConsumer consumer : consumers)
+      {
+         ClientMessage message;
+         while ((message = consumer.receive(500)) != null)
+         {
+            message.acknowledge();
+            Assert.assertTrue(received.add(message.getIntProperty("i")));
+         }
+      }
+
+      Assert.assertEquals(100, received.size());
+      Assert.assertEquals(0, queue.getMessageCount());
+      Assert.assertEquals(0, queue.getDeliveringCount());
+   }
+
+   @Test
+   public void testSingleConsumerTakesOverOtherShards() throws Exception
+   {
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(ADDRESS, QUEUE, true);
+
+      // no consumers yet, so the messages are spread over every shard
+      sendMessages(session, 100);
+
+      ClientConsumer consumer = session.createConsumer(QUEUE);
+
+      session.start();
+
+      Set<Integer> received = new HashSet<Integer>();
+
+      for (int i = 0; i < 100; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         message.acknowledge();
+         Assert.assertTrue(received.add(message.getIntProperty("i")));
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+      Assert.assertEquals(0, server.locateQueue(QUEUE).getMessageCount());
+   }
+
+   @Test
+   public void testGroupKeepsOrder() throws Exception
+   {
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(ADDRESS, QUEUE, true);
+
+      ClientConsumer[] consumers = new ClientConsumer[SHARDS];
+      for (int i = 0; i < SHARDS; i++)
+      {
+         consumers[i] = session.createConsumer(QUEUE);
+      }
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < 100; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("i", i);
+         message.putStringProperty(Message.HDR_GROUP_ID, new SimpleString("group"));
+         producer.send(message);
+      }
+
+      session.start();
+
+      int next = 0;
+
+      for (ClientConsumer consumer : consumers)
+      {
+         ClientMessage message;
+         while ((message = consumer.receive(500)) != null)
+         {
+            message.acknowledge();
+            Assert.assertEquals(next++, message.getIntProperty("i").intValue());
+         }
+      }
+
+      Assert.assertEquals(100, next);
+   }
+
+   @Test
+   public void testGroupsWithFewerConsumersThanShards() throws Exception
+   {
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(ADDRESS, QUEUE, true);
+
+      // no consumers yet, so the groups are spread over every shard
+      sendGroupedMessages(session, 0, 100);
+
+      ClientConsumer consumer = session.createConsumer(QUEUE);
+
+      // these go to the shards the groups are already on
+      sendGroupedMessages(session, 100, 100);
+
+      session.start();
+
+      int[] next = new int[GROUPS];
+
+      for (int i = 0; i < 200; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         message.acknowledge();
+         int group = message.getIntProperty("group");
+         Assert.assertEquals(next[group], message.getIntProperty("i").intValue());
+         next[group] += GROUPS;
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      // and these only go to the shard with the consumer
+      sendGroupedMessages(session, 200, 100);
+
+      for (int i = 0; i < 100; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         message.acknowledge();
+         int group = message.getIntProperty("group");
+         Assert.assertEquals(next[group], message.getIntProperty("i").intValue());
+         next[group] += GROUPS;
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+      Assert.assertEquals(0, server.locateQueue(QUEUE).getMessageCount());
+   }
+
+   @Test
+   public void testPagedMessagesReachOtherShards() throws Exception
+   {
+      AddressSettings settings = new AddressSettings();
+      settings.setQueueShards(SHARDS);
+      settings.setPageSizeBytes(10 * 1024);
+      settings.setMaxSizeBytes(20 * 1024);
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+      server.getAddressSettingsRepository().addMatch(ADDRESS.toString(), settings);
+
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(ADDRESS, QUEUE, true);
+
+      Queue queue = server.locateQueue(QUEUE);
+
+      queue.getPageSubscription().getPagingStore().startPaging();
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < 200; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("i", i);
+         message.getBodyBuffer().writeBytes(new byte[1024]);
+         producer.send(message);
+      }
+
+      Assert.assertTrue(queue.getPageSubscription().isPaging());
+
+      ClientConsumer[] consumers = new ClientConsumer[SHARDS];
+      for (int i = 0; i < SHARDS; i++)
+      {
+         consumers[i] = session.createConsumer(QUEUE);
+      }
+
+      // the first shard, the one depaging, is left without consumers
+      consumers[0].close();
+
+      session.start();
+
+      Set<Integer> received = new HashSet<Integer>();
+
+      long timeout = System.currentTimeMillis() + 10000;
+
+      while (received.size() < 200 && System.currentTimeMillis() < timeout)
+      {
+         for (int i = 1; i < SHARDS; i++)
+         {
+            ClientMessage message;
+            while ((message = consumers[i].receive(100)) != null)
+            {
+               message.acknowledge();
+               Assert.assertTrue(received.add(message.getIntProperty("i")));
+            }
+         }
+      }
+
+      Assert.assertEquals(200, received.size());
+      Assert.assertEquals(0, queue.getMessageCount());
+   }
+
+   @Test
+   public void testBrowseAndDelete() throws Exception
+   {
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(ADDRESS, QUEUE, true);
+
+      sendMessages(session, 40);
+
+      ClientConsumer browser = session.createConsumer(QUEUE, true);
+
+      session.start();
+
+      int browsed = 0;
+      while (browser.receive(500) != null)
+      {
+         browsed++;
+      }
+
+      Assert.assertEquals(40, browsed);
+
+      Queue queue = server.locateQueue(QUEUE);
+
+      Assert.assertEquals(40, queue.deleteAllReferences());
+
+      // the deletes are acked once they are stored
+      long timeout = System.currentTimeMillis() + 5000;
+      while (queue.getMessageCount() > 0 && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      Assert.assertEquals(0, queue.getMessageCount());
+      Assert.assertEquals(0, queue.getDeliveringCount());
+   }
+
+   @Test
+   public void testReload() throws Exception
+   {
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(ADDRESS, QUEUE, true);
+
+      sendMessages(session, 100);
+
+      session.close();
+
+      server.stop();
+      server.start();
+
+      sf = createSessionFactory(locator);
+
+      session = addClientSession(sf.createSession(false, true, true));
+
+      Queue queue = server.locateQueue(QUEUE);
+
+      Assert.assertTrue(queue instanceof ShardedQueue);
+      Assert.assertEquals(100, queue.getMessageCount());
+
+      ClientConsumer consumer1 = session.createConsumer(QUEUE);
+      ClientConsumer consumer2 = session.createConsumer(QUEUE);
+
+      session.start();
+
+      Set<Integer> received = new HashSet<Integer>();
+
+      for (ClientConsumer consumer : new ClientConsumer[]{consumer1, consumer2})
+      {
+         ClientMessage message;
+         while ((message = consumer.receive(500)) != null)
+         {
+            message.acknowledge();
+            Assert.assertTrue(received.add(message.getIntProperty("i")));
+         }
+      }
+
+      Assert.assertEquals(100, received.size());
+      Assert.assertEquals(0, queue.getMessageCount());
+   }
+
+   private void sendGroupedMessages(final ClientSession session, final int first, final int numberOfMessages) throws Exception
+   {
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = first; i < first + numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("i", i);
+         message.putIntProperty("group", i % GROUPS);
+         message.putStringProperty(Message.HDR_GROUP_ID, new SimpleString("group" + i % GROUPS));
+         producer.send(message);
+      }
+
+      producer.close();
+   }
+
+   private void sendMessages(final ClientSession session, final int numberOfMessages) throws Exception
+   {
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("i", i);
+         producer.send(message);
+      }
+
+      producer.close();
+   }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.consumer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.Queue;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures how many durable messages a consumer acknowledges per second, acknowledging every
+ * message as an auto-ack JMS consumer does and acknowledging in batches as a dups-ok one does.
+ */
+public class AcknowledgeThroughputTest extends ServiceTestBase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int MESSAGES = 50000;
+
+   private static final int BODY_SIZE = 100;
+
+   private static final int DUPS_OK_BATCH_SIZE = 1024 * 1024;
+
+   private static final int RUNS = 3;
+
+   @Test
+   public void testAcknowledgeThroughput() throws Exception
+   {
+      HornetQServer server = createServer(true, false);
+
+      server.start();
+
+      ServerLocator locator = createInVMNonHALocator();
+
+      locator.setBlockOnDurableSend(false);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      for (int run = 0; run < RUNS; run++)
+      {
+         long autoAck = measure(server, sf, new SimpleString("auto-ack-" + run), 0);
+         long dupsOK = measure(server, sf, new SimpleString("dups-ok-" + run), DUPS_OK_BATCH_SIZE);
+
+         log.info("auto-ack: " + autoAck + " messages/s, dups-ok: " + dupsOK + " messages/s");
+      }
+   }
+
+   /**
+    * @return messages acknowledged per second
+    */
+   private long measure(final HornetQServer server,
+                        final ClientSessionFactory sf,
+                        final SimpleString queueName,
+                        final int ackBatchSize) throws Exception
+   {
+      ClientSession producerSession = sf.createSession(false, true, true);
+
+      producerSession.createQueue(queueName, queueName, true);
+
+      ClientProducer producer = producerSession.createProducer(queueName);
+
+      byte[] body = new byte[BODY_SIZE];
+
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         ClientMessage message = producerSession.createMessage(true);
+         message.getBodyBuffer().writeBytes(body);
+         producer.send(message);
+      }
+
+      producerSession.close();
+
+      Queue queue = server.locateQueue(queueName);
+
+      // the durable messages get to the queue once they are stored
+      long timeout = System.currentTimeMillis() + 30000;
+      while (queue.getMessageCount() < MESSAGES && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      Assert.assertEquals(MESSAGES, queue.getMessageCount());
+
+      ClientSession session = sf.createSession(true, true, ackBatchSize);
+
+      ClientConsumer consumer = session.createConsumer(queueName);
+
+      long start = System.nanoTime();
+
+      session.start();
+
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         message.acknowledge();
+      }
+
+      session.close();
+
+      long time = System.nanoTime() - start;
+
+      Assert.assertEquals(0, queue.getMessageCount());
+      Assert.assertEquals(0, queue.getDeliveringCount());
+
+      return MESSAGES * TimeUnit.SECONDS.toNanos(1) / time;
+   }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.consumer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.api.core.Interceptor;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.protocol.core.Packet;
+import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.spi.core.protocol.RemotingConnection;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures how many small messages a single consumer receives per second over netty, once they
+ * are all on the queue. The server coalesces the deliveries on as few frames as it can.
+ */
+public class ConsumerDeliveryThroughputTest extends ServiceTestBase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final SimpleString QUEUE = new SimpleString("ConsumerDeliveryThroughputTestQueue");
+
+   private static final int MESSAGES = 200000;
+
+   private static final int BODY_SIZE = 100;
+
+   private static final int RUNS = 3;
+
+   @Test
+   public void testReceiveThroughput() throws Exception
+   {
+      HornetQServer server = createServer(false, true);
+
+      server.start();
+
+      ServerLocator locator = createFactory(true);
+
+      locator.setConsumerWindowSize(1024 * 1024);
+      locator.setBlockOnNonDurableSend(false);
+
+      final AtomicInteger received = new AtomicInteger(0);
+
+      locator.addIncomingInterceptor(new Interceptor()
+      {
+         public boolean intercept(final Packet packet, final RemotingConnection connection)
+         {
+            if (packet.getType() == PacketImpl.SESS_RECEIVE_MSG)
+            {
+               received.incrementAndGet();
+            }
+            return true;
+         }
+      });
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(QUEUE, QUEUE, null, false);
+
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      byte[] body = new byte[BODY_SIZE];
+
+      for (int run = 0; run < RUNS; run++)
+      {
+         for (int i = 0; i < MESSAGES; i++)
+         {
+            ClientMessage message = session.createMessage(false);
+            message.getBodyBuffer().writeBytes(body);
+            producer.send(message);
+         }
+
+         // a blocking call, so every message has been routed when it returns
+         Assert.assertEquals(MESSAGES, session.queueQuery(QUEUE).getMessageCount());
+
+         received.set(0);
+
+         ClientConsumer consumer = session.createConsumer(QUEUE);
+
+         long start = System.nanoTime();
+
+         session.start();
+
+         for (int i = 0; i < MESSAGES; i++)
+         {
+            ClientMessage message = consumer.receive(5000);
+            Assert.assertNotNull(message);
+            message.acknowledge();
+         }
+
+         long time = System.nanoTime() - start;
+
+         session.stop();
+         consumer.close();
+
+         Assert.assertEquals(MESSAGES, received.get());
+
+         log.info("received " + MESSAGES + " messages at " + MESSAGES * TimeUnit.SECONDS.toNanos(1) / time +
+                     " messages/s");
+      }
+
+      session.close();
+   }
+}
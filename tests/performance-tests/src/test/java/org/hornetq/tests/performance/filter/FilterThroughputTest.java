@@ -0,0 +1,175 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.filter;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures how many messages a single filter matches per second as more threads share it, with the
+ * threads matching concurrently and with every match serialized on the filter, as it used to be.
+ */
+public class FilterThroughputTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final String SELECTOR = "color = 'RED' AND weight > 10 AND shape IN ('square', 'round') " +
+      "AND HQPriority >= 4";
+
+   private static final int MATCHES_PER_THREAD = 1000000;
+
+   private static final int MESSAGES = 64;
+
+   private static final int[] THREADS = {1, 2, 4, 8};
+
+   @Test
+   public void testMatchThroughput() throws Throwable
+   {
+      Filter filter = FilterImpl.createFilter(SELECTOR);
+
+      ServerMessage[] messages = new ServerMessage[MESSAGES];
+
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         messages[i] = new ServerMessageImpl(i, 100);
+         messages[i].putStringProperty(new SimpleString("color"), new SimpleString(i % 2 == 0 ? "RED" : "BLUE"));
+         messages[i].putIntProperty(new SimpleString("weight"), i);
+         messages[i].putStringProperty(new SimpleString("shape"), new SimpleString("round"));
+         messages[i].setPriority((byte)(i % 10));
+      }
+
+      // warm up
+      measure(filter, messages, 2, false);
+
+      for (int threads : THREADS)
+      {
+         long serialized = measure(filter, messages, threads, true);
+         long concurrent = measure(filter, messages, threads, false);
+
+         log.info("threads=" + threads +
+                     ": serialized=" + serialized +
+                     " matches/s, concurrent=" + concurrent +
+                     " matches/s, ratio=" + (double)concurrent / serialized);
+      }
+   }
+
+   /**
+    * @return matches per second
+    */
+   private long measure(final Filter filter,
+                        final ServerMessage[] messages,
+                        final int threads,
+                        final boolean serialized) throws Throwable
+   {
+      final AtomicInteger errors = new AtomicInteger(0);
+      final CountDownLatch ready = new CountDownLatch(threads);
+      final CountDownLatch start = new CountDownLatch(1);
+
+      Thread[] matchers = new Thread[threads];
+
+      for (int t = 0; t < threads; t++)
+      {
+         matchers[t] = new Thread("matcher-" + t)
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  ready.countDown();
+                  start.await();
+
+                  int matched = 0;
+
+                  for (int i = 0; i < MATCHES_PER_THREAD; i++)
+                  {
+                     ServerMessage message = messages[i % MESSAGES];
+
+                     boolean match;
+
+                     if (serialized)
+                     {
+                        synchronized (filter)
+                        {
+                           match = filter.match(message);
+                        }
+                     }
+                     else
+                     {
+                        match = filter.match(message);
+                     }
+
+                     if (match)
+                     {
+                        matched++;
+                     }
+                  }
+
+                  if (matched != MATCHES_PER_THREAD / MESSAGES * expectedMatches(messages))
+                  {
+                     errors.incrementAndGet();
+                  }
+               }
+               catch (Throwable e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+            }
+         };
+         matchers[t].start();
+      }
+
+      ready.await();
+
+      long begin = System.nanoTime();
+
+      start.countDown();
+
+      for (Thread matcher : matchers)
+      {
+         matcher.join();
+      }
+
+      long time = System.nanoTime() - begin;
+
+      Assert.assertEquals(0, errors.get());
+
+      return (long)threads * MATCHES_PER_THREAD * TimeUnit.SECONDS.toNanos(1) / time;
+   }
+
+   private static int expectedMatches(final ServerMessage[] messages)
+   {
+      int matches = 0;
+      for (ServerMessage message : messages)
+      {
+         long id = message.getMessageID();
+         if (id % 2 == 0 && id > 10 && message.getPriority() >= 4)
+         {
+            matches++;
+         }
+      }
+      return matches;
+   }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.journal;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the time to append to and to load a NIO journal with and without record checksums.
+ */
+public class JournalChecksumLoadTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int RECORDS = 200000;
+
+   private static final int RECORD_SIZE = 512;
+
+   private static final int RUNS = 3;
+
+   @Test
+   public void testCompareLoadTime() throws Exception
+   {
+      for (int run = 0; run < RUNS; run++)
+      {
+         for (boolean checksums : new boolean[]{false, true})
+         {
+            String dir = getTestDir() + "/" + (checksums ? "checksums" : "plain") + "-" + run;
+
+            recreateDirectory(dir);
+
+            JournalImpl journal = createJournal(dir, checksums);
+            journal.load(new ArrayList<RecordInfo>(), new ArrayList<PreparedTransactionInfo>(), null);
+
+            SimpleEncoding data = new SimpleEncoding(RECORD_SIZE, (byte)'c');
+
+            long start = System.nanoTime();
+
+            for (int i = 0; i < RECORDS; i++)
+            {
+               journal.appendAddRecord(i, (byte)0, data, i % 100 == 99);
+            }
+
+            long appendTime = System.nanoTime() - start;
+
+            journal.stop();
+
+            journal = createJournal(dir, checksums);
+
+            ArrayList<RecordInfo> records = new ArrayList<RecordInfo>();
+
+            start = System.nanoTime();
+
+            journal.load(records, new ArrayList<PreparedTransactionInfo>(), null);
+
+            long loadTime = System.nanoTime() - start;
+
+            journal.stop();
+
+            Assert.assertEquals(RECORDS, records.size());
+
+            log.info("run " + run + ": checksums=" + checksums +
+                        ", append=" + TimeUnit.NANOSECONDS.toMillis(appendTime) +
+                        " ms, load=" + TimeUnit.NANOSECONDS.toMillis(loadTime) + " ms");
+         }
+      }
+   }
+
+   private JournalImpl createJournal(final String dir, final boolean checksums) throws Exception
+   {
+      NIOSequentialFileFactory factory = new NIOSequentialFileFactory(dir,
+                                                                      true,
+                                                                      490 * 1024,
+                                                                      (int)TimeUnit.MILLISECONDS.toNanos(1),
+                                                                      false);
+
+      JournalImpl journal = new JournalImpl(10 * 1024 * 1024, 10, 0, 0, factory, "hornetq-data", "hq", 1);
+
+      journal.setChecksums(checksums);
+
+      journal.start();
+
+      return journal;
+   }
+}
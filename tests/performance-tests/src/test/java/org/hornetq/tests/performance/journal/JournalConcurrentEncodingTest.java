@@ -0,0 +1,134 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.journal;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the append throughput of the journal with and without concurrent encoding, using 1, 8,
+ * 32 and 128 producer threads.
+ */
+public class JournalConcurrentEncodingTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int[] THREADS = new int[]{1, 8, 32, 128};
+
+   private static final int RECORDS_PER_RUN = 256 * 1024;
+
+   private static final int RECORD_SIZE = 1024;
+
+   @Test
+   public void testCompareAppendModes() throws Throwable
+   {
+      for (int threads : THREADS)
+      {
+         double locked = measure(false, threads);
+         double concurrent = measure(true, threads);
+
+         log.info("threads=" + threads +
+                     ", lockedEncoding=" + (long)locked +
+                     " records/sec, concurrentEncoding=" + (long)concurrent +
+                     " records/sec, ratio=" + concurrent / locked);
+      }
+   }
+
+   private double measure(final boolean concurrentEncoding, final int numberOfThreads) throws Throwable
+   {
+      String dir = getTestDir() + "/" + (concurrentEncoding ? "concurrent" : "locked") + "-" + numberOfThreads;
+      recreateDirectory(dir);
+
+      NIOSequentialFileFactory factory = new NIOSequentialFileFactory(dir, true);
+
+      final JournalImpl journal = new JournalImpl(10 * 1024 * 1024, 10, 0, 0, factory, "hornetq-data", "hq", 1);
+      journal.setConcurrentEncoding(concurrentEncoding);
+
+      journal.start();
+      journal.load(new ArrayList<RecordInfo>(), new ArrayList<PreparedTransactionInfo>(), null);
+
+      try
+      {
+         final int recordsPerThread = RECORDS_PER_RUN / numberOfThreads;
+         final SimpleEncoding data = new SimpleEncoding(RECORD_SIZE, (byte)'j');
+         final AtomicLong sequence = new AtomicLong(0);
+         final AtomicInteger errors = new AtomicInteger(0);
+         final CountDownLatch ready = new CountDownLatch(numberOfThreads);
+         final CountDownLatch start = new CountDownLatch(1);
+
+         Thread[] producers = new Thread[numberOfThreads];
+
+         for (int i = 0; i < numberOfThreads; i++)
+         {
+            producers[i] = new Thread("producer-" + i)
+            {
+               @Override
+               public void run()
+               {
+                  try
+                  {
+                     ready.countDown();
+                     start.await();
+                     for (int r = 0; r < recordsPerThread; r++)
+                     {
+                        journal.appendAddRecord(sequence.incrementAndGet(), (byte)0, data, false);
+                     }
+                  }
+                  catch (Throwable e)
+                  {
+                     e.printStackTrace();
+                     errors.incrementAndGet();
+                  }
+               }
+            };
+            producers[i].start();
+         }
+
+         ready.await();
+
+         long begin = System.nanoTime();
+
+         start.countDown();
+
+         for (Thread producer : producers)
+         {
+            producer.join();
+         }
+
+         // one last synced record so every previous append has hit the disk
+         journal.appendAddRecord(sequence.incrementAndGet(), (byte)0, data, true);
+
+         long elapsed = System.nanoTime() - begin;
+
+         Assert.assertEquals(0, errors.get());
+
+         return (double)recordsPerThread * numberOfThreads * 1000000000L / elapsed;
+      }
+      finally
+      {
+         journal.stop();
+      }
+   }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.journal;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hornetq.core.journal.IOCompletion;
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.SyncCoordinator;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the latency of transactions committed on two NIO journals at once, with and without
+ * a {@link SyncCoordinator} lining up the syncs of the two journals. The second journal uses a
+ * longer buffer timeout, as a slower store sharing the device would.
+ */
+public class JournalCoordinatedSyncTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int THREADS = 16;
+
+   private static final int COMMITS_PER_THREAD = 500;
+
+   private static final int RECORD_SIZE = 1024;
+
+   private static final int FIRST_TIMEOUT = (int)TimeUnit.MILLISECONDS.toNanos(1);
+
+   private static final int SECOND_TIMEOUT = (int)TimeUnit.MILLISECONDS.toNanos(4);
+
+   private static final int RUNS = 3;
+
+   @Test
+   public void testCompareCommitLatency() throws Throwable
+   {
+      for (int run = 0; run < RUNS; run++)
+      {
+         double independent = measure(false, run);
+         double coordinated = measure(true, run);
+
+         log.info("run " + run +
+                     ": independentSyncs=" + (long)independent +
+                     " us per commit, coordinatedSyncs=" + (long)coordinated +
+                     " us per commit, ratio=" + coordinated / independent);
+      }
+   }
+
+   /**
+    * @return the average commit latency, in microseconds
+    */
+   private double measure(final boolean coordinated, final int run) throws Throwable
+   {
+      String dir = getTestDir() + "/" + (coordinated ? "coordinated" : "independent") + "-" + run;
+
+      final JournalImpl first = createJournal(dir + "/first", FIRST_TIMEOUT);
+      final JournalImpl second = createJournal(dir + "/second", SECOND_TIMEOUT);
+
+      SyncCoordinator coordinator = null;
+
+      if (coordinated)
+      {
+         coordinator = new SyncCoordinator();
+         first.getFileFactory().getTimedBuffer().setSyncCoordinator(coordinator);
+         second.getFileFactory().getTimedBuffer().setSyncCoordinator(coordinator);
+      }
+
+      try
+      {
+         final SimpleEncoding data = new SimpleEncoding(RECORD_SIZE, (byte)'j');
+         final AtomicLong sequence = new AtomicLong(0);
+         final AtomicLong totalLatency = new AtomicLong(0);
+         final AtomicInteger errors = new AtomicInteger(0);
+         final CountDownLatch ready = new CountDownLatch(THREADS);
+         final CountDownLatch start = new CountDownLatch(1);
+
+         Thread[] committers = new Thread[THREADS];
+
+         for (int i = 0; i < THREADS; i++)
+         {
+            committers[i] = new Thread("committer-" + i)
+            {
+               @Override
+               public void run()
+               {
+                  try
+                  {
+                     ready.countDown();
+                     start.await();
+                     for (int c = 0; c < COMMITS_PER_THREAD; c++)
+                     {
+                        long txID = sequence.incrementAndGet();
+
+                        first.appendAddRecordTransactional(txID, sequence.incrementAndGet(), (byte)0, data);
+                        second.appendAddRecordTransactional(txID, sequence.incrementAndGet(), (byte)0, data);
+
+                        long begin = System.nanoTime();
+
+                        CommitCompletion completion = new CommitCompletion(2);
+
+                        first.appendCommitRecord(txID, true, completion);
+                        second.appendCommitRecord(txID, true, completion);
+
+                        if (!completion.latch.await(10, TimeUnit.SECONDS))
+                        {
+                           errors.incrementAndGet();
+                        }
+
+                        totalLatency.addAndGet(System.nanoTime() - begin);
+                     }
+                  }
+                  catch (Throwable e)
+                  {
+                     e.printStackTrace();
+                     errors.incrementAndGet();
+                  }
+               }
+            };
+            committers[i].start();
+         }
+
+         ready.await();
+
+         start.countDown();
+
+         for (Thread committer : committers)
+         {
+            committer.join();
+         }
+
+         Assert.assertEquals(0, errors.get());
+
+         if (coordinator != null)
+         {
+            log.info("syncs done ahead of their timer: " + coordinator.getCoordinatedSyncs());
+         }
+
+         return (double)TimeUnit.NANOSECONDS.toMicros(totalLatency.get()) / (THREADS * COMMITS_PER_THREAD);
+      }
+      finally
+      {
+         first.stop();
+         second.stop();
+      }
+   }
+
+   private JournalImpl createJournal(final String dir, final int bufferTimeout) throws Exception
+   {
+      recreateDirectory(dir);
+
+      NIOSequentialFileFactory factory = new NIOSequentialFileFactory(dir,
+                                                                      true,
+                                                                      490 * 1024,
+                                                                      bufferTimeout,
+                                                                      false);
+
+      JournalImpl journal = new JournalImpl(10 * 1024 * 1024, 10, 0, 0, factory, "hornetq-data", "hq", 1);
+
+      journal.start();
+      journal.load(new ArrayList<RecordInfo>(), new ArrayList<PreparedTransactionInfo>(), null);
+
+      return journal;
+   }
+
+   private static final class CommitCompletion implements IOCompletion
+   {
+      final CountDownLatch latch;
+
+      CommitCompletion(final int journals)
+      {
+         latch = new CountDownLatch(journals);
+      }
+
+      public void storeLineUp()
+      {
+      }
+
+      public void done()
+      {
+         latch.countDown();
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+      }
+   }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.journal;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.core.journal.impl.JournalFile;
+import org.hornetq.core.journal.impl.JournalFileImpl;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.JournalRecord;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.ConcurrentLongHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures the heap used per million live records by the record index of the journal, comparing
+ * the ConcurrentHashMap&lt;Long, JournalRecord&gt; it used to be with the ConcurrentLongHashMap it
+ * is now, and the throughput of both under concurrent lookups and changes, as appends, updates and
+ * deletes do on the journal.
+ */
+public class JournalRecordsHeapTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int RECORDS = 1000000;
+
+   private static final int RUNS = 3;
+
+   private static final int[] THREADS = new int[]{1, 8, 32};
+
+   private static final int CONTENDED_KEYS = 64 * 1024;
+
+   private static final int OPERATIONS_PER_RUN = 8 * 1024 * 1024;
+
+   @Test
+   public void testHeapPerMillionRecords() throws Exception
+   {
+      JournalFile file = new JournalFileImpl(new FakeSequentialFileFactory().createSequentialFile("test.hq", 1),
+                                             1,
+                                             JournalImpl.FORMAT_VERSION);
+
+      // the records are the same on both indexes, only the cost of the index itself is measured
+      JournalRecord[] journalRecords = new JournalRecord[RECORDS];
+      for (int i = 0; i < RECORDS; i++)
+      {
+         journalRecords[i] = new JournalRecord(file, 100);
+      }
+
+      for (int run = 0; run < RUNS; run++)
+      {
+         long boxed = measureBoxed(journalRecords);
+         long primitive = measurePrimitive(journalRecords);
+
+         log.info("run " + run +
+                     ": ConcurrentHashMap=" + boxed / (1024 * 1024) +
+                     " MiB per million records, ConcurrentLongHashMap=" + primitive / (1024 * 1024) +
+                     " MiB per million records, ratio=" + (double)primitive / boxed);
+      }
+   }
+
+   @Test
+   public void testContendedGetPut() throws Throwable
+   {
+      JournalFile file = new JournalFileImpl(new FakeSequentialFileFactory().createSequentialFile("test.hq", 1),
+                                             1,
+                                             JournalImpl.FORMAT_VERSION);
+
+      final JournalRecord record = new JournalRecord(file, 100);
+
+      for (int threads : THREADS)
+      {
+         final ConcurrentHashMap<Long, JournalRecord> boxedRecords = new ConcurrentHashMap<Long, JournalRecord>();
+         final ConcurrentLongHashMap<JournalRecord> primitiveRecords = new ConcurrentLongHashMap<JournalRecord>();
+
+         for (int i = 0; i < CONTENDED_KEYS; i++)
+         {
+            boxedRecords.put(1000000L + i, record);
+            primitiveRecords.put(1000000L + i, record);
+         }
+
+         double boxed = measureContended(threads, new RecordIndex()
+         {
+            public JournalRecord get(final long id)
+            {
+               return boxedRecords.get(id);
+            }
+
+            public void put(final long id, final JournalRecord journalRecord)
+            {
+               boxedRecords.put(id, journalRecord);
+            }
+
+            public void remove(final long id)
+            {
+               boxedRecords.remove(id);
+            }
+         });
+
+         double primitive = measureContended(threads, new RecordIndex()
+         {
+            public JournalRecord get(final long id)
+            {
+               return primitiveRecords.get(id);
+            }
+
+            public void put(final long id, final JournalRecord journalRecord)
+            {
+               primitiveRecords.put(id, journalRecord);
+            }
+
+            public void remove(final long id)
+            {
+               primitiveRecords.remove(id);
+            }
+         });
+
+         log.info("threads=" + threads +
+                     ": ConcurrentHashMap=" + (long)boxed +
+                     " operations/sec, ConcurrentLongHashMap=" + (long)primitive +
+                     " operations/sec, ratio=" + primitive / boxed);
+      }
+   }
+
+   /**
+    * Eight of every ten operations are lookups, the others replace or remove and add back a record.
+    */
+   private double measureContended(final int numberOfThreads, final RecordIndex index) throws Throwable
+   {
+      final int operationsPerThread = OPERATIONS_PER_RUN / numberOfThreads;
+      final AtomicInteger errors = new AtomicInteger(0);
+      final CountDownLatch ready = new CountDownLatch(numberOfThreads);
+      final CountDownLatch start = new CountDownLatch(1);
+
+      Thread[] threads = new Thread[numberOfThreads];
+
+      for (int i = 0; i < numberOfThreads; i++)
+      {
+         final int seed = i;
+
+         threads[i] = new Thread("index-" + i)
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  Random random = new Random(seed);
+                  ready.countDown();
+                  start.await();
+                  for (int op = 0; op < operationsPerThread; op++)
+                  {
+                     long id = 1000000L + random.nextInt(CONTENDED_KEYS);
+                     switch (op % 10)
+                     {
+                        case 0:
+                           JournalRecord journalRecord = index.get(id);
+                           if (journalRecord != null)
+                           {
+                              index.put(id, journalRecord);
+                           }
+                           break;
+                        case 1:
+                           JournalRecord removed = index.get(id);
+                           if (removed != null)
+                           {
+                              index.remove(id);
+                              index.put(id, removed);
+                           }
+                           break;
+                        default:
+                           index.get(id);
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+            }
+         };
+         threads[i].start();
+      }
+
+      ready.await();
+
+      long begin = System.nanoTime();
+
+      start.countDown();
+
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+
+      long elapsed = System.nanoTime() - begin;
+
+      Assert.assertEquals(0, errors.get());
+
+      return (double)operationsPerThread * numberOfThreads * 1000000000L / elapsed;
+   }
+
+   private long measureBoxed(final JournalRecord[] journalRecords)
+   {
+      long before = usedMemory();
+
+      ConcurrentHashMap<Long, JournalRecord> records = new ConcurrentHashMap<Long, JournalRecord>();
+
+      // IDs start high enough that the Long cache doesn't play a role, as on a live journal
+      for (int i = 0; i < journalRecords.length; i++)
+      {
+         records.put(1000000L + i, journalRecords[i]);
+      }
+
+      long used = usedMemory() - before;
+
+      Assert.assertEquals(journalRecords.length, records.size());
+
+      return used * 1000000L / journalRecords.length;
+   }
+
+   private long measurePrimitive(final JournalRecord[] journalRecords)
+   {
+      long before = usedMemory();
+
+      ConcurrentLongHashMap<JournalRecord> records = new ConcurrentLongHashMap<JournalRecord>();
+
+      for (int i = 0; i < journalRecords.length; i++)
+      {
+         records.put(1000000L + i, journalRecords[i]);
+      }
+
+      long used = usedMemory() - before;
+
+      Assert.assertEquals(journalRecords.length, records.size());
+
+      return used * 1000000L / journalRecords.length;
+   }
+
+   private static long usedMemory()
+   {
+      forceGC();
+      Runtime runtime = Runtime.getRuntime();
+      return runtime.totalMemory() - runtime.freeMemory();
+   }
+
+   private interface RecordIndex
+   {
+      JournalRecord get(long id);
+
+      void put(long id, JournalRecord journalRecord);
+
+      void remove(long id);
+   }
+}
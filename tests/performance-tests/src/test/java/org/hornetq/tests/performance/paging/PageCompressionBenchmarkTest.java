@@ -0,0 +1,208 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.paging;
+
+import java.io.File;
+import java.util.Random;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Pages a backlog with and without compress-page-files, with text like payloads and with random
+ * ones, measuring how fast it is paged and depaged and how much disk the page files take.
+ */
+public class PageCompressionBenchmarkTest extends ServiceTestBase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final SimpleString ADDRESS = new SimpleString("PageCompressionBenchmarkAddress");
+
+   private static final int PAGE_SIZE = 1024 * 1024;
+
+   private static final int MESSAGES = 50000;
+
+   private static final int MESSAGE_SIZE = 1024;
+
+   private static final int RUNS = 3;
+
+   @Test
+   public void testCompressiblePayload() throws Exception
+   {
+      StringBuilder text = new StringBuilder();
+      Random random = new Random(1);
+      while (text.length() < MESSAGE_SIZE)
+      {
+         text.append("{\"id\":").append(random.nextInt(100000)).append(",\"status\":\"");
+         text.append(random.nextBoolean() ? "shipped" : "pending").append("\",\"amount\":");
+         text.append(random.nextInt(1000)).append('.').append(random.nextInt(100)).append("},");
+      }
+
+      byte[] payload = new byte[MESSAGE_SIZE];
+      System.arraycopy(text.toString().getBytes("US-ASCII"), 0, payload, 0, MESSAGE_SIZE);
+
+      compare("compressible", payload);
+   }
+
+   @Test
+   public void testIncompressiblePayload() throws Exception
+   {
+      byte[] payload = new byte[MESSAGE_SIZE];
+      new Random(1).nextBytes(payload);
+
+      compare("incompressible", payload);
+   }
+
+   private void compare(final String name, final byte[] payload) throws Exception
+   {
+      for (int run = 0; run < RUNS; run++)
+      {
+         for (boolean compress : new boolean[]{false, true})
+         {
+            clearDataRecreateServerDirs();
+            measure(name, payload, compress);
+         }
+      }
+   }
+
+   private void measure(final String name, final byte[] payload, final boolean compress) throws Exception
+   {
+      HornetQServer server = createServer(true, false);
+
+      AddressSettings settings = new AddressSettings();
+      settings.setPageSizeBytes(PAGE_SIZE);
+      settings.setMaxSizeBytes(PAGE_SIZE * 2);
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+      settings.setCompressPageFiles(compress);
+      server.getAddressSettingsRepository().addMatch(ADDRESS.toString(), settings);
+
+      server.start();
+
+      try
+      {
+         ServerLocator locator = createInVMNonHALocator();
+         locator.setBlockOnDurableSend(false);
+
+         ClientSessionFactory sf = createSessionFactory(locator);
+
+         ClientSession session = addClientSession(sf.createSession(false, false, false));
+
+         session.createQueue(ADDRESS, ADDRESS, true);
+
+         PagingStore store = server.getPagingManager().getPageStore(ADDRESS);
+
+         store.startPaging();
+
+         ClientProducer producer = session.createProducer(ADDRESS);
+
+         long start = System.currentTimeMillis();
+
+         for (int i = 0; i < MESSAGES; i++)
+         {
+            ClientMessage message = session.createMessage(true);
+            message.getBodyBuffer().writeBytes(payload);
+            producer.send(message);
+
+            if (i % 1000 == 999)
+            {
+               session.commit();
+            }
+         }
+
+         session.commit();
+
+         long sendTime = System.currentTimeMillis() - start;
+
+         int pages = store.getNumberOfPages();
+
+         long diskUsage = sizeOfPageFiles(new File(server.getConfiguration().getPagingDirectory()));
+
+         ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+         session.start();
+
+         start = System.currentTimeMillis();
+
+         for (int i = 0; i < MESSAGES; i++)
+         {
+            ClientMessage message = consumer.receive(5000);
+            Assert.assertNotNull(message);
+            Assert.assertEquals(payload.length, message.getBodySize());
+            message.acknowledge();
+
+            if (i % 1000 == 999)
+            {
+               session.commit();
+            }
+         }
+
+         session.commit();
+
+         long receiveTime = System.currentTimeMillis() - start;
+
+         log.info(name + (compress ? " compressed" : " uncompressed") + ": sent " + rate(sendTime) +
+                     " messages per second, received " + rate(receiveTime) + " messages per second, " + pages +
+                     " pages taking " + diskUsage / 1024 + " KiB");
+
+         session.close();
+         sf.close();
+         locator.close();
+      }
+      finally
+      {
+         server.stop();
+      }
+   }
+
+   private static long rate(final long time)
+   {
+      return MESSAGES * 1000L / Math.max(time, 1);
+   }
+
+   private static long sizeOfPageFiles(final File directory)
+   {
+      long size = 0;
+
+      File[] files = directory.listFiles();
+
+      if (files != null)
+      {
+         for (File file : files)
+         {
+            if (file.isDirectory())
+            {
+               size += sizeOfPageFiles(file);
+            }
+            else if (file.getName().endsWith(".page"))
+            {
+               size += file.length();
+            }
+         }
+      }
+
+      return size;
+   }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.postoffice;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.postoffice.Bindings;
+import org.hornetq.core.postoffice.impl.BindingsImpl;
+import org.hornetq.core.postoffice.impl.LocalQueueBinding;
+import org.hornetq.core.server.RoutingContext;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.RoutingContextImpl;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures the time BindingsImpl.route() takes to fan a message out to an address with 10, 1k and
+ * 10k subscriptions, without filters and with a filter on every tenth subscription.
+ */
+public class BindingsRouteTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final SimpleString ADDRESS = new SimpleString("topic");
+
+   private static final SimpleString NODE_ID = new SimpleString("node");
+
+   private static final int[] SUBSCRIPTIONS = {10, 1000, 10000};
+
+   // the number of routed copies per measure, so every size does about the same work
+   private static final int ROUTES = 10000000;
+
+   private int routed;
+
+   @Test
+   public void testRoute() throws Exception
+   {
+      // warm up
+      measure(1000, false);
+
+      for (int subscriptions : SUBSCRIPTIONS)
+      {
+         for (boolean filtered : new boolean[]{false, true})
+         {
+            long nanos = measure(subscriptions, filtered);
+
+            log.info(subscriptions + " subscriptions" + (filtered ? " (10% filtered)" : "") +
+                        ": " + nanos + " ns per route, " + (double)nanos / subscriptions + " ns per subscription");
+         }
+      }
+   }
+
+   /**
+    * @return the average time of a route() in nanoseconds
+    */
+   private long measure(final int subscriptions, final boolean filtered) throws Exception
+   {
+      Bindings bindings = new BindingsImpl(ADDRESS, null, null);
+
+      Filter filter = FilterImpl.createFilter("region = 'X'");
+
+      int matching = 0;
+
+      for (int i = 0; i < subscriptions; i++)
+      {
+         boolean withFilter = filtered && i % 10 == 0;
+         if (!withFilter)
+         {
+            matching++;
+         }
+         bindings.addBinding(new LocalQueueBinding(ADDRESS,
+                                                   new CountingQueue(new SimpleString("sub-" + i), i, withFilter ? filter : null),
+                                                   NODE_ID));
+      }
+
+      ServerMessage message = new ServerMessageImpl(1, 100);
+      message.putStringProperty(new SimpleString("region"), new SimpleString("Y"));
+
+      RoutingContext context = new RoutingContextImpl(null);
+
+      int messages = Math.max(ROUTES / subscriptions, 100);
+
+      routed = 0;
+
+      long start = System.nanoTime();
+
+      for (int i = 0; i < messages; i++)
+      {
+         bindings.route(message, context);
+      }
+
+      long time = System.nanoTime() - start;
+
+      Assert.assertEquals(matching * messages, routed);
+
+      return time / messages;
+   }
+
+   private final class CountingQueue extends FakeQueue
+   {
+      private final Filter filter;
+
+      CountingQueue(final SimpleString name, final long id, final Filter filter)
+      {
+         super(name, id);
+         this.filter = filter;
+      }
+
+      @Override
+      public Filter getFilter()
+      {
+         return filter;
+      }
+
+      @Override
+      public void route(final ServerMessage message, final RoutingContext context) throws Exception
+      {
+         routed++;
+      }
+   }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.postoffice;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.postoffice.Bindings;
+import org.hornetq.core.postoffice.BindingsFactory;
+import org.hornetq.core.postoffice.impl.BindingsImpl;
+import org.hornetq.core.postoffice.impl.LocalQueueBinding;
+import org.hornetq.core.postoffice.impl.WildcardAddressManager;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures how long WildcardAddressManager takes to add and remove bindings while it holds 1k, 10k
+ * and 100k addresses and a few hundred wildcard subscriptions.
+ */
+public class WildcardAddressChurnTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final SimpleString NODE_ID = new SimpleString("node");
+
+   private static final int[] ADDRESSES = {1000, 10000, 100000};
+
+   private static final int WILDCARDS = 200;
+
+   private static final int CHURN = 10000;
+
+   private long queueID;
+
+   @Test
+   public void testAddressChurn() throws Exception
+   {
+      // warm up
+      measure(1000);
+
+      for (int addresses : ADDRESSES)
+      {
+         measure(addresses);
+      }
+   }
+
+   private void measure(final int addresses) throws Exception
+   {
+      WildcardAddressManager manager = new WildcardAddressManager(new BindingsFactory()
+      {
+         public Bindings createBindings(final SimpleString address) throws Exception
+         {
+            return new BindingsImpl(address, null, null);
+         }
+      });
+
+      for (int i = 0; i < WILDCARDS; i++)
+      {
+         manager.addBinding(binding("region" + i + ".*.orders"));
+      }
+      manager.addBinding(binding("#"));
+
+      long start = System.nanoTime();
+
+      for (int i = 0; i < addresses; i++)
+      {
+         manager.addBinding(binding(address(i)));
+      }
+
+      long fill = System.nanoTime() - start;
+
+      // every address has its own binding, the '#' one and the one of its region
+      Assert.assertEquals(3, manager.getBindingsForRoutingAddress(new SimpleString(address(addresses - 1))).getBindings().size());
+
+      start = System.nanoTime();
+
+      for (int i = 0; i < CHURN; i++)
+      {
+         SimpleString name = new SimpleString("churn-" + i);
+         manager.addBinding(new LocalQueueBinding(new SimpleString(address(addresses + i)),
+                                                  new FakeQueue(name, queueID++),
+                                                  NODE_ID));
+         manager.removeBinding(name, null);
+      }
+
+      long churn = System.nanoTime() - start;
+
+      start = System.nanoTime();
+
+      manager.addBinding(binding("#.orders"));
+
+      long wildcard = System.nanoTime() - start;
+
+      log.info(addresses + " addresses: " + fill / addresses + " ns per address added, " +
+                  churn / CHURN + " ns per address added and removed, " +
+                  wildcard / 1000 + " us to add a wildcard matching all of them");
+   }
+
+   private static String address(final int i)
+   {
+      return "region" + i % WILDCARDS + ".customer" + i + ".orders";
+   }
+
+   private LocalQueueBinding binding(final String address)
+   {
+      return new LocalQueueBinding(new SimpleString(address),
+                                   new FakeQueue(new SimpleString("queue-" + queueID), queueID++),
+                                   NODE_ID);
+   }
+}
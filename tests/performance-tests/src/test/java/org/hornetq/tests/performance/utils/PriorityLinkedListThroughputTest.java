@@ -0,0 +1,158 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.utils;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.PriorityLinkedListImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares PriorityLinkedListImpl with a java.util.PriorityQueue ordered by priority and arrival,
+ * adding and polling elements with 10 priorities, as the queues and the client consumers use it.
+ * Both a backlog that is filled and then drained and a list that stays short are measured.
+ */
+public class PriorityLinkedListThroughputTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int PRIORITIES = 10;
+
+   private static final int ELEMENTS = 1000000;
+
+   private static final int RUNS = 5;
+
+   private final int[] priorities = new int[ELEMENTS];
+
+   private final Element[] elements = new Element[ELEMENTS];
+
+   @Test
+   public void testAddPoll() throws Exception
+   {
+      Random random = new Random(1);
+
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         // mostly the default priority, as real traffic is
+         priorities[i] = random.nextInt(4) == 0 ? random.nextInt(PRIORITIES) : 4;
+         elements[i] = new Element(i, priorities[i]);
+      }
+
+      for (int run = 0; run < RUNS; run++)
+      {
+         for (int backlog : new int[]{ELEMENTS, 10})
+         {
+            long list = measureList(backlog);
+            long heap = measureHeap(backlog);
+
+            log.info("backlog of " + backlog + ": PriorityLinkedListImpl " + list + " ns per add/poll, PriorityQueue " +
+                        heap + " ns per add/poll");
+         }
+      }
+   }
+
+   /**
+    * @return the average time of an add and a poll in nanoseconds
+    */
+   private long measureList(final int backlog)
+   {
+      PriorityLinkedListImpl<Element> list = new PriorityLinkedListImpl<Element>(PRIORITIES);
+
+      long start = System.nanoTime();
+
+      int polled = 0;
+
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         list.addTail(elements[i], priorities[i]);
+
+         if (list.size() == backlog)
+         {
+            while (list.poll() != null)
+            {
+               polled++;
+            }
+         }
+      }
+
+      while (list.poll() != null)
+      {
+         polled++;
+      }
+
+      long time = System.nanoTime() - start;
+
+      Assert.assertEquals(ELEMENTS, polled);
+
+      return time / ELEMENTS;
+   }
+
+   private long measureHeap(final int backlog)
+   {
+      PriorityQueue<Element> heap = new PriorityQueue<Element>();
+
+      long start = System.nanoTime();
+
+      int polled = 0;
+
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         heap.add(elements[i]);
+
+         if (heap.size() == backlog)
+         {
+            while (heap.poll() != null)
+            {
+               polled++;
+            }
+         }
+      }
+
+      while (heap.poll() != null)
+      {
+         polled++;
+      }
+
+      long time = System.nanoTime() - start;
+
+      Assert.assertEquals(ELEMENTS, polled);
+
+      return time / ELEMENTS;
+   }
+
+   private static final class Element implements Comparable<Element>
+   {
+      private final long sequence;
+
+      private final int priority;
+
+      Element(final long sequence, final int priority)
+      {
+         this.sequence = sequence;
+         this.priority = priority;
+      }
+
+      public int compareTo(final Element other)
+      {
+         if (priority != other.priority)
+         {
+            return other.priority - priority;
+         }
+         return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+      }
+   }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.stress.paging;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.paging.cursor.PageCursorProvider;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Many subscriptions of a paged topic consumed in groups lagging behind each other. Measures how
+ * many times each page is read from disk and how much is allocated per delivered message.
+ */
+public class PageFanOutStressTest extends ServiceTestBase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final SimpleString ADDRESS = new SimpleString("PageFanOutStressTestAddress");
+
+   private static final int PAGE_SIZE = 20 * 1024;
+
+   private static final int CACHE_SIZE = 20;
+
+   private static final int SUBSCRIPTIONS = 100;
+
+   private static final int GROUPS = 5;
+
+   // how many messages each group is behind the previous one
+   private static final int LAG = 30;
+
+   private static final int MESSAGES = 2000;
+
+   @Test
+   public void testLaggingSubscriptions() throws Exception
+   {
+      HornetQServer server = createServer(true, false);
+
+      AddressSettings settings = new AddressSettings();
+      settings.setPageSizeBytes(PAGE_SIZE);
+      settings.setMaxSizeBytes(PAGE_SIZE * 2);
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+      settings.setPageCacheMaxSize(CACHE_SIZE);
+      server.getAddressSettingsRepository().addMatch(ADDRESS.toString(), settings);
+
+      server.start();
+
+      ServerLocator locator = createInVMNonHALocator();
+      locator.setBlockOnDurableSend(false);
+      // the consumers only get what they ask for, so the subscriptions move at their pace
+      locator.setConsumerWindowSize(0);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      for (int i = 0; i < SUBSCRIPTIONS; i++)
+      {
+         session.createQueue(ADDRESS, ADDRESS.concat("-" + i), true);
+      }
+
+      PagingStore store = server.getPagingManager().getPageStore(ADDRESS);
+
+      store.startPaging();
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("i", i);
+         message.getBodyBuffer().writeBytes(new byte[1024]);
+         producer.send(message);
+      }
+
+      session.commit();
+
+      int pages = store.getNumberOfPages();
+
+      PageCursorProvider provider = store.getCursorProvider();
+
+      ClientConsumer[] consumers = new ClientConsumer[SUBSCRIPTIONS];
+
+      int[] received = new int[SUBSCRIPTIONS];
+
+      for (int i = 0; i < SUBSCRIPTIONS; i++)
+      {
+         consumers[i] = session.createConsumer(ADDRESS.concat("-" + i));
+      }
+
+      session.start();
+
+      long pagesReadBefore = provider.getPagesRead();
+
+      long allocatedBefore = allocatedBytes();
+
+      long start = System.currentTimeMillis();
+
+      int done = 0;
+
+      for (int round = 0; done < SUBSCRIPTIONS; round++)
+      {
+         for (int i = 0; i < SUBSCRIPTIONS; i++)
+         {
+            if (round < i % GROUPS * LAG || received[i] == MESSAGES)
+            {
+               continue;
+            }
+
+            ClientMessage message = consumers[i].receive(5000);
+            Assert.assertNotNull("subscription " + i + " got " + received[i], message);
+            Assert.assertEquals(received[i], message.getIntProperty("i").intValue());
+            message.acknowledge();
+
+            if (++received[i] == MESSAGES)
+            {
+               done++;
+            }
+         }
+      }
+
+      long time = System.currentTimeMillis() - start;
+
+      long allocated = allocatedBytes() - allocatedBefore;
+
+      long pagesRead = provider.getPagesRead() - pagesReadBefore;
+
+      long delivered = (long) SUBSCRIPTIONS * MESSAGES;
+
+      log.info(SUBSCRIPTIONS + " subscriptions over " + pages + " pages with a cache of " + CACHE_SIZE + ": " +
+                  pagesRead + " pages read (" + ((double) pagesRead / pages) + " per page), " +
+                  (allocated < 0 ? "unknown" : String.valueOf(allocated / delivered)) +
+                  " bytes allocated per delivered message, " + (delivered * 1000 / Math.max(time, 1)) +
+                  " messages per second");
+
+      for (ClientConsumer consumer : consumers)
+      {
+         Assert.assertNull(consumer.receiveImmediate());
+      }
+
+      // the groups are within the cache size, so the pages the first group reads are there for the others
+      Assert.assertTrue(pagesRead + " pages read for " + pages + " pages", pagesRead < pages * 2);
+   }
+
+   /**
+    * @return the bytes allocated by the live threads, or -1 if the VM doesn't measure it
+    */
+   private static long allocatedBytes()
+   {
+      ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+      if (!(threads instanceof com.sun.management.ThreadMXBean))
+      {
+         return -1;
+      }
+
+      com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+
+      if (!sunThreads.isThreadAllocatedMemorySupported() || !sunThreads.isThreadAllocatedMemoryEnabled())
+      {
+         return -1;
+      }
+
+      long total = 0;
+
+      for (long allocated : sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+      {
+         if (allocated > 0)
+         {
+            total += allocated;
+         }
+      }
+
+      return total;
+   }
+}
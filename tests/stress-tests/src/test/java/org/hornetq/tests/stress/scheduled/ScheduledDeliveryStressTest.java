@@ -0,0 +1,124 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.stress.scheduled;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ScheduledDeliveryHandlerImpl;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Schedules 10 million references over a few thousand distinct delivery times and checks they are
+ * all delivered, none of them early.
+ */
+public class ScheduledDeliveryStressTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int NUMBER_OF_MESSAGES = 10000000;
+
+   // the references are spread over this many milliseconds
+   private static final int SPREAD = 5000;
+
+   @Test
+   public void testScheduleMillions() throws Exception
+   {
+      ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+
+      try
+      {
+         final CountDownLatch done = new CountDownLatch(1);
+
+         final AtomicInteger delivered = new AtomicInteger(0);
+
+         final AtomicInteger errors = new AtomicInteger(0);
+
+         final AtomicLong firstDelivery = new AtomicLong(Long.MAX_VALUE);
+
+         FakeQueue queue = new FakeQueue(new SimpleString("queue"))
+         {
+            @Override
+            public void addHead(final List<MessageReference> refs)
+            {
+               firstDelivery.compareAndSet(Long.MAX_VALUE, System.currentTimeMillis());
+
+               for (MessageReference ref : refs)
+               {
+                  if (ref.getScheduledDeliveryTime() != 0)
+                  {
+                     errors.incrementAndGet();
+                  }
+               }
+
+               if (delivered.addAndGet(refs.size()) == NUMBER_OF_MESSAGES)
+               {
+                  done.countDown();
+               }
+            }
+         };
+
+         ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(scheduler);
+
+         ServerMessage message = new ServerMessageImpl(1, 100);
+
+         // after scheduling everything, so it can check nothing was delivered early
+         long start = System.currentTimeMillis() + 30000;
+
+         long begin = System.nanoTime();
+
+         for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+         {
+            MessageReference ref = message.createReference(queue);
+            ref.setScheduledDeliveryTime(start + i % SPREAD);
+            Assert.assertTrue(handler.checkAndSchedule(ref, i % 10 != 0));
+         }
+
+         long scheduling = System.nanoTime() - begin;
+
+         log.info("scheduled " + NUMBER_OF_MESSAGES + " references in " + TimeUnit.NANOSECONDS.toMillis(scheduling) +
+                     " ms, " + scheduling / NUMBER_OF_MESSAGES + " ns per reference");
+
+         Assert.assertEquals(NUMBER_OF_MESSAGES, handler.getScheduledCount());
+         Assert.assertTrue("scheduling took longer than the delay", System.currentTimeMillis() < start);
+         Assert.assertEquals(1, scheduler.getQueue().size());
+
+         Assert.assertTrue(done.await(5, TimeUnit.MINUTES));
+
+         long end = System.currentTimeMillis();
+
+         Assert.assertEquals(0, errors.get());
+         Assert.assertTrue(firstDelivery.get() >= start);
+         Assert.assertEquals(0, handler.getScheduledCount());
+
+         log.info("delivered " + NUMBER_OF_MESSAGES + " references " + (end - start - SPREAD) +
+                     " ms after the last delivery time");
+      }
+      finally
+      {
+         scheduler.shutdownNow();
+      }
+   }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.unit.core.journal.impl;
+
+import java.nio.ByteBuffer;
+
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalChecksum;
+import org.hornetq.core.journal.impl.JournalFile;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.hornetq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChecksumJournalImplTest extends JournalImplTestBase
+{
+   private boolean checksums = true;
+
+   @Override
+   protected SequentialFileFactory getFileFactory() throws Exception
+   {
+      return new FakeSequentialFileFactory();
+   }
+
+   @Override
+   public void createJournal() throws Exception
+   {
+      super.createJournal();
+      ((JournalImpl)journal).setChecksums(checksums);
+   }
+
+   @Test
+   public void testLoadWithChecksums() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      for (int i = 1; i <= 30; i++)
+      {
+         add(i);
+      }
+
+      update(1, 2, 3);
+      delete(4, 5);
+
+      addTx(100, 31, 32);
+      updateTx(100, 1);
+      deleteTx(100, 6);
+      commit(100);
+
+      addTx(101, 33);
+      prepare(101, new SimpleEncoding(10, (byte)'p'));
+
+      addTx(102, 34);
+      rollback(102);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      for (JournalFile file : ((JournalImpl)journal).getDataFiles())
+      {
+         Assert.assertEquals(JournalImpl.CHECKSUM_FORMAT_VERSION, file.getJournalVersion());
+      }
+
+      commit(101);
+
+      for (int i = 7; i <= 25; i++)
+      {
+         delete(i);
+      }
+
+      journal.testCompact();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testRecordNotMatchingChecksumIsIgnored() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3);
+
+      String fileName = journal.getCurrentFile().getFile().getFileName();
+
+      stopJournal();
+
+      // the sizes of the record are still right, only its data was damaged
+      int recordSize = JournalImpl.SIZE_ADD_RECORD + 1 + recordLength + JournalChecksum.SIZE;
+      int position = JournalImpl.SIZE_HEADER + recordSize * 2 + recordSize / 2;
+
+      fileFactory.start();
+
+      SequentialFile file = fileFactory.createSequentialFile(fileName, 1);
+      file.open();
+      ByteBuffer damage = fileFactory.newBuffer(1);
+      damage.put((byte)0);
+      damage.rewind();
+      file.position(position);
+      file.writeDirect(damage, true);
+      file.close();
+
+      fileFactory.stop();
+
+      removeRecordsForID(3);
+
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testSwitchChecksums() throws Exception
+   {
+      checksums = false;
+
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3);
+
+      stopJournal();
+
+      checksums = true;
+
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      add(4, 5, 6);
+      update(1);
+
+      // the file written without checksums is not appended to
+      JournalFile[] files = ((JournalImpl)journal).getDataFiles();
+      Assert.assertEquals(JournalImpl.FORMAT_VERSION, files[files.length - 1].getJournalVersion());
+      Assert.assertEquals(JournalImpl.CHECKSUM_FORMAT_VERSION, journal.getCurrentFile().getJournalVersion());
+
+      stopJournal();
+
+      checksums = false;
+
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      add(7);
+      delete(2);
+
+      Assert.assertEquals(JournalImpl.FORMAT_VERSION, journal.getCurrentFile().getJournalVersion());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+}
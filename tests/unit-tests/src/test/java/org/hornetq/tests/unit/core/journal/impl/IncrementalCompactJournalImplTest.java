@@ -0,0 +1,207 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.unit.core.journal.impl;
+
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalFile;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IncrementalCompactJournalImplTest extends JournalImplTestBase
+{
+   // 9 records of recordLength fit on a file
+   private static final int FILE_SIZE = 10 * 1024;
+
+   @Override
+   protected SequentialFileFactory getFileFactory() throws Exception
+   {
+      return new FakeSequentialFileFactory();
+   }
+
+   @Override
+   public void createJournal() throws Exception
+   {
+      super.createJournal();
+      ((JournalImpl)journal).setIncrementalCompact(true);
+   }
+
+   @Test
+   public void testCompactOnlyOldestFiles() throws Exception
+   {
+      setup(2, FILE_SIZE, true);
+      createJournal();
+      startJournal();
+      load();
+
+      for (int i = 1; i <= 60; i++)
+      {
+         add(i);
+      }
+
+      // only records 5 and 15 are left on the first three files
+      for (int i = 1; i <= 27; i++)
+      {
+         if (i != 5 && i != 15)
+         {
+            delete(i);
+         }
+      }
+
+      JournalFile[] before = ((JournalImpl)journal).getDataFiles();
+
+      journal.testCompact();
+
+      JournalFile[] after = ((JournalImpl)journal).getDataFiles();
+
+      Assert.assertEquals(before.length - 2, after.length);
+
+      // the files after the compacted ones are kept as they were
+      for (int i = 3; i < before.length; i++)
+      {
+         Assert.assertSame(before[i], after[i - 2]);
+      }
+
+      Assert.assertTrue(after[0].getFileID() < after[1].getFileID());
+
+      Assert.assertTrue(((JournalImpl)journal).getLastCompactPause() > 0);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testPendingTransactionIsNotCompacted() throws Exception
+   {
+      setup(2, FILE_SIZE, true);
+      createJournal();
+      startJournal();
+      load();
+
+      addTx(100, 1);
+
+      for (int i = 2; i <= 40; i++)
+      {
+         add(i);
+      }
+
+      for (int i = 2; i <= 27; i++)
+      {
+         delete(i);
+      }
+
+      int files = journal.getDataFilesCount();
+
+      journal.testCompact();
+
+      Assert.assertEquals(files, journal.getDataFilesCount());
+
+      commit(100);
+
+      // the file with the commit has to be compacted along, so it can't be the current file
+      for (int i = 41; i <= 60; i++)
+      {
+         add(i);
+      }
+
+      files = journal.getDataFilesCount();
+
+      journal.testCompact();
+
+      Assert.assertTrue(journal.getDataFilesCount() < files);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testUpdatesAfterCompactedFiles() throws Exception
+   {
+      setup(2, FILE_SIZE, true);
+      createJournal();
+      startJournal();
+      load();
+
+      for (int i = 1; i <= 40; i++)
+      {
+         add(i);
+      }
+
+      for (int i = 2; i <= 27; i++)
+      {
+         delete(i);
+      }
+
+      update(1);
+
+      journal.testCompact();
+
+      update(1);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      delete(1);
+
+      checkAndReclaimFiles();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testOperationsDuringCompact() throws Exception
+   {
+      setup(2, FILE_SIZE, true);
+      createJournal();
+      startJournal();
+      load();
+
+      for (int i = 1; i <= 40; i++)
+      {
+         add(i);
+      }
+
+      for (int i = 3; i <= 27; i++)
+      {
+         delete(i);
+      }
+
+      startCompact();
+
+      update(1);
+      delete(2);
+      add(41);
+      addTx(100, 42);
+      commit(100);
+
+      finishCompact();
+
+      delete(41, 42);
+      update(1);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.unit.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.core.journal.BatchRecord;
+import org.hornetq.core.journal.IOCompletion;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
+import org.hornetq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JournalBatchTest extends JournalImplTestBase
+{
+   @Override
+   protected SequentialFileFactory getFileFactory() throws Exception
+   {
+      return new FakeSequentialFileFactory(1, true);
+   }
+
+   @Test
+   public void testAddAndUpdatesOnOneBatch() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      for (int i = 1; i <= 20; i++)
+      {
+         CountingCompletion completion = new CountingCompletion();
+
+         batch(completion, i, 3);
+
+         // the whole batch completes once
+         Assert.assertEquals(1, completion.lineUps.get());
+         Assert.assertEquals(1, completion.done.get());
+      }
+
+      update(5);
+      delete(7);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testDeletesOnOneBatch() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3, 4, 5);
+
+      List<BatchRecord> batch = new ArrayList<BatchRecord>();
+      for (long id : new long[]{1, 3, 5})
+      {
+         batch.add(BatchRecord.delete(id));
+         removeRecordsForID(id);
+      }
+
+      // a record added and deleted on the same batch
+      batch.add(BatchRecord.add(6, (byte)0, new ByteArrayEncoding(generateRecord(recordLength))));
+      batch.add(BatchRecord.delete(6));
+
+      CountingCompletion completion = new CountingCompletion();
+
+      journal.appendBatch(batch, sync, completion);
+
+      journal.debugWait();
+
+      Assert.assertEquals(1, completion.done.get());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testDeleteWithoutAdd() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1);
+
+      List<BatchRecord> batch = new ArrayList<BatchRecord>();
+      batch.add(BatchRecord.delete(1));
+      batch.add(BatchRecord.delete(2));
+
+      try
+      {
+         journal.appendBatch(batch, true);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      // nothing was written, 1 is still there
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testBatchIsWrittenOnOneFile() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      int recordSize = JournalImpl.SIZE_ADD_RECORD + 1 + recordLength;
+
+      // leaves the current file with room for two records, but not for the three on the batch
+      int records = (fileSize - JournalImpl.SIZE_HEADER) / recordSize - 1;
+      for (int i = 1; i < records; i++)
+      {
+         add(i);
+      }
+
+      long fileID = journal.getCurrentFile().getFileID();
+
+      batch(new CountingCompletion(), 1000, 2);
+
+      Assert.assertTrue(journal.getCurrentFile().getFileID() > fileID);
+      Assert.assertEquals(3, journal.getCurrentFile().getPosCount());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testBatchLargerThanFile() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      CountingCompletion completion = new CountingCompletion();
+
+      batch(completion, 1, 30);
+
+      // every record completes the callback, as they are spread over a few files
+      Assert.assertEquals(31, completion.lineUps.get());
+      Assert.assertEquals(31, completion.done.get());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testUpdateWithoutAdd() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1);
+
+      List<BatchRecord> batch = new ArrayList<BatchRecord>();
+      batch.add(BatchRecord.update(1, (byte)0, new ByteArrayEncoding(generateRecord(recordLength))));
+      batch.add(BatchRecord.update(2, (byte)0, new ByteArrayEncoding(generateRecord(recordLength))));
+
+      try
+      {
+         journal.appendBatch(batch, true);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      // nothing was written
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   /**
+    * Adds id and updates it the given number of times on one batch.
+    */
+   private void batch(final IOCompletion completion, final long id, final int updates) throws Exception
+   {
+      List<BatchRecord> batch = new ArrayList<BatchRecord>();
+
+      byte[] record = generateRecord(recordLength);
+      batch.add(BatchRecord.add(id, (byte)0, new ByteArrayEncoding(record)));
+      records.add(new RecordInfo(id, (byte)0, record, false, (short)0));
+
+      for (int i = 0; i < updates; i++)
+      {
+         byte[] updateRecord = generateRecord(recordLength);
+         batch.add(BatchRecord.update(id, (byte)0, new ByteArrayEncoding(updateRecord)));
+         records.add(new RecordInfo(id, (byte)0, updateRecord, true, (short)0));
+      }
+
+      journal.appendBatch(batch, sync, completion);
+
+      journal.debugWait();
+   }
+
+   private static final class CountingCompletion implements IOCompletion
+   {
+      final AtomicInteger lineUps = new AtomicInteger(0);
+
+      final AtomicInteger done = new AtomicInteger(0);
+
+      public void storeLineUp()
+      {
+         lineUps.incrementAndGet();
+      }
+
+      public void done()
+      {
+         done.incrementAndGet();
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+      }
+   }
+}
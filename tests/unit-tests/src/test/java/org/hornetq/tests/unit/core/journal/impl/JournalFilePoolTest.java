@@ -0,0 +1,146 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.unit.core.journal.impl;
+
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JournalFilePoolTest extends JournalImplTestBase
+{
+   private static final int POOL_FILES = 3;
+
+   @Override
+   protected SequentialFileFactory getFileFactory() throws Exception
+   {
+      return new FakeSequentialFileFactory();
+   }
+
+   @Override
+   public void createJournal() throws Exception
+   {
+      super.createJournal();
+      ((JournalImpl)journal).setPoolFiles(POOL_FILES);
+   }
+
+   @Test
+   public void testPoolFilledOnRollover() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      waitForFreeFiles(POOL_FILES);
+
+      // enough records for a few rollovers
+      for (int i = 1; i <= 40; i++)
+      {
+         add(i);
+      }
+
+      JournalImpl journalImpl = (JournalImpl)journal;
+
+      Assert.assertTrue(journalImpl.getRollovers() > 0);
+      Assert.assertTrue(journalImpl.getMaxRolloverWait() <= journalImpl.getRolloverWaitTime());
+
+      waitForFreeFiles(POOL_FILES);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testReclaimWithPool() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      for (int i = 1; i <= 100; i++)
+      {
+         add(i);
+         if (i > 5)
+         {
+            delete(i - 5);
+         }
+         if (i % 10 == 0)
+         {
+            update(i);
+         }
+      }
+
+      checkAndReclaimFiles();
+
+      for (int i = 101; i <= 120; i++)
+      {
+         add(i);
+      }
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      // the files added by the pool are used in order after the reload as well
+      for (int i = 121; i <= 140; i++)
+      {
+         add(i);
+      }
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testNoPool() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      super.createJournal();
+      startJournal();
+      load();
+
+      Assert.assertEquals(0, ((JournalImpl)journal).getPoolFiles());
+
+      for (int i = 1; i <= 40; i++)
+      {
+         add(i);
+      }
+
+      Assert.assertTrue(((JournalImpl)journal).getRollovers() > 0);
+
+      stopJournal();
+      super.createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   private void waitForFreeFiles(final int files) throws Exception
+   {
+      long timeout = System.currentTimeMillis() + 5000;
+
+      while (journal.getFreeFilesCount() < files && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      Assert.assertTrue(journal.getFreeFilesCount() >= files);
+   }
+}
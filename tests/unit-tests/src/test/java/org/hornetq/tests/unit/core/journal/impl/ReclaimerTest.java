@@ -942,6 +942,15 @@ public class ReclaimerTest extends UnitTestCase
          return 0;
       }
 
+      public void addTransactionCompletion(final JournalFile file)
+      {
+      }
+
+      public long getLastTransactionCompletion()
+      {
+         return -1;
+      }
+
       public void addSize(final int bytes)
       {
       }
@@ -18,6 +18,8 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -26,8 +28,13 @@ import org.junit.Assert;
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.core.journal.IOAsyncTask;
+import org.hornetq.core.journal.impl.JournalChecksum;
+import org.hornetq.core.journal.impl.SyncCoordinator;
 import org.hornetq.core.journal.impl.TimedBuffer;
 import org.hornetq.core.journal.impl.TimedBufferObserver;
+import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
+import org.hornetq.core.journal.impl.dataformat.JournalAddRecord;
+import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.tests.util.UnitTestCase;
 
 /**
@@ -402,4 +409,248 @@ public class TimedBufferTest extends UnitTestCase
          timedBuffer.stop();
       }
    }
+
+   /**
+    * Syncs are requested faster than the disk can do them, so the adaptive timeout should grow
+    * towards the sync latency to group the requests
+    */
+   @Test
+   public void testAdaptiveTimeoutFollowsSyncLatency() throws Exception
+   {
+      final ScheduledExecutorService disk = Executors.newSingleThreadScheduledExecutor();
+
+      class TestObserver implements TimedBufferObserver
+      {
+         public void flushBuffer(final ByteBuffer buffer, final boolean sync, final List<IOAsyncTask> callbacks)
+         {
+            // completes the IO later, as libaio would
+            disk.schedule(new Runnable()
+            {
+               public void run()
+               {
+                  for (IOAsyncTask callback : callbacks)
+                  {
+                     callback.done();
+                  }
+               }
+            }, 5, TimeUnit.MILLISECONDS);
+         }
+
+         public ByteBuffer newBuffer(final int minSize, final int maxSize)
+         {
+            return ByteBuffer.allocate(maxSize);
+         }
+
+         public int getRemainingBytes()
+         {
+            return 1024 * 1024;
+         }
+      }
+
+      final int minTimeout = TimedBufferTest.ONE_SECOND_IN_NANOS / 100000;
+      final int maxTimeout = TimedBufferTest.ONE_SECOND_IN_NANOS / 10;
+
+      TimedBuffer timedBuffer = new TimedBuffer(100, minTimeout, false);
+
+      timedBuffer.setAdaptiveTimeout(minTimeout, maxTimeout);
+
+      assertTrue(timedBuffer.isAdaptiveTimeout());
+
+      assertEquals(minTimeout, timedBuffer.getTimeout());
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(new TestObserver());
+
+         for (int i = 0; i < 200; i++)
+         {
+            HornetQBuffer buff = HornetQBuffers.wrappedBuffer(new byte[10]);
+
+            timedBuffer.checkSize(10);
+            timedBuffer.addBytes(buff, true, dummyCallback);
+
+            Thread.sleep(1);
+         }
+
+         // the sync took 5 milliseconds, with a request every millisecond
+         assertTrue("timeout=" + timedBuffer.getTimeout(),
+                    timedBuffer.getTimeout() > TimedBufferTest.ONE_SECOND_IN_NANOS / 1000);
+         assertTrue(timedBuffer.getTimeout() <= maxTimeout);
+
+         long flushes = 0;
+         for (long count : timedBuffer.getBatchHistogram())
+         {
+            flushes += count;
+         }
+
+         assertTrue(flushes > 0);
+      }
+      finally
+      {
+         timedBuffer.stop();
+         disk.shutdownNow();
+         disk.awaitTermination(10, TimeUnit.SECONDS);
+      }
+   }
+
+   @Test
+   public void testSyncCoordinator() throws Exception
+   {
+      class TestObserver implements TimedBufferObserver
+      {
+         final AtomicInteger flushes = new AtomicInteger(0);
+
+         public void flushBuffer(final ByteBuffer buffer, final boolean sync, final List<IOAsyncTask> callbacks)
+         {
+            flushes.incrementAndGet();
+
+            for (IOAsyncTask callback : callbacks)
+            {
+               callback.done();
+            }
+         }
+
+         public ByteBuffer newBuffer(final int minSize, final int maxSize)
+         {
+            return ByteBuffer.allocate(maxSize);
+         }
+
+         public int getRemainingBytes()
+         {
+            return 1024 * 1024;
+         }
+      }
+
+      SyncCoordinator coordinator = new SyncCoordinator();
+
+      TestObserver slowObserver = new TestObserver();
+      TimedBuffer slowBuffer = new TimedBuffer(100, TimedBufferTest.ONE_SECOND_IN_NANOS * 2, false);
+      slowBuffer.setSyncCoordinator(coordinator);
+
+      TestObserver fastObserver = new TestObserver();
+      TimedBuffer fastBuffer = new TimedBuffer(100, TimedBufferTest.ONE_SECOND_IN_NANOS / 1000, false);
+      fastBuffer.setSyncCoordinator(coordinator);
+
+      slowBuffer.start();
+      fastBuffer.start();
+
+      try
+      {
+         slowBuffer.setObserver(slowObserver);
+         fastBuffer.setObserver(fastObserver);
+
+         // an idle buffer flushes right away, then its timer waits for the timeout
+         slowBuffer.checkSize(10);
+         slowBuffer.addBytes(HornetQBuffers.wrappedBuffer(new byte[10]), true, dummyCallback);
+
+         long timeout = System.currentTimeMillis() + 5000;
+         while (slowObserver.flushes.get() == 0 && System.currentTimeMillis() < timeout)
+         {
+            Thread.sleep(1);
+         }
+
+         assertEquals(1, slowObserver.flushes.get());
+
+         slowBuffer.checkSize(10);
+         slowBuffer.addBytes(HornetQBuffers.wrappedBuffer(new byte[10]), true, dummyCallback);
+
+         Thread.sleep(100);
+
+         assertEquals(1, slowObserver.flushes.get());
+
+         // the sync on the other buffer takes the pending sync along
+         fastBuffer.checkSize(10);
+         fastBuffer.addBytes(HornetQBuffers.wrappedBuffer(new byte[10]), true, dummyCallback);
+
+         timeout = System.currentTimeMillis() + 1000;
+         while (slowObserver.flushes.get() == 1 && System.currentTimeMillis() < timeout)
+         {
+            Thread.sleep(1);
+         }
+
+         assertEquals(2, slowObserver.flushes.get());
+         assertEquals(1, fastObserver.flushes.get());
+         assertEquals(1, coordinator.getCoordinatedSyncs());
+      }
+      finally
+      {
+         fastBuffer.stop();
+         slowBuffer.stop();
+      }
+   }
+
+   @Test
+   public void testChecksumsFilledOnFlush() throws Exception
+   {
+      final ArrayList<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+
+      class TestObserver implements TimedBufferObserver
+      {
+         public void flushBuffer(final ByteBuffer buffer, final boolean sync, final List<IOAsyncTask> callbacks)
+         {
+            buffers.add(buffer);
+         }
+
+         public ByteBuffer newBuffer(final int minSize, final int maxSize)
+         {
+            return ByteBuffer.allocate(maxSize);
+         }
+
+         public int getRemainingBytes()
+         {
+            return 1024 * 1024;
+         }
+      }
+
+      TimedBuffer timedBuffer = new TimedBuffer(1024, TimedBufferTest.ONE_SECOND_IN_NANOS, false);
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(new TestObserver());
+
+         int[] ends = new int[3];
+         int position = 0;
+
+         for (int i = 0; i < ends.length; i++)
+         {
+            JournalInternalRecord record = new JournalAddRecord(true, i, (byte)1, new ByteArrayEncoding(new byte[10 + i]));
+            record.setChecksum(true);
+
+            timedBuffer.checkSize(record.getEncodeSize());
+            timedBuffer.addBytes(record, false, dummyCallback);
+
+            position += record.getEncodeSize();
+            ends[i] = position;
+         }
+
+         timedBuffer.flush();
+
+         Assert.assertEquals(1, buffers.size());
+
+         ByteBuffer flushed = buffers.get(0);
+
+         JournalChecksum checksum = new JournalChecksum();
+
+         int start = 0;
+         for (int end : ends)
+         {
+            Assert.assertTrue(checksum.verify(flushed, start, end));
+            start = end;
+         }
+
+         // a single bit flipped on the data of the second record
+         flushed.put(ends[0] + 20, (byte)(flushed.get(ends[0] + 20) ^ 1));
+
+         Assert.assertTrue(checksum.verify(flushed, 0, ends[0]));
+         Assert.assertFalse(checksum.verify(flushed, ends[0], ends[1]));
+      }
+      finally
+      {
+         timedBuffer.stop();
+      }
+   }
 }
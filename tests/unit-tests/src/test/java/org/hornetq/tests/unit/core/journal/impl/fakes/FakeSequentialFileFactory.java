@@ -28,7 +28,9 @@ import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalChecksum;
 import org.hornetq.core.journal.impl.TimedBuffer;
+import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 
 /**
  * A FakeSequentialFileFactory
@@ -628,7 +630,7 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
       {
          ByteBuffer buffer = newBuffer(bytes.getEncodeSize());
          HornetQBuffer outbuffer = HornetQBuffers.wrappedBuffer(buffer);
-         bytes.encode(outbuffer);
+         encode(bytes, outbuffer);
          write(outbuffer, sync, callback);
       }
 
@@ -639,10 +641,20 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
       {
          ByteBuffer buffer = newBuffer(bytes.getEncodeSize());
          HornetQBuffer outbuffer = HornetQBuffers.wrappedBuffer(buffer);
-         bytes.encode(outbuffer);
+         encode(bytes, outbuffer);
          write(outbuffer, sync);
       }
 
+      private void encode(final EncodingSupport bytes, final HornetQBuffer outbuffer)
+      {
+         bytes.encode(outbuffer);
+         // as the real files do when there's no timed buffer
+         if (bytes instanceof JournalInternalRecord && ((JournalInternalRecord)bytes).isChecksum())
+         {
+            new JournalChecksum().fill(outbuffer, 0, outbuffer.writerIndex());
+         }
+      }
+
       /* (non-Javadoc)
        * @see org.hornetq.core.journal.SequentialFile#exists()
        */
@@ -713,6 +725,12 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
    {
    }
 
+   @Override
+   public TimedBuffer getTimedBuffer()
+   {
+      return null;
+   }
+
    @Override
    public void onIOError(Exception exception, String message, SequentialFile file)
    {
@@ -14,14 +14,18 @@ package org.hornetq.tests.unit.core.paging.impl;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
 import org.hornetq.core.paging.PagedMessage;
+import org.hornetq.core.paging.cursor.impl.LivePageCacheImpl;
 import org.hornetq.core.paging.impl.Page;
 import org.hornetq.core.paging.impl.PagedMessageImpl;
 import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
@@ -61,6 +65,68 @@ public class PageTest extends UnitTestCase
       testDamagedPage(new NIOSequentialFileFactory(getTestDir()), 1000);
    }
 
+   @Test
+   public void testPageWithMapped() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testAdd(new MappedSequentialFileFactory(getTestDir()), 1000);
+   }
+
+   @Test
+   public void testDamagedDataWithMapped() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testDamagedPage(new MappedSequentialFileFactory(getTestDir()), 1000);
+   }
+
+   /**
+    * A mapped page file that wasn't closed keeps the zeroes its mapping was extended with, the page
+    * has to be appended after its last message and not after those.
+    */
+   @Test
+   public void testReopenUnclosedPageWithMapped() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      SequentialFileFactory factory = new MappedSequentialFileFactory(getTestDir());
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+      impl.open();
+      addPageElements(simpleDestination, impl, 100);
+      impl.sync();
+
+      // as if the server crashed, the page is never closed
+      int writtenSize = impl.getSize();
+      Assert.assertTrue(file.getJavaFile().length() > writtenSize);
+
+      file = factory.createSequentialFile("00010.page", 1);
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+      impl.open();
+      Assert.assertEquals(100, impl.read(new NullStorageManager()).size());
+      Assert.assertEquals(writtenSize, impl.getSize());
+
+      addPageElements(simpleDestination, impl, 100);
+      impl.sync();
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+      List<PagedMessage> msgs = impl.read(new NullStorageManager());
+      Assert.assertEquals(200, msgs.size());
+      for (int i = 0; i < msgs.size(); i++)
+      {
+         Assert.assertEquals(simpleDestination, msgs.get(i).getMessage().getAddress());
+      }
+
+      impl.delete(null);
+
+      // the zeroes after the last message don't make it an invalid page
+      Assert.assertEquals(0, factory.listFiles("invalidPage").size());
+      Assert.assertEquals(0, factory.listFiles("page").size());
+   }
+
    @Test
    public void testPageFakeWithoutCallbacks() throws Exception
    {
@@ -76,6 +142,32 @@ public class PageTest extends UnitTestCase
       testDamagedPage(new FakeSequentialFileFactory(1, false), 100);
    }
 
+   @Test
+   public void testIndexedReadWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testIndexedRead(new NIOSequentialFileFactory(getTestDir()), 1000);
+   }
+
+   @Test
+   public void testIndexedReadFake() throws Exception
+   {
+      testIndexedRead(new FakeSequentialFileFactory(1, false), 100);
+   }
+
+   @Test
+   public void testCompressedPageWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testCompressedPage(new NIOSequentialFileFactory(getTestDir()), 1000);
+   }
+
+   @Test
+   public void testCompressedPageFake() throws Exception
+   {
+      testCompressedPage(new FakeSequentialFileFactory(1, false), 100);
+   }
+
    /**
     * Validate if everything we add is recovered
     */
@@ -200,6 +292,145 @@ public class PageTest extends UnitTestCase
 
    }
 
+   /**
+    * A page written with a live cache is indexed when closed, so single messages can be read from it
+    */
+   protected void testIndexedRead(final SequentialFileFactory factory, final int numberOfElements) throws Exception
+   {
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      // a page without an index can only be read as a whole
+      Assert.assertNull(impl.read(new NullStorageManager(), 0));
+
+      impl.setLiveCache(new LivePageCacheImpl(impl));
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      ArrayList<HornetQBuffer> buffers = addPageElements(simpleDestination, impl, numberOfElements);
+
+      impl.sync();
+      impl.close();
+
+      Assert.assertEquals(1, factory.listFiles(Page.INDEX_EXTENSION).size());
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      // backwards, so every read has to position the file
+      for (int i = numberOfElements - 1; i >= 0; i--)
+      {
+         PagedMessage msg = impl.read(new NullStorageManager(), i);
+
+         Assert.assertNotNull(msg);
+
+         Assert.assertEquals(simpleDestination, msg.getMessage().getAddress());
+
+         Assert.assertEquals(i, msg.getMessage().getMessageID());
+
+         UnitTestCase.assertEqualsByteArrays(buffers.get(i).toByteBuffer().array(), msg.getMessage()
+            .getBodyBuffer()
+            .toByteBuffer()
+            .array());
+      }
+
+      Assert.assertNull(impl.read(new NullStorageManager(), numberOfElements));
+
+      impl.delete(null);
+
+      Assert.assertEquals(0, factory.listFiles("page").size());
+
+      Assert.assertEquals(0, factory.listFiles(Page.INDEX_EXTENSION).size());
+   }
+
+   /**
+    * Compressible and random messages written to a compressing page are read back as a whole and
+    * one by one
+    */
+   protected void testCompressedPage(final SequentialFileFactory factory, final int numberOfElements) throws Exception
+   {
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      impl.setLiveCache(new LivePageCacheImpl(impl));
+
+      impl.setCompress(true);
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      Random random = new Random(1);
+
+      ArrayList<byte[]> bodies = new ArrayList<byte[]>();
+
+      int encodeSize = 0;
+
+      for (int i = 0; i < numberOfElements; i++)
+      {
+         byte[] body = new byte[1024];
+
+         if (i < numberOfElements / 2)
+         {
+            Arrays.fill(body, (byte) 'b');
+         }
+         else
+         {
+            random.nextBytes(body);
+         }
+
+         bodies.add(body);
+
+         ServerMessage msg = new ServerMessageImpl(i, 2048);
+         msg.getBodyBuffer().writeBytes(body);
+         msg.setAddress(simpleDestination);
+
+         PagedMessage pagedMessage = new PagedMessageImpl(msg, new long[0]);
+         encodeSize += pagedMessage.getEncodeSize() + Page.SIZE_RECORD;
+
+         impl.write(pagedMessage);
+      }
+
+      // half of it is random, the other half takes next to nothing
+      Assert.assertTrue(impl.getSize() + " bytes for " + encodeSize, impl.getSize() < encodeSize * 3 / 4);
+
+      impl.sync();
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      List<PagedMessage> msgs = impl.read(new NullStorageManager());
+
+      Assert.assertEquals(numberOfElements, msgs.size());
+
+      for (int i = 0; i < numberOfElements; i++)
+      {
+         Assert.assertEquals(simpleDestination, msgs.get(i).getMessage().getAddress());
+         assertBody(bodies.get(i), msgs.get(i));
+         assertBody(bodies.get(i), impl.read(new NullStorageManager(), i));
+      }
+
+      impl.delete(null);
+
+      Assert.assertEquals(0, factory.listFiles("page").size());
+   }
+
+   private static void assertBody(final byte[] expected, final PagedMessage msg)
+   {
+      HornetQBuffer body = msg.getMessage().getBodyBuffer();
+      body.resetReaderIndex();
+      byte[] actual = new byte[body.readableBytes()];
+      body.readBytes(actual);
+      UnitTestCase.assertEqualsByteArrays(expected, actual);
+   }
+
    /**
     * @param simpleDestination
     * @param page
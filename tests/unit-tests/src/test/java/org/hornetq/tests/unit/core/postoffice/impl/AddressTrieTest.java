@@ -0,0 +1,138 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.unit.core.postoffice.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.postoffice.Address;
+import org.hornetq.core.postoffice.impl.AddressImpl;
+import org.hornetq.core.postoffice.impl.AddressTrie;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AddressTrieTest extends UnitTestCase
+{
+   private static final String[] ADDRESSES = {"a", "a.b", "a.b.c", "a.x.c", "a.b.c.d", "b.c", "x.a.b.c"};
+
+   private static final String[] WILDCARDS = {"*", "#", "a.*", "a.#", "*.b.*", "a.*.c", "a.#.c", "#.c", "*.*.*.d", "b.#"};
+
+   @Test
+   public void testMatchingWildcards()
+   {
+      AddressTrie trie = new AddressTrie();
+      for (String wildcard : WILDCARDS)
+      {
+         trie.add(address(wildcard));
+      }
+
+      Assert.assertEquals(WILDCARDS.length, trie.size());
+
+      for (String add : ADDRESSES)
+      {
+         Address address = address(add);
+         Set<Address> candidates = trie.getMatchingWildcards(address);
+         for (String wildcard : WILDCARDS)
+         {
+            Address w = address(wildcard);
+            if (address.matches(w))
+            {
+               Assert.assertTrue(wildcard + " should be a candidate for " + add, candidates.contains(w));
+            }
+         }
+      }
+
+      Assert.assertEquals(set("#", "a.#", "*.b.*", "a.*.c", "a.#.c", "#.c"), matches(trie.getMatchingWildcards(address("a.b.c")), "a.b.c"));
+   }
+
+   @Test
+   public void testMatchedAddresses()
+   {
+      AddressTrie trie = new AddressTrie();
+      for (String add : ADDRESSES)
+      {
+         trie.add(address(add));
+      }
+
+      for (String wildcard : WILDCARDS)
+      {
+         Address w = address(wildcard);
+         Set<Address> candidates = trie.getMatchedAddresses(w);
+         for (String add : ADDRESSES)
+         {
+            Address address = address(add);
+            if (address.matches(w))
+            {
+               Assert.assertTrue(add + " should be a candidate for " + wildcard, candidates.contains(address));
+            }
+         }
+      }
+
+      Assert.assertEquals(set("a.b.c", "a.x.c"), trie.getMatchedAddresses(address("a.*.c")));
+      Assert.assertEquals(set("a", "a.b", "a.b.c", "a.x.c", "a.b.c.d"), trie.getMatchedAddresses(address("a.#")));
+      Assert.assertEquals(set(), trie.getMatchedAddresses(address("c.#")));
+   }
+
+   @Test
+   public void testRemove()
+   {
+      AddressTrie trie = new AddressTrie();
+      for (String add : ADDRESSES)
+      {
+         trie.add(address(add));
+      }
+
+      trie.remove(address("a.b"));
+      trie.remove(address("a.b.c.d"));
+      // not there
+      trie.remove(address("a.b.c.d.e"));
+
+      Assert.assertEquals(ADDRESSES.length - 2, trie.size());
+      Assert.assertEquals(set("a", "a.b.c", "a.x.c"), trie.getMatchedAddresses(address("a.#")));
+
+      trie.clear();
+
+      Assert.assertEquals(0, trie.size());
+      Assert.assertEquals(set(), trie.getMatchedAddresses(address("#")));
+   }
+
+   private static Set<Address> matches(final Set<Address> candidates, final String add)
+   {
+      Set<Address> result = new HashSet<Address>();
+      for (Address candidate : candidates)
+      {
+         if (address(add).matches(candidate))
+         {
+            result.add(candidate);
+         }
+      }
+      return result;
+   }
+
+   private static Set<Address> set(final String... addresses)
+   {
+      Set<Address> result = new HashSet<Address>();
+      for (String add : addresses)
+      {
+         result.add(address(add));
+      }
+      return result;
+   }
+
+   private static Address address(final String address)
+   {
+      return new AddressImpl(new SimpleString(address));
+   }
+}
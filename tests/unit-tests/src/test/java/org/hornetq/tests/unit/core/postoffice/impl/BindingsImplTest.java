@@ -23,10 +23,12 @@ import javax.transaction.xa.Xid;
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.BindingType;
 import org.hornetq.core.postoffice.Bindings;
 import org.hornetq.core.postoffice.impl.BindingsImpl;
+import org.hornetq.core.postoffice.impl.LocalQueueBinding;
 import org.hornetq.core.server.Bindable;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.RoutingContext;
@@ -50,6 +52,8 @@ public class BindingsImplTest extends UnitTestCase
 {
    // Constants -----------------------------------------------------
 
+   private static final SimpleString NODE_ID = new SimpleString("node");
+
    // Attributes ----------------------------------------------------
 
    // Static --------------------------------------------------------
@@ -78,6 +82,62 @@ public class BindingsImplTest extends UnitTestCase
       }
    }
 
+   @Test
+   public void testRouteRoundRobinsAfterBindingChanges() throws Exception
+   {
+      SimpleString address = new SimpleString("address");
+
+      CountingQueue a = new CountingQueue(new SimpleString("a"), 1, null);
+      CountingQueue b = new CountingQueue(new SimpleString("b"), 2, FilterImpl.createFilter("region = 'X'"));
+      CountingQueue c1 = new CountingQueue(new SimpleString("c"), 3, null);
+      CountingQueue c2 = new CountingQueue(new SimpleString("c"), 4, null);
+
+      BindingsImpl bind = new BindingsImpl(address, null, null);
+      bind.setRouteWhenNoConsumers(true);
+
+      LocalQueueBinding c1Binding = new LocalQueueBinding(address, c1, NODE_ID);
+
+      bind.addBinding(new LocalQueueBinding(address, a, NODE_ID));
+      bind.addBinding(new LocalQueueBinding(address, b, NODE_ID));
+      bind.addBinding(c1Binding);
+      bind.addBinding(new LocalQueueBinding(address, c2, NODE_ID));
+
+      ServerMessage message = new ServerMessageImpl(1, 100);
+      message.putStringProperty(new SimpleString("region"), new SimpleString("Y"));
+
+      for (int i = 0; i < 4; i++)
+      {
+         bind.route(message, new RoutingContextImpl(null));
+      }
+
+      assertEquals(4, a.routed);
+      assertEquals(0, b.routed);
+      assertEquals(2, c1.routed);
+      assertEquals(2, c2.routed);
+
+      message.putStringProperty(new SimpleString("region"), new SimpleString("X"));
+
+      bind.route(message, new RoutingContextImpl(null));
+
+      assertEquals(5, a.routed);
+      assertEquals(1, b.routed);
+      assertEquals(5, c1.routed + c2.routed);
+
+      bind.removeBinding(c1Binding);
+
+      int c1Routed = c1.routed;
+
+      for (int i = 0; i < 2; i++)
+      {
+         bind.route(message, new RoutingContextImpl(null));
+      }
+
+      assertEquals(7, a.routed);
+      assertEquals(3, b.routed);
+      assertEquals(c1Routed, c1.routed);
+      assertEquals(7 - c1Routed, c2.routed);
+   }
+
    private void internalTest(final boolean route) throws Exception
    {
       final FakeBinding fake = new FakeBinding(new SimpleString("a"));
@@ -255,6 +315,31 @@ public class BindingsImplTest extends UnitTestCase
       }
    }
 
+   private static final class CountingQueue extends FakeQueue
+   {
+      private final Filter filter;
+
+      int routed;
+
+      CountingQueue(final SimpleString name, final long id, final Filter filter)
+      {
+         super(name, id);
+         this.filter = filter;
+      }
+
+      @Override
+      public Filter getFilter()
+      {
+         return filter;
+      }
+
+      @Override
+      public void route(final ServerMessage message, final RoutingContext context) throws Exception
+      {
+         routed++;
+      }
+   }
+
    private final class FakeFilter implements Filter
    {
 
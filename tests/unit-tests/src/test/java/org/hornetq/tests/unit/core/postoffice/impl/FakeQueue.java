@@ -159,6 +159,12 @@ public class FakeQueue implements Queue
 
    }
 
+   @Override
+   public void acknowledge(final Transaction tx, final List<MessageReference> refs) throws Exception
+   {
+      // no-op
+   }
+
    @Override
    public void addConsumer(final Consumer consumer) throws Exception
    {
@@ -13,6 +13,7 @@
 package org.hornetq.tests.unit.core.server.impl;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -807,6 +808,18 @@ public class QueueImplTest extends UnitTestCase
       testConsumerWithFilters(false);
    }
 
+   @Test
+   public void testConsumersWithIndexedFiltersDirect() throws Exception
+   {
+      testConsumersWithIndexedFilters(true);
+   }
+
+   @Test
+   public void testConsumersWithIndexedFiltersQueueing() throws Exception
+   {
+      testConsumersWithIndexedFilters(false);
+   }
+
    @Test
    public void testConsumerWithFilterAddAndRemove()
    {
@@ -866,6 +879,111 @@ public class QueueImplTest extends UnitTestCase
       assertRefListsIdenticalRefs(refs, list);
    }
 
+   @Test
+   public void testChangeReferencesPriorityOverManyBatches() throws Exception
+   {
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      null,
+                                      executor);
+
+      // the scan releases the queue lock a few times
+      final int numMessages = QueueImpl.SCAN_BATCH * 5 + 7;
+
+      List<MessageReference> oranges = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         if (i % 2 == 0)
+         {
+            ref.getMessage().putStringProperty("fruit", "orange");
+            oranges.add(ref);
+         }
+
+         queue.addTail(ref);
+      }
+
+      queue.deliverNow();
+
+      Filter filter = new FakeFilter("fruit", "orange");
+
+      Assert.assertEquals(oranges.size(), queue.changeReferencesPriority(filter, (byte)9));
+      Assert.assertEquals(numMessages, queue.getMessageCount());
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(numMessages, consumer.getReferences().size());
+      assertRefListsIdenticalRefs(oranges, consumer.getReferences().subList(0, oranges.size()));
+   }
+
+   @Test
+   public void testDeliverWhileScanning() throws Exception
+   {
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      null,
+                                      executor);
+
+      final int numMessages = QueueImpl.SCAN_BATCH * 20;
+
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         refs.add(ref);
+
+         queue.addTail(ref);
+      }
+
+      queue.deliverNow();
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      // deliveries go on the executor while the scan moves the references around
+      queue.deliverAsync();
+
+      int changed = queue.changeReferencesPriority(null, (byte)9);
+
+      Assert.assertTrue(changed <= numMessages);
+
+      long timeout = System.currentTimeMillis() + 5000;
+
+      while (consumer.getReferences().size() < numMessages && System.currentTimeMillis() < timeout)
+      {
+         queue.deliverNow();
+      }
+
+      List<MessageReference> delivered = consumer.getReferences();
+
+      Assert.assertEquals(numMessages, delivered.size());
+      Assert.assertEquals(numMessages, new HashSet<MessageReference>(delivered).size());
+      Assert.assertTrue(delivered.containsAll(refs));
+   }
+
    private void awaitExecution()
    {
       FutureLatch future = new FutureLatch();
@@ -1172,6 +1290,91 @@ public class QueueImplTest extends UnitTestCase
 
    // Private ------------------------------------------------------------------------------
 
+   private void testConsumersWithIndexedFilters(final boolean direct) throws Exception
+   {
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      new FakePostOffice(),
+                                      null,
+                                      null,
+                                      executor);
+
+      final int numRegions = 20;
+
+      final int messagesPerRegion = 3;
+
+      FakeConsumer[] consumers = new FakeConsumer[numRegions];
+
+      for (int i = 0; i < numRegions; i++)
+      {
+         consumers[i] = new FakeConsumer(FilterImpl.createFilter("region = 'r" + i + "'"));
+         queue.addConsumer(consumers[i]);
+      }
+
+      // a filter that can't be indexed
+      FakeConsumer fruitConsumer = new FakeConsumer(new FakeFilter("fruit", "orange"));
+
+      queue.addConsumer(fruitConsumer);
+
+      // a region nobody consumes
+      FakeConsumer removed = new FakeConsumer(FilterImpl.createFilter("region IN ('gone')"));
+
+      queue.addConsumer(removed);
+
+      queue.removeConsumer(removed);
+
+      List<List<MessageReference>> regionRefs = new ArrayList<List<MessageReference>>();
+
+      for (int i = 0; i < numRegions; i++)
+      {
+         regionRefs.add(new ArrayList<MessageReference>());
+      }
+
+      List<MessageReference> oranges = new ArrayList<MessageReference>();
+
+      int id = 0;
+
+      for (int m = 0; m < messagesPerRegion; m++)
+      {
+         for (int i = 0; i < numRegions; i++)
+         {
+            MessageReference ref = generateReference(queue, id++);
+            ref.getMessage().putStringProperty(new SimpleString("region"), new SimpleString("r" + i));
+            regionRefs.get(i).add(ref);
+            queue.addTail(ref, direct);
+         }
+
+         MessageReference orange = generateReference(queue, id++);
+         orange.getMessage().putStringProperty(new SimpleString("fruit"), new SimpleString("orange"));
+         oranges.add(orange);
+         queue.addTail(orange, direct);
+
+         MessageReference gone = generateReference(queue, id++);
+         gone.getMessage().putStringProperty(new SimpleString("region"), new SimpleString("gone"));
+         queue.addTail(gone, direct);
+      }
+
+      queue.deliverNow();
+
+      for (int i = 0; i < numRegions; i++)
+      {
+         assertRefListsIdenticalRefs(regionRefs.get(i), consumers[i].getReferences());
+      }
+
+      assertRefListsIdenticalRefs(oranges, fruitConsumer.getReferences());
+
+      Assert.assertTrue(removed.getReferences().isEmpty());
+
+      Assert.assertEquals(id, queue.getMessageCount());
+
+      Assert.assertEquals(id - messagesPerRegion, queue.getDeliveringCount());
+   }
+
    private void testConsumerWithFilters(final boolean direct) throws Exception
    {
       QueueImpl queue = new QueueImpl(1,
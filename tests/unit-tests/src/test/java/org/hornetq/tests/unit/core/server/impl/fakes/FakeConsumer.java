@@ -170,6 +170,10 @@ public class FakeConsumer implements Consumer
       //To change body of implemented methods use File | Settings | File Templates.
    }
 
+   public void afterDeliver() throws Exception
+   {
+   }
+
    public List<MessageReference>  getDeliveringMessages()
    {
       return Collections.emptyList();
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.unit.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.ConcurrentLongHashMap;
+import org.junit.Test;
+
+public class ConcurrentLongHashMapTest extends UnitTestCase
+{
+   @Test
+   public void testPutGetRemove()
+   {
+      ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<String>();
+
+      assertTrue(map.isEmpty());
+      assertNull(map.get(1));
+
+      assertNull(map.put(1, "one"));
+      assertNull(map.put(0, "zero"));
+      assertNull(map.put(-1, "minus one"));
+      assertNull(map.put(Long.MAX_VALUE, "max"));
+
+      assertEquals(4, map.size());
+      assertEquals("one", map.get(1));
+      assertEquals("zero", map.get(0));
+      assertEquals("minus one", map.get(-1));
+      assertEquals("max", map.get(Long.MAX_VALUE));
+
+      assertEquals("one", map.put(1, "uno"));
+      assertEquals("uno", map.get(1));
+
+      assertEquals("uno", map.putIfAbsent(1, "eins"));
+      assertEquals("uno", map.get(1));
+      assertNull(map.putIfAbsent(2, "two"));
+
+      assertEquals("uno", map.remove(1));
+      assertNull(map.remove(1));
+      assertFalse(map.containsKey(1));
+      assertTrue(map.containsKey(2));
+      assertEquals(4, map.size());
+
+      map.clear();
+
+      assertTrue(map.isEmpty());
+      assertNull(map.get(2));
+   }
+
+   @Test
+   public void testCompareWithHashMap()
+   {
+      ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(16, 4);
+
+      Map<Long, Long> expected = new HashMap<Long, Long>();
+
+      Random random = new Random();
+
+      for (int i = 0; i < 200000; i++)
+      {
+         // a small key range so there are plenty of updates, removals and deleted slots being reused
+         long key = random.nextInt(5000);
+
+         if (random.nextInt(3) == 0)
+         {
+            assertEquals(expected.remove(key), map.remove(key));
+         }
+         else
+         {
+            assertEquals(expected.put(key, (long)i), map.put(key, (long)i));
+         }
+      }
+
+      assertEquals(expected.size(), map.size());
+
+      long[] keys = map.keys();
+      assertEquals(expected.size(), keys.length);
+
+      for (long key : keys)
+      {
+         assertEquals(expected.get(key), map.get(key));
+      }
+
+      assertEquals(expected.size(), map.values().size());
+   }
+
+   @Test
+   public void testKeys()
+   {
+      ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<String>();
+
+      for (long i = 0; i < 1000; i++)
+      {
+         map.put(i * 1000, "value");
+      }
+
+      long[] keys = map.keys();
+
+      Arrays.sort(keys);
+
+      for (int i = 0; i < 1000; i++)
+      {
+         assertEquals(i * 1000L, keys[i]);
+      }
+   }
+
+   @Test(expected = NullPointerException.class)
+   public void testNullValue()
+   {
+      new ConcurrentLongHashMap<String>().put(1, null);
+   }
+
+   @Test
+   public void testConcurrentUpdates() throws Exception
+   {
+      final ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>();
+
+      final int threads = 10;
+
+      final int keysPerThread = 20000;
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      Thread[] workers = new Thread[threads];
+
+      for (int t = 0; t < threads; t++)
+      {
+         final long base = (long)t * keysPerThread;
+
+         workers[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+
+                  for (long i = base; i < base + keysPerThread; i++)
+                  {
+                     map.put(i, i);
+                  }
+
+                  // removes every other key this thread added
+                  for (long i = base; i < base + keysPerThread; i += 2)
+                  {
+                     if (map.remove(i) != i)
+                     {
+                        errors.incrementAndGet();
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+            }
+         };
+
+         workers[t].start();
+      }
+
+      start.countDown();
+
+      for (Thread worker : workers)
+      {
+         worker.join();
+      }
+
+      assertEquals(0, errors.get());
+
+      assertEquals(threads * keysPerThread / 2, map.size());
+
+      for (long i = 0; i < threads * keysPerThread; i++)
+      {
+         if (i % 2 == 0)
+         {
+            assertNull(map.get(i));
+         }
+         else
+         {
+            assertEquals(Long.valueOf(i), map.get(i));
+         }
+      }
+   }
+}